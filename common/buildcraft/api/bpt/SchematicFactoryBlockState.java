@@ -0,0 +1,13 @@
+package buildcraft.api.bpt;
+
+import net.minecraft.block.state.IBlockState;
+
+/** A {@link SchematicFactoryWorldBlock} that only needs the block state to create its schematic. Factories that
+ * implement this can be called from a worker thread (with a copy of the block state) for blocks that don't have a tile
+ * entity, rather than on the main thread with the world. */
+public interface SchematicFactoryBlockState extends SchematicFactoryWorldBlock {
+    /** Create a schematic from just a block state. This may be called from any thread.
+     *
+     * @throws SchematicException If you could not handle the given state. */
+    SchematicBlock createFromState(IBlockState state) throws SchematicException;
+}
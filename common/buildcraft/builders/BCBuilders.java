@@ -4,6 +4,7 @@
  * distributed with this file, You can obtain one at https://mozilla.org/MPL/2.0/. */
 package buildcraft.builders;
 
+import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.event.*;
 import net.minecraftforge.fml.common.network.NetworkRegistry;
@@ -31,9 +32,12 @@ public class BCBuilders {
 
         BCBuildersItems.preInit();
         BCBuildersBlocks.preInit();
+        BCBuildersSchematics.preInit();
 
         NetworkRegistry.INSTANCE.registerGuiHandler(INSTANCE, BCBuildersProxy.getProxy());
         BCBuildersProxy.getProxy().fmlPreInit();
+
+        MinecraftForge.EVENT_BUS.register(BCBuildersEventDist.INSTANCE);
     }
 
     @Mod.EventHandler
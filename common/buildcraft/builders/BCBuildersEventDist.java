@@ -0,0 +1,27 @@
+/* Copyright (c) 2016 SpaceToad and the BuildCraft team
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of the MPL was not
+ * distributed with this file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+package buildcraft.builders;
+
+import net.minecraftforge.event.world.GetCollisionBoxesEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import buildcraft.builders.tile.TileQuarry;
+
+public enum BCBuildersEventDist {
+    INSTANCE;
+
+    @SubscribeEvent
+    public void onGetCollisionBoxes(GetCollisionBoxesEvent event) {
+        if (!event.getWorld().isRemote) {
+            TileQuarry.addArmCollisionBoxes(event.getWorld(), event.getAabb(), event.getCollisionBoxesList());
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        TileQuarry.onWorldUnload(event.getWorld());
+    }
+}
@@ -84,7 +84,8 @@ public abstract class BCBuildersProxy implements IGuiHandler {
 
     public void fmlInit() {
         ResourceLocation idQuarry = new ResourceLocation("buildcraftbuilders:quarry");
-        EntityRegistry.registerModEntity(idQuarry, EntityQuarryFrame.class, "quarry", 0, BCBuilders.INSTANCE, 50, 1, true);
+        // The client works out where the arms are on its own, so position updates are only needed as a fallback
+        EntityRegistry.registerModEntity(idQuarry, EntityQuarryFrame.class, "quarry", 0, BCBuilders.INSTANCE, 64, 20, false);
     }
 
     @SideOnly(Side.SERVER)
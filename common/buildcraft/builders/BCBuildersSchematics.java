@@ -0,0 +1,34 @@
+/* Copyright (c) 2016 SpaceToad and the BuildCraft team
+ * 
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of the MPL was not
+ * distributed with this file, You can obtain one at https://mozilla.org/MPL/2.0/. */
+package buildcraft.builders;
+
+import net.minecraft.block.Block;
+import net.minecraft.init.Blocks;
+
+import buildcraft.api.bpt.BlueprintAPI;
+
+import buildcraft.lib.bpt.helper.SchematicBlockSimpleSet;
+
+public class BCBuildersSchematics {
+    public static void preInit() {
+        // Full blocks that don't depend on anything around them, so the architect can scan them from a worker thread
+        registerSimpleSet(Blocks.STONE, Blocks.GRASS, Blocks.DIRT, Blocks.COBBLESTONE, Blocks.MOSSY_COBBLESTONE);
+        registerSimpleSet(Blocks.PLANKS, Blocks.LOG, Blocks.LOG2, Blocks.BOOKSHELF);
+        registerSimpleSet(Blocks.SANDSTONE, Blocks.RED_SANDSTONE, Blocks.WOOL, Blocks.HARDENED_CLAY, Blocks.STAINED_HARDENED_CLAY);
+        registerSimpleSet(Blocks.BRICK_BLOCK, Blocks.STONEBRICK, Blocks.CLAY, Blocks.GLASS, Blocks.STAINED_GLASS, Blocks.OBSIDIAN);
+        registerSimpleSet(Blocks.IRON_BLOCK, Blocks.GOLD_BLOCK, Blocks.DIAMOND_BLOCK, Blocks.EMERALD_BLOCK, Blocks.LAPIS_BLOCK);
+        registerSimpleSet(Blocks.REDSTONE_BLOCK, Blocks.COAL_BLOCK, Blocks.QUARTZ_BLOCK, Blocks.HAY_BLOCK, Blocks.BONE_BLOCK);
+        registerSimpleSet(Blocks.NETHERRACK, Blocks.SOUL_SAND, Blocks.NETHER_BRICK, Blocks.RED_NETHER_BRICK, Blocks.NETHER_WART_BLOCK);
+        registerSimpleSet(Blocks.GLOWSTONE, Blocks.MAGMA, Blocks.END_STONE, Blocks.END_BRICKS, Blocks.PURPUR_BLOCK, Blocks.PURPUR_PILLAR);
+        registerSimpleSet(Blocks.PRISMARINE, Blocks.SEA_LANTERN, Blocks.PACKED_ICE);
+    }
+
+    private static void registerSimpleSet(Block... blocks) {
+        for (Block block : blocks) {
+            BlueprintAPI.registerWorldBlockSchematic(block, SchematicBlockSimpleSet.FACTORY);
+            BlueprintAPI.registerNbtBlockSchematic(block, SchematicBlockSimpleSet.FACTORY);
+        }
+    }
+}
@@ -1,107 +1,215 @@
 package buildcraft.builders.bpt;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import com.google.common.hash.Hashing;
+
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.server.MinecraftServer;
 
 import net.minecraftforge.common.util.Constants;
-import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
 
+import buildcraft.api.core.BCLog;
+
 import buildcraft.lib.nbt.NbtSquisher;
 
+/** Stores blueprints that are too big to fit in an item's NBT, for a single save.
+ * <p>
+ * Every blueprint is keyed by the SHA-256 of its squished bytes, and is written to its own file (named after the
+ * hash) as soon as it is stored. The only thing read at server start is the index file: a list of hashes, one per
+ * line, in id order, which is appended to whenever a new blueprint is stored. Blueprints are only read from disk the
+ * first time that they are retrieved, so neither starting nor stopping the server depends on the number (or size) of
+ * blueprints stored. */
 public enum PerSaveBptStorage {
     INSTANCE;
 
-    private static final List<NBTTagCompound> blueprints = new ArrayList<>();
+    private static final String FOLDER_NAME = "buildcraft_blueprints";
+    private static final String INDEX_NAME = "index.txt";
+    private static final String LEGACY_NAME = "blueprints.bcc.gz";
+    private static final String EXTENSION = ".bcc.gz";
 
-    public static int storeNBT(NBTTagCompound nbt) {
+    /** The hash of every blueprint, in id order. */
+    private static final List<String> hashes = new ArrayList<>();
+    private static final Map<String, Integer> ids = new HashMap<>();
+    /** Every blueprint that has been stored or retrieved since the server started. */
+    private static final Map<Integer, NBTTagCompound> loaded = new HashMap<>();
+    private static File folder;
+
+    public static synchronized int storeNBT(NBTTagCompound nbt) {
         if (nbt == null) {
             throw new NullPointerException();
         }
-        for (int i = 0; i < blueprints.size(); i++) {
-            NBTTagCompound stored = blueprints.get(i);
-            if (stored.equals(nbt)) {
-                return i;
+        // Save it as an uncompressed BCv1 inside of a gzip
+        // We do this so other people can use their gzip libraries to decompress the contents easily
+        byte[] data = NbtSquisher.squishBuildCraftV1Uncompressed(nbt);
+        String hash = Hashing.sha256().hashBytes(data).toString();
+        Integer existing = ids.get(hash);
+        if (existing != null) {
+            return existing;
+        }
+        int id = hashes.size();
+        hashes.add(hash);
+        ids.put(hash, id);
+        loaded.put(id, nbt);
+        if (folder != null) {
+            try {
+                writeBlueprint(hash, data);
+                appendToIndex(hash);
+            } catch (IOException io) {
+                // The blueprint is still usable until the server stops, it just won't survive a restart
+                BCLog.logger.warn("[builders.bpt] Failed to save the blueprint " + hash + "!", io);
             }
         }
-        blueprints.add(nbt);
-        return blueprints.size() - 1;
+        return id;
     }
 
-    public static NBTTagCompound retrieveNbt(int id) {// TODO: Test this stuff!
+    public static synchronized NBTTagCompound retrieveNbt(int id) {
         if (id < 0) {
             return null;
         }
-        if (id >= blueprints.size()) {
+        if (id >= hashes.size()) {
             return null;
         }
-        return blueprints.get(id);
+        NBTTagCompound nbt = loaded.get(id);
+        if (nbt == null && folder != null) {
+            String hash = hashes.get(id);
+            try {
+                nbt = readBlueprint(getBlueprintFile(hash));
+                loaded.put(id, nbt);
+            } catch (IOException io) {
+                BCLog.logger.warn("[builders.bpt] Failed to read the blueprint " + hash + " (id = " + id + ")", io);
+            }
+        }
+        return nbt;
     }
 
-    public static void onServerStart(FMLServerStartingEvent event) {
+    public static synchronized void onServerStart(FMLServerStartingEvent event) {
         MinecraftServer server = event.getServer();
-        File file = getSaveFile(server);
+        File data = server.getActiveAnvilConverter().getFile(server.getFolderName(), "data");
+        clear();
+        folder = new File(data, FOLDER_NAME);
+        folder.mkdirs();
 
-        try (GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(file))) {
-            DataInputStream dis = new DataInputStream(gzip);
+        File index = new File(folder, INDEX_NAME);
+        if (index.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(index), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    // Ids have to stay the same as when they were handed out, even if the same hash shows up twice
+                    ids.putIfAbsent(line, hashes.size());
+                    hashes.add(line);
+                }
+            } catch (IOException io) {
+                // BIG problem, we might not be able to recover from this safely
+                String error = "Failed to load the blueprint index!\n" +//
+                    "Please report this to https://github.com/BuildCraft/BuildCraft/issues";
+                throw new Error(error, io);
+            }
+        }
+
+        File legacy = new File(data, LEGACY_NAME);
+        if (legacy.isFile()) {
+            migrateLegacy(legacy);
+        }
+    }
+
+    public static synchronized void onServerStopping() {
+        // Everything has already been written out when it was stored
+        clear();
+        folder = null;
+    }
+
+    private static void clear() {
+        hashes.clear();
+        ids.clear();
+        loaded.clear();
+    }
+
+    /** Moves every blueprint out of the single file that they used to be saved in. This only happens once: the old
+     * file is renamed afterwards. */
+    private static void migrateLegacy(File legacy) {
+        NBTTagList list;
+        try (DataInputStream dis = new DataInputStream(new GZIPInputStream(new FileInputStream(legacy)))) {
             int length = dis.readInt();
             byte[] squished = new byte[length];
-            gzip.read(squished);
-            NBTTagCompound main = NbtSquisher.expand(squished);
-
-            // We have the data, now lets fully read the blueprints
-            blueprints.clear();
-            NBTTagList list = main.getTagList("list", Constants.NBT.TAG_COMPOUND);
-            for (int idx = 0; idx < list.tagCount(); idx++) {
-                NBTTagCompound entry = list.getCompoundTagAt(idx);
-                blueprints.add(entry);
-            }
-        } catch (FileNotFoundException fnfe) {
-            // Thats fine, maybe their wasn't any blueprints previously
+            dis.readFully(squished);
+            list = NbtSquisher.expand(squished).getTagList("list", Constants.NBT.TAG_COMPOUND);
         } catch (IOException io) {
             // BIG problem, we might not be able to recover from this safely
             String error = "Failed to load the blueprint file!\n" +//
                 "Please report this to https://github.com/BuildCraft/BuildCraft/issues";
             throw new Error(error, io);
         }
+        if (!hashes.isEmpty()) {
+            BCLog.logger.warn("[builders.bpt] Found both " + LEGACY_NAME + " and an index, the old blueprints will be added after the new ones.");
+        }
+        BCLog.logger.info("[builders.bpt] Migrating " + list.tagCount() + " blueprints out of " + LEGACY_NAME);
+        for (int idx = 0; idx < list.tagCount(); idx++) {
+            NBTTagCompound nbt = list.getCompoundTagAt(idx);
+            byte[] data = NbtSquisher.squishBuildCraftV1Uncompressed(nbt);
+            String hash = Hashing.sha256().hashBytes(data).toString();
+            // Old items refer to blueprints by their position in the list, so duplicates still need their own id
+            ids.putIfAbsent(hash, hashes.size());
+            hashes.add(hash);
+            try {
+                if (!getBlueprintFile(hash).isFile()) {
+                    writeBlueprint(hash, data);
+                }
+                appendToIndex(hash);
+            } catch (IOException io) {
+                String error = "Failed to migrate the blueprint file!\n" +//
+                    "Please report this to https://github.com/BuildCraft/BuildCraft/issues";
+                throw new Error(error, io);
+            }
+        }
+        if (!legacy.renameTo(new File(legacy.getParentFile(), LEGACY_NAME + ".old"))) {
+            BCLog.logger.warn("[builders.bpt] Failed to rename " + legacy + ", it will be migrated again next time!");
+        }
     }
 
-    public static void onServerStopping() {
-        MinecraftServer server = FMLCommonHandler.instance().getMinecraftServerInstance();
-        File file = getSaveFile(server);
+    private static File getBlueprintFile(String hash) {
+        return new File(folder, hash + EXTENSION);
+    }
 
-        // Put the blueprints down into one massive NBTTagCompound
-        NBTTagCompound main = new NBTTagCompound();
-        NBTTagList list = new NBTTagList();
-        main.setTag("list", list);
-        for (NBTTagCompound bpt : blueprints) {
-            list.appendTag(bpt);
+    private static NBTTagCompound readBlueprint(File file) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(file))) {
+            return NbtSquisher.expand(gzip);
         }
-        // Save it as an uncompressed BCv1
-        // We do this so other people can use their gzip libraries to decompress the contents easily
-        byte[] data = NbtSquisher.squishBuildCraftV1Uncompressed(main);
+    }
 
-        try (GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(file))) {
-            DataOutputStream dos = new DataOutputStream(gzip);
-            dos.writeInt(data.length);
+    private static void writeBlueprint(String hash, byte[] data) throws IOException {
+        File file = getBlueprintFile(hash);
+        // Write to a temporary file first so that a crash half way through never leaves a broken blueprint behind
+        File temp = new File(folder, hash + EXTENSION + ".tmp");
+        try (GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(temp))) {
             gzip.write(data);
-            blueprints.clear();
-        } catch (IOException io) {
-            // BIG problem, we might have just lost all of the large blueprints :/
-            io.printStackTrace();
+        }
+        if (file.exists()) {
+            file.delete();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to rename " + temp + " to " + file);
         }
     }
 
-    private static File getSaveFile(MinecraftServer server) {
-        File save = server.getActiveAnvilConverter().getFile(server.getFolderName(), "data");
-        save.mkdir();
-        return new File(save, "blueprints.bcc.gz");
+    private static void appendToIndex(String hash) throws IOException {
+        File index = new File(folder, INDEX_NAME);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(index, true), StandardCharsets.UTF_8)) {
+            writer.write(hash);
+            writer.write('\n');
+        }
     }
 }
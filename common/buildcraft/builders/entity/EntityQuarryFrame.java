@@ -3,6 +3,7 @@ package buildcraft.builders.entity;
 import javax.annotation.Nullable;
 
 import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.datasync.DataParameter;
 import net.minecraft.network.datasync.DataSerializers;
@@ -11,19 +12,24 @@ import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing.Axis;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
 import buildcraft.api.core.BCLog;
 
 import buildcraft.builders.tile.TileQuarry;
-import buildcraft.lib.misc.BoundingBoxUtil;
+import buildcraft.lib.BCLibProxy;
 import buildcraft.lib.misc.NBTUtilBC;
 
+/** The client side collision box of a single arm of a quarry. There is only ever one of these per arm: the arm itself
+ * is rendered by the quarry, and on the client this moves itself along the arm to be as close as possible to the
+ * client's own player (the only player whose movement the client works out), as entities are only found by collision
+ * checks near to their position.
+ * <p>
+ * On the server every entity collides with the arms through {@link TileQuarry#addArmCollisionBoxes}, so this doesn't
+ * collide with anything and never moves there, which means the server doesn't need to send movement updates. */
 public class EntityQuarryFrame extends Entity {
     private static final DataParameter<BlockPos> TILE_POS = EntityDataManager.createKey(EntityQuarryFrame.class, DataSerializers.BLOCK_POS);
     private static final DataParameter<Byte> AXIS = EntityDataManager.createKey(EntityQuarryFrame.class, DataSerializers.BYTE);
-    private static final DataParameter<Integer> LIST_INDEX = EntityDataManager.createKey(EntityQuarryFrame.class, DataSerializers.VARINT);
 
     private TileQuarry quarry = null;
 
@@ -31,16 +37,14 @@ public class EntityQuarryFrame extends Entity {
         super(world);
         dataManager.register(TILE_POS, BlockPos.ORIGIN);
         dataManager.register(AXIS, (byte) 0);
-        dataManager.register(LIST_INDEX, 0);
     }
 
-    public EntityQuarryFrame(World world, TileQuarry quarry, BlockPos entityPos, Axis axis, int listIndex) {
+    public EntityQuarryFrame(World world, TileQuarry quarry, BlockPos entityPos, Axis axis) {
         super(world);
         this.quarry = quarry;
         dataManager.register(TILE_POS, quarry.getPos());
         setPosition(entityPos.getX(), entityPos.getY(), entityPos.getZ());
         dataManager.register(AXIS, (byte) axis.ordinal());
-        dataManager.register(LIST_INDEX, listIndex);
     }
 
     @Override
@@ -54,10 +58,6 @@ public class EntityQuarryFrame extends Entity {
         return Axis.values()[dataManager.get(AXIS)];
     }
 
-    public int getListIndex() {
-        return dataManager.get(LIST_INDEX);
-    }
-
     public TileQuarry getTile() {
         return quarry;
     }
@@ -75,7 +75,7 @@ public class EntityQuarryFrame extends Entity {
                 TileEntity tile = world.getTileEntity(getTilePos());
                 if (tile instanceof TileQuarry) {
                     TileQuarry potentialQuarry = (TileQuarry) tile;
-                    if (potentialQuarry.tryPairEntity(this, getAxis(), getListIndex())) {
+                    if (potentialQuarry.tryPairEntity(this, getAxis())) {
                         quarry = potentialQuarry;
                     } else {
                         BCLog.logger.info("[quarry.frame] Failed to pair with a quarry!");
@@ -84,76 +84,75 @@ public class EntityQuarryFrame extends Entity {
                 } else {
                     setDead();
                 }
-            } else if (quarry.isInvalid() || !quarry.isPaired(this, getAxis(), getListIndex())) {
+            } else if (quarry.isInvalid() || !quarry.isPaired(this, getAxis())) {
                 BCLog.logger.info("[quarry.frame] Quarry was invalid (or we were no longer paired) @ " + getPosition());
                 setDead();
             }
-        } else if (quarry == null || quarry.isInvalid() || !quarry.isPaired(this, getAxis(), getListIndex())) {
+        } else if (quarry == null || quarry.isInvalid() || !quarry.isPaired(this, getAxis())) {
             BCLog.logger.info("[quarry.frame] Quarry was invalid (or we were no longer paired) @ " + getPosition());
             // Uh-oh, remove ourselves
             setDead();
         }
+        if (world.isRemote && !isDead && quarry != null) {
+            moveToClientPlayer();
+        }
+    }
+
+    private void moveToClientPlayer() {
+        AxisAlignedBB box = getEntityBoundingBox();
+        if (box.maxX <= box.minX && box.maxY <= box.minY && box.maxZ <= box.minZ) {
+            return;
+        }
+        EntityPlayer player = BCLibProxy.getProxy().getClientPlayer();
+        if (player == null || player.world != world) {
+            return;
+        }
+        setPosition(//
+                clamp(player.posX, box.minX, box.maxX),//
+                clamp(player.posY, box.minY, box.maxY),//
+                clamp(player.posZ, box.minZ, box.maxZ)//
+        );
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return value < min ? min : value > max ? max : value;
     }
 
     @Override
     protected void writeEntityToNBT(NBTTagCompound nbt) {
         nbt.setTag("tile_pos", NBTUtilBC.writeBlockPos(getTilePos()));
         nbt.setByte("type", (byte) getAxis().ordinal());
-        nbt.setInteger("list_index", dataManager.get(LIST_INDEX));
     }
 
     @Override
     protected void readEntityFromNBT(NBTTagCompound nbt) {
         dataManager.set(TILE_POS, NBTUtilBC.readBlockPos(nbt.getTag("tile_pos")));
         dataManager.set(AXIS, nbt.getByte("type"));
-        dataManager.set(LIST_INDEX, nbt.getInteger("list_index"));
     }
 
     @Override
     public AxisAlignedBB getEntityBoundingBox() {
         TileQuarry tile = getTile();
-        if (tile != null && tile.frameBox.isInitialized() && tile.drillPos != null) {
-            final BlockPos min = tile.frameBox.min();
-            final BlockPos max = tile.frameBox.max();
-            switch (getAxis()) {
-                case X:
-                    return BoundingBoxUtil.makeFrom(//
-                            new Vec3d(tile.drillPos.xCoord + 0.5, max.getY() + 0.5, min.getZ() + 1),//
-                            new Vec3d(tile.drillPos.xCoord + 0.5, max.getY() + 0.5, max.getZ()),//
-                            4 / 16D//
-                    );
-                case Y:
-                    return BoundingBoxUtil.makeFrom(//
-                            new Vec3d(tile.drillPos.xCoord + 0.5, max.getY() + 0.5, tile.drillPos.zCoord + 0.5),//
-                            new Vec3d(tile.drillPos.xCoord + 0.5, tile.drillPos.yCoord + 1 + 0.5, tile.drillPos.zCoord + 0.5),//
-                            4 / 16D//
-                    );
-                case Z:
-                    return BoundingBoxUtil.makeFrom(//
-                            new Vec3d(min.getX() + 1, max.getY() + 0.5, tile.drillPos.zCoord + 0.5),//
-                            new Vec3d(max.getX(), max.getY() + 0.5, tile.drillPos.zCoord + 0.5),//
-                            4 / 16D//
-                    );
-            }
-        }
-        return new AxisAlignedBB(0, 0, 0, 0, 0, 0);
+        AxisAlignedBB box = tile == null ? null : tile.getArmBox(getAxis());
+        return box == null ? new AxisAlignedBB(0, 0, 0, 0, 0, 0) : box;
     }
 
     @Nullable
     @Override
     public AxisAlignedBB getCollisionBox(Entity entity) {
-        return getEntityBoundingBox();
+        return getCollisionBoundingBox();
     }
 
     @Nullable
     @Override
     public AxisAlignedBB getCollisionBoundingBox() {
-        return getEntityBoundingBox();
+        // The server adds the arm boxes for every entity itself
+        return world.isRemote ? getEntityBoundingBox() : null;
     }
 
     @Override
     public boolean canBeCollidedWith() {
-        return true;
+        return world.isRemote;
     }
 
     @Override
@@ -0,0 +1,197 @@
+package buildcraft.builders.tile;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import buildcraft.lib.world.WorldEventListenerAdapter;
+
+import buildcraft.builders.BCBuildersBlocks;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+/** Keeps track of every block inside a quarry's frame box that is in the way (anything that isn't air or a frame where
+ * a frame should be), and every frame position that is still missing its frame.
+ * <p>
+ * The whole box is only scanned once, in {@link #build()}. After that the index is kept up to date by listening to
+ * block changes in the world, so finding the next thing to do costs the same regardless of the size of the box. Both
+ * sets are handed out nearest-first (to the quarry), in the same order that the quarry used to pick them in.
+ * <p>
+ * Listeners are only told about block changes that are sent to the client (flag 2), so changes made without that flag
+ * are missed. To make up for that every position is checked against the world again before it is handed out, and
+ * {@link #verifyNext(int)} slowly walks over the whole box to find anything that was missed. */
+public class QuarryFrameIndex {
+    private final World world;
+    private final BlockPos min, max;
+    private final TLongHashSet obstructions = new TLongHashSet();
+    private final TLongHashSet missingFrames = new TLongHashSet();
+    /** Both queues can contain positions that have since been removed from their set: these are dropped when they
+     * reach the head of the queue. */
+    private final PriorityQueue<BlockPos> obstructionQueue;
+    private final PriorityQueue<BlockPos> frameQueue;
+    private final Listener listener = new Listener();
+    private boolean built = false;
+    /** The next position that {@link #verifyNext(int)} will check. */
+    private int verifyX, verifyY, verifyZ;
+
+    public QuarryFrameIndex(World world, BlockPos origin, BlockPos min, BlockPos max) {
+        this.world = world;
+        this.min = min;
+        this.max = max;
+        this.verifyX = min.getX();
+        this.verifyY = min.getY();
+        this.verifyZ = min.getZ();
+        Comparator<BlockPos> nearest = Comparator.comparingDouble(p -> p.distanceSq(origin));
+        obstructionQueue = new PriorityQueue<>(nearest);
+        frameQueue = new PriorityQueue<>(nearest);
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /** Scans the whole box, and starts listening for changes to it. */
+    public void build() {
+        if (built) {
+            return;
+        }
+        built = true;
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int x = min.getX(); x <= max.getX(); x++) {
+            for (int y = min.getY(); y <= max.getY(); y++) {
+                for (int z = min.getZ(); z <= max.getZ(); z++) {
+                    pos.setPos(x, y, z);
+                    update(pos, world.getBlockState(pos));
+                }
+            }
+        }
+        world.addEventListener(listener);
+    }
+
+    /** Stops listening for changes. This index shouldn't be used after this has been called. */
+    public void dispose() {
+        if (built) {
+            world.removeEventListener(listener);
+            built = false;
+        }
+    }
+
+    public boolean contains(BlockPos pos) {
+        return pos.getX() >= min.getX() && pos.getX() <= max.getX()//
+            && pos.getY() >= min.getY() && pos.getY() <= max.getY()//
+            && pos.getZ() >= min.getZ() && pos.getZ() <= max.getZ();
+    }
+
+    public boolean isFramePos(BlockPos pos) {
+        return pos.getX() == min.getX() || pos.getX() == max.getX()//
+            || pos.getY() == min.getY() || pos.getY() == max.getY()//
+            || pos.getZ() == min.getZ() || pos.getZ() == max.getZ();
+    }
+
+    /** Checks the next few positions in the box against the world, in case any of them were changed without the
+     * listener being told.
+     *
+     * @param count The number of positions to check. */
+    public void verifyNext(int count) {
+        if (!built) {
+            return;
+        }
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int i = 0; i < count; i++) {
+            pos.setPos(verifyX, verifyY, verifyZ);
+            if (world.isBlockLoaded(pos)) {
+                update(pos, world.getBlockState(pos));
+            }
+            if (++verifyZ > max.getZ()) {
+                verifyZ = min.getZ();
+                if (++verifyY > max.getY()) {
+                    verifyY = min.getY();
+                    if (++verifyX > max.getX()) {
+                        verifyX = min.getX();
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return The closest position that needs to be broken before the quarry can start, or null if there aren't
+     *         any. */
+    public BlockPos getClosestObstruction() {
+        return peek(obstructionQueue, obstructions);
+    }
+
+    /** @return The closest frame position that doesn't have a frame yet, or null if the frame is complete. */
+    public BlockPos getClosestMissingFrame() {
+        return peek(frameQueue, missingFrames);
+    }
+
+    public int getObstructionCount() {
+        return obstructions.size();
+    }
+
+    public int getMissingFrameCount() {
+        return missingFrames.size();
+    }
+
+    private BlockPos peek(PriorityQueue<BlockPos> queue, TLongHashSet set) {
+        while (!queue.isEmpty()) {
+            BlockPos pos = queue.peek();
+            if (set.contains(pos.toLong())) {
+                if (!world.isBlockLoaded(pos)) {
+                    return pos;
+                }
+                // Make sure that the world still agrees, in case it was changed without telling the listener
+                update(pos, world.getBlockState(pos));
+                if (set.contains(pos.toLong())) {
+                    return pos;
+                }
+            }
+            queue.poll();
+        }
+        return null;
+    }
+
+    private void update(BlockPos pos, IBlockState state) {
+        Block block = state.getBlock();
+        boolean shouldBeFrame = isFramePos(pos);
+        boolean obstruction = block != Blocks.AIR && (!shouldBeFrame || block != BCBuildersBlocks.frame);
+        boolean missingFrame = shouldBeFrame && block == Blocks.AIR;
+        long key = pos.toLong();
+        if (obstruction) {
+            if (obstructions.add(key)) {
+                offer(obstructionQueue, obstructions, pos);
+            }
+        } else {
+            obstructions.remove(key);
+        }
+        if (missingFrame) {
+            if (missingFrames.add(key)) {
+                offer(frameQueue, missingFrames, pos);
+            }
+        } else {
+            missingFrames.remove(key);
+        }
+    }
+
+    private static void offer(PriorityQueue<BlockPos> queue, TLongHashSet set, BlockPos pos) {
+        queue.add(pos.toImmutable());
+        if (queue.size() > set.size() * 2 + 64) {
+            // Something keeps flipping blocks back and forth: throw away all of the stale entries
+            queue.removeIf(p -> !set.contains(p.toLong()));
+        }
+    }
+
+    private class Listener extends WorldEventListenerAdapter {
+        @Override
+        public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+            if (worldIn == world && contains(pos)) {
+                update(pos, newState);
+            }
+        }
+    }
+}
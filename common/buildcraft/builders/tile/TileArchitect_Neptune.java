@@ -5,11 +5,19 @@
 package buildcraft.builders.tile;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import net.minecraft.block.material.Material;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.init.Blocks;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.tileentity.TileEntity;
@@ -18,6 +26,8 @@ import net.minecraft.util.EnumParticleTypes;
 import net.minecraft.util.ITickable;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 import net.minecraftforge.fml.relauncher.Side;
@@ -27,7 +37,9 @@ import net.minecraftforge.items.IItemHandlerModifiable;
 import buildcraft.api.bpt.BlueprintAPI;
 import buildcraft.api.bpt.SchematicBlock;
 import buildcraft.api.bpt.SchematicException;
+import buildcraft.api.bpt.SchematicFactoryBlockState;
 import buildcraft.api.bpt.SchematicFactoryWorldBlock;
+import buildcraft.api.core.BCLog;
 import buildcraft.api.core.EnumPipePart;
 import buildcraft.api.core.IAreaProvider;
 import buildcraft.api.tiles.IDebuggable;
@@ -41,18 +53,26 @@ import buildcraft.lib.bpt.builder.SchematicEntityOffset;
 import buildcraft.lib.delta.DeltaInt;
 import buildcraft.lib.delta.DeltaManager;
 import buildcraft.lib.misc.BoundingBoxUtil;
+import buildcraft.lib.misc.WorkerThreadUtil;
 import buildcraft.lib.misc.data.Box;
-import buildcraft.lib.misc.data.BoxIterator;
-import buildcraft.lib.misc.data.EnumAxisOrder;
 import buildcraft.lib.net.PacketBufferBC;
 import buildcraft.lib.tile.TileBC_Neptune;
 import buildcraft.lib.tile.item.ItemHandlerManager.EnumAccess;
 
+import gnu.trove.list.array.TLongArrayList;
+
 public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable, IDebuggable {
     public static final int NET_BOX = 20;
     public static final int NET_SCAN = 21;
 
-    private static final int BLOCKS_PER_TICK = 3;
+    /** The most blocks that will be copied out of the world (for a worker thread to scan) per tick. */
+    private static final int SNAPSHOT_BLOCKS_PER_TICK = 16384;
+    private static final int MAX_PENDING_SLABS = 4;
+    /** The most schematics that will be created on the main thread per tick, for blocks that can't be scanned from a
+     * worker thread (blocks with tile entities, or whose factory isn't a {@link SchematicFactoryBlockState}). */
+    private static final int MAIN_THREAD_SCHEMATICS_PER_TICK = 64;
+    /** The number of particles shown for each {@link #NET_SCAN} message. */
+    private static final int SCAN_PARTICLES = 8;
 
     public final IItemHandlerModifiable invBptIn = itemManager.addInvHandler("bptIn", 1, EnumAccess.INSERT, EnumPipePart.VALUES);
     public final IItemHandlerModifiable invBptOut = itemManager.addInvHandler("bptOut", 1, EnumAccess.EXTRACT, EnumPipePart.VALUES);
@@ -64,7 +84,14 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
     private List<SchematicEntityOffset> blueprintScannedEntities;
     private SchematicBlock[][][] blueprintScannedBlocks;
     private boolean[][][] templateScannedBlocks;
-    private BoxIterator boxIterator;
+    /** The lowest layer of the box that hasn't been handed to a worker thread yet. */
+    private int nextSnapshotY;
+    private final Deque<Future<ScanSlab>> pendingSlabs = new ArrayDeque<>();
+    /** A slab that was copied out of the world, but couldn't be handed to a worker thread because they were all busy.
+     * This is tried again next tick, rather than scanning it on the main thread. */
+    private ScanSlab unsubmittedSlab;
+    /** Positions that the worker threads couldn't create schematics for. */
+    private final TLongArrayList mainThreadPositions = new TLongArrayList();
     private boolean isValid = false;
     private boolean scanning = false;
     private boolean shouldStartScanning = false;
@@ -73,10 +100,6 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
 
     public TileArchitect_Neptune() {}
 
-    private int maxBlocksPerTick() {
-        return shouldScanDetails ? BLOCKS_PER_TICK : BLOCKS_PER_TICK * 3;
-    }
-
     @Override
     protected void onSlotChange(IItemHandlerModifiable handler, int slot, ItemStack before, ItemStack after) {
         super.onSlotChange(handler, slot, before, after);
@@ -123,17 +146,17 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
         }
 
         if (shouldStartScanning && isValid) {
-            int size = box.size().getX() * box.size().getY() * box.size().getZ();
-            size /= maxBlocksPerTick();
-            deltaProgress.addDelta(0, size, 100);
-            deltaProgress.addDelta(size, size + 10, -100);
+            BlockPos size = box.size();
+            int volume = size.getX() * size.getY() * size.getZ();
+            int ticks = volume / SNAPSHOT_BLOCKS_PER_TICK + 1;
+            deltaProgress.addDelta(0, ticks, 100);
+            deltaProgress.addDelta(ticks, ticks + 10, -100);
             shouldStartScanning = false;
-            scanning = true;
+            startScanning();
         }
 
         if (scanning) {
-            scanMultipleBlocks();
-            if (!scanning) {
+            if (tickScan()) {
                 if (shouldScanEntities) {
                     scanEntities();
                 }
@@ -142,48 +165,151 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
         }
     }
 
-    private void scanMultipleBlocks() {
-        for (int i = maxBlocksPerTick(); i > 0; i--) {
-            scanSingleBlock();
-            if (!scanning) {
-                break;
+    private void startScanning() {
+        BlockPos size = box.size();
+        blueprintScannedBlocks = new SchematicBlock[size.getX()][size.getY()][size.getZ()];
+        templateScannedBlocks = new boolean[size.getX()][size.getY()][size.getZ()];
+        nextSnapshotY = box.min().getY();
+        pendingSlabs.clear();
+        unsubmittedSlab = null;
+        mainThreadPositions.clear();
+        scanning = true;
+        sendNetworkUpdate(NET_RENDER_DATA);
+    }
+
+    /** Copies the next few layers of the box out of the world and hands them to a worker thread, commits any layers
+     * that the workers have finished, and creates the schematics that have to be created on the main thread.
+     * 
+     * @return True if the scan has finished. */
+    private boolean tickScan() {
+        int committedMinY = Integer.MAX_VALUE;
+        int committedMaxY = Integer.MIN_VALUE;
+        while (!pendingSlabs.isEmpty() && pendingSlabs.peek().isDone()) {
+            ScanSlab slab = commitSlab(pendingSlabs.poll());
+            if (slab == null) {
+                abortScanning();
+                return false;
             }
+            committedMinY = Math.min(committedMinY, slab.minY);
+            committedMaxY = Math.max(committedMaxY, slab.maxY);
         }
-    }
 
-    private void scanSingleBlock() {
-        BlockPos size = box.size();
-        if (blueprintScannedBlocks == null) {
-            blueprintScannedBlocks = new SchematicBlock[size.getX()][size.getY()][size.getZ()];
-            boxIterator = new BoxIterator(box, EnumAxisOrder.XZY.getMinToMaxOrder(), true);
-            templateScannedBlocks = new boolean[size.getX()][size.getY()][size.getZ()];
+        if (pendingSlabs.size() < MAX_PENDING_SLABS) {
+            if (unsubmittedSlab == null && nextSnapshotY <= box.max().getY()) {
+                unsubmittedSlab = snapshotSlab();
+            }
+            if (unsubmittedSlab != null) {
+                Future<ScanSlab> future = WorkerThreadUtil.tryExecuteWorkTask(unsubmittedSlab);
+                if (future != null) {
+                    pendingSlabs.add(future);
+                    unsubmittedSlab = null;
+                }
+            }
         }
 
-        // Read from world
-        BlockPos worldScanPos = boxIterator.getCurrent();
-        BlockPos schematicIndex = worldScanPos.subtract(box.min());
-        if (shouldScanDetails) {
-            SchematicBlock schematic = readSchematicForBlock(worldScanPos);
+        BlockPos min = box.min();
+        for (int i = 0; i < MAIN_THREAD_SCHEMATICS_PER_TICK && !mainThreadPositions.isEmpty(); i++) {
+            BlockPos pos = BlockPos.fromLong(mainThreadPositions.removeAt(mainThreadPositions.size() - 1));
+            BlockPos index = pos.subtract(min);
+            blueprintScannedBlocks[index.getX()][index.getY()][index.getZ()] = readSchematicForBlock(pos);
+        }
 
-            blueprintScannedBlocks[schematicIndex.getX()][schematicIndex.getY()][schematicIndex.getZ()] = schematic;
-        } else {
-            boolean solid = !world.isAirBlock(worldScanPos);
-            templateScannedBlocks[schematicIndex.getX()][schematicIndex.getY()][schematicIndex.getZ()] = solid;
+        if (committedMinY <= committedMaxY) {
+            // One message for everything that finished this tick, rather than one per block
+            final int fromY = committedMinY, toY = committedMaxY;
+            createAndSendMessage(NET_SCAN, (buffer) -> {
+                buffer.writeBlockPos(new BlockPos(box.min().getX(), fromY, box.min().getZ()));
+                buffer.writeBlockPos(new BlockPos(box.max().getX(), toY, box.max().getZ()));
+            });
         }
 
-        createAndSendMessage(NET_SCAN, (buffer) -> {
-            buffer.writeBlockPos(worldScanPos);
-        });
+        if (pendingSlabs.isEmpty() && unsubmittedSlab == null && mainThreadPositions.isEmpty() && nextSnapshotY > box.max().getY()) {
+            scanning = false;
+            return true;
+        }
+        return false;
+    }
 
+    /** Stops the current scan without creating anything. The blueprint is left in the input slot, so it can be
+     * scanned again by taking it out and putting it back. */
+    private void abortScanning() {
+        scanning = false;
+        for (Future<ScanSlab> future : pendingSlabs) {
+            future.cancel(false);
+        }
+        pendingSlabs.clear();
+        unsubmittedSlab = null;
+        mainThreadPositions.clear();
+        blueprintScannedBlocks = null;
+        templateScannedBlocks = null;
         sendNetworkUpdate(NET_RENDER_DATA);
+    }
 
-        // Move scanPos along
-        boxIterator.advance();
+    /** Copies the block states of the next layers of the box (up to {@link #SNAPSHOT_BLOCKS_PER_TICK} blocks, but
+     * always at least one layer) straight out of the chunk sections. */
+    private ScanSlab snapshotSlab() {
+        BlockPos min = box.min();
+        BlockPos max = box.max();
+        BlockPos size = box.size();
+        int area = size.getX() * size.getZ();
+        int layers = Math.max(1, SNAPSHOT_BLOCKS_PER_TICK / area);
+        int minY = nextSnapshotY;
+        int maxY = Math.min(max.getY(), minY + layers - 1);
+        nextSnapshotY = maxY + 1;
+
+        IBlockState air = Blocks.AIR.getDefaultState();
+        IBlockState[] states = new IBlockState[area * (maxY - minY + 1)];
+        Arrays.fill(states, air);
+        for (int cx = min.getX() >> 4; cx <= max.getX() >> 4; cx++) {
+            for (int cz = min.getZ() >> 4; cz <= max.getZ() >> 4; cz++) {
+                ExtendedBlockStorage[] sections = world.getChunkFromChunkCoords(cx, cz).getBlockStorageArray();
+                int fromX = Math.max(min.getX(), cx << 4), toX = Math.min(max.getX(), (cx << 4) + 15);
+                int fromZ = Math.max(min.getZ(), cz << 4), toZ = Math.min(max.getZ(), (cz << 4) + 15);
+                for (int y = minY; y <= maxY; y++) {
+                    if (y < 0 || y > 255) {
+                        continue;
+                    }
+                    ExtendedBlockStorage section = sections[y >> 4];
+                    if (section == Chunk.NULL_BLOCK_STORAGE || section.isEmpty()) {
+                        continue;
+                    }
+                    for (int z = fromZ; z <= toZ; z++) {
+                        int rowStart = ((y - minY) * size.getZ() + (z - min.getZ())) * size.getX() - min.getX();
+                        for (int x = fromX; x <= toX; x++) {
+                            states[rowStart + x] = section.get(x & 15, y & 15, z & 15);
+                        }
+                    }
+                }
+            }
+        }
+        return new ScanSlab(min, size, minY, maxY, states, shouldScanDetails);
+    }
 
-        if (boxIterator.hasFinished()) {
-            scanning = false;
-            boxIterator = null;
+    /** @return The finished slab, or null if the worker thread failed to scan it. */
+    private ScanSlab commitSlab(Future<ScanSlab> future) {
+        ScanSlab slab;
+        try {
+            slab = future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            BCLog.logger.warn("[builders.architect] Failed to scan part of the box at " + getPos() + ", stopping the scan!", e);
+            return null;
         }
+        BlockPos size = box.size();
+        int i = 0;
+        for (int y = slab.minY - box.min().getY(); y <= slab.maxY - box.min().getY(); y++) {
+            for (int z = 0; z < size.getZ(); z++) {
+                for (int x = 0; x < size.getX(); x++) {
+                    if (shouldScanDetails) {
+                        blueprintScannedBlocks[x][y][z] = slab.schematics[i];
+                    } else {
+                        templateScannedBlocks[x][y][z] = slab.solid[i];
+                    }
+                    i++;
+                }
+            }
+        }
+        mainThreadPositions.addAll(slab.mainThreadPositions);
+        return slab;
     }
 
     private SchematicBlock readSchematicForBlock(BlockPos worldScanPos) {
@@ -195,7 +321,7 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
             try {
                 return factory.createFromWorld(getWorld(), worldScanPos);
             } catch (SchematicException e) {
-                e.printStackTrace();// TEMP!
+                BCLog.logger.warn("[builders.architect] Failed to read the block at " + worldScanPos + "!", e);
                 return null;//SchematicAir.INSTANCE;
             }
         }
@@ -258,11 +384,14 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
             } else if (id == NET_BOX) {
                 box.readData(buffer);
             } else if (id == NET_SCAN) {
-                BlockPos pos = buffer.readBlockPos();
-                double x = pos.getX() + 0.5;
-                double y = pos.getY() + 0.5;
-                double z = pos.getZ() + 0.5;
-                world.spawnParticle(EnumParticleTypes.CLOUD, x, y, z, 0, 0, 0);
+                BlockPos from = buffer.readBlockPos();
+                BlockPos to = buffer.readBlockPos();
+                for (int i = 0; i < SCAN_PARTICLES; i++) {
+                    double x = from.getX() + world.rand.nextDouble() * (to.getX() - from.getX() + 1);
+                    double y = from.getY() + world.rand.nextDouble() * (to.getY() - from.getY() + 1);
+                    double z = from.getZ() + world.rand.nextDouble() * (to.getZ() - from.getZ() + 1);
+                    world.spawnParticle(EnumParticleTypes.CLOUD, x, y, z, 0, 0, 0);
+                }
             }
         }
     }
@@ -271,9 +400,6 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
     public NBTTagCompound writeToNBT(NBTTagCompound nbt) {
         super.writeToNBT(nbt);
         nbt.setTag("box", box.writeToNBT());
-        if (boxIterator != null) {
-            nbt.setTag("iter", boxIterator.writeToNbt());
-        }
         nbt.setBoolean("shouldStartScanning", shouldStartScanning);
         nbt.setBoolean("scanning", scanning);
         nbt.setBoolean("shouldScanDetails", shouldScanDetails);
@@ -287,11 +413,12 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
     public void readFromNBT(NBTTagCompound nbt) {
         super.readFromNBT(nbt);
         box.initialize(nbt.getCompoundTag("box"));
-        if (nbt.hasKey("iter")) {
-            boxIterator = BoxIterator.readFromNbt(nbt.getCompoundTag("iter"));
-        }
         shouldStartScanning = nbt.getBoolean("shouldStartScanning");
-        scanning = nbt.getBoolean("scanning");
+        if (nbt.getBoolean("scanning")) {
+            // The partially scanned blocks aren't saved, so just start again
+            shouldStartScanning = true;
+        }
+        scanning = false;
         shouldScanDetails = nbt.getBoolean("shouldScanDetails");
         shouldScanEntities = nbt.getBoolean("shouldScanEntities");
         isValid = nbt.getBoolean("isValid");
@@ -312,7 +439,65 @@ public class TileArchitect_Neptune extends TileBC_Neptune implements ITickable,
         left.add(" - min = " + box.min());
         left.add(" - max = " + box.max());
         left.add("scanning = " + scanning);
-        left.add("current = " + (boxIterator == null ? null : boxIterator.getCurrent()));
+        left.add("pending slabs = " + pendingSlabs.size() + (unsubmittedSlab == null ? "" : " (+1 waiting)"));
+        left.add("main thread blocks = " + mainThreadPositions.size());
+    }
+
+    /** A copy of some layers of the box, which is turned into schematics (or template flags) on a worker thread. */
+    private static class ScanSlab implements Callable<ScanSlab> {
+        final BlockPos min, size;
+        final int minY, maxY;
+        final boolean details;
+        IBlockState[] states;
+        SchematicBlock[] schematics;
+        boolean[] solid;
+        final TLongArrayList mainThreadPositions = new TLongArrayList();
+
+        ScanSlab(BlockPos min, BlockPos size, int minY, int maxY, IBlockState[] states, boolean details) {
+            this.min = min;
+            this.size = size;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.states = states;
+            this.details = details;
+        }
+
+        @Override
+        public ScanSlab call() {
+            if (details) {
+                schematics = new SchematicBlock[states.length];
+            } else {
+                solid = new boolean[states.length];
+            }
+            int i = 0;
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = 0; z < size.getZ(); z++) {
+                    for (int x = 0; x < size.getX(); x++, i++) {
+                        IBlockState state = states[i];
+                        if (!details) {
+                            solid[i] = state.getMaterial() != Material.AIR;
+                            continue;
+                        }
+                        SchematicFactoryWorldBlock factory = BlueprintAPI.getWorldBlockSchematic(state.getBlock());
+                        if (factory == null) {
+                            continue;
+                        }
+                        if (factory instanceof SchematicFactoryBlockState && !state.getBlock().hasTileEntity(state)) {
+                            try {
+                                schematics[i] = ((SchematicFactoryBlockState) factory).createFromState(state);
+                            } catch (SchematicException e) {
+                                BCLog.logger.warn("[builders.architect] Failed to read the block state " + state + "!", e);
+                            }
+                        } else {
+                            BlockPos pos = new BlockPos(min.getX() + x, y, min.getZ() + z);
+                            mainThreadPositions.add(pos.toLong());
+                        }
+                    }
+                }
+            }
+            states = null;
+            return this;
+        }
     }
 
     // Rendering
@@ -2,16 +2,20 @@ package buildcraft.builders.tile;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.function.BiFunction;
 
-import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.entity.player.EntityPlayer;
-import net.minecraft.init.Blocks;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.EnumFacing.Axis;
@@ -20,16 +24,19 @@ import net.minecraft.util.NonNullList;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.util.Constants;
 import net.minecraftforge.event.world.BlockEvent;
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
-import buildcraft.api.core.BCLog;
 import buildcraft.api.core.EnumPipePart;
 import buildcraft.api.core.IAreaProvider;
 import buildcraft.api.mj.MjAPI;
@@ -50,11 +57,25 @@ import buildcraft.lib.tile.item.ItemHandlerManager;
 import buildcraft.lib.tile.item.ItemHandlerSimple;
 
 public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable {
+    /** The most power that will be used in a single tick, across all of the tasks performed in that tick. */
+    private static final long MAX_POWER_PER_TICK = MjAPI.MJ * 10;
+    private static final int MAX_TASKS_PER_TICK = 8;
+    /** The most blocks that will be looked at in a single tick when looking for the next block to mine, across all of
+     * the tasks started in that tick. */
+    private static final int MAX_SCAN_PER_TICK = 4096;
+    /** The number of frame box positions that are checked against the world each time the next task is looked up, to
+     * find changes that the {@link QuarryFrameIndex} wasn't told about. */
+    private static final int FRAME_VERIFY_PER_LOOKUP = 64;
+    private static final int OUTPUT_FLUSH_INTERVAL = 20;
+    private static final int MAX_OUTPUT_STACKS = 9;
+
     private final MjBattery battery;
     private final MjCapabilityHelper mjCapHelper;
     public final Box frameBox = new Box();
     private final Box miningBox = new Box();
     private BoxIterator boxIterator;
+    /** How many more blocks {@link #skipToNextTarget()} can look at in this tick. */
+    private int scansLeft;
     public Task currentTask = null;
     public final ItemHandlerSimple invFrames = itemManager.addInvHandler("frames",
                                                                          9,
@@ -65,9 +86,20 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
     public Vec3d prevClientDrillPos;
     /** Recent power input, in MJ (not micro) */
     private final AverageInt recentPowerAverage = new AverageInt(200);
-    private final List<EntityQuarryFrame> xArm = new ArrayList<>();
-    private final List<EntityQuarryFrame> yArm = new ArrayList<>();
-    private final List<EntityQuarryFrame> zArm = new ArrayList<>();
+    /** The collision proxy for each arm, indexed by {@link Axis#ordinal()}. The arms themselves are rendered from
+     * {@link #drillPos}, so this is only ever 3 entities regardless of how big the quarry is. */
+    private final EntityQuarryFrame[] arms = new EntityQuarryFrame[3];
+    /** Every server quarry that has arms out, for {@link #addArmCollisionBoxes(World, AxisAlignedBB, List)}. */
+    private static final Map<World, Set<TileQuarry>> QUARRIES_WITH_ARMS = new WeakHashMap<>();
+    /** Server side index of the blocks in {@link #frameBox} that are in the way or still need a frame. Built lazily
+     * on the first tick that needs it, and thrown away whenever the frame box changes. */
+    private QuarryFrameIndex frameIndex;
+    /** The last chunk section index (y >> 4) that was found to have at least one non-empty section inside the mining
+     * box, so that it isn't checked again for every block in the layer. */
+    private int lastNonEmptySection = -1;
+    /** Harvested drops that haven't been pushed out into the neighbouring inventories yet. */
+    private final List<ItemStack> outputQueue = new ArrayList<>();
+    private int ticksUntilFlush = OUTPUT_FLUSH_INTERVAL;
 
     public TileQuarry() {
         battery = new MjBattery(1600L * MjAPI.MJ);
@@ -160,23 +192,103 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
         miningBox.reset();
         miningBox.setMin(new BlockPos(min.getX() + 1, 0, min.getZ() + 1));
         miningBox.setMax(new BlockPos(max.getX() - 1, max.getY() - 1, max.getZ() - 1));
+        disposeFrameIndex();
     }
 
     @Override
-    public void update() {
-        if (world.isRemote) {
-            prevClientDrillPos = clientDrillPos;
-            clientDrillPos = drillPos;
+    public void onRemove() {
+        super.onRemove();
+        if (!world.isRemote) {
+            flushOutput();
+        }
+    }
 
-            if (frameBox.isInitialized() && drillPos != null) {
-                BlockPos size = frameBox.size();
-                resizeTo(xArm, size.getX());
-                resizeTo(zArm, size.getZ());
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        disposeFrameIndex();
+        removeArms();
+    }
+
+    @Override
+    public void onChunkUnload() {
+        super.onChunkUnload();
+        disposeFrameIndex();
+        removeArms();
+    }
+
+    private void removeArms() {
+        Set<TileQuarry> quarries = QUARRIES_WITH_ARMS.get(world);
+        if (quarries != null) {
+            quarries.remove(this);
+        }
+    }
 
-                int ySize = frameBox.max().getY() - (int) Math.ceil(drillPos.yCoord);
-                resizeTo(yArm, ySize + 10);// it will probably expand on the server at some point, so expand it early
+    /** Adds the box of every quarry arm (in the given server world) that intersects the given box to the list. On the
+     * server every entity collides with the arms through this, rather than through the {@link EntityQuarryFrame}s
+     * (which only have one position, and so can only be found by entities that are close to it). */
+    public static void addArmCollisionBoxes(World world, AxisAlignedBB box, List<AxisAlignedBB> boxes) {
+        Set<TileQuarry> quarries = QUARRIES_WITH_ARMS.get(world);
+        if (quarries == null) {
+            return;
+        }
+        for (TileQuarry quarry : quarries) {
+            for (Axis axis : Axis.values()) {
+                AxisAlignedBB arm = quarry.getArmBox(axis);
+                if (arm != null && arm.intersectsWith(box)) {
+                    boxes.add(arm);
+                }
             }
+        }
+    }
+
+    public static void onWorldUnload(World world) {
+        QUARRIES_WITH_ARMS.remove(world);
+    }
 
+    /** @return The box of the given arm, or null if the quarry doesn't have its arms out. */
+    public AxisAlignedBB getArmBox(Axis axis) {
+        if (!frameBox.isInitialized() || drillPos == null) {
+            return null;
+        }
+        final BlockPos min = frameBox.min();
+        final BlockPos max = frameBox.max();
+        switch (axis) {
+            case X:
+                return BoundingBoxUtil.makeFrom(//
+                        new Vec3d(drillPos.xCoord + 0.5, max.getY() + 0.5, min.getZ() + 1),//
+                        new Vec3d(drillPos.xCoord + 0.5, max.getY() + 0.5, max.getZ()),//
+                        4 / 16D//
+                );
+            case Y:
+                return BoundingBoxUtil.makeFrom(//
+                        new Vec3d(drillPos.xCoord + 0.5, max.getY() + 0.5, drillPos.zCoord + 0.5),//
+                        new Vec3d(drillPos.xCoord + 0.5, drillPos.yCoord + 1 + 0.5, drillPos.zCoord + 0.5),//
+                        4 / 16D//
+                );
+            case Z:
+                return BoundingBoxUtil.makeFrom(//
+                        new Vec3d(min.getX() + 1, max.getY() + 0.5, drillPos.zCoord + 0.5),//
+                        new Vec3d(max.getX(), max.getY() + 0.5, drillPos.zCoord + 0.5),//
+                        4 / 16D//
+                );
+            default:
+                return null;
+        }
+    }
+
+    private void disposeFrameIndex() {
+        if (frameIndex != null) {
+            frameIndex.dispose();
+            frameIndex = null;
+        }
+    }
+
+    @Override
+    public void update() {
+        if (world.isRemote) {
+            prevClientDrillPos = clientDrillPos;
+            clientDrillPos = drillPos;
             return;
         }
         recentPowerAverage.tick();
@@ -188,188 +300,196 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
         final BlockPos max = frameBox.max();
 
         if (drillPos != null) {
-            int xSize = frameBox.size().getX();
-            resizeTo(xArm, xSize);
-            for (int x = 0; x < xSize; x++) {
-                EntityQuarryFrame current = xArm.get(x);
-                BlockPos currentPos = new BlockPos(x + min.getX(), max.getY(), drillPos.zCoord);
-                if (current == null || current.isDead) {
-                    current = new EntityQuarryFrame(world, this, currentPos, Axis.X, x);
-                    BCLog.logger.info("[quarry.frame] Didn't have a frame entity for " + currentPos);
-                    world.spawnEntity(current);
-                    xArm.set(x, current);
+            QUARRIES_WITH_ARMS.computeIfAbsent(world, w -> Collections.newSetFromMap(new IdentityHashMap<>())).add(this);
+            for (Axis axis : Axis.values()) {
+                EntityQuarryFrame arm = arms[axis.ordinal()];
+                if (arm == null || arm.isDead) {
+                    BlockPos armPos = new BlockPos(drillPos.xCoord, max.getY(), drillPos.zCoord);
+                    arm = new EntityQuarryFrame(world, this, armPos, axis);
+                    world.spawnEntity(arm);
+                    arms[axis.ordinal()] = arm;
                 }
-                current.setPosition(currentPos.getX(), currentPos.getY(), currentPos.getZ());
             }
+        }
 
-            int zSize = max.getZ() - min.getZ();
-            resizeTo(zArm, zSize);
-            for (int z = 0; z < zSize; z++) {
-                EntityQuarryFrame current = zArm.get(z);
-                BlockPos currentPos = new BlockPos(drillPos.xCoord, max.getY(), z + min.getZ());
-                if (current == null || current.isDead) {
-                    current = new EntityQuarryFrame(world, this, currentPos, Axis.Z, z);
-                    BCLog.logger.info("[quarry.frame] Didn't have a frame entity for " + currentPos);
-                    world.spawnEntity(current);
-                    zArm.set(z, current);
-                }
-                current.setPosition(currentPos.getX(), currentPos.getY(), currentPos.getZ());
-            }
+        if (ticksUntilFlush > 0) {
+            ticksUntilFlush--;
+        } else if (!outputQueue.isEmpty()) {
+            flushOutput();
+        }
 
-            int ySize = max.getY() - (int) Math.ceil(drillPos.yCoord);
-            resizeTo(yArm, ySize);
-            for (int y = 0; y < ySize; y++) {
-                EntityQuarryFrame current = yArm.get(y);
-                BlockPos currentPos = new BlockPos(drillPos.xCoord, max.getY() - y, drillPos.zCoord);
-                if (current == null || current.isDead) {
-                    current = new EntityQuarryFrame(world, this, currentPos, Axis.Y, y);
-                    BCLog.logger.info("[quarry.frame] Didn't have a frame entity for " + currentPos);
-                    world.spawnEntity(current);
-                    yArm.set(y, current);
+        // Run as many tasks as the power budget for this tick allows, rather than always waiting for the next tick
+        // before starting a new task
+        boolean changed = currentTask != null;
+        long budget = MAX_POWER_PER_TICK;
+        scansLeft = MAX_SCAN_PER_TICK;
+        for (int i = 0; i < MAX_TASKS_PER_TICK; i++) {
+            if (currentTask == null) {
+                currentTask = getNextTask(min, max);
+                if (currentTask == null) {
+                    break;
                 }
-                current.setPosition(currentPos.getX(), currentPos.getY(), currentPos.getZ());
+                changed = true;
             }
-        }
-
-        if (currentTask != null) {
-            long maxToExtract = MjAPI.MJ * 10;
-            if (currentTask.addPower(battery.extractPower(0,
-                                                          Math.min(currentTask.getTarget() - currentTask.getPower(),
-                                                                   maxToExtract)))) {
-                currentTask = null;
+            long extracted = battery.extractPower(0,
+                                                  Math.min(currentTask.getTarget() - currentTask.getPower(), budget));
+            budget -= extracted;
+            if (!currentTask.addPower(extracted)) {
+                break;
+            }
+            currentTask = null;
+            if (budget <= 0) {
+                break;
             }
+        }
+        if (changed) {
             sendNetworkUpdate(NET_RENDER_DATA);
-            return;
         }
+    }
 
-        List<BlockPos> breakPoses = new ArrayList<>();
-
-        for (int x = min.getX(); x <= max.getX(); x++) {
-            for (int y = min.getY(); y <= max.getY(); y++) {
-                for (int z = min.getZ(); z <= max.getZ(); z++) {
-                    BlockPos framePos = new BlockPos(x, y, z);
-                    boolean shouldBeFrame = x == min.getX() || x == max.getX()
-                        || y == min.getY()
-                        || y == max.getY()
-                        || z == min.getZ()
-                        || z == max.getZ();
-                    Block block = world.getBlockState(framePos).getBlock();
-                    if ((block != Blocks.AIR && !shouldBeFrame) || (block != BCBuildersBlocks.frame
-                        && block != Blocks.AIR && shouldBeFrame)) {
-                        breakPoses.add(framePos);
-                    }
-                }
-            }
+    /** @return The next task that the quarry should perform, or null if there is nothing to do right now. */
+    private Task getNextTask(BlockPos min, BlockPos max) {
+        if (frameIndex == null) {
+            frameIndex = new QuarryFrameIndex(world, getPos(), min, max);
         }
+        frameIndex.build();
+        frameIndex.verifyNext(FRAME_VERIFY_PER_LOOKUP);
 
-        if (breakPoses.size() > 0) {
-            double closestDistance = Integer.MAX_VALUE;
-            BlockPos closestPos = null;
-
-            for (BlockPos breakPos : breakPoses) {
-                double distance = breakPos.distanceSq(pos);
-
-                if (distance < closestDistance) {
-                    closestDistance = distance;
-                    closestPos = breakPos;
-                }
-            }
-
+        BlockPos breakPos = frameIndex.getClosestObstruction();
+        if (breakPos != null) {
             drillPos = null;
-            currentTask = new TaskBreakBlock(closestPos);
-            sendNetworkUpdate(NET_RENDER_DATA);
-            return;
+            return new TaskBreakBlock(breakPos);
         }
 
-        for (BlockPos framePos : getFramePositions()) {
-            Block block = world.getBlockState(framePos).getBlock();
-            if (block == Blocks.AIR) {
-                drillPos = null;
-                if (!invFrames.extract(null, 1, 1, true).isEmpty()) {
-                    currentTask = new TaskAddFrame(framePos);
-                    sendNetworkUpdate(NET_RENDER_DATA);
-                }
-                return;
+        BlockPos framePos = frameIndex.getClosestMissingFrame();
+        if (framePos != null) {
+            drillPos = null;
+            if (!invFrames.extract(null, 1, 1, true).isEmpty()) {
+                return new TaskAddFrame(framePos);
             }
+            return null;
         }
 
         if ((boxIterator == null || drillPos == null) && miningBox.isInitialized()) {
             boxIterator = new BoxIterator(miningBox,
                                           AxisOrder.getFor(EnumAxisOrder.XZY, AxisOrder.Inversion.NNN),
                                           true);
-            while (world.isAirBlock(boxIterator.getCurrent())) {
-                boxIterator.advance();
-            }
             drillPos = new Vec3d(miningBox.closestInsideTo(getPos()));
         }
 
-        if (boxIterator != null && boxIterator.hasNext()) {
-            if (drillPos.squareDistanceTo(new Vec3d(boxIterator.getCurrent())) > 2) {
-                currentTask = new TaskMoveDrill(drillPos, new Vec3d(boxIterator.getCurrent()));
-            } else if (!world.isAirBlock(boxIterator.getCurrent())) {
-                currentTask = new TaskBreakBlock(boxIterator.getCurrent());
+        if (boxIterator != null && skipToNextTarget()) {
+            BlockPos target = boxIterator.getCurrent();
+            if (drillPos.squareDistanceTo(target.getX(), target.getY(), target.getZ()) > 2) {
+                return new TaskMoveDrill(drillPos, new Vec3d(target));
             } else {
-                currentTask = new TaskMoveDrill(drillPos, new Vec3d(boxIterator.advance()));
+                return new TaskBreakBlock(target);
             }
+        }
+        return null;
+    }
 
-            sendNetworkUpdate(NET_RENDER_DATA);
+    /** Advances {@link #boxIterator} until it reaches a block that can be mined, reading the blocks straight out of
+     * the chunk sections rather than going through the world. If every section that the current layer passes through
+     * is empty then the whole of that section is skipped at once.
+     * 
+     * @return True if the iterator is now on a block that should be mined, or false if the mining box is finished or
+     *         the scan limit for this tick was reached. */
+    private boolean skipToNextTarget() {
+        boolean layered = boxIterator.getOrder().third.getAxis() == Axis.Y;
+        for (; scansLeft > 0 && boxIterator.hasNext(); scansLeft--) {
+            BlockPos current = boxIterator.getCurrent();
+            int y = current.getY();
+            if (y < 0 || y > 255) {
+                boxIterator.advance();
+                continue;
+            }
+            Chunk chunk = world.getChunkFromBlockCoords(current);
+            ExtendedBlockStorage section = chunk.getBlockStorageArray()[y >> 4];
+            if (section == Chunk.NULL_BLOCK_STORAGE || section.isEmpty()) {
+                if (layered && isLayerEmpty(y)) {
+                    int bottom = y & ~15;
+                    while (boxIterator.hasNext() && boxIterator.getCurrent().getY() >= bottom) {
+                        boxIterator.skipPlane();
+                    }
+                } else {
+                    boxIterator.advance();
+                }
+                continue;
+            }
+            IBlockState state = section.get(current.getX() & 15, y & 15, current.getZ() & 15);
+            if (state.getBlock().isAir(state, world, current) || state.getBlockHardness(world, current) < 0) {
+                boxIterator.advance();
+                continue;
+            }
+            scansLeft--;
+            return true;
         }
+        return false;
     }
 
-    private static void resizeTo(List<?> list, int newSize) {
-        while (list.size() > newSize) {
-            list.remove(list.size() - 1);
+    /** @return True if every chunk section that the mining box passes through at the given y level is empty. */
+    private boolean isLayerEmpty(int y) {
+        int sectionY = y >> 4;
+        if (sectionY == lastNonEmptySection) {
+            return false;
         }
-        while (list.size() < newSize) {
-            list.add(null);
+        BlockPos min = miningBox.min();
+        BlockPos max = miningBox.max();
+        for (int cx = min.getX() >> 4; cx <= max.getX() >> 4; cx++) {
+            for (int cz = min.getZ() >> 4; cz <= max.getZ() >> 4; cz++) {
+                ExtendedBlockStorage section = world.getChunkFromChunkCoords(cx, cz).getBlockStorageArray()[sectionY];
+                if (section != Chunk.NULL_BLOCK_STORAGE && !section.isEmpty()) {
+                    lastNonEmptySection = sectionY;
+                    return false;
+                }
+            }
         }
+        return true;
     }
 
-    private List<EntityQuarryFrame> getArmList(Axis axis) {
-        switch (axis) {
-            default:
-            case X:
-                return xArm;
-            case Y:
-                return yArm;
-            case Z:
-                return zArm;
+    private void addToOutput(ItemStack stack) {
+        for (ItemStack existing : outputQueue) {
+            int merged = StackUtil.mergeStacks(stack, existing, true);
+            if (merged > 0) {
+                stack.shrink(merged);
+                if (stack.isEmpty()) {
+                    return;
+                }
+            }
+        }
+        outputQueue.add(stack);
+        if (outputQueue.size() >= MAX_OUTPUT_STACKS) {
+            flushOutput();
         }
     }
 
-    public boolean tryPairEntity(EntityQuarryFrame frame, Axis axis, int listIndex) {
-        if (!frameBox.isInitialized()) {
-            return false;
+    /** Pushes every buffered stack out into the neighbouring inventories (or onto the ground if none of them accept
+     * it). */
+    private void flushOutput() {
+        for (ItemStack stack : outputQueue) {
+            InventoryUtil.addToBestAcceptor(getWorld(), getPos(), null, stack);
         }
-        List<EntityQuarryFrame> entities = getArmList(axis);
-        if (world.isRemote && entities.size() == 0) {
-            BlockPos size = frameBox.size();
-            resizeTo(xArm, size.getX());
-            resizeTo(zArm, size.getZ());
+        outputQueue.clear();
+        ticksUntilFlush = OUTPUT_FLUSH_INTERVAL;
+    }
 
-            int ySize = frameBox.max().getY() - (int) Math.ceil(drillPos.yCoord);
-            resizeTo(yArm, ySize + 10);// it will probably expand on the server at some point, so expand it early
-        }
-        if (listIndex < 0 || listIndex >= entities.size()) {
+    public boolean tryPairEntity(EntityQuarryFrame frame, Axis axis) {
+        if (!frameBox.isInitialized()) {
             return false;
         }
-        EntityQuarryFrame current = entities.get(listIndex);
+        EntityQuarryFrame current = arms[axis.ordinal()];
         if (current == null || current.isDead || !current.isConnected(this)) {
             if (current != null) {
                 current.setDead();
             }
-            entities.set(listIndex, frame);
+            arms[axis.ordinal()] = frame;
             return true;
         }
-        return false;
+        return current == frame;
     }
 
-    public boolean isPaired(EntityQuarryFrame frame, Axis axis, int listIndex) {
-        List<EntityQuarryFrame> entities = getArmList(axis);
-        if (listIndex < 0 || listIndex >= entities.size()) {
-            return false;
-        }
-        return entities.get(listIndex) == frame;
+    public boolean isPaired(EntityQuarryFrame frame, Axis axis) {
+        return arms[axis.ordinal()] == frame;
     }
 
     @Override
@@ -387,6 +507,13 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
         if (drillPos != null) {
             nbt.setTag("drill_pos", NBTUtilBC.writeVec3d(drillPos));
         }
+        if (!outputQueue.isEmpty()) {
+            NBTTagList output = new NBTTagList();
+            for (ItemStack stack : outputQueue) {
+                output.appendTag(stack.serializeNBT());
+            }
+            nbt.setTag("output", output);
+        }
         return nbt;
     }
 
@@ -405,14 +532,14 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
             currentTask = null;
         }
         drillPos = NBTUtilBC.readVec3d(nbt.getTag("drill_pos"));
-
-        if (frameBox.isInitialized() && drillPos != null) {
-            BlockPos size = frameBox.size();
-            resizeTo(xArm, size.getX());
-            resizeTo(zArm, size.getZ());
-
-            int ySize = frameBox.max().getY() - (int) Math.ceil(drillPos.yCoord);
-            resizeTo(yArm, ySize + 10);// it will probably expand on the server at some point, so expand it early
+        disposeFrameIndex();
+        outputQueue.clear();
+        NBTTagList output = nbt.getTagList("output", Constants.NBT.TAG_COMPOUND);
+        for (int i = 0; i < output.tagCount(); i++) {
+            ItemStack stack = new ItemStack(output.getCompoundTagAt(i));
+            if (!stack.isEmpty()) {
+                outputQueue.add(stack);
+            }
         }
     }
 
@@ -442,14 +569,6 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
             } else {
                 drillPos = null;
             }
-            if (frameBox.isInitialized() && drillPos != null) {
-                BlockPos size = frameBox.size();
-                resizeTo(xArm, size.getX());
-                resizeTo(zArm, size.getZ());
-
-                int ySize = frameBox.max().getY() - (int) Math.ceil(drillPos.yCoord);
-                resizeTo(yArm, ySize + 10);// it will probably expand on the server at some point, so expand it early
-            }
         }
     }
 
@@ -465,6 +584,10 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
         left.add(" - min = " + miningBox.min());
         left.add(" - max = " + miningBox.max());
         left.add("current = " + (boxIterator == null ? "null" : boxIterator.getCurrent()));
+        if (frameIndex != null) {
+            left.add("obstructions = " + frameIndex.getObstructionCount());
+            left.add("missing frames = " + frameIndex.getMissingFrameCount());
+        }
         if (currentTask != null) {
             left.add("task:");
             left.add(" - class = " + currentTask.getClass().getName());
@@ -474,6 +597,7 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
             left.add("task = null");
         }
         left.add("drill = " + drillPos);
+        left.add("buffered output = " + outputQueue.size());
     }
 
     @Override
@@ -568,6 +692,8 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
 
     public class TaskBreakBlock extends Task {
         public final BlockPos breakPos;
+        /** Cached as this is asked for several times per tick. */
+        private long target = -1;
 
         TaskBreakBlock(BlockPos pos) {
             this.breakPos = pos;
@@ -592,7 +718,10 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
 
         @Override
         public long getTarget() {
-            return BlockUtil.computeBlockBreakPower(world, breakPos);
+            if (target < 0) {
+                target = BlockUtil.computeBlockBreakPower(world, breakPos);
+            }
+            return target;
         }
 
         @Override
@@ -628,7 +757,7 @@ public class TileQuarry extends TileBC_Neptune implements ITickable, IDebuggable
                                                                                     TileQuarry.this.getOwner());
                     if (stacks != null) {
                         for (int i = 0; i < stacks.size(); i++) {
-                            InventoryUtil.addToBestAcceptor(getWorld(), getPos(), null, stacks.get(i));
+                            addToOutput(stacks.get(i));
                         }
                     }
                 }
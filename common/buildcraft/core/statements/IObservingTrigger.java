@@ -0,0 +1,18 @@
+package buildcraft.core.statements;
+
+import buildcraft.api.statements.ITriggerInternal;
+
+/** Implemented by triggers that only read a known set of inputs, so that gates only need to check them again when one
+ * of those inputs changes. Triggers that don't implement this are assumed to read anything (for example the contents
+ * of a neighbouring tile), and are checked every tick. */
+public interface IObservingTrigger {
+    /** The trigger doesn't read anything, so it never changes. */
+    int INPUT_NONE = 0;
+    /** The redstone signal going into the container. */
+    int INPUT_REDSTONE = 1;
+    /** The pipe wires in the container's pipe. */
+    int INPUT_WIRES = 2;
+
+    /** @return A mask of the INPUT_* flags that {@link ITriggerInternal#isTriggerActive} reads. */
+    int getObservedInputs();
+}
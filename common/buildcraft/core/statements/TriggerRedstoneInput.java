@@ -16,7 +16,7 @@ import buildcraft.core.BCCoreStatements;
 import buildcraft.lib.client.sprite.SpriteHolderRegistry.SpriteHolder;
 import buildcraft.lib.misc.LocaleUtil;
 
-public class TriggerRedstoneInput extends BCStatement implements ITriggerInternal {
+public class TriggerRedstoneInput extends BCStatement implements ITriggerInternal, IObservingTrigger {
 
     boolean active;
 
@@ -52,6 +52,11 @@ public class TriggerRedstoneInput extends BCStatement implements ITriggerInterna
         return 1;
     }
 
+    @Override
+    public int getObservedInputs() {
+        return INPUT_REDSTONE;
+    }
+
     @Override
     public boolean isTriggerActive(IStatementContainer container, IStatementParameter[] parameters) {
         if (container instanceof IRedstoneStatementContainer) {
@@ -8,12 +8,17 @@ import buildcraft.core.BCCoreSprites;
 import buildcraft.lib.client.sprite.SpriteHolderRegistry.SpriteHolder;
 import buildcraft.lib.misc.LocaleUtil;
 
-public class TriggerTrue extends BCStatement implements ITriggerInternal {
+public class TriggerTrue extends BCStatement implements ITriggerInternal, IObservingTrigger {
 
     public TriggerTrue() {
         super("buildcraftcore:trigger.true");
     }
 
+    @Override
+    public int getObservedInputs() {
+        return INPUT_NONE;
+    }
+
     @Override
     public SpriteHolder getSpriteHolder() {
         return BCCoreSprites.TRIGGER_TRUE;
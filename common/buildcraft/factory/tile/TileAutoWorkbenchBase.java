@@ -30,14 +30,15 @@ import buildcraft.api.tiles.IHasWork;
 
 import buildcraft.lib.delta.DeltaInt;
 import buildcraft.lib.delta.DeltaManager.EnumNetworkVisibility;
-import buildcraft.lib.misc.CraftingUtil;
 import buildcraft.lib.misc.InventoryUtil;
 import buildcraft.lib.misc.ItemStackKey;
 import buildcraft.lib.misc.StackUtil;
+import buildcraft.lib.recipe.CraftingRecipeIndex;
 import buildcraft.lib.tile.TileBC_Neptune;
 import buildcraft.lib.tile.item.ItemHandlerManager.EnumAccess;
 import buildcraft.lib.tile.item.ItemHandlerSimple;
 
+import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.set.hash.TIntHashSet;
 
 public abstract class TileAutoWorkbenchBase extends TileBC_Neptune implements ITickable, IDebuggable, IHasWork {
@@ -46,9 +47,15 @@ public abstract class TileAutoWorkbenchBase extends TileBC_Neptune implements IT
     public final ItemHandlerSimple invMaterials;
     public final ItemHandlerSimple invResult;
     public final ItemHandlerSimple invOverflow;
+    /** The slots in {@link #invMaterials} that hold each type of item (ignoring stack sizes). */
     protected final Map<ItemStackKey, TIntHashSet> itemStackCache;
 
     public IRecipe currentRecipe;
+    /** True if {@link #invBlueprint} has changed since {@link #currentRecipe} was found. */
+    private boolean recipeDirty = true;
+    /** The item that each crafting slot needs, or {@link ItemStackKey#EMPTY} for empty slots. */
+    private ItemStackKey[] requiredItems = new ItemStackKey[0];
+    private final TObjectIntHashMap<ItemStackKey> claimedItems = new TObjectIntHashMap<>();
     private int progress = 0;
 
     public final DeltaInt deltaProgress = deltaManager.addDelta("progress", EnumNetworkVisibility.GUI_ONLY);
@@ -86,12 +93,14 @@ public abstract class TileAutoWorkbenchBase extends TileBC_Neptune implements IT
     @Override
     public void update() {
         deltaManager.tick();
+        if (recipeDirty) {
+            updateRecipe();
+        }
         if (getWorld().isRemote) {
             return;
         }
         moveOverflowDown();
         // craft 1 item
-        updateRecipe();
         if (hasMaterialsForRecipe()) {
             if (progress == 0) {
                 deltaProgress.addDelta(0, 200, 100);
@@ -113,14 +122,37 @@ public abstract class TileAutoWorkbenchBase extends TileBC_Neptune implements IT
         }
     }
 
-    private boolean hasMaterialsForRecipe() {
+    /** Checks if every crafting slot can take its item from the materials, without matching the recipe again: the
+     * materials are always the same as the blueprint, so they would match as well. */
+    public boolean hasMaterialsForRecipe() {
         if (currentRecipe == null) {
             return false;
         }
-        crafting.enableBindings();
-        boolean has = currentRecipe.matches(crafting, getWorld());
-        crafting.disableBindings();
-        return has;
+        resetClaims();
+        for (int i = 0; i < requiredItems.length; i++) {
+            if (!crafting.craftingSlots[i].hasMaterial(requiredItems[i], claimedItems)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Forgets every material that was claimed by the last call to {@link #hasMaterialsForRecipe()}. */
+    protected void resetClaims() {
+        claimedItems.clear();
+    }
+
+    /** @return The total number of the given item in {@link #invMaterials}. */
+    protected int countMaterials(ItemStackKey key) {
+        TIntHashSet slots = itemStackCache.get(key);
+        if (slots == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int s : slots.toArray()) {
+            count += invMaterials.getStackInSlot(s).getCount();
+        }
+        return count;
     }
 
     @Override
@@ -156,8 +188,8 @@ public abstract class TileAutoWorkbenchBase extends TileBC_Neptune implements IT
     protected void onSlotChange(IItemHandlerModifiable handler, int slot, ItemStack before, ItemStack after) {
         super.onSlotChange(handler, slot, before, after);
         if (handler == invMaterials) {
-            ItemStackKey keyBefore = new ItemStackKey(before);
-            ItemStackKey keyAfter = new ItemStackKey(after);
+            ItemStackKey keyBefore = ItemStackKey.ofType(before);
+            ItemStackKey keyAfter = ItemStackKey.ofType(after);
             if (keyAfter.equals(keyBefore)) return;
             if (itemStackCache.containsKey(keyBefore)) {
                 TIntHashSet set = itemStackCache.get(keyBefore);
@@ -176,12 +208,19 @@ public abstract class TileAutoWorkbenchBase extends TileBC_Neptune implements IT
                 set.add(slot);
             }
         } else if (handler == invBlueprint) {
-            this.updateRecipe();
+            // This can be called while reading from NBT, before the world is set
+            recipeDirty = true;
         }
     }
 
     public void updateRecipe() {
-        this.currentRecipe = CraftingUtil.findMatchingRecipe(this.crafting, world);
+        recipeDirty = false;
+        this.currentRecipe = CraftingRecipeIndex.findMatchingRecipe(this.crafting, world);
+        requiredItems = new ItemStackKey[crafting.craftingSlots.length];
+        for (int i = 0; i < requiredItems.length; i++) {
+            requiredItems[i] = ItemStackKey.ofType(crafting.craftingSlots[i].get());
+            crafting.craftingSlots[i].onRecipeChanged();
+        }
     }
 
     @Override
@@ -277,6 +316,22 @@ public abstract class TileAutoWorkbenchBase extends TileBC_Neptune implements IT
             this.slot = slot;
         }
 
+        /** Checks if there is enough of the given item left for this slot, after every item already claimed by the
+         * other slots. If there is then this should claim it. Only called on the unbound version.
+         *
+         * @param required The item that this slot needs, or {@link ItemStackKey#EMPTY} if it doesn't need anything. */
+        public boolean hasMaterial(ItemStackKey required, TObjectIntHashMap<ItemStackKey> claimed) {
+            if (required == ItemStackKey.EMPTY) {
+                return true;
+            }
+            int needed = claimed.adjustOrPutValue(required, 1, 1);
+            return countMaterials(required) >= needed;
+        }
+
+        /** Called (on the unbound version) after {@link #updateRecipe()}, so that anything this slot needs from its
+         * blueprint item can be worked out once rather than on every check. */
+        protected void onRecipeChanged() {}
+
         public ItemStack useAndAdd(@Nonnull ItemStack leftOver) {
             ItemStack current = get();
             if (StackUtil.canMerge(current, leftOver)) {
@@ -342,7 +397,7 @@ public abstract class TileAutoWorkbenchBase extends TileBC_Neptune implements IT
 
         protected void rebind() {
             ItemStack wanted = nonBound.get();
-            ItemStackKey key = new ItemStackKey(wanted);
+            ItemStackKey key = ItemStackKey.ofType(wanted);
             boundTo = itemStackCache.get(key);
         }
 
@@ -1,5 +1,6 @@
 package buildcraft.factory.tile;
 
+import java.util.Arrays;
 import java.util.List;
 
 import net.minecraft.item.ItemStack;
@@ -17,12 +18,19 @@ import net.minecraftforge.fml.relauncher.SideOnly;
 import buildcraft.lib.fluids.Tank;
 import buildcraft.lib.fluids.TankManager;
 import buildcraft.lib.misc.CapUtil;
+import buildcraft.lib.misc.ItemStackKey;
 import buildcraft.lib.misc.StackUtil;
 
+import gnu.trove.map.hash.TObjectIntHashMap;
+
 public class TileAutoWorkbenchFluids extends TileAutoWorkbenchBase {
     private final Tank tank1 = new Tank("tank1", Fluid.BUCKET_VOLUME * 6, this);
     private final Tank tank2 = new Tank("tank2", Fluid.BUCKET_VOLUME * 6, this);
     private final TankManager<Tank> tankManager = new TankManager<>(tank1, tank2);
+    private final Tank[] tanks = { tank1, tank2 };
+    /** How much has been claimed from each of the {@link #tanks} by the slots checked so far in
+     * {@link #hasMaterialsForRecipe()}. */
+    private final int[] claimedFluid = new int[tanks.length];
 
     public TileAutoWorkbenchFluids() {
         super(4);
@@ -33,6 +41,35 @@ public class TileAutoWorkbenchFluids extends TileAutoWorkbenchBase {
         return new WorkbenchCraftingFluids(2, 2);
     }
 
+    @Override
+    protected void resetClaims() {
+        super.resetClaims();
+        Arrays.fill(claimedFluid, 0);
+    }
+
+    /** Claims the given fluid on top of everything claimed by the other slots, from the same tank that
+     * {@link TankManager#drain(FluidStack, boolean)} would take it from once the other slots have been used.
+     * 
+     * @return True if that tank holds enough of it. */
+    private boolean claimFluid(FluidStack fluid) {
+        for (int i = 0; i < tanks.length; i++) {
+            FluidStack inTank = tanks[i].getFluid();
+            if (!fluid.isFluidEqual(inTank)) {
+                continue;
+            }
+            int left = inTank.amount - claimedFluid[i];
+            if (left <= 0) {
+                continue;
+            }
+            if (left < fluid.amount) {
+                return false;
+            }
+            claimedFluid[i] += fluid.amount;
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public <T> T getCapability(Capability<T> capability, EnumFacing facing) {
         if (capability == CapUtil.CAP_FLUIDS) {
@@ -73,33 +110,59 @@ public class TileAutoWorkbenchFluids extends TileAutoWorkbenchBase {
     }
 
     public class CraftSlotFluid extends CraftSlotItem {
+        /** The fluid that this slot takes from the tanks instead of an item, as of the last
+         * {@link #updateRecipe()}. */
+        private FluidStack requiredFluid;
+
         public CraftSlotFluid(int slot) {
             super(slot);
         }
 
-        @Override
-        public CraftingSlot getBoundVersion() {
+        /** @return The fluid in the blueprint item, or null if this slot should use the item itself. */
+        private FluidStack getFluidInBlueprint() {
             ItemStack stack = get();
             if (stack.isEmpty()) {
-                return super.getBoundVersion();
+                return null;
             }
             ItemStack copied = stack.copy();
             if (copied.getCount() != 1) {
                 copied.setCount(1);
             }
-            IFluidHandlerItem fluidHandlerItem = FluidUtil.getFluidHandler(stack.copy());
+            IFluidHandlerItem fluidHandlerItem = FluidUtil.getFluidHandler(copied);
             if (fluidHandlerItem != null) {
                 FluidStack fluid = fluidHandlerItem.drain(Integer.MAX_VALUE, true);
                 if (fluid != null) {
                     if (fluidHandlerItem.getContainer().isEmpty()) {
                         /* We removed an itemstack -- perhaps the container itself was used up in crafting */
                     } else {
-                        return new CraftSlotFluidBound(this, fluid);
+                        return fluid;
                     }
                 }
             }
+            return null;
+        }
+
+        @Override
+        protected void onRecipeChanged() {
+            requiredFluid = getFluidInBlueprint();
+        }
+
+        @Override
+        public CraftingSlot getBoundVersion() {
+            FluidStack fluid = getFluidInBlueprint();
+            if (fluid != null) {
+                return new CraftSlotFluidBound(this, fluid);
+            }
             return super.getBoundVersion();
         }
+
+        @Override
+        public boolean hasMaterial(ItemStackKey required, TObjectIntHashMap<ItemStackKey> claimed) {
+            if (requiredFluid != null) {
+                return claimFluid(requiredFluid);
+            }
+            return super.hasMaterial(required, claimed);
+        }
     }
 
     public class CraftSlotFluidBound extends CraftingSlot {
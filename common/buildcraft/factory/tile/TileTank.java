@@ -27,6 +27,7 @@ import buildcraft.api.core.SafeTimeTracker;
 import buildcraft.api.tiles.IDebuggable;
 
 import buildcraft.core.BCCoreConfig;
+import buildcraft.lib.fluids.FluidAmountSync;
 import buildcraft.lib.fluids.Tank;
 import buildcraft.lib.misc.CapUtil;
 import buildcraft.lib.misc.MathUtil;
@@ -38,9 +39,12 @@ public class TileTank extends TileBC_Neptune implements ITickable, IDebuggable,
 
     public Tank tank = new Tank("tank", 16000, this);
 
-    private int lastSentAmount = -1;
     private boolean lastSentFluid = false;
     private final SafeTimeTracker tracker = new SafeTimeTracker(BCCoreConfig.networkUpdateRate, 4);
+    /** Sends {@link #NET_FLUID_DELTA} to each player. Changes to the fluid itself are sent with
+     * {@link #NET_RENDER_DATA} instead, so this only ever syncs the amount. */
+    private final FluidAmountSync amountSync = new FluidAmountSync(1, tank.getCapacity(), 0);
+    private final int[] syncAmount = new int[1];
 
     // client side
 
@@ -70,14 +74,12 @@ public class TileTank extends TileBC_Neptune implements ITickable, IDebuggable,
         if (lastSentFluid != (tank.getFluid() != null)) {
             if (tracker.markTimeIfDelay(world)) {
                 lastSentFluid = tank.getFluid() != null;
-                lastSentAmount = tank.getFluidAmount();
                 sendNetworkUpdate(NET_RENDER_DATA);
             }
-        } else if (lastSentAmount != tank.getFluidAmount()) {
-            if (tracker.markTimeIfDelay(world)) {
-                lastSentAmount = tank.getFluidAmount();
-                sendNetworkUpdate(NET_FLUID_DELTA);
-            }
+        } else {
+            syncAmount[0] = tank.getFluidAmount();
+            amountSync.tick(world, pos, -1, syncAmount, null, getUsingPlayers(),
+                (writer) -> createPayload(NET_FLUID_DELTA, writer));
         }
     }
 
@@ -129,8 +131,8 @@ public class TileTank extends TileBC_Neptune implements ITickable, IDebuggable,
         if (side == Side.SERVER) {
             if (id == NET_RENDER_DATA) {
                 tank.writeToBuffer(buffer);
-            } else if (id == NET_FLUID_DELTA) {
-                buffer.writeInt(tank.getFluidAmount());
+                // The client takes its amount from this instead, so every player needs a new delta from here
+                amountSync.resetViews();
             }
         }
     }
@@ -144,7 +146,8 @@ public class TileTank extends TileBC_Neptune implements ITickable, IDebuggable,
                 target = tank.getClientAmount();
                 lastMessageMinus1 = lastMessage = world.getTotalWorldTime();
             } else if (id == NET_FLUID_DELTA) {
-                target = buffer.readInt();
+                amountSync.read(buffer);
+                target = amountSync.getClientAmount(0);
                 lastMessageMinus1 = lastMessage;
                 lastMessage = world.getTotalWorldTime();
             }
@@ -162,7 +165,7 @@ public class TileTank extends TileBC_Neptune implements ITickable, IDebuggable,
             left.add("lastMsg = " + lastMessage + ", lastMsg-1 = " + lastMessageMinus1 + ", diff = " + (lastMessage - lastMessageMinus1));
         } else {
             left.add("current = " + tank.getFluidAmount() + " of " + ((tank.getFluid() != null) ? "Something" : "Nothing"));
-            left.add("lastSent = " + lastSentAmount + " of " + (lastSentFluid ? "Something" : "Nothing"));
+            left.add("lastSent = " + (lastSentFluid ? "Something" : "Nothing"));
         }
     }
 
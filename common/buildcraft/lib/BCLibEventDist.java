@@ -14,6 +14,7 @@ import net.minecraftforge.client.event.ModelBakeEvent;
 import net.minecraftforge.client.event.RenderWorldLastEvent;
 import net.minecraftforge.client.event.TextureStitchEvent;
 import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.world.ChunkEvent;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartedEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
@@ -32,7 +33,9 @@ import buildcraft.lib.client.sprite.SpriteHolderRegistry;
 import buildcraft.lib.debug.BCAdvDebugging;
 import buildcraft.lib.marker.MarkerCache;
 import buildcraft.lib.misc.MessageUtil;
+import buildcraft.lib.net.MessageBatcher;
 import buildcraft.lib.net.cache.BuildCraftObjectCaches;
+import buildcraft.lib.path.MiniChunkCache;
 
 public enum BCLibEventDist {
     INSTANCE;
@@ -50,6 +53,12 @@ public enum BCLibEventDist {
     @SubscribeEvent
     public void onWorldUnload(WorldEvent.Unload event) {
         MarkerCache.onWorldUnload(event.getWorld());
+        MiniChunkCache.onWorldUnload(event.getWorld());
+    }
+
+    @SubscribeEvent
+    public void onChunkUnload(ChunkEvent.Unload event) {
+        MiniChunkCache.onChunkUnload(event.getWorld(), event.getChunk());
     }
 
     @SubscribeEvent
@@ -97,6 +106,7 @@ public enum BCLibEventDist {
     public void serverTick(ServerTickEvent event) {
         if (event.phase == Phase.END) {
             BCAdvDebugging.INSTANCE.onServerPostTick();
+            MessageBatcher.flush();
             MessageUtil.postTick();
         }
     }
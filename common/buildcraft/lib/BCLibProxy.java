@@ -38,6 +38,7 @@ import buildcraft.lib.fluid.BCFluid;
 import buildcraft.lib.fluid.FluidManager;
 import buildcraft.lib.item.IItemBuildCraft;
 import buildcraft.lib.item.ItemManager;
+import buildcraft.lib.misc.MessageUtil;
 
 public abstract class BCLibProxy implements IGuiHandler {
     @SidedProxy(modId = BCLib.MODID)
@@ -78,6 +79,12 @@ public abstract class BCLibProxy implements IGuiHandler {
         }
     }
 
+    /** Runs the given task on the client thread, or on the server thread if there is no client. This can be called
+     * from any thread. */
+    public void addClientTask(Runnable task) {
+        MessageUtil.doDelayed(task);
+    }
+
     public <T extends TileEntity> T getServerTile(T tile) {
         return tile;
     }
@@ -159,6 +166,11 @@ public abstract class BCLibProxy implements IGuiHandler {
             }
         }
 
+        @Override
+        public void addClientTask(Runnable task) {
+            Minecraft.getMinecraft().addScheduledTask(task);
+        }
+
         @Override
         public <T extends TileEntity> T getServerTile(T tile) {
             if (tile != null && tile.hasWorld()) {
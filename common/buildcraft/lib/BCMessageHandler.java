@@ -27,6 +27,7 @@ import buildcraft.lib.misc.MessageUtil;
 import buildcraft.lib.net.MessageContainer;
 import buildcraft.lib.net.MessageMarker;
 import buildcraft.lib.net.MessageUpdateTile;
+import buildcraft.lib.net.MessageUpdateTileBatch;
 import buildcraft.lib.net.cache.MessageObjectCacheReply;
 import buildcraft.lib.net.cache.MessageObjectCacheReq;
 import buildcraft.lib.particle.MessageParticleVanilla;
@@ -46,6 +47,7 @@ public enum BCMessageHandler {
 
     public static void fmlPreInit() {
         addMessageType(MessageUpdateTile.class, MessageUpdateTile.Handler.INSTANCE, Side.CLIENT, Side.SERVER);
+        addMessageType(MessageUpdateTileBatch.class, MessageUpdateTileBatch.Handler.INSTANCE, Side.CLIENT);
         addMessageType(MessageContainer.class, MessageContainer.Handler.INSTANCE, Side.CLIENT, Side.SERVER);
         addMessageType(MessageMarker.class, MessageMarker.Handler.INSTANCE, Side.CLIENT);
         addMessageType(MessageLibraryTransferEntry.class, MessageLibraryTransferEntry.Handler.INSTANCE, Side.CLIENT, Side.SERVER);
@@ -5,7 +5,10 @@
 package buildcraft.lib.bpt;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.minecraft.block.Block;
 import net.minecraft.nbt.NBTTagCompound;
@@ -21,19 +24,32 @@ import buildcraft.api.bpt.BlueprintAPI;
 import buildcraft.api.bpt.SchematicBlock;
 import buildcraft.api.bpt.SchematicException;
 import buildcraft.api.bpt.SchematicFactoryWorldBlock;
+import buildcraft.api.core.BCLog;
 
 import buildcraft.lib.bpt.builder.SchematicEntityOffset;
 import buildcraft.lib.misc.PositionUtil;
 import buildcraft.lib.misc.VecUtil;
 import buildcraft.lib.misc.data.Box;
 
+import gnu.trove.list.array.TIntArrayList;
+
+/** A blueprint of blocks (and entities). Every distinct schematic is only stored once, in a palette, and the blocks
+ * themselves are stored as indices into that palette. Air (or any position without a schematic) is always index 0.
+ * <p>
+ * In NBT the palette is stored as a list, and the indices are stored as a single int array where runs of air are
+ * collapsed into a single negative number (the negated length of the run). Blueprints saved before the palette existed
+ * (with a "blocks" list of one compound per position) are still read. */
 public class Blueprint extends BlueprintBase {
-    private SchematicBlock[][][] contentBlocks;
+    /** The palette of distinct schematics. Index 0 is always null (air). */
+    private final List<SchematicBlock> palette = new ArrayList<>();
+    /** Indices into {@link #palette}, for every position in x, y, z order (see {@link #getIndex(int, int, int)}). */
+    private int[] contentIndices;
     private List<SchematicEntityOffset> contentEntities;
 
     private Blueprint(BlockPos size, BlockPos offset) {
         super(size, offset);
-        contentBlocks = new SchematicBlock[size.getX()][size.getY()][size.getZ()];
+        palette.add(null);
+        contentIndices = new int[size.getX() * size.getY() * size.getZ()];
         contentEntities = new ArrayList<>();
     }
 
@@ -42,17 +58,23 @@ public class Blueprint extends BlueprintBase {
     }
 
     public Blueprint(BlockPos offset, SchematicBlock[][][] blocks, List<SchematicEntityOffset> entities) {
-        super(new BlockPos(blocks.length, blocks[0].length, blocks[0][0].length), offset);
-        contentBlocks = blocks;
-        if (entities == null) {
-            contentEntities = new ArrayList<>();
-        } else {
-            contentEntities = new ArrayList<>(entities);
+        this(new BlockPos(blocks.length, blocks[0].length, blocks[0][0].length), offset);
+        PaletteBuilder builder = new PaletteBuilder();
+        for (int x = 0; x < size.getX(); x++) {
+            for (int y = 0; y < size.getY(); y++) {
+                for (int z = 0; z < size.getZ(); z++) {
+                    contentIndices[getIndex(x, y, z)] = builder.getPaletteIndex(blocks[x][y][z]);
+                }
+            }
+        }
+        if (entities != null) {
+            contentEntities.addAll(entities);
         }
     }
 
     public Blueprint(World world, BlockPos from, BlockPos size) throws SchematicException {
         this(size, new BlockPos(0, 0, 0));
+        PaletteBuilder builder = new PaletteBuilder();
         for (int x = 0; x < size.getX(); x++) {
             for (int y = 0; y < size.getY(); y++) {
                 for (int z = 0; z < size.getZ(); z++) {
@@ -60,11 +82,7 @@ public class Blueprint extends BlueprintBase {
                     Block block = world.getBlockState(pos).getBlock();
                     SchematicFactoryWorldBlock factory = BlueprintAPI.getWorldBlockSchematic(block);
                     SchematicBlock schema = factory == null ? null : factory.createFromWorld(world, pos);
-                    if (schema != null) {
-                        contentBlocks[x][y][z] = schema;
-                    } else {
-                        contentBlocks[x][y][z] = null;//SchematicAir.INSTANCE;
-                    }
+                    contentIndices[getIndex(x, y, z)] = builder.getPaletteIndex(schema);
                 }
             }
         }
@@ -73,67 +91,123 @@ public class Blueprint extends BlueprintBase {
 
     public Blueprint(NBTTagCompound nbt) {
         super(nbt);
-        contentBlocks = new SchematicBlock[size.getX()][size.getY()][size.getZ()];
+        palette.add(null);
+        contentIndices = new int[size.getX() * size.getY() * size.getZ()];
         contentEntities = new ArrayList<>();
-        NBTTagList blocks = nbt.getTagList("blocks", Constants.NBT.TAG_COMPOUND);
+        if (nbt.hasKey("palette")) {
+            readPalette(nbt);
+        } else {
+            readLegacyBlocks(nbt);
+        }
+    }
+
+    private void readPalette(NBTTagCompound nbt) {
+        NBTTagList paletteList = nbt.getTagList("palette", Constants.NBT.TAG_COMPOUND);
+        for (int i = 0; i < paletteList.tagCount(); i++) {
+            palette.add(deserializeSchematic(paletteList.getCompoundTagAt(i)));
+        }
+        int[] encoded = nbt.getIntArray("indices");
         int index = 0;
-        for (int x = 0; x < size.getX(); x++) {
-            for (int y = 0; y < size.getY(); y++) {
-                for (int z = 0; z < size.getZ(); z++) {
-                    NBTTagCompound comp = blocks.getCompoundTagAt(index);
-                    index++;
-                    try {
-                        contentBlocks[x][y][z] = BlueprintAPI.deserializeSchematicBlock(comp);
-                        if (contentBlocks[x][y][z] == null) {
-                            throw new SchematicException("Null schematic from " + comp);
-                        }
-                    } catch (SchematicException e) {
-                        throw new Error(e);
-                    }
+        for (int i = 0; i < encoded.length && index < contentIndices.length; i++) {
+            int value = encoded[i];
+            if (value < 0) {
+                // The array was created full of air
+                index -= value;
+            } else {
+                contentIndices[index++] = value < palette.size() ? value : 0;
+            }
+        }
+    }
+
+    /** Reads the format used before the palette was added: one compound per position, in x, y, z order. */
+    private void readLegacyBlocks(NBTTagCompound nbt) {
+        NBTTagList blocks = nbt.getTagList("blocks", Constants.NBT.TAG_COMPOUND);
+        Map<NBTTagCompound, Integer> seen = new HashMap<>();
+        int count = Math.min(blocks.tagCount(), contentIndices.length);
+        for (int i = 0; i < count; i++) {
+            NBTTagCompound comp = blocks.getCompoundTagAt(i);
+            Integer paletteIndex = seen.get(comp);
+            if (paletteIndex == null) {
+                SchematicBlock schematic = deserializeSchematic(comp);
+                if (schematic == null) {
+                    paletteIndex = 0;
+                } else {
+                    paletteIndex = palette.size();
+                    palette.add(schematic);
                 }
+                seen.put(comp, paletteIndex);
             }
+            contentIndices[i] = paletteIndex;
+        }
+    }
+
+    private static SchematicBlock deserializeSchematic(NBTTagCompound comp) {
+        try {
+            return BlueprintAPI.deserializeSchematicBlock(comp);
+        } catch (SchematicException e) {
+            BCLog.logger.warn("[lib.bpt] Unable to read the schematic " + comp + ", replacing it with air", e);
+            return null;
         }
     }
 
     @Override
     public NBTTagCompound serializeNBT() {
         NBTTagCompound nbt = super.serializeNBT();
-        NBTTagList list = new NBTTagList();
-        for (int x = 0; x < size.getX(); x++) {
-            for (int y = 0; y < size.getY(); y++) {
-                for (int z = 0; z < size.getZ(); z++) {
-                    SchematicBlock block = contentBlocks[x][y][z];
-                    list.appendTag(block.serializeNBT());
+        NBTTagList paletteList = new NBTTagList();
+        for (int i = 1; i < palette.size(); i++) {
+            paletteList.appendTag(palette.get(i).serializeNBT());
+        }
+        nbt.setTag("palette", paletteList);
+
+        TIntArrayList encoded = new TIntArrayList();
+        int airRun = 0;
+        for (int value : contentIndices) {
+            if (value == 0) {
+                airRun++;
+            } else {
+                if (airRun > 0) {
+                    encoded.add(-airRun);
+                    airRun = 0;
                 }
+                encoded.add(value);
             }
         }
-        nbt.setTag("blocks", list);
+        // Trailing air doesn't need to be written as the array starts out full of air
+        nbt.setIntArray("indices", encoded.toArray());
         return nbt;
     }
 
+    private int getIndex(int x, int y, int z) {
+        return (x * size.getY() + y) * size.getZ() + z;
+    }
+
     @Override
     protected void rotateContentsBy(Axis axis, Rotation rotation) {
         BlockPos oldSize = this.size;
         BlockPos newSize = VecUtil.absolute(PositionUtil.rotatePos(oldSize, axis, rotation));
-        SchematicBlock[][][] newContentBlocks = new SchematicBlock[newSize.getX()][newSize.getY()][newSize.getZ()];
+        int[] newIndices = new int[contentIndices.length];
         Box to = new Box(BlockPos.ORIGIN, newSize.add(-1, -1, -1));
         BlockPos newMax = PositionUtil.rotatePos(size.add(-1, -1, -1), axis, rotation);
         BlockPos arrayOffset = to.closestInsideTo(newMax).subtract(newMax);
 
-        for (int x = 0; x < contentBlocks.length; x++) {
-            for (int y = 0; y < contentBlocks[x].length; y++) {
-                for (int z = 0; z < contentBlocks[x][y].length; z++) {
-                    SchematicBlock schematic = contentBlocks[x][y][z];
-                    schematic.rotate(axis, rotation);
-                    BlockPos original = new BlockPos(x, y, z);
-                    BlockPos rotated = PositionUtil.rotatePos(original, axis, rotation);
-                    rotated = rotated.add(arrayOffset);
-                    newContentBlocks[rotated.getX()][rotated.getY()][rotated.getZ()] = schematic;
+        for (int x = 0; x < oldSize.getX(); x++) {
+            for (int y = 0; y < oldSize.getY(); y++) {
+                for (int z = 0; z < oldSize.getZ(); z++) {
+                    int value = contentIndices[getIndex(x, y, z)];
+                    if (value == 0) {
+                        continue;
+                    }
+                    BlockPos rotated = PositionUtil.rotatePos(new BlockPos(x, y, z), axis, rotation).add(arrayOffset);
+                    newIndices[(rotated.getX() * newSize.getY() + rotated.getY()) * newSize.getZ() + rotated.getZ()] = value;
                 }
             }
         }
 
-        contentBlocks = newContentBlocks;
+        contentIndices = newIndices;
+        // Every position that uses a palette entry shares it, so each one only needs rotating once
+        for (int i = 1; i < palette.size(); i++) {
+            palette.get(i).rotate(axis, rotation);
+        }
 
         for (SchematicEntityOffset schematic : contentEntities) {
             schematic.rotate(axis, rotation, oldSize);
@@ -142,22 +216,28 @@ public class Blueprint extends BlueprintBase {
 
     @Override
     public void mirror(Axis axis) {
-        SchematicBlock[][][] newContentBlocks = new SchematicBlock[size.getX()][size.getY()][size.getZ()];
-
-        for (int x = 0; x < contentBlocks.length; x++) {
-            for (int y = 0; y < contentBlocks[x].length; y++) {
-                for (int z = 0; z < contentBlocks[x][y].length; z++) {
-                    SchematicBlock schematic = contentBlocks[x][y][z];
-                    schematic.mirror(axis);
-                    BlockPos mirrored = new BlockPos(x, y, z);
-                    int value = VecUtil.getValue(size, axis) - 1 - VecUtil.getValue(mirrored, axis);
-                    mirrored = VecUtil.replaceValue(mirrored, axis, value);
-                    newContentBlocks[mirrored.getX()][mirrored.getY()][mirrored.getZ()] = schematic;
+        int[] newIndices = new int[contentIndices.length];
+        int axisSize = VecUtil.getValue(size, axis);
+
+        for (int x = 0; x < size.getX(); x++) {
+            for (int y = 0; y < size.getY(); y++) {
+                for (int z = 0; z < size.getZ(); z++) {
+                    int value = contentIndices[getIndex(x, y, z)];
+                    if (value == 0) {
+                        continue;
+                    }
+                    int mx = axis == Axis.X ? axisSize - 1 - x : x;
+                    int my = axis == Axis.Y ? axisSize - 1 - y : y;
+                    int mz = axis == Axis.Z ? axisSize - 1 - z : z;
+                    newIndices[getIndex(mx, my, mz)] = value;
                 }
             }
         }
 
-        contentBlocks = newContentBlocks;
+        contentIndices = newIndices;
+        for (int i = 1; i < palette.size(); i++) {
+            palette.get(i).mirror(axis);
+        }
 
         for (SchematicEntityOffset schematic : contentEntities) {
             schematic.mirror(axis, size);
@@ -165,6 +245,36 @@ public class Blueprint extends BlueprintBase {
     }
 
     public SchematicBlock getSchematicAt(BlockPos pos) {
-        return contentBlocks[pos.getX()][pos.getY()][pos.getZ()];
+        return palette.get(contentIndices[getIndex(pos.getX(), pos.getY(), pos.getZ())]);
+    }
+
+    /** @return The number of distinct schematics in this blueprint, including air. */
+    public int getPaletteSize() {
+        return palette.size();
+    }
+
+    /** Adds schematics to the palette, reusing existing entries for schematics that are the same instance, or that
+     * would be saved identically. */
+    private class PaletteBuilder {
+        private final Map<SchematicBlock, Integer> byInstance = new IdentityHashMap<>();
+        private final Map<NBTTagCompound, Integer> bySerialized = new HashMap<>();
+
+        int getPaletteIndex(SchematicBlock schematic) {
+            if (schematic == null) {
+                return 0;
+            }
+            Integer index = byInstance.get(schematic);
+            if (index == null) {
+                NBTTagCompound serialized = schematic.serializeNBT();
+                index = bySerialized.get(serialized);
+                if (index == null) {
+                    index = palette.size();
+                    palette.add(schematic);
+                    bySerialized.put(serialized, index);
+                }
+                byInstance.put(schematic, index);
+            }
+            return index;
+        }
     }
 }
@@ -11,6 +11,8 @@ import buildcraft.api.bpt.IMaterialProvider.IRequested;
 import buildcraft.api.bpt.IMaterialProvider.IRequestedItem;
 import buildcraft.api.bpt.SchematicBlock;
 import buildcraft.api.bpt.SchematicException;
+import buildcraft.api.bpt.SchematicFactoryBlockState;
+import buildcraft.api.bpt.SchematicFactoryNBTBlock;
 import buildcraft.api.mj.MjAPI;
 
 import buildcraft.lib.bpt.task.TaskBuilder;
@@ -21,6 +23,14 @@ import buildcraft.lib.misc.SoundUtil;
  * block ID and only has differing state associated with it. It also does not require any other blocks around it to
  * work. */
 public class SchematicBlockSimpleSet extends SchematicBlock {
+    /** Reads and writes simple set schematics. As these only depend on the block state this can be used from a worker
+     * thread. */
+    public static final Factory FACTORY = new Factory();
+
+    public SchematicBlockSimpleSet(IBlockState state) {
+        super(state);
+    }
+
     public SchematicBlockSimpleSet(World world, BlockPos pos) {
         super(world, pos);
     }
@@ -66,4 +76,23 @@ public class SchematicBlockSimpleSet extends SchematicBlock {
         }
         return DefaultBptActions.REQUIRE_AIR;
     }
+
+    public static class Factory implements SchematicFactoryBlockState, SchematicFactoryNBTBlock {
+        private Factory() {}
+
+        @Override
+        public SchematicBlock createFromState(IBlockState state) {
+            return new SchematicBlockSimpleSet(state);
+        }
+
+        @Override
+        public SchematicBlock createFromWorld(World world, BlockPos pos) {
+            return createFromState(world.getBlockState(pos));
+        }
+
+        @Override
+        public SchematicBlock createFromNBT(NBTTagCompound nbt) throws SchematicException {
+            return new SchematicBlockSimpleSet(nbt);
+        }
+    }
 }
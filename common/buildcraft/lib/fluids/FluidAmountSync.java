@@ -0,0 +1,327 @@
+package buildcraft.lib.fluids;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import buildcraft.core.BCCoreConfig;
+import buildcraft.lib.misc.MessageUtil;
+import buildcraft.lib.net.IPayloadWriter;
+import buildcraft.lib.net.MessageBatcher;
+import buildcraft.lib.net.PacketBufferBC;
+import buildcraft.lib.net.cache.BuildCraftObjectCaches;
+
+import io.netty.buffer.Unpooled;
+
+/** Syncs the fluid amounts of a fixed number of sections (for example the 7 sections of a pipe, or the single section
+ * of a tank) to every player watching them.
+ * <p>
+ * Amounts are quantised to {@link #LEVELS} steps of the capacity (which is about as fine as any of the renderers can
+ * show), and only the sections whose level (or extra state) has changed since the last message sent to that player are
+ * written, as fixed-width bit fields. Every player has its own view of what it was last sent, so players can be sent
+ * updates at different rates: players further away, or that have been sent a lot of fluid updates recently, get them
+ * less often. Players that can see the exact amount (for example because they have a gui open that shows it) are sent
+ * exact amounts rather than levels.
+ * <p>
+ * The messages are queued up in the {@link MessageBatcher} (rather than sent immediately) so that they arrive in the
+ * same order as the owner's other batched updates.
+ * <p>
+ * Nothing is sent (and the watching players aren't looked up) on ticks where none of the amounts have changed and no
+ * player is waiting for an update. The owner must call {@link #resetViews()} whenever it sends a full update of its
+ * state to the client, as the client starts again from nothing after one of those.
+ * <p>
+ * On the client the same class is used to read the messages back in with {@link #read(PacketBufferBC)}. */
+public class FluidAmountSync {
+    public static final int LEVEL_BITS = 7;
+    public static final int LEVELS = (1 << LEVEL_BITS) - 1;
+
+    /** The number of bytes of fluid updates that a single player can be sent per second before the update rate starts
+     * to drop. */
+    private static final int BYTES_PER_SECOND_BUDGET = 16 * 1024;
+    private static final int MAX_BANDWIDTH_FACTOR = 8;
+    private static final Map<EntityPlayerMP, PlayerBandwidth> BANDWIDTH = new WeakHashMap<>();
+
+    private final int sections;
+    private final int capacity;
+    private final int extraBits;
+    private final Map<EntityPlayerMP, View> views = new WeakHashMap<>();
+    private boolean pending = false;
+    /** True if something has happened since the last tick that means players might need an update, even if the
+     * amounts haven't changed. */
+    private boolean dirty = true;
+    private final int[] serverLevels;
+    private final int[] lastAmounts;
+    private final int[] lastExtra;
+    private int lastFluidId = -2;
+
+    // Client side state
+    private final int[] clientAmounts;
+    private final int[] clientExtra;
+    private int clientFluidId = -1;
+
+    /** @param sections The number of sections.
+     * @param capacity The capacity of each section.
+     * @param extraBits The number of bits of extra state (for example the direction the fluid is moving in) that
+     *            should be synced with each section. */
+    public FluidAmountSync(int sections, int capacity, int extraBits) {
+        if (sections > 32) {
+            throw new IllegalArgumentException("Too many sections! (" + sections + ")");
+        }
+        this.sections = sections;
+        this.capacity = Math.max(1, capacity);
+        this.extraBits = extraBits;
+        this.serverLevels = new int[sections];
+        this.lastAmounts = new int[sections];
+        this.lastExtra = new int[sections];
+        this.clientAmounts = new int[sections];
+        this.clientExtra = new int[sections];
+    }
+
+    /** @return The level that the given amount will be shown at. This is only 0 if the amount is 0. */
+    public int toLevel(int amount) {
+        if (amount <= 0) {
+            return 0;
+        }
+        if (amount >= capacity) {
+            return LEVELS;
+        }
+        int level = (int) ((amount * (long) LEVELS + capacity / 2) / capacity);
+        return Math.max(1, level);
+    }
+
+    public int fromLevel(int level) {
+        return (int) (level * (long) capacity / LEVELS);
+    }
+
+    /** @return True if a player was not sent an update that they needed on the last call to
+     *         {@link #tick(World, BlockPos, int, int[], int[], Collection, IPayloadFactory)} because of rate
+     *         limiting. */
+    public boolean hasPending() {
+        return pending;
+    }
+
+    /** Forgets what every player was sent, so that they are all sent every section (and the fluid) again on the next
+     * tick. */
+    public void resetViews() {
+        views.clear();
+        dirty = true;
+    }
+
+    /** Sends the given amounts to every player watching the given position that needs them (and isn't being rate
+     * limited). Should be called every tick on the server.
+     *
+     * @param fluidId The id of the fluid in {@link BuildCraftObjectCaches#CACHE_FLUIDS} (or -1 if there is no fluid).
+     *            Changing this causes every section to be sent again, and the fluid to be sent on ahead.
+     * @param extra The extra state of each section, or null if extraBits is 0.
+     * @param exactPlayers The players that should be sent exact amounts rather than levels. */
+    public void tick(World world, BlockPos pos, int fluidId, int[] amounts, int[] extra,
+        Collection<? extends EntityPlayer> exactPlayers, IPayloadFactory factory) {
+        boolean changed = dirty || pending || fluidId != lastFluidId || !Arrays.equals(amounts, lastAmounts)
+            || (extra != null && !Arrays.equals(extra, lastExtra));
+        // Players that have just opened (or closed) a gui need to switch between exact amounts and levels
+        if (!changed && exactPlayers.isEmpty()) {
+            return;
+        }
+        dirty = false;
+        lastFluidId = fluidId;
+        System.arraycopy(amounts, 0, lastAmounts, 0, sections);
+        if (extra != null) {
+            System.arraycopy(extra, 0, lastExtra, 0, sections);
+        }
+
+        long now = world.getTotalWorldTime();
+        pending = false;
+        int[] levels = serverLevels;
+        for (int i = 0; i < sections; i++) {
+            levels[i] = toLevel(amounts[i]);
+        }
+        MessageUtil.forAllWatching(world, pos, player -> {
+            View view = views.get(player);
+            if (view == null) {
+                view = new View();
+                views.put(player, view);
+            }
+            view.lastSeen = now;
+            boolean exact = exactPlayers.contains(player);
+            int mask = view.getChangedMask(fluidId, exact, exact ? amounts : levels, extra);
+            if (mask == 0) {
+                return;
+            }
+            int interval = getInterval(player, pos, now);
+            if (now - view.lastSent < interval) {
+                pending = true;
+                return;
+            }
+            if (view.fluidId != fluidId && fluidId >= 0) {
+                // Send the fluid on ahead, so that the player doesn't have to request it
+                BuildCraftObjectCaches.CACHE_FLUIDS.server().prefetch(player, fluidId);
+            }
+            PacketBufferBC payload = new PacketBufferBC(Unpooled.buffer());
+            write(payload, view, mask, fluidId, exact, exact ? amounts : levels, extra);
+            view.lastSent = now;
+            getBandwidth(player).record(now, payload.readableBytes());
+            IPayloadWriter writer = factory.createPayload((buffer) -> buffer.writeBytes(payload));
+            MessageBatcher.queueTo(player, world, pos, writer);
+        });
+        // Forget about players that have stopped watching. Every player that is still watching was just visited, so
+        // this only needs to happen on ticks that looked up the watching players.
+        Iterator<View> iter = views.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().lastSeen != now) {
+                iter.remove();
+            }
+        }
+    }
+
+    private void write(PacketBufferBC buffer, View view, int mask, int fluidId, boolean exact, int[] values,
+        int[] extra) {
+        if (view.fluidId != fluidId) {
+            buffer.writeBoolean(true);
+            buffer.writeVarInt(fluidId + 1);
+            view.fluidId = fluidId;
+        } else {
+            buffer.writeBoolean(false);
+        }
+        buffer.writeBoolean(exact);
+        view.exact = exact;
+        buffer.writeFixedBits(mask, sections);
+        for (int i = 0; i < sections; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+            if (exact) {
+                buffer.writeVarInt(values[i]);
+            } else {
+                buffer.writeFixedBits(values[i], LEVEL_BITS);
+            }
+            view.values[i] = values[i];
+            if (extraBits > 0) {
+                buffer.writeFixedBits(extra[i], extraBits);
+                view.extra[i] = extra[i];
+            }
+        }
+    }
+
+    /** Reads a message written by {@link #tick(World, BlockPos, int, int[], int[], Collection, IPayloadFactory)}.
+     *
+     * @return A mask of the sections that changed. */
+    public int read(PacketBufferBC buffer) {
+        if (buffer.readBoolean()) {
+            clientFluidId = buffer.readVarInt() - 1;
+        }
+        boolean exact = buffer.readBoolean();
+        int mask = buffer.readFixedBits(sections);
+        for (int i = 0; i < sections; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+            clientAmounts[i] = exact ? buffer.readVarInt() : fromLevel(buffer.readFixedBits(LEVEL_BITS));
+            if (extraBits > 0) {
+                clientExtra[i] = buffer.readFixedBits(extraBits);
+            }
+        }
+        return mask;
+    }
+
+    public int getClientFluidId() {
+        return clientFluidId;
+    }
+
+    public int getClientAmount(int section) {
+        return clientAmounts[section];
+    }
+
+    public int getClientExtra(int section) {
+        return clientExtra[section];
+    }
+
+    /** @return The number of ticks between updates for the given player. */
+    private static int getInterval(EntityPlayerMP player, BlockPos pos, long now) {
+        double distSq = player.getDistanceSqToCenter(pos);
+        int distanceFactor;
+        if (distSq < 16 * 16) {
+            distanceFactor = 1;
+        } else if (distSq < 32 * 32) {
+            distanceFactor = 2;
+        } else if (distSq < 64 * 64) {
+            distanceFactor = 4;
+        } else {
+            distanceFactor = 8;
+        }
+        return BCCoreConfig.networkUpdateRate * distanceFactor * getBandwidth(player).getFactor(now);
+    }
+
+    private static PlayerBandwidth getBandwidth(EntityPlayerMP player) {
+        synchronized (BANDWIDTH) {
+            return BANDWIDTH.computeIfAbsent(player, p -> new PlayerBandwidth());
+        }
+    }
+
+    @FunctionalInterface
+    public interface IPayloadFactory {
+        /** Creates the full tile payload (starting with the id, as in {@link MessageBatcher#queue}) that will be sent
+         * to the client. The returned writer must call the given writer exactly once. */
+        IPayloadWriter createPayload(IPayloadWriter writer);
+    }
+
+    /** What a single player was last sent. */
+    private final class View {
+        /** The levels (or exact amounts, if {@link #exact}) that were last sent. */
+        final int[] values = new int[sections];
+        final int[] extra = new int[sections];
+        int fluidId = -2;
+        boolean exact;
+        long lastSent = Long.MIN_VALUE / 2;
+        long lastSeen;
+
+        View() {
+            Arrays.fill(values, -1);
+        }
+
+        int getChangedMask(int newFluidId, boolean newExact, int[] newValues, int[] newExtra) {
+            if (newFluidId != fluidId || newExact != exact) {
+                return (1 << sections) - 1;
+            }
+            int mask = 0;
+            for (int i = 0; i < sections; i++) {
+                if (values[i] != newValues[i] || (extraBits > 0 && extra[i] != newExtra[i])) {
+                    mask |= 1 << i;
+                }
+            }
+            return mask;
+        }
+    }
+
+    /** Tracks how many bytes of fluid updates a player has been sent over the last second, and slows down updates
+     * when that goes over {@link #BYTES_PER_SECOND_BUDGET}. */
+    private static final class PlayerBandwidth {
+        long windowStart;
+        int bytes;
+        int factor = 1;
+
+        void record(long now, int count) {
+            getFactor(now);
+            bytes += count;
+        }
+
+        int getFactor(long now) {
+            if (now - windowStart >= 20) {
+                if (bytes > BYTES_PER_SECOND_BUDGET) {
+                    factor = Math.min(factor * 2, MAX_BANDWIDTH_FACTOR);
+                } else if (bytes < BYTES_PER_SECOND_BUDGET / 4) {
+                    factor = Math.max(factor / 2, 1);
+                }
+                windowStart = now;
+                bytes = 0;
+            }
+            return factor;
+        }
+    }
+}
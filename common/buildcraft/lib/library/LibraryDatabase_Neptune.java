@@ -8,6 +8,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -21,6 +22,7 @@ import buildcraft.api.data.NBTSquishConstants;
 
 import buildcraft.lib.BCLibDatabase;
 import buildcraft.lib.misc.data.ZipFileHelper;
+import buildcraft.lib.nbt.NbtSquisher;
 
 public abstract class LibraryDatabase_Neptune {
     public static final boolean DEBUG = BCDebugging.shouldDebugLog("lib.library");
@@ -91,5 +93,18 @@ public abstract class LibraryDatabase_Neptune {
         }
     }
 
+    /** Reads just the header of an entry, skipping over (and not decompressing) everything else. */
+    public static LibraryEntryHeader loadHeader(InputStream in) throws IOException {
+        try (ZipInputStream zis = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (HEADER.equals(entry.getName())) {
+                    return new LibraryEntryHeader(NbtSquisher.expand(zis));
+                }
+            }
+            throw new IOException("No bytes for entry " + HEADER);
+        }
+    }
+
     public abstract Collection<LibraryEntryHeader> getAllHeaders();
 }
@@ -4,29 +4,63 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 import net.minecraft.launchwrapper.Launch;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+
+import net.minecraftforge.common.util.Constants;
 
 import buildcraft.api.core.BCLog;
 
 import buildcraft.lib.BCLibDatabase;
+import buildcraft.lib.BCLibProxy;
 import buildcraft.lib.library.book.LibraryEntryBook;
 import buildcraft.lib.misc.WorkerThreadUtil;
 
-/** A local database. Stores the current */
+/** A local database. Stores the current player's library entries as files on disk.
+ * <p>
+ * Only the headers of every entry are kept in memory. These are stored in an index file (along with the last modified
+ * time and size of the file they came from) so that files that haven't changed since the last launch don't need to be
+ * opened at all. The data of an entry is only read when it is asked for, and is then kept in a cache that is limited to
+ * {@link #MAX_CACHED_BYTES} (measured by the size of the files, which is close enough for this). Once the initial scan
+ * has finished every directory is watched, so added, changed, or removed files are picked up as they happen. The index
+ * is then only saved once the changes stop for {@link #INDEX_SAVE_DELAY} ms (or at least every
+ * {@link #INDEX_MAX_SAVE_DELAY} ms), rather than after every change. */
 public class LocalLibraryDatabase extends LibraryDatabase_Neptune {
     private static final String[] OLD_DB_LOCATIONS = { "blueprints" };
     private static final String DB_LOCATION = "bc-database";
+    private static final String INDEX_NAME = "library_index.nbt";
+    private static final int INDEX_VERSION = 1;
+    private static final long MAX_CACHED_BYTES = 32 * 1024 * 1024;
+    private static final long INDEX_SAVE_DELAY = 2000;
+    private static final long INDEX_MAX_SAVE_DELAY = 10000;
 
     public File outDirectory;
     public Map<String, File> specificOutDirectories = new HashMap<>();
     public final List<File> inDirectories = new ArrayList<>();
 
+    private final Map<File, IndexEntry> files = new ConcurrentHashMap<>();
+    private final Map<LibraryEntryHeader, IndexEntry> headers = new ConcurrentHashMap<>();
+    /** Access ordered, so the first entry is always the least recently used one. */
+    private final LinkedHashMap<LibraryEntryHeader, ILibraryEntryData> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<LibraryEntryHeader, Long> cacheSizes = new HashMap<>();
+    private long cachedBytes = 0;
+    private WatchService watcher;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    /** The time that the index was first changed since it was last saved, or 0 if it hasn't changed. */
+    private final AtomicLong indexDirtySince = new AtomicLong();
+
     public LocalLibraryDatabase() {
         final File dir;
 
@@ -51,77 +85,142 @@ public class LocalLibraryDatabase extends LibraryDatabase_Neptune {
     }
 
     public void onServerStarted() {
-        for (LibraryEntryHeader header : entries.keySet()) {
+        for (LibraryEntryHeader header : headers.keySet()) {
             /* If we started BEFORE the server was initialised then the owner lookup would have failed.
-             * 
+             *
              * This makes sure that it is always right. */
 //            header.author.fillOwner();
         }
     }
 
     public void readAll() {
-        List<String> endings = new ArrayList<>();
-        for (String key : BCLibDatabase.FILE_HANDLERS.keySet()) {
-            endings.add("." + key);
-        }
+        Map<File, IndexEntry> previous = readIndex();
+        BCLog.logger.info("[lib.library] Read " + previous.size() + " entries from the index");
+        scan(previous);
+        saveIndex();
+        startWatching();
+    }
+
+    /** Finds every file in the {@link #inDirectories}, only reading the headers of the ones that don't match the given
+     * index. Anything that is in the database but wasn't found is removed. */
+    private void scan(Map<File, IndexEntry> previous) {
+        Set<File> found = new HashSet<>();
+        List<Future<IndexEntry>> tasks = new ArrayList<>();
+        int unchanged = 0;
         for (File in : inDirectories) {
             BCLog.logger.info("[lib.library] Reading from dir " + in);
-            if (in.exists()) {
-                if (in.isDirectory()) {
-                    try (Stream<Path> fileStream = Files.walk(in.toPath())) {
-                        fileStream.forEach(this::readPath);
-                    } catch (IOException io) {
-                        io.printStackTrace();
-                    }
+            if (!in.isDirectory()) {
+                continue;
+            }
+            List<File> dirFiles = new ArrayList<>();
+            try (Stream<Path> fileStream = Files.walk(in.toPath())) {
+                fileStream.map(Path::toFile).filter(this::isLibraryFile).forEach(dirFiles::add);
+            } catch (IOException io) {
+                io.printStackTrace();
+            }
+            for (File file : dirFiles) {
+                found.add(file);
+                IndexEntry old = previous.get(file);
+                if (old != null && old.matches(file)) {
+                    add(old);
+                    unchanged++;
+                } else {
+                    tasks.add(WorkerThreadUtil.executeWorkTask(() -> readHeader(file)));
                 }
             }
         }
+        int read = 0;
+        for (Future<IndexEntry> task : tasks) {
+            try {
+                IndexEntry entry = task.get();
+                if (entry != null) {
+                    add(entry);
+                    read++;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                BCLog.logger.warn("[lib.library] Failed to read a header!", e);
+            }
+        }
+        for (File file : new ArrayList<>(files.keySet())) {
+            if (!found.contains(file)) {
+                remove(file);
+            }
+        }
+        BCLog.logger.info("[lib.library] Found " + files.size() + " entries (" + unchanged + " unchanged, " + read + " read)");
     }
 
-    private void readPath(Path path) {
-        WorkerThreadUtil.executeWorkTask(() -> {
-            readFile(path.toFile());
-        });
-    }
-
-    private void readFile(File file) {
+    private boolean isLibraryFile(File file) {
         if (!file.isFile()) {
-            return;
+            return false;
         }
-        BCLog.logger.info("[lib.library] Found a possible file " + file);
         String name = file.getName();
+        if (name.equals(INDEX_NAME) || name.endsWith(".tmp")) {
+            return false;
+        }
         String[] split = name.split("\\.");
         String last = split[split.length - 1];
-        ILibraryEntryType type = BCLibDatabase.FILE_HANDLERS.get(last);
-        if (type == null) {
+        if (BCLibDatabase.FILE_HANDLERS.get(last) == null) {
             BCLog.logger.warn("[lib.library] Unknown type for name " + last);
-            return;
+            return false;
         }
+        return true;
+    }
+
+    /** @return The index entry for the given file, or null if the file could not be read. */
+    private static IndexEntry readHeader(File file) {
+        if (DEBUG) {
+            BCLog.logger.info("[lib.library] Reading the header of " + file);
+        }
+        long modified = file.lastModified();
+        long size = file.length();
         try (FileInputStream fis = new FileInputStream(file)) {
-            Entry<LibraryEntryHeader, ILibraryEntryData> loaded = load(fis);
-            LibraryEntryHeader header = loaded.getKey();
-            ILibraryEntryData data = loaded.getValue();
-            entries.put(header, data);
-            BCLog.logger.info("[lib.library] Added a library entry " + header);
+            LibraryEntryHeader header = loadHeader(fis);
+            return new IndexEntry(file, modified, size, header);
         } catch (IOException io) {
             BCLog.logger.warn("[lib.library] Failed to add " + file + " because " + io.getMessage());
             if (DEBUG) {
                 io.printStackTrace();
             }
+            return null;
+        }
+    }
+
+    private synchronized void add(IndexEntry entry) {
+        IndexEntry old = files.put(entry.file, entry);
+        if (old != null && old != entry && headers.remove(old.header, old)) {
+            uncache(old.header);
+        }
+        IndexEntry replaced = headers.put(entry.header, entry);
+        if (replaced != null && replaced != entry) {
+            // The file changed (or another file has the same header), so whatever was cached might be out of date
+            uncache(entry.header);
+        }
+    }
+
+    private synchronized void remove(File file) {
+        IndexEntry old = files.remove(file);
+        if (old != null && headers.remove(old.header, old)) {
+            uncache(old.header);
         }
     }
 
     @Override
     public boolean addNew(LibraryEntryHeader header, ILibraryEntryData data) {
-        if (super.addNew(header, data)) {
-            save(header, data);
-            return true;
-        } else {
+        if (headers.containsKey(header)) {
             return false;
         }
+        File file = save(header, data);
+        if (file == null) {
+            return false;
+        }
+        add(new IndexEntry(file, file.lastModified(), file.length(), header));
+        cache(header, data, file.length());
+        markIndexDirty();
+        return true;
     }
 
-    protected void save(LibraryEntryHeader header, ILibraryEntryData data) {
+    /** @return The file that the entry was saved to, or null if it failed to save. */
+    protected File save(LibraryEntryHeader header, ILibraryEntryData data) {
         String name = header.name.replace('/', '-').replace("\\", "-") + " - ";
         name += header.creation.format(BCLibDatabase.DATE_TIME_FORMATTER);
 
@@ -138,7 +237,9 @@ public class LocalLibraryDatabase extends LibraryDatabase_Neptune {
             save(fos, header, data);
         } catch (IOException io) {
             io.printStackTrace();
+            return null;
         }
+        return toSaveTo;
     }
 
     public File getOutDirectory(String kind) {
@@ -149,12 +250,262 @@ public class LocalLibraryDatabase extends LibraryDatabase_Neptune {
         return outDirectory;
     }
 
+    /** @return The data for the given header, reading it from disk if it isn't cached. */
     public ILibraryEntryData getEntry(LibraryEntryHeader header) {
-        return entries.get(header);
+        synchronized (cache) {
+            ILibraryEntryData data = cache.get(header);
+            if (data != null) {
+                return data;
+            }
+        }
+        IndexEntry entry = headers.get(header);
+        if (entry == null) {
+            return null;
+        }
+        try (FileInputStream fis = new FileInputStream(entry.file)) {
+            Entry<LibraryEntryHeader, ILibraryEntryData> loaded = load(fis);
+            if (!header.equals(loaded.getKey())) {
+                BCLog.logger.warn("[lib.library] The file " + entry.file + " changed to " + loaded.getKey() + " (expected " + header + ")");
+                return null;
+            }
+            ILibraryEntryData data = loaded.getValue();
+            cache(header, data, entry.size);
+            return data;
+        } catch (IOException io) {
+            BCLog.logger.warn("[lib.library] Failed to read " + entry.file + " because " + io.getMessage());
+            if (DEBUG) {
+                io.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    private void cache(LibraryEntryHeader header, ILibraryEntryData data, long size) {
+        synchronized (cache) {
+            uncache(header);
+            cache.put(header, data);
+            cacheSizes.put(header, size);
+            cachedBytes += size;
+            Iterator<LibraryEntryHeader> iter = cache.keySet().iterator();
+            // Always keep the one that was just added, even if it is bigger than the whole cache
+            while (cachedBytes > MAX_CACHED_BYTES && cache.size() > 1) {
+                LibraryEntryHeader eldest = iter.next();
+                iter.remove();
+                cachedBytes -= cacheSizes.remove(eldest);
+            }
+        }
+    }
+
+    private void uncache(LibraryEntryHeader header) {
+        synchronized (cache) {
+            if (cache.remove(header) != null) {
+                cachedBytes -= cacheSizes.remove(header);
+            }
+        }
     }
 
     @Override
     public Collection<LibraryEntryHeader> getAllHeaders() {
-        return entries.keySet();
+        return headers.keySet();
+    }
+
+    // Index
+
+    private File getIndexFile() {
+        return new File(outDirectory, INDEX_NAME);
+    }
+
+    private Map<File, IndexEntry> readIndex() {
+        Map<File, IndexEntry> read = new HashMap<>();
+        File file = getIndexFile();
+        if (!file.isFile()) {
+            return read;
+        }
+        try (FileInputStream fis = new FileInputStream(file)) {
+            NBTTagCompound nbt = CompressedStreamTools.readCompressed(fis);
+            if (nbt.getInteger("version") != INDEX_VERSION) {
+                return read;
+            }
+            NBTTagList list = nbt.getTagList("entries", Constants.NBT.TAG_COMPOUND);
+            for (int i = 0; i < list.tagCount(); i++) {
+                IndexEntry entry = new IndexEntry(list.getCompoundTagAt(i));
+                read.put(entry.file, entry);
+            }
+        } catch (IOException io) {
+            // Not a problem, every file will just be read again
+            BCLog.logger.warn("[lib.library] Failed to read the index because " + io.getMessage());
+        }
+        return read;
+    }
+
+    /** Saves the index the next time that the watcher thread is idle, or straight away if nothing is being watched. */
+    private void markIndexDirty() {
+        if (watcher == null) {
+            saveIndex();
+        } else {
+            indexDirtySince.compareAndSet(0, System.currentTimeMillis());
+        }
+    }
+
+    private synchronized void saveIndex() {
+        NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setInteger("version", INDEX_VERSION);
+        NBTTagList list = new NBTTagList();
+        for (IndexEntry entry : files.values()) {
+            list.appendTag(entry.writeToNBT());
+        }
+        nbt.setTag("entries", list);
+        File file = getIndexFile();
+        File temp = new File(outDirectory, INDEX_NAME + ".tmp");
+        outDirectory.mkdirs();
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            CompressedStreamTools.writeCompressed(nbt, fos);
+        } catch (IOException io) {
+            BCLog.logger.warn("[lib.library] Failed to save the index because " + io.getMessage());
+            return;
+        }
+        if (file.exists()) {
+            file.delete();
+        }
+        if (!temp.renameTo(file)) {
+            BCLog.logger.warn("[lib.library] Failed to rename " + temp + " to " + file);
+        }
+    }
+
+    // Watching
+
+    private void startWatching() {
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+        } catch (IOException io) {
+            BCLog.logger.warn("[lib.library] Unable to watch the library directories, changes will only be found on the next launch", io);
+            return;
+        }
+        for (File in : inDirectories) {
+            if (in.isDirectory()) {
+                watchRecursively(in.toPath());
+            }
+        }
+        Thread thread = new Thread(this::watch, "BuildCraft Library Watcher");
+        // Never stop the game from closing
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watchRecursively(Path root) {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            dirs.filter(Files::isDirectory).forEach(dir -> {
+                try {
+                    WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    watchedDirs.put(key, dir);
+                } catch (IOException io) {
+                    BCLog.logger.warn("[lib.library] Unable to watch " + dir + " because " + io.getMessage());
+                }
+            });
+        } catch (IOException io) {
+            io.printStackTrace();
+        }
+    }
+
+    private void watch() {
+        boolean headersChanged = false;
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.poll(INDEX_SAVE_DELAY, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            if (key != null) {
+                if (handleEvents(key)) {
+                    headersChanged = true;
+                    markIndexDirty();
+                }
+            }
+            long dirtySince = indexDirtySince.get();
+            if (dirtySince != 0 && (key == null || System.currentTimeMillis() - dirtySince >= INDEX_MAX_SAVE_DELAY)) {
+                indexDirtySince.set(0);
+                saveIndex();
+                if (headersChanged) {
+                    headersChanged = false;
+                    // allEntries is only meant to be used by the client thread
+                    BCLibProxy.getProxy().addClientTask(BCLibDatabase::fillEntries);
+                }
+            }
+        }
+    }
+
+    /** @return True if any of the headers changed. */
+    private boolean handleEvents(WatchKey key) {
+        Path dir = watchedDirs.get(key);
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                scan(new HashMap<>(files));
+                changed = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            File file = path.toFile();
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                changed |= files.containsKey(file);
+                remove(file);
+            } else if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    watchRecursively(path);
+                    scan(new HashMap<>(files));
+                    changed = true;
+                }
+            } else if (isLibraryFile(file)) {
+                IndexEntry old = files.get(file);
+                if (old != null && old.matches(file)) {
+                    continue;
+                }
+                // This can fail if the file is still being written, but then another modify event will follow
+                IndexEntry entry = readHeader(file);
+                if (entry != null) {
+                    add(entry);
+                    changed = true;
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+        return changed;
+    }
+
+    private static final class IndexEntry {
+        final File file;
+        final long modified, size;
+        final LibraryEntryHeader header;
+
+        IndexEntry(File file, long modified, long size, LibraryEntryHeader header) {
+            this.file = file;
+            this.modified = modified;
+            this.size = size;
+            this.header = header;
+        }
+
+        IndexEntry(NBTTagCompound nbt) {
+            this.file = new File(nbt.getString("file"));
+            this.modified = nbt.getLong("modified");
+            this.size = nbt.getLong("size");
+            this.header = new LibraryEntryHeader(nbt.getCompoundTag("header"));
+        }
+
+        NBTTagCompound writeToNBT() {
+            NBTTagCompound nbt = new NBTTagCompound();
+            nbt.setString("file", file.getPath());
+            nbt.setLong("modified", modified);
+            nbt.setLong("size", size);
+            nbt.setTag("header", header.writeToNBT());
+            return nbt;
+        }
+
+        boolean matches(File current) {
+            return current.lastModified() == modified && current.length() == size;
+        }
     }
 }
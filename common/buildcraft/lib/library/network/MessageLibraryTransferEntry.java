@@ -1,12 +1,8 @@
 package buildcraft.lib.library.network;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map.Entry;
 
-import net.minecraft.network.PacketBuffer;
-
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
@@ -15,6 +11,8 @@ import buildcraft.lib.BCLibDatabase;
 import buildcraft.lib.library.*;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 
 public class MessageLibraryTransferEntry implements IMessage {
     private LibraryEntryHeader header;
@@ -31,13 +29,10 @@ public class MessageLibraryTransferEntry implements IMessage {
 
     @Override
     public void fromBytes(ByteBuf buf) {
-        try {
-            PacketBuffer packet = new PacketBuffer(buf);
-            int length = packet.readInt();
-            byte[] bytes = new byte[length];
-            packet.readBytes(bytes);
-            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            Entry<LibraryEntryHeader, ILibraryEntryData> entry = LibraryDatabase_Neptune.load(bais);
+        int length = buf.readInt();
+        // Read the zip straight out of the packet, rather than copying it into an array first
+        try (ByteBufInputStream in = new ByteBufInputStream(buf.readSlice(length))) {
+            Entry<LibraryEntryHeader, ILibraryEntryData> entry = LibraryDatabase_Neptune.load(in);
             header = entry.getKey();
             data = entry.getValue();
         } catch (IOException io) {
@@ -47,12 +42,11 @@ public class MessageLibraryTransferEntry implements IMessage {
 
     @Override
     public void toBytes(ByteBuf buf) {
-        PacketBuffer packet = new PacketBuffer(buf);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        LibraryDatabase_Neptune.save(baos, header, data);
-        byte[] bytes = baos.toByteArray();
-        packet.writeInt(bytes.length);
-        packet.writeBytes(bytes);
+        // Write the zip straight into the packet, and then go back and fill in the length
+        int lengthIndex = buf.writerIndex();
+        buf.writeInt(0);
+        LibraryDatabase_Neptune.save(new ByteBufOutputStream(buf), header, data);
+        buf.setInt(lengthIndex, buf.writerIndex() - lengthIndex - 4);
     }
 
     public enum Handler implements IMessageHandler<MessageLibraryTransferEntry, IMessage> {
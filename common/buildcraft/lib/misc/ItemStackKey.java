@@ -20,6 +20,21 @@ public class ItemStackKey {
         }
     }
 
+    /** Creates a key that only cares about the type of the given stack, and not how many items are in it.
+     * 
+     * @return A key for the type of the stack, or {@link #EMPTY} if the stack is empty. */
+    public static ItemStackKey ofType(@Nonnull ItemStack stack) {
+        if (stack.isEmpty()) {
+            return EMPTY;
+        }
+        if (stack.getCount() == 1) {
+            return new ItemStackKey(stack);
+        }
+        ItemStack single = stack.copy();
+        single.setCount(1);
+        return new ItemStackKey(single);
+    }
+
     @Override
     public int hashCode() {
         return hash;
@@ -1,6 +1,7 @@
 package buildcraft.lib.misc;
 
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import com.mojang.authlib.GameProfile;
 
@@ -49,6 +50,16 @@ public class MessageUtil {
     }
 
     public static void sendToAllWatching(World worldObj, BlockPos pos, IMessage message) {
+        if (worldObj instanceof WorldServer) {
+            forAllWatching(worldObj, pos, player -> getWrapper().sendTo(message, player));
+            // We could just use this instead, but that requires extra packet size as we are wrapping our
+            // packet in an FML packet and sending it through the vanilla system, which is not really desired
+            /** playerChunkMap.sendPacket(getWrapper().getPacketFrom(message)); */
+        }
+    }
+
+    /** Calls the given function for every player that is watching the chunk that contains the given position. */
+    public static void forAllWatching(World worldObj, BlockPos pos, Consumer<EntityPlayerMP> function) {
         if (worldObj instanceof WorldServer) {
             WorldServer server = (WorldServer) worldObj;
             PlayerChunkMapEntry playerChunkMap = server.getPlayerChunkMap().getEntry(pos.getX() >> 4, pos.getZ() >> 4);
@@ -58,13 +69,10 @@ public class MessageUtil {
             }
             // Slightly ugly hack to iterate through all players watching the chunk
             playerChunkMap.hasPlayerMatchingInRange(0, player -> {
-                getWrapper().sendTo(message, player);
+                function.accept(player);
                 // Always return false so that the iteration doesn't stop early
                 return false;
             });
-            // We could just use this instead, but that requires extra packet size as we are wrapping our
-            // packet in an FML packet and sending it through the vanilla system, which is not really desired
-            /** playerChunkMap.sendPacket(getWrapper().getPacketFrom(message)); */
         }
     }
 
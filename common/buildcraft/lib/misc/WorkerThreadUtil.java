@@ -1,6 +1,7 @@
 package buildcraft.lib.misc;
 
 import java.util.concurrent.*;
+import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
 import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
 
 import com.google.common.base.Throwables;
@@ -32,7 +33,8 @@ public class WorkerThreadUtil {
                 })//
                 .build();
         RejectedExecutionHandler rejectHandler = new CallerRunsPolicy();
-        WORKING_POOL = new ThreadPoolExecutor(0, max, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), factory, rejectHandler);
+        // Rejected work tasks are run on the caller by executeWorkTask, but not by tryExecuteWorkTask
+        WORKING_POOL = new ThreadPoolExecutor(0, max, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), factory, new AbortPolicy());
 
         factory = new BasicThreadFactory.Builder().daemon(false).namingPattern("BuildCraft Dependant Worker Thread %d").build();
         DEPENDANT_WORKING_POOL = new ThreadPoolExecutor(0, max, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), factory, rejectHandler);
@@ -56,19 +58,43 @@ public class WorkerThreadUtil {
      * gone wrong, and will notify the log that a task took too long. If it goes on for longer than 10s then it will
      * make a big error in the log. */
     public static <T> Future<T> executeWorkTask(Callable<T> task) {
-        Class<?> taskClass = task.getClass();
-        if (task instanceof CallableDelegate) {
-            taskClass = ((CallableDelegate) task).getRealClass();
+        Future<T> future = tryExecuteWorkTask(task);
+        if (future == null) {
+            // Every worker thread is busy, so just run it on this thread
+            FutureTask<T> futureTask = new FutureTask<>(createTask(task));
+            futureTask.run();
+            return futureTask;
+        }
+        return future;
+    }
+
+    /** Executes a task in the same way as {@link #executeWorkTask(Callable)}, except that if every worker thread is
+     * busy then this returns null rather than running the task on the calling thread. Use this from the main thread
+     * for work that can simply be tried again later.
+     * 
+     * @return The future for the task, or null if it wasn't started. */
+    public static <T> Future<T> tryExecuteWorkTask(Callable<T> task) {
+        Task<T> taskMonitor = createTask(task);
+        Future<T> future;
+        try {
+            future = WORKING_POOL.submit(taskMonitor);
+        } catch (RejectedExecutionException e) {
+            return null;
         }
-        String taskType = taskClass.getSimpleName();
-        Task<T> taskMonitor = new Task<>(task, taskType);
-        Future<T> future = WORKING_POOL.submit(taskMonitor);
         if (!future.isDone()) {
             executeMonitoringTask(new MonitorTask(taskMonitor, future));
         }
         return future;
     }
 
+    private static <T> Task<T> createTask(Callable<T> task) {
+        Class<?> taskClass = task.getClass();
+        if (task instanceof CallableDelegate) {
+            taskClass = ((CallableDelegate) task).getRealClass();
+        }
+        return new Task<>(task, taskClass.getSimpleName());
+    }
+
     public static <T> T executeWorkTaskWaiting(Callable<T> task) throws InterruptedException {
         try {
             return executeWorkTask(task).get();
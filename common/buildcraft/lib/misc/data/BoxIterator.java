@@ -120,22 +120,49 @@ public class BoxIterator implements Iterator<BlockPos> {
                     order = order.invertSecond();
                 }
                 current = replace(current, order.second);
-                current = increment(current, order.third);
-                if (shouldReset(current, order.third)) {
-                    if (repeat) {
-                        if (invert) {
-                            order = order.invertThird();
-                        }
-                        current = replace(current, order.third);
-                    } else {
-                        current = null;
-                    }
-                }
+                incrementThird();
+            }
+        }
+        return getCurrent();
+    }
+
+    /** Skips the rest of the current plane (every position with the same value on the third axis as the current one).
+     * This is the same as calling {@link #advance()} until the value on the third axis changes, but doesn't have to
+     * step through every position in between. */
+    public BlockPos skipPlane() {
+        if (current == null) {
+            return null;
+        }
+        if (invert) {
+            // The first axis is inverted once at the end of every row, and the second once at the end of the plane
+            BlockPos end = order.second.getAxisDirection() == AxisDirection.POSITIVE ? max : min;
+            int rowsLeft = Math.abs(VecUtil.getValue(end, order.second.getAxis())
+                - VecUtil.getValue(current, order.second.getAxis())) + 1;
+            if (rowsLeft % 2 == 1) {
+                order = order.invertFirst();
             }
+            order = order.invertSecond();
         }
+        current = replace(current, order.first);
+        current = replace(current, order.second);
+        incrementThird();
         return getCurrent();
     }
 
+    private void incrementThird() {
+        current = increment(current, order.third);
+        if (shouldReset(current, order.third)) {
+            if (repeat) {
+                if (invert) {
+                    order = order.invertThird();
+                }
+                current = replace(current, order.third);
+            } else {
+                current = null;
+            }
+        }
+    }
+
     private static BlockPos increment(BlockPos pos, EnumFacing facing) {
         int diff = facing.getAxisDirection().getOffset();
         int value = VecUtil.getValue(pos, facing.getAxis()) + diff;
@@ -1,54 +1,109 @@
 package buildcraft.lib.misc.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.function.Supplier;
-
-import com.google.common.collect.ImmutableList;
+import java.util.function.Consumer;
 
 /** Implements a delayed list of something- stuff that can be postponed for later retrieval. A specialised ordered queue
- * really. */
+ * really.
+ * <p>
+ * Internally this is a timing wheel: a ring of slots, one per tick of delay, where every slot is a linked list of
+ * indices into a flat array of elements. Advancing only unlinks the slot at the head of the ring and moves the head
+ * along by one, and the element cells are recycled through a free list. This means that {@link #add(int, Object)}
+ * doesn't allocate anything once the arrays have grown large enough, and {@link #advance()} only allocates the list
+ * that it returns. */
 public class DelayedList<E> {
-    protected final List<List<E>> elements;
-    private final Supplier<List<E>> innerListSupplier;
+    private static final int DEFAULT_SLOTS = 8;
+    private static final int DEFAULT_CELLS = 4;
 
-    public DelayedList() {
-        this(new ArrayList<>(), ArrayList::new);
-    }
+    /** The first and last cell in each slot of the ring, or -1 if the slot is empty. The length is always a power of
+     * two. */
+    private int[] slotFirst, slotLast;
+    private int slotMask;
+    /** The slot that holds the elements with a delay of 0. */
+    private int head;
+    /** One more than the highest delay that has been added (and not yet advanced past) */
+    private int span;
+
+    /** The element held by each cell. */
+    private Object[] cellValues;
+    /** The cell after each cell in the same slot, or the next free cell for free cells. -1 marks the end. */
+    private int[] cellNext;
+    /** The number of cells that have ever been used. Every cell at or above this index is free. */
+    private int cellsUsed;
+    private int freeCell = -1;
+
+    public DelayedList() {}
 
     public static <E> DelayedList<E> createConcurrent() {
-        return new DelayedList<E>(Collections.synchronizedList(new ArrayList<>()), () -> {
-            return Collections.synchronizedList(new ArrayList<>());
-        }) {
+        return new DelayedList<E>() {
             @Override
-            public List<E> advance() {
-                synchronized (this.elements) {
-                    return super.advance();
-                }
+            public synchronized int getMaxDelay() {
+                return super.getMaxDelay();
+            }
+
+            @Override
+            public synchronized List<E> advance() {
+                return super.advance();
+            }
+
+            @Override
+            public synchronized void add(int delay, E element) {
+                super.add(delay, element);
+            }
+
+            @Override
+            public synchronized List<List<E>> getAllElements() {
+                return super.getAllElements();
             }
-        };
-    }
 
-    private DelayedList(List<List<E>> actualList, Supplier<List<E>> innerList) {
-        elements = actualList;
-        innerListSupplier = innerList;
+            @Override
+            public synchronized void forEach(Consumer<? super E> consumer) {
+                super.forEach(consumer);
+            }
+
+            @Override
+            public synchronized void clear() {
+                super.clear();
+            }
+        };
     }
 
     /** @return The maximum delay value that any of the elements has. */
     public int getMaxDelay() {
-        return elements.size();
+        return span;
     }
 
     /** Advances this list by one, essentially decrementing the delays of every element by one and returning all
      * elements that have a delay of 0.
-     * 
+     * <p>
+     * The returned list is a new list (or an immutable empty list) that is owned by the caller, so it is safe to call
+     * any method on this while iterating over it, even from another thread.
+     *
      * @return The elements that are no longer on a delay. */
+    @SuppressWarnings("unchecked")
     public List<E> advance() {
-        if (elements.isEmpty()) {
-            return ImmutableList.of();
+        if (span == 0) {
+            // Nothing is waiting, so there is no need to move the ring
+            return Collections.emptyList();
+        }
+        List<E> output = slotFirst[head] == -1 ? Collections.emptyList() : new ArrayList<>();
+        int cell = slotFirst[head];
+        while (cell != -1) {
+            output.add((E) cellValues[cell]);
+            cellValues[cell] = null;
+            int next = cellNext[cell];
+            cellNext[cell] = freeCell;
+            freeCell = cell;
+            cell = next;
         }
-        return elements.remove(0);
+        slotFirst[head] = -1;
+        slotLast[head] = -1;
+        head = (head + 1) & slotMask;
+        span--;
+        return output;
     }
 
     /** Adds an element that will by returned by {@link #advance()} after it has been called delay times. */
@@ -56,18 +111,114 @@ public class DelayedList<E> {
         if (delay < 0) {
             delay = 0;
         }
-        while (elements.size() < delay + 1) {
-            elements.add(innerListSupplier.get());
+        if (slotFirst == null) {
+            int size = DEFAULT_SLOTS;
+            while (size <= delay) {
+                size <<= 1;
+            }
+            slotFirst = new int[size];
+            slotLast = new int[size];
+            Arrays.fill(slotFirst, -1);
+            Arrays.fill(slotLast, -1);
+            slotMask = size - 1;
+            cellValues = new Object[DEFAULT_CELLS];
+            cellNext = new int[DEFAULT_CELLS];
+        } else if (delay >= slotFirst.length) {
+            growSlots(delay + 1);
+        }
+
+        int cell = allocateCell();
+        cellValues[cell] = element;
+        cellNext[cell] = -1;
+
+        int slot = (head + delay) & slotMask;
+        int last = slotLast[slot];
+        if (last == -1) {
+            slotFirst[slot] = cell;
+        } else {
+            cellNext[last] = cell;
+        }
+        slotLast[slot] = cell;
+
+        if (delay >= span) {
+            span = delay + 1;
         }
-        elements.get(delay).add(element);
     }
 
-    /** @return The inner data structure used to hold the elements. Most useful for saving the elements for later. */
+    private int allocateCell() {
+        if (freeCell != -1) {
+            int cell = freeCell;
+            freeCell = cellNext[cell];
+            return cell;
+        }
+        if (cellsUsed == cellValues.length) {
+            int newLength = cellsUsed * 2;
+            cellValues = Arrays.copyOf(cellValues, newLength);
+            cellNext = Arrays.copyOf(cellNext, newLength);
+        }
+        return cellsUsed++;
+    }
+
+    private void growSlots(int minSize) {
+        int oldSize = slotFirst.length;
+        int newSize = oldSize;
+        while (newSize < minSize) {
+            newSize <<= 1;
+        }
+        int[] newFirst = new int[newSize];
+        int[] newLast = new int[newSize];
+        Arrays.fill(newFirst, oldSize, newSize, -1);
+        Arrays.fill(newLast, oldSize, newSize, -1);
+        for (int i = 0; i < oldSize; i++) {
+            int from = (head + i) & slotMask;
+            newFirst[i] = slotFirst[from];
+            newLast[i] = slotLast[from];
+        }
+        slotFirst = newFirst;
+        slotLast = newLast;
+        slotMask = newSize - 1;
+        head = 0;
+    }
+
+    /** @return A copy of every element, grouped into lists by delay. Most useful for saving the elements for later. */
+    @SuppressWarnings("unchecked")
     public List<List<E>> getAllElements() {
-        return elements;
+        List<List<E>> all = new ArrayList<>(span);
+        for (int i = 0; i < span; i++) {
+            List<E> list = new ArrayList<>();
+            int cell = slotFirst[(head + i) & slotMask];
+            while (cell != -1) {
+                list.add((E) cellValues[cell]);
+                cell = cellNext[cell];
+            }
+            all.add(list);
+        }
+        return all;
+    }
+
+    /** Calls the given consumer with every element, from the lowest delay to the highest. Unlike
+     * {@link #getAllElements()} this doesn't copy anything. */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> consumer) {
+        for (int i = 0; i < span; i++) {
+            int cell = slotFirst[(head + i) & slotMask];
+            while (cell != -1) {
+                consumer.accept((E) cellValues[cell]);
+                cell = cellNext[cell];
+            }
+        }
     }
 
     public void clear() {
-        elements.clear();
+        if (slotFirst == null) {
+            return;
+        }
+        Arrays.fill(slotFirst, -1);
+        Arrays.fill(slotLast, -1);
+        Arrays.fill(cellValues, null);
+        cellsUsed = 0;
+        freeCell = -1;
+        head = 0;
+        span = 0;
     }
 }
@@ -0,0 +1,142 @@
+package buildcraft.lib.misc.data;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** A binary min-heap of int ids, each with an int key, that doesn't box anything. Ids must be between 0 and the
+ * current capacity (which grows as needed), and each id can only be in the heap once: adding an id that is already in
+ * the heap changes its key instead. */
+public class IntBinaryHeap {
+    private int[] heap;
+    private int size;
+    /** The key of each id. */
+    private int[] keys;
+    /** The index in {@link #heap} of each id, or -1 if the id isn't in the heap. */
+    private int[] positions;
+
+    public IntBinaryHeap(int capacity) {
+        capacity = Math.max(capacity, 16);
+        heap = new int[capacity];
+        keys = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return id < positions.length && positions[id] >= 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /** Adds the given id, or changes its key if it is already in the heap. */
+    public void put(int id, int key) {
+        ensureCapacity(id + 1);
+        int pos = positions[id];
+        if (pos < 0) {
+            pos = size++;
+            heap[pos] = id;
+            positions[id] = pos;
+            keys[id] = key;
+            siftUp(pos);
+        } else {
+            int old = keys[id];
+            keys[id] = key;
+            if (key < old) {
+                siftUp(pos);
+            } else if (key > old) {
+                siftDown(pos);
+            }
+        }
+    }
+
+    /** @return The id with the smallest key, without removing it. */
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return heap[0];
+    }
+
+    /** Removes the id with the smallest key.
+     *
+     * @return The removed id. */
+    public int poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int id = heap[0];
+        positions[id] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > positions.length) {
+            int newCapacity = Math.max(capacity, positions.length * 2);
+            int oldLength = positions.length;
+            heap = Arrays.copyOf(heap, newCapacity);
+            keys = Arrays.copyOf(keys, newCapacity);
+            positions = Arrays.copyOf(positions, newCapacity);
+            Arrays.fill(positions, oldLength, newCapacity, -1);
+        }
+    }
+
+    private void siftUp(int pos) {
+        int id = heap[pos];
+        int key = keys[id];
+        while (pos > 0) {
+            int parentPos = (pos - 1) >>> 1;
+            int parent = heap[parentPos];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[pos] = parent;
+            positions[parent] = pos;
+            pos = parentPos;
+        }
+        heap[pos] = id;
+        positions[id] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int id = heap[pos];
+        int key = keys[id];
+        int half = size >>> 1;
+        while (pos < half) {
+            int childPos = 2 * pos + 1;
+            int child = heap[childPos];
+            int rightPos = childPos + 1;
+            if (rightPos < size && keys[heap[rightPos]] < keys[child]) {
+                childPos = rightPos;
+                child = heap[childPos];
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            heap[pos] = child;
+            positions[child] = pos;
+            pos = childPos;
+        }
+        heap[pos] = id;
+        positions[id] = pos;
+    }
+}
@@ -0,0 +1,259 @@
+package buildcraft.lib.misc.data;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongConsumer;
+
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagIntArray;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.math.BlockPos;
+
+import net.minecraftforge.common.util.Constants;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/** A queue of block positions, split up into one double ended queue for each y level. Positions are stored as
+ * {@link BlockPos#toLong()}, so this doesn't create any objects per position, and any position can be removed in
+ * constant time.
+ * <p>
+ * Removed positions are only actually taken out of their layer's queue when they reach one of its ends (or when too
+ * much of the queue is made up of removed positions), in the same way as {@link java.util.PriorityQueue}s are used in
+ * other places. Every add is given a new stamp, so a position that is removed and then added again is never found in
+ * its old place. */
+public class PositionLayerQueue {
+    private final TreeMap<Integer, Layer> layers = new TreeMap<>();
+    /** The stamp of every position in this queue. */
+    private final TLongIntHashMap members = new TLongIntHashMap();
+    private int nextStamp = 1;
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public boolean contains(BlockPos pos) {
+        return members.containsKey(pos.toLong());
+    }
+
+    public void clear() {
+        layers.clear();
+        members.clear();
+    }
+
+    /** Adds the given position to the end of its layer, if it isn't already in this queue.
+     *
+     * @return True if the position was added. */
+    public boolean add(BlockPos pos) {
+        long key = pos.toLong();
+        if (members.containsKey(key)) {
+            return false;
+        }
+        int stamp = nextStamp++;
+        members.put(key, stamp);
+        layers.computeIfAbsent(pos.getY(), y -> new Layer()).addLast(key, stamp);
+        return true;
+    }
+
+    /** Adds the given position to the start of its layer, if it isn't already in this queue.
+     *
+     * @return True if the position was added. */
+    public boolean addFirst(BlockPos pos) {
+        long key = pos.toLong();
+        if (members.containsKey(key)) {
+            return false;
+        }
+        int stamp = nextStamp++;
+        members.put(key, stamp);
+        layers.computeIfAbsent(pos.getY(), y -> new Layer()).addFirst(key, stamp);
+        return true;
+    }
+
+    /** @return True if the position was in this queue. */
+    public boolean remove(BlockPos pos) {
+        if (members.remove(pos.toLong()) == 0) {
+            return false;
+        }
+        Layer layer = layers.get(pos.getY());
+        layer.live--;
+        if (layer.live == 0) {
+            layers.remove(pos.getY());
+        } else {
+            layer.compactIfNeeded(members);
+        }
+        return true;
+    }
+
+    /** @return The lowest y level that has any positions in it, or {@link Integer#MIN_VALUE} if this is empty. */
+    public int getBottomLayer() {
+        return layers.isEmpty() ? Integer.MIN_VALUE : layers.firstKey();
+    }
+
+    /** @return The highest y level that has any positions in it, or {@link Integer#MIN_VALUE} if this is empty. */
+    public int getTopLayer() {
+        return layers.isEmpty() ? Integer.MIN_VALUE : layers.lastKey();
+    }
+
+    /** @return The number of positions in the given layer. */
+    public int getLayerSize(int y) {
+        Layer layer = layers.get(y);
+        return layer == null ? 0 : layer.live;
+    }
+
+    /** Removes the first position added to the given layer.
+     *
+     * @return The removed position, or null if the layer was empty. */
+    public BlockPos pollFirst(int y) {
+        Layer layer = layers.get(y);
+        if (layer == null) {
+            return null;
+        }
+        int slot;
+        do {
+            slot = layer.head++;
+        } while (!layer.isLive(slot, members));
+        return removePolled(y, layer, layer.array[slot]);
+    }
+
+    /** Removes the last position added to the given layer.
+     *
+     * @return The removed position, or null if the layer was empty. */
+    public BlockPos pollLast(int y) {
+        Layer layer = layers.get(y);
+        if (layer == null) {
+            return null;
+        }
+        int slot;
+        do {
+            slot = --layer.tail;
+        } while (!layer.isLive(slot, members));
+        return removePolled(y, layer, layer.array[slot]);
+    }
+
+    private BlockPos removePolled(int y, Layer layer, long key) {
+        members.remove(key);
+        layer.live--;
+        if (layer.live == 0) {
+            layers.remove(y);
+        }
+        return BlockPos.fromLong(key);
+    }
+
+    /** Calls the given consumer with every position (as a long) in the given layer, from first to last. */
+    public void forEachInLayer(int y, LongConsumer consumer) {
+        Layer layer = layers.get(y);
+        if (layer != null) {
+            layer.forEachLive(members, consumer);
+        }
+    }
+
+    /** @return Every y level that has any positions in it, in ascending order. */
+    public Iterable<Integer> getLayers() {
+        return layers.keySet();
+    }
+
+    /** Writes every position, relative to the given origin. Positions are stored as the x and z offsets (which must be
+     * in -128 to 127) and the y level (0 to 255), packed into a single int. */
+    public NBTTagCompound writeToNbt(BlockPos origin) {
+        NBTTagList list = new NBTTagList();
+        for (Map.Entry<Integer, Layer> entry : layers.entrySet()) {
+            TIntArrayList packed = new TIntArrayList(entry.getValue().live);
+            entry.getValue().forEachLive(members, key -> {
+                BlockPos pos = BlockPos.fromLong(key);
+                int dx = pos.getX() - origin.getX();
+                int dz = pos.getZ() - origin.getZ();
+                packed.add(((dx & 0xFF) << 16) | ((dz & 0xFF) << 8) | (pos.getY() & 0xFF));
+            });
+            list.appendTag(new NBTTagIntArray(packed.toArray()));
+        }
+        NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setTag("layers", list);
+        return nbt;
+    }
+
+    public void readFromNbt(NBTTagCompound nbt, BlockPos origin) {
+        clear();
+        NBTTagList list = nbt.getTagList("layers", Constants.NBT.TAG_INT_ARRAY);
+        for (int i = 0; i < list.tagCount(); i++) {
+            for (int packed : list.getIntArrayAt(i)) {
+                int dx = (byte) (packed >> 16);
+                int dz = (byte) (packed >> 8);
+                int y = packed & 0xFF;
+                add(new BlockPos(origin.getX() + dx, y, origin.getZ() + dz));
+            }
+        }
+    }
+
+    private static class Layer {
+        long[] array = new long[16];
+        /** The stamp that each position had when it was added here. */
+        int[] stamps = new int[16];
+        int head, tail;
+        /** The number of positions between {@link #head} and {@link #tail} that are still in the queue. */
+        int live;
+
+        boolean isLive(int slot, TLongIntHashMap members) {
+            return members.get(array[slot]) == stamps[slot];
+        }
+
+        void addLast(long key, int stamp) {
+            if (tail == array.length) {
+                // Move everything to the start, growing if there isn't much space there
+                resize(head > array.length / 2 ? array.length : array.length * 2, 0);
+            }
+            array[tail] = key;
+            stamps[tail++] = stamp;
+            live++;
+        }
+
+        void addFirst(long key, int stamp) {
+            if (head == 0) {
+                int newLength = array.length * 2;
+                // Leave as much space at the start as there is at the end
+                resize(newLength, (newLength - (tail - head)) / 2);
+            }
+            array[--head] = key;
+            stamps[head] = stamp;
+            live++;
+        }
+
+        private void resize(int newLength, int newHead) {
+            int size = tail - head;
+            long[] newArray = newLength == array.length ? array : new long[newLength];
+            int[] newStamps = newLength == stamps.length ? stamps : new int[newLength];
+            System.arraycopy(array, head, newArray, newHead, size);
+            System.arraycopy(stamps, head, newStamps, newHead, size);
+            array = newArray;
+            stamps = newStamps;
+            head = newHead;
+            tail = newHead + size;
+        }
+
+        void forEachLive(TLongIntHashMap members, LongConsumer consumer) {
+            for (int i = head; i < tail; i++) {
+                if (isLive(i, members)) {
+                    consumer.accept(array[i]);
+                }
+            }
+        }
+
+        /** Throws away every removed position, if they make up most of this layer. */
+        void compactIfNeeded(TLongIntHashMap members) {
+            if (tail - head <= live * 2 + 64) {
+                return;
+            }
+            int to = head;
+            for (int i = head; i < tail; i++) {
+                if (isLive(i, members)) {
+                    array[to] = array[i];
+                    stamps[to++] = stamps[i];
+                }
+            }
+            tail = to;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package buildcraft.lib.nbt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import buildcraft.api.data.NBTSquishConstants;
+
+/** The ways that {@link NbtSquisher} can compress the output of {@link NBTSquishConstants#BUILDCRAFT_V1}.
+ * <p>
+ * Every compressed codec writes plain gzip (the level only changes how hard the compressor tries) so anything written
+ * with one of them can be read by {@link NbtSquisher#expand(byte[])}, and by any other gzip library. */
+public enum NbtSquishCodec {
+    /** Doesn't compress at all. This is the fastest, and is best when the output is going to be compressed again
+     * anyway (for example a zip file or a network connection that compresses). */
+    NONE(NBTSquishConstants.BUILDCRAFT_V1, -1),
+    /** Deflate level 1: much faster than {@link #DEFAULT}, and usually only a little bit bigger. */
+    FAST(NBTSquishConstants.BUILDCRAFT_V1_COMPRESSED, Deflater.BEST_SPEED),
+    DEFAULT(NBTSquishConstants.BUILDCRAFT_V1_COMPRESSED, Deflater.DEFAULT_COMPRESSION),
+    /** Deflate level 9: only worth it for things that are written once and stored for a long time. */
+    BEST(NBTSquishConstants.BUILDCRAFT_V1_COMPRESSED, Deflater.BEST_COMPRESSION);
+
+    /** The type that is written as the first byte. */
+    public final int writtenType;
+    private final int level;
+
+    NbtSquishCodec(int writtenType, int level) {
+        this.writtenType = writtenType;
+        this.level = level;
+    }
+
+    public boolean isCompressed() {
+        return level != -1;
+    }
+
+    /** Wraps the given stream in a compressor for this codec. The returned stream must be closed to finish off the
+     * compressed data, which will also close the given stream. */
+    OutputStream wrap(OutputStream out) throws IOException {
+        if (!isCompressed()) {
+            return out;
+        }
+        return new GZIPOutputStream(out, 8192) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+}
@@ -1,10 +1,8 @@
 package buildcraft.lib.nbt;
 
 import java.io.*;
+import java.nio.channels.WritableByteChannel;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-
-import org.apache.commons.io.IOUtils;
 
 import net.minecraft.nbt.CompressedStreamTools;
 import net.minecraft.nbt.NBTBase;
@@ -13,6 +11,9 @@ import net.minecraft.nbt.NBTTagCompound;
 import buildcraft.api.data.NBTSquishConstants;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
 public class NbtSquisher {
@@ -63,76 +64,136 @@ public class NbtSquisher {
     }
 
     public static byte[] squishBuildCraftV1(NBTTagCompound nbt) {
-        byte[] bytes = squishBuildCraftV1_Internal(nbt, false);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        baos.write(NBTSquishConstants.BUILDCRAFT_V1_COMPRESSED);
-        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
-            gzip.write(bytes);
+        return squishBuildCraftV1(nbt, NbtSquishCodec.DEFAULT);
+    }
+
+    public static byte[] squishBuildCraftV1Uncompressed(NBTTagCompound nbt) {
+        return squishBuildCraftV1(nbt, NbtSquishCodec.NONE);
+    }
+
+    public static byte[] squishBuildCraftV1(NBTTagCompound nbt, NbtSquishCodec codec) {
+        ByteBuf buf = Unpooled.buffer();
+        squishBuildCraftV1(nbt, codec, buf);
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    /** Writes the given tag (including the type byte) straight into the given buffer. If the codec compresses then
+     * the uncompressed form is written into a pooled buffer first, and then compressed directly into the given
+     * buffer. */
+    public static void squishBuildCraftV1(NBTTagCompound nbt, NbtSquishCodec codec, ByteBuf out) {
+        out.writeByte(codec.writtenType);
+        if (!codec.isCompressed()) {
+            writeMap(nbt, out);
+            return;
+        }
+        ByteBuf raw = PooledByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            writeMap(nbt, raw);
+            try (OutputStream compressor = codec.wrap(new ByteBufOutputStream(out))) {
+                raw.readBytes(compressor, raw.readableBytes());
+            }
         } catch (IOException e) {
-            throw new RuntimeException("Failed to compress a perfectly good ByteArrayOutputStream!", e);
+            throw new RuntimeException("Failed to compress a perfectly good ByteBuf!", e);
+        } finally {
+            raw.release();
         }
-        return baos.toByteArray();
     }
 
-    public static byte[] squishBuildCraftV1Uncompressed(NBTTagCompound nbt) {
-        return squishBuildCraftV1_Internal(nbt, true);
+    /** Writes the given tag (including the type byte) to the given channel. This doesn't close the channel. */
+    public static void squishBuildCraftV1(NBTTagCompound nbt, NbtSquishCodec codec, WritableByteChannel channel) throws IOException {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
+        try {
+            squishBuildCraftV1(nbt, codec, buf);
+            while (buf.isReadable()) {
+                buf.readBytes(channel, buf.readableBytes());
+            }
+        } finally {
+            buf.release();
+        }
     }
 
-    private static byte[] squishBuildCraftV1_Internal(NBTTagCompound nbt, boolean writeId) {
+    private static void writeMap(NBTTagCompound nbt, ByteBuf out) {
         NBTSquishMap map = new NBTSquishMap();
         map.addTag(nbt);
-        ByteBuf buf = Unpooled.buffer();
+        ByteBuf buf = out;
         if (NBTSquishDebugging.debug) {
             buf = new PrintingByteBuf(buf);
         }
 
-        if (writeId) {
-            buf.writeByte(NBTSquishConstants.BUILDCRAFT_V1);
-        }
-
         NBTSquishMapWriter.write(map, buf);
         WrittenType type = map.getWrittenType();
         type.writeIndex(buf, map.indexOfTag(nbt));
         NBTSquishDebugging.log("\nUsed type " + type + " (as there are " + map.size() + " object types)");
-        byte[] bytes = new byte[buf.readableBytes()];
-        buf.readBytes(bytes);
-        return bytes;
     }
 
     public static NBTTagCompound expand(byte[] bytes) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-        int nbtWrittenType = bais.read();
-        if (nbtWrittenType == NBTSquishConstants.BUILDCRAFT_V1 || nbtWrittenType == NBTSquishConstants.BUILDCRAFT_V1_COMPRESSED) {
-
-            ByteBuf buf;
-            if (nbtWrittenType == NBTSquishConstants.BUILDCRAFT_V1_COMPRESSED) {
-                try (GZIPInputStream gzip = new GZIPInputStream(bais)) {
-                    buf = Unpooled.wrappedBuffer(IOUtils.toByteArray(gzip));
-                }
-            } else {
-                buf = Unpooled.wrappedBuffer(bytes);
-                buf.readByte();
-            }
+        return expand(Unpooled.wrappedBuffer(bytes));
+    }
+
+    /** Reads a tag written by any of the squish methods from the given buffer. Uncompressed BuildCraft tags are read
+     * in place, without copying the buffer. Compressed tags are assumed to take up the rest of the buffer. */
+    public static NBTTagCompound expand(ByteBuf buf) throws IOException {
+        if (!buf.isReadable()) {
+            throw new IOException("The byte buf was empty!");
+        }
+        int nbtWrittenType = buf.readUnsignedByte();
+        if (nbtWrittenType == NBTSquishConstants.BUILDCRAFT_V1) {
+            return readMap(buf);
+        }
+        return expand(nbtWrittenType, new ByteBufInputStream(buf));
+    }
+
+    /** Reads a tag written by any of the squish methods from the given stream. This reads until the end of the
+     * stream. */
+    public static NBTTagCompound expand(InputStream in) throws IOException {
+        return expand(in.read(), in);
+    }
 
-            try {
-                NBTSquishMap map = NBTSquishMapReader.read(buf);
-                WrittenType type = map.getWrittenType();
-                int index = type.readIndex(buf);
-                NBTBase nbt = map.getTagForReading(index);
-                return (NBTTagCompound) nbt;
-            } catch (IndexOutOfBoundsException ioobe) {
-                throw new IOException("The byte buf was not big enough!", ioobe);
+    private static NBTTagCompound expand(int nbtWrittenType, InputStream in) throws IOException {
+        if (nbtWrittenType == NBTSquishConstants.BUILDCRAFT_V1) {
+            return readMap(in);
+        }
+        if (nbtWrittenType == NBTSquishConstants.BUILDCRAFT_V1_COMPRESSED) {
+            try (GZIPInputStream gzip = new GZIPInputStream(in)) {
+                return readMap(gzip);
             }
         }
         if (nbtWrittenType == NBTSquishConstants.VANILLA) {
 
-            return CompressedStreamTools.read(new DataInputStream(bais));
+            return CompressedStreamTools.read(new DataInputStream(in));
         }
         if (nbtWrittenType == NBTSquishConstants.VANILLA_COMPRESSED) {
 
-            return CompressedStreamTools.readCompressed(new DataInputStream(bais));
+            return CompressedStreamTools.readCompressed(in);
         } else {
             throw new IOException("Unknown NBT storage type " + nbtWrittenType);
         }
     }
+
+    /** Reads the rest of the stream into a pooled buffer, and then reads the tag from that. */
+    private static NBTTagCompound readMap(InputStream in) throws IOException {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            while (buf.writeBytes(in, 8192) != -1) {
+                // Keep reading until the end of the stream
+            }
+            return readMap(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static NBTTagCompound readMap(ByteBuf buf) throws IOException {
+        try {
+            NBTSquishMap map = NBTSquishMapReader.read(buf);
+            WrittenType type = map.getWrittenType();
+            int index = type.readIndex(buf);
+            NBTBase nbt = map.getTagForReading(index);
+            return (NBTTagCompound) nbt;
+        } catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException("The byte buf was not big enough!", ioobe);
+        }
+    }
 }
@@ -0,0 +1,215 @@
+package buildcraft.lib.net;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.Packet;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import buildcraft.lib.misc.MessageUtil;
+import buildcraft.lib.net.cache.BuildCraftObjectCaches;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/** Collects tile payloads on the server over a tick, and then sends a single {@link MessageUpdateTileBatch} per chunk
+ * (to every player watching that chunk) at the end of the tick, instead of one {@link MessageUpdateTile} per payload.
+ * If a chunk's payloads add up to more than {@link #MAX_BATCH_BYTES} then they are split up over several batches.
+ * <p>
+ * The writers are only called when the batch is sent, so tiles that queue up lots of small updates in the same tick
+ * can merge them into a single writer.
+ * <p>
+ * Payloads that are only meant for a single player (for example ones that depend on what that player was sent before)
+ * can be queued with {@link #queueTo(EntityPlayerMP, World, BlockPos, IPayloadWriter)}. Chunks with any of those are
+ * sent as a separate batch to every player, which contains the shared payloads and that player's own in the order
+ * they were queued.
+ * <p>
+ * Anything that sends a tile message immediately must call {@link #flushPos(World, BlockPos)} first, so that the
+ * client receives that tile's messages in the same order as they were sent. */
+public class MessageBatcher {
+    /** The (uncompressed) size that a batch is split at. Single payloads larger than this are still sent on their
+     * own. */
+    public static final int MAX_BATCH_BYTES = 32_768;
+
+    private static final Map<World, TLongObjectHashMap<ChunkBatch>> QUEUED = new HashMap<>();
+
+    /** Queues up a payload (which must start with the id, as in {@link MessageUpdateTile}) to be sent at the end of
+     * this tick. Must only be called on the server thread. */
+    public static void queue(World world, BlockPos pos, IPayloadWriter writer) {
+        queue(world, pos, new Entry(pos, writer, null));
+    }
+
+    /** Queues up a payload (which must start with the id, as in {@link MessageUpdateTile}) to be sent to a single
+     * player at the end of this tick. Must only be called on the server thread. */
+    public static void queueTo(EntityPlayerMP player, World world, BlockPos pos, IPayloadWriter writer) {
+        queue(world, pos, new Entry(pos, writer, player));
+    }
+
+    private static void queue(World world, BlockPos pos, Entry entry) {
+        TLongObjectHashMap<ChunkBatch> chunks = QUEUED.computeIfAbsent(world, w -> new TLongObjectHashMap<>());
+        long chunkKey = chunkKey(pos.getX() >> 4, pos.getZ() >> 4);
+        ChunkBatch batch = chunks.get(chunkKey);
+        if (batch == null) {
+            batch = new ChunkBatch();
+            chunks.put(chunkKey, batch);
+        }
+        batch.entries.add(entry);
+        batch.positions.add(pos);
+        if (entry.player != null) {
+            batch.hasPlayerEntries = true;
+        }
+    }
+
+    /** Immediately sends every queued payload in the chunk of the given position, if any of them were queued by the
+     * tile at that position. */
+    public static void flushPos(World world, BlockPos pos) {
+        TLongObjectHashMap<ChunkBatch> chunks = QUEUED.get(world);
+        if (chunks == null) {
+            return;
+        }
+        long chunkKey = chunkKey(pos.getX() >> 4, pos.getZ() >> 4);
+        ChunkBatch batch = chunks.get(chunkKey);
+        if (batch != null && batch.positions.contains(pos)) {
+            chunks.remove(chunkKey);
+            sendChunk(world, chunkKey, batch);
+        }
+    }
+
+    /** Sends off every queued payload. Called at the end of every server tick. */
+    public static void flush() {
+        if (QUEUED.isEmpty()) {
+            return;
+        }
+        // Copy the queue in case any of the writers queue up more payloads
+        Map<World, TLongObjectHashMap<ChunkBatch>> toSend = new HashMap<>(QUEUED);
+        QUEUED.clear();
+        for (Map.Entry<World, TLongObjectHashMap<ChunkBatch>> worldEntry : toSend.entrySet()) {
+            World world = worldEntry.getKey();
+            worldEntry.getValue().forEachEntry((chunkKey, batch) -> {
+                sendChunk(world, chunkKey, batch);
+                return true;
+            });
+        }
+    }
+
+    private static void sendChunk(World world, long chunkKey, ChunkBatch batch) {
+        int chunkX = (int) (chunkKey >> 32);
+        int chunkZ = (int) chunkKey;
+        if (batch.hasPlayerEntries) {
+            sendChunkPerPlayer(world, chunkX, chunkZ, batch.entries);
+            return;
+        }
+        List<Entry> entries = batch.entries;
+        PacketBufferBC payload = new PacketBufferBC(Unpooled.buffer());
+        ByteBuf body = Unpooled.buffer();
+        PacketBufferBC bodyBuffer = new PacketBufferBC(body);
+        int count = 0;
+        BuildCraftObjectCaches.startRecording();
+        for (Entry entry : entries) {
+            payload.clear();
+            entry.writer.write(payload);
+            if (count > 0 && body.readableBytes() + payload.readableBytes() > MAX_BATCH_BYTES) {
+                sendBatch(world, chunkX, chunkZ, count, body);
+                BuildCraftObjectCaches.startRecording();
+                body.clear();
+                count = 0;
+            }
+            bodyBuffer.writeVarInt(MessageUpdateTileBatch.packLocalPos(entry.pos));
+            bodyBuffer.writeVarInt(payload.readableBytes());
+            bodyBuffer.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+            count++;
+        }
+        sendBatch(world, chunkX, chunkZ, count, body);
+    }
+
+    /** Sends a chunk that has payloads for specific players. Every payload is still only written once, but each
+     * player is sent their own batches. */
+    private static void sendChunkPerPlayer(World world, int chunkX, int chunkZ, List<Entry> entries) {
+        BuildCraftObjectCaches.startRecording();
+        List<ByteBuf> payloads = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            PacketBufferBC payload = new PacketBufferBC(Unpooled.buffer());
+            entry.writer.write(payload);
+            payloads.add(payload);
+        }
+        ByteBuf body = Unpooled.buffer();
+        PacketBufferBC bodyBuffer = new PacketBufferBC(body);
+        MessageUtil.forAllWatching(world, new BlockPos(chunkX << 4, 0, chunkZ << 4), player -> {
+            BuildCraftObjectCaches.sendRecorded(player);
+            body.clear();
+            int count = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                if (entry.player != null && entry.player != player) {
+                    continue;
+                }
+                ByteBuf payload = payloads.get(i);
+                if (count > 0 && body.readableBytes() + payload.readableBytes() > MAX_BATCH_BYTES) {
+                    player.connection.sendPacket(createBatchPacket(chunkX, chunkZ, count, body));
+                    body.clear();
+                    count = 0;
+                }
+                bodyBuffer.writeVarInt(MessageUpdateTileBatch.packLocalPos(entry.pos));
+                bodyBuffer.writeVarInt(payload.readableBytes());
+                bodyBuffer.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+                count++;
+            }
+            if (count > 0) {
+                player.connection.sendPacket(createBatchPacket(chunkX, chunkZ, count, body));
+            }
+        });
+        BuildCraftObjectCaches.stopRecording();
+    }
+
+    /** Sends a single batch, and stops recording cached objects. */
+    private static void sendBatch(World world, int chunkX, int chunkZ, int count, ByteBuf entries) {
+        // Encode the batch once, and send the same packet to everyone watching
+        Packet<?> packet = createBatchPacket(chunkX, chunkZ, count, entries);
+        MessageUtil.forAllWatching(world, new BlockPos(chunkX << 4, 0, chunkZ << 4), player -> {
+            // Send any cached objects that the batch refers to first, so the client has them before it reads
+            // the batch
+            BuildCraftObjectCaches.sendRecorded(player);
+            player.connection.sendPacket(packet);
+        });
+        BuildCraftObjectCaches.stopRecording();
+    }
+
+    private static Packet<?> createBatchPacket(int chunkX, int chunkZ, int count, ByteBuf entries) {
+        ByteBuf body = Unpooled.buffer(entries.readableBytes() + 5);
+        new PacketBufferBC(body).writeVarInt(count);
+        body.writeBytes(entries, entries.readerIndex(), entries.readableBytes());
+        return MessageUtil.getWrapper().getPacketFrom(new MessageUpdateTileBatch(chunkX, chunkZ, body));
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFF_FFFFL);
+    }
+
+    private static class ChunkBatch {
+        final List<Entry> entries = new ArrayList<>();
+        /** Every position that has an entry in {@link #entries}. */
+        final Set<BlockPos> positions = new HashSet<>();
+        /** True if any of the {@link #entries} are only for a single player. */
+        boolean hasPlayerEntries;
+    }
+
+    private static class Entry {
+        final BlockPos pos;
+        final IPayloadWriter writer;
+        /** The only player to send this to, or null if it should be sent to everyone watching. */
+        final EntityPlayerMP player;
+
+        Entry(BlockPos pos, IPayloadWriter writer, EntityPlayerMP player) {
+            this.pos = pos;
+            this.writer = writer;
+            this.player = player;
+        }
+    }
+}
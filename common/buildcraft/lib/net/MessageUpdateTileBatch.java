@@ -0,0 +1,144 @@
+package buildcraft.lib.net;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.common.base.Throwables;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+
+import buildcraft.lib.BCLibProxy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/** Holds every {@link MessageUpdateTile} payload that was sent by tiles in a single chunk in a single tick. Positions
+ * are written relative to the chunk, and the whole body is deflated if it is large enough to benefit. */
+public class MessageUpdateTileBatch implements IMessage {
+    /** Bodies smaller than this are sent as-is, as deflating them wouldn't save anything. */
+    private static final int COMPRESSION_THRESHOLD = 256;
+
+    private int chunkX, chunkZ;
+    private boolean compressed;
+    private int rawLength;
+    /** The body as it is sent: compressed if {@link #compressed} is true. */
+    private byte[] data;
+
+    /** Used by forge to construct this upon receive. Do not use! */
+    @Deprecated
+    public MessageUpdateTileBatch() {}
+
+    /** @param body The entries, as written by {@link MessageBatcher}. */
+    public MessageUpdateTileBatch(int chunkX, int chunkZ, ByteBuf body) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        rawLength = body.readableBytes();
+        byte[] raw = new byte[rawLength];
+        body.getBytes(body.readerIndex(), raw);
+        if (rawLength >= COMPRESSION_THRESHOLD) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] out = new byte[rawLength];
+            int length = deflater.deflate(out);
+            boolean finished = deflater.finished();
+            deflater.end();
+            if (finished && length < rawLength) {
+                compressed = true;
+                data = new byte[length];
+                System.arraycopy(out, 0, data, 0, length);
+                return;
+            }
+        }
+        data = raw;
+    }
+
+    /** Packs a position into a single (small) int, relative to the chunk that it is in. */
+    public static int packLocalPos(BlockPos pos) {
+        return ((pos.getY() & 255) << 8) | ((pos.getX() & 15) << 4) | (pos.getZ() & 15);
+    }
+
+    private BlockPos unpackLocalPos(int packed) {
+        int x = (chunkX << 4) | ((packed >> 4) & 15);
+        int z = (chunkZ << 4) | (packed & 15);
+        return new BlockPos(x, packed >> 8, z);
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf) {
+        PacketBuffer buffer = new PacketBuffer(buf);
+        buffer.writeVarInt(chunkX);
+        buffer.writeVarInt(chunkZ);
+        buffer.writeBoolean(compressed);
+        buffer.writeVarInt(rawLength);
+        if (compressed) {
+            buffer.writeVarInt(data.length);
+        }
+        buffer.writeBytes(data);
+    }
+
+    @Override
+    public void fromBytes(ByteBuf buf) {
+        PacketBuffer buffer = new PacketBuffer(buf);
+        chunkX = buffer.readVarInt();
+        chunkZ = buffer.readVarInt();
+        compressed = buffer.readBoolean();
+        rawLength = buffer.readVarInt();
+        if (compressed) {
+            byte[] in = new byte[buffer.readVarInt()];
+            buffer.readBytes(in);
+            Inflater inflater = new Inflater();
+            inflater.setInput(in);
+            data = new byte[rawLength];
+            try {
+                int read = inflater.inflate(data);
+                if (read != rawLength) {
+                    throw new IllegalStateException("Expected " + rawLength + " bytes, but only inflated " + read);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                inflater.end();
+            }
+            compressed = false;
+        } else {
+            data = new byte[rawLength];
+            buffer.readBytes(data);
+        }
+    }
+
+    public enum Handler implements IMessageHandler<MessageUpdateTileBatch, IMessage> {
+        INSTANCE;
+
+        @Override
+        public IMessage onMessage(MessageUpdateTileBatch message, MessageContext ctx) {
+            EntityPlayer player = BCLibProxy.getProxy().getPlayerForContext(ctx);
+            if (player == null || player.world == null) return null;
+            PacketBuffer body = new PacketBuffer(Unpooled.wrappedBuffer(message.data));
+            int count = body.readVarInt();
+            for (int i = 0; i < count; i++) {
+                BlockPos pos = message.unpackLocalPos(body.readVarInt());
+                int length = body.readVarInt();
+                PacketBufferBC payload = new PacketBufferBC(body.readSlice(length));
+                TileEntity tile = player.world.getTileEntity(pos);
+                if (tile instanceof IPayloadReceiver) {
+                    try {
+                        ((IPayloadReceiver) tile).receivePayload(ctx, payload);
+                    } catch (IOException io) {
+                        throw Throwables.propagate(io);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
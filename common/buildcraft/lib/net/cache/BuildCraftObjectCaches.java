@@ -6,6 +6,7 @@ import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
 
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.item.ItemStack;
 
 import net.minecraftforge.fluids.FluidStack;
@@ -74,6 +75,29 @@ public class BuildCraftObjectCaches {
         }
     }
 
+    /** Starts recording every ID that is stored or referenced in every cache. Called by MessageBatcher before it
+     * writes a batch, and by tiles before they write a message that is sent straight away. Every call must be matched
+     * by a call to {@link #stopRecording()}, and calls may be nested. */
+    public static void startRecording() {
+        for (NetworkedObjectCache<?> cache : CACHES) {
+            cache.serverStartRecording();
+        }
+    }
+
+    /** Sends the given player every object recorded since {@link #startRecording()} that they haven't been sent yet.
+     * This must be called before sending the batch to them. */
+    public static void sendRecorded(EntityPlayerMP player) {
+        for (NetworkedObjectCache<?> cache : CACHES) {
+            cache.serverSendRecorded(player);
+        }
+    }
+
+    public static void stopRecording() {
+        for (NetworkedObjectCache<?> cache : CACHES) {
+            cache.serverStopRecording();
+        }
+    }
+
     /** Called by BuildCraftLib on every client tick. */
     public static void onClientTick() {
         for (NetworkedObjectCache<?> cache : CACHES) {
@@ -16,6 +16,7 @@ public class MessageObjectCacheReply implements IMessage {
     private int cacheId;
 
     private int[] ids;
+    /** The written form of each object, or null if the server doesn't have that ID any more. */
     private byte[][] values;
 
     /** Used by forge automatically to construct the message. Do not use! */
@@ -30,25 +31,35 @@ public class MessageObjectCacheReply implements IMessage {
 
     @Override
     public void toBytes(ByteBuf buf) {
-        buf.writeByte(cacheId);
-        buf.writeShort(ids.length);
+        PacketBufferBC buffer = PacketBufferBC.asPacketBufferBc(buf);
+        buffer.writeByte(cacheId);
+        buffer.writeVarInt(ids.length);
         for (int i = 0; i < ids.length; i++) {
-            buf.writeInt(ids[i]);
-            buf.writeShort(values[i].length);
-            buf.writeBytes(values[i]);
+            buffer.writeInt(ids[i]);
+            // 0 means that the server doesn't have that ID any more, otherwise this is the length + 1
+            if (values[i] == null) {
+                buffer.writeVarInt(0);
+            } else {
+                buffer.writeVarInt(values[i].length + 1);
+                buffer.writeBytes(values[i]);
+            }
         }
     }
 
     @Override
     public void fromBytes(ByteBuf buf) {
-        cacheId = buf.readByte();
-        int idCount = buf.readShort();
+        PacketBufferBC buffer = PacketBufferBC.asPacketBufferBc(buf);
+        cacheId = buffer.readByte();
+        int idCount = buffer.readVarInt();
         ids = new int[idCount];
         values = new byte[idCount][];
         for (int i = 0; i < idCount; i++) {
-            ids[i] = buf.readInt();
-            values[i] = new byte[buf.readShort()];
-            buf.readBytes(values[i]);
+            ids[i] = buffer.readInt();
+            int length = buffer.readVarInt() - 1;
+            if (length >= 0) {
+                values[i] = new byte[length];
+                buffer.readBytes(values[i]);
+            }
         }
     }
 
@@ -62,7 +73,11 @@ public class MessageObjectCacheReply implements IMessage {
                 for (int i = 0; i < message.ids.length; i++) {
                     int id = message.ids[i];
                     byte[] payload = message.values[i];
-                    cache.readObjectClient(id, new PacketBufferBC(Unpooled.copiedBuffer(payload)));
+                    if (payload == null) {
+                        cache.onEvictedClient(id);
+                    } else {
+                        cache.readObjectClient(id, new PacketBufferBC(Unpooled.wrappedBuffer(payload)));
+                    }
                 }
                 return null;
             } catch (IOException io) {
@@ -7,7 +7,6 @@ import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 import buildcraft.lib.net.PacketBufferBC;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 
 /** Signifies a client to server request for the value of a cached object, given its ID. */
 public class MessageObjectCacheReq implements IMessage {
@@ -30,20 +29,22 @@ public class MessageObjectCacheReq implements IMessage {
 
     @Override
     public void toBytes(ByteBuf buf) {
-        buf.writeByte(cacheId);
-        buf.writeShort(ids.length);
+        PacketBufferBC buffer = PacketBufferBC.asPacketBufferBc(buf);
+        buffer.writeByte(cacheId);
+        buffer.writeVarInt(ids.length);
         for (int id : ids) {
-            buf.writeInt(id);
+            buffer.writeInt(id);
         }
     }
 
     @Override
     public void fromBytes(ByteBuf buf) {
-        cacheId = buf.readByte();
-        int idCount = buf.readShort();
+        PacketBufferBC buffer = PacketBufferBC.asPacketBufferBc(buf);
+        cacheId = buffer.readByte();
+        int idCount = buffer.readVarInt();
         ids = new int[idCount];
         for (int i = 0; i < idCount; i++) {
-            ids[i] = buf.readInt();
+            ids[i] = buffer.readInt();
         }
     }
 
@@ -54,14 +55,9 @@ public class MessageObjectCacheReq implements IMessage {
         public MessageObjectCacheReply onMessage(MessageObjectCacheReq message, MessageContext ctx) {
             NetworkedObjectCache<?> cache = BuildCraftObjectCaches.CACHES.get(message.cacheId);
             byte[][] values = new byte[message.ids.length][];
-
-            PacketBufferBC buffer = new PacketBufferBC(Unpooled.buffer());
             for (int i = 0; i < values.length; i++) {
-                int id = message.ids[i];
-                cache.writeObjectServer(id, buffer);
-                values[i] = new byte[buffer.readableBytes()];
-                buffer.readBytes(values[i]);
-                buffer.clear();
+                // This is null if the object has been evicted since the ID was sent
+                values[i] = cache.getPayloadServer(message.ids[i]);
             }
             return new MessageObjectCacheReply(message.cacheId, message.ids, values);
         }
@@ -1,15 +1,11 @@
 package buildcraft.lib.net.cache;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.*;
 import java.util.function.Supplier;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-
 import net.minecraft.client.Minecraft;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.item.ItemStack;
 import net.minecraft.server.MinecraftServer;
 
@@ -22,8 +18,13 @@ import buildcraft.lib.BCLibProxy;
 import buildcraft.lib.misc.MessageUtil;
 import buildcraft.lib.net.PacketBufferBC;
 
+import io.netty.buffer.Unpooled;
+
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 
 /** Provides a way of defining a cache of *some object* that will be sent from server to every client (when they are
  * needed). Each object has a specific integer ID.
@@ -35,25 +36,54 @@ public abstract class NetworkedObjectCache<T> {
     static final boolean DEBUG_LOG = BCDebugging.shouldDebugLog("lib.net.cache");
     static final boolean DEBUG_CPLX = BCDebugging.shouldDebugComplex("lib.net.cache");
 
-    /* Implementation notes -- this currently is a simple, never expiring object<->id cache.
+    /* Implementation notes -- every object stored gets a new ID, and IDs are never handed out twice (while the server
+     * is running). So an ID also acts as its own generation: if the server evicts an object and it is stored again
+     * later it gets a new ID, and so a client can never confuse the old object with the new one.
+     * 
+     * The server evicts the least recently stored objects once there are more than MAX_SERVER_ENTRIES of them, or
+     * they take up more than MAX_SERVER_BYTES when written out. Clients drop links that haven't been retrieved for
+     * CLIENT_EXPIRY_TICKS, or the least recently retrieved ones when there are more than MAX_CLIENT_ENTRIES. Anything
+     * still holding on to a dropped link can still use it, and retrieving the same ID again just requests it again.
+     * 
+     * This is only an LRU, not reference counting: nothing tracks whether an object is still in use, so an object that
+     * a tile still refers to can be evicted. Storing it again then gives it a new ID, and any client that only knows
+     * the old ID is told that it is gone when it asks for it.
      * 
-     * Because it doesn't ever clear objects out of the cache we can guarantee that the index of an object is unique,
-     * just by incrementing a single variable. */
+     * The server also remembers which IDs it has sent to each player. While MessageBatcher is writing a batch (or a
+     * tile is writing a message that it sends straight away) every ID stored or referenced is recorded, and any of them
+     * that a receiving player hasn't been sent yet are sent to them in a reply message just before the message. So clients normally already have an object by the time they first
+     * retrieve it, and only have to request objects that they have dropped. */
+
+    private static final int MAX_SERVER_ENTRIES = 1 << 16;
+    private static final long MAX_SERVER_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_CLIENT_ENTRIES = 1 << 14;
+    private static final int CLIENT_EXPIRY_TICKS = 5 * 60 * 20;
+    private static final int CLIENT_SWEEP_INTERVAL = 30 * 20;
 
     /** The default object -- used at the client in case the object hasn't been sent to the client yet. */
     protected final T defaultObject;
 
-    private final BiMap<Integer, T> serverIdToObject = HashBiMap.create();
-    /** Server side map of the object to its integer ID. Inverse of {@link #serverIdToObject} */
-    private final BiMap<T, Integer> serverObjectToId = serverIdToObject.inverse();
+    /** Server side map of the (canonical) object to its entry, in least recently stored order. */
+    private final LinkedHashMap<T, ServerEntry> serverObjects = new LinkedHashMap<>(16, 0.75f, true);
+    /** Server side map of the ID to its entry. Holds exactly the same entries as {@link #serverObjects} */
+    private final Int2ObjectMap<ServerEntry> serverIds = new Int2ObjectOpenHashMap<>();
+    /** The total size of every {@link ServerEntry#payload} that is stored. */
+    private long serverBytes = 0;
 
     /** The ID for the next stored object. */
     private int serverCurrentId = 0;
 
+    /** Every ID that each player has been sent. */
+    private final Map<EntityPlayerMP, IntSet> serverSentTo = new WeakHashMap<>();
+    /** The (distinct) IDs stored or referenced since each {@link #serverStartRecording()} that hasn't been stopped yet.
+     * Recording can be nested, and only the innermost set is added to. */
+    private final Deque<IntSet> serverRecording = new ArrayDeque<>();
+
     /** The list of cached client-side objects. */
     private final Int2ObjectMap<Link> clientObjects = new Int2ObjectOpenHashMap<>();
     /** The list of all links that are currently unknown. */
-    private final Queue<Link> clientUnknowns = new LinkedList<>();
+    private final Queue<Link> clientUnknowns = new ArrayDeque<>();
+    private int clientTick = 0;
 
     /** A server view of this cache. Contains methods specific to */
     private final ServerView serverView = new ServerView();
@@ -108,6 +138,19 @@ public abstract class NetworkedObjectCache<T> {
         public int getId(T value) {
             return serverGetId(value);
         }
+
+        /** Marks the given ID as being written into a payload. This only needs to be called for IDs that were stored
+         * before the payload was written (IDs stored while writing are marked automatically), and makes sure that the
+         * object is sent on ahead of the payload to every player that hasn't been sent it yet. */
+        public void reference(int id) {
+            serverRecord(id);
+        }
+
+        /** Sends the object for the given ID to the given player straight away, unless they have already been sent
+         * it. Use this before sending a message directly to a player that contains the ID. */
+        public void prefetch(EntityPlayerMP player, int id) {
+            serverPrefetch(player, new int[] { id }, 1);
+        }
     }
 
     /** The client view of the cache. */
@@ -132,6 +175,9 @@ public abstract class NetworkedObjectCache<T> {
         /** The id of this value. */
         private final int id;
 
+        /** The client tick that this was last retrieved on. */
+        private int lastUsed;
+
         Link(int id) {
             this.id = id;
         }
@@ -181,18 +227,45 @@ public abstract class NetworkedObjectCache<T> {
      * @return */
     private int serverStore(T object) {
         T canonical = getCanonical(object);
-        Integer current = serverObjectToId.get(canonical);
+        ServerEntry current = serverObjects.get(canonical);
         if (current == null) {
             // new entry
             int id = serverCurrentId++;
-            serverObjectToId.put(canonical, Integer.valueOf(id));
+            PacketBufferBC buffer = new PacketBufferBC(Unpooled.buffer());
+            writeObject(canonical, buffer);
+            byte[] payload = new byte[buffer.readableBytes()];
+            buffer.readBytes(payload);
+            current = new ServerEntry(id, payload);
+            serverObjects.put(canonical, current);
+            serverIds.put(id, current);
+            serverBytes += payload.length;
             if (DEBUG_CPLX) {
                 BCLog.logger.info("[lib.net.cache] The cache " + getNameAndId() + " stored #" + id + " as " + canonical);
             }
-            return id;
-        } else {
-            // existing entry
-            return current.intValue();
+            serverEvict();
+        }
+        serverRecord(current.id);
+        return current.id;
+    }
+
+    /** Removes the least recently stored entries until this is back within its limits. The most recent entry is
+     * always kept. */
+    private void serverEvict() {
+        if (serverObjects.size() <= MAX_SERVER_ENTRIES && serverBytes <= MAX_SERVER_BYTES) {
+            return;
+        }
+        Iterator<ServerEntry> iter = serverObjects.values().iterator();
+        while ((serverObjects.size() > MAX_SERVER_ENTRIES || serverBytes > MAX_SERVER_BYTES) && serverObjects.size() > 1) {
+            ServerEntry eldest = iter.next();
+            iter.remove();
+            serverIds.remove(eldest.id);
+            for (IntSet sent : serverSentTo.values()) {
+                sent.remove(eldest.id);
+            }
+            serverBytes -= eldest.payload.length;
+            if (DEBUG_CPLX) {
+                BCLog.logger.info("[lib.net.cache] The cache " + getNameAndId() + " evicted #" + eldest.id);
+            }
         }
     }
 
@@ -204,12 +277,12 @@ public abstract class NetworkedObjectCache<T> {
      * @return */
     private int serverGetId(T object) {
         T canonical = getCanonical(object);
-        Integer current = serverObjectToId.get(canonical);
+        ServerEntry current = serverObjects.get(canonical);
         if (current == null) {
             // Unknown entry
             return -1;
         } else {
-            return current.intValue();
+            return current.id;
         }
     }
 
@@ -227,13 +300,68 @@ public abstract class NetworkedObjectCache<T> {
             clientUnknowns.add(current);
             clientObjects.put(id, current);
         }
+        current.lastUsed = clientTick;
         return current;
     }
 
-    /** Used by {@link MessageObjectCacheReq.Handler} to write the actual object out. */
-    void writeObjectServer(int id, PacketBufferBC buffer) {
-        T obj = serverIdToObject.get(id);
-        writeObject(obj, buffer);
+    private void serverRecord(int id) {
+        IntSet recorded = serverRecording.peekLast();
+        if (recorded != null) {
+            recorded.add(id);
+        }
+    }
+
+    /** Used by BuildCraftObjectCaches to start recording the IDs that are written into a message. */
+    void serverStartRecording() {
+        serverRecording.addLast(new IntOpenHashSet());
+    }
+
+    /** Sends the given player every object recorded by the innermost recording that they haven't been sent yet. */
+    void serverSendRecorded(EntityPlayerMP player) {
+        IntSet recorded = serverRecording.peekLast();
+        if (recorded != null && !recorded.isEmpty()) {
+            int[] ids = recorded.toIntArray();
+            serverPrefetch(player, ids, ids.length);
+        }
+    }
+
+    void serverStopRecording() {
+        serverRecording.pollLast();
+    }
+
+    private void serverPrefetch(EntityPlayerMP player, int[] ids, int count) {
+        IntSet sent = serverSentTo.computeIfAbsent(player, p -> new IntOpenHashSet());
+        IntArrayList toSend = null;
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            if (serverIds.containsKey(id) && sent.add(id)) {
+                if (toSend == null) {
+                    toSend = new IntArrayList();
+                }
+                toSend.add(id);
+            }
+        }
+        if (toSend == null) {
+            return;
+        }
+        int[] sendIds = toSend.toIntArray();
+        byte[][] payloads = new byte[sendIds.length][];
+        for (int i = 0; i < sendIds.length; i++) {
+            payloads[i] = serverIds.get(sendIds[i]).payload;
+        }
+        if (DEBUG_CPLX) {
+            BCLog.logger.info("[lib.net.cache] The cache " + getNameAndId() + " sent " + Arrays.toString(sendIds) + " on ahead to " + player.getName());
+        }
+        int cacheId = BuildCraftObjectCaches.CACHES.indexOf(this);
+        MessageUtil.getWrapper().sendTo(new MessageObjectCacheReply(cacheId, sendIds, payloads), player);
+    }
+
+    /** Used by {@link MessageObjectCacheReq.Handler} to get the written form of an object.
+     * 
+     * @return The payload, or null if the object has been evicted. */
+    byte[] getPayloadServer(int id) {
+        ServerEntry entry = serverIds.get(id);
+        return entry == null ? null : entry.payload;
     }
 
     /** Used by {@link MessageObjectCacheReply.Handler} to read an object in.
@@ -242,24 +370,80 @@ public abstract class NetworkedObjectCache<T> {
      * @param buffer
      * @throws IOException */
     void readObjectClient(int id, PacketBufferBC buffer) throws IOException {
-        Link link = clientRetrieve(id);
+        // Don't use clientRetrieve, as objects that were sent on ahead shouldn't be requested again
+        Link link = clientObjects.get(id);
+        if (link == null) {
+            link = new Link(id);
+            link.lastUsed = clientTick;
+            clientObjects.put(id, link);
+        }
         link.actual = readObject(buffer);
     }
 
+    /** Used by {@link MessageObjectCacheReply.Handler} when the server no longer has the object for an ID. Whatever
+     * holds the link will just keep showing the default object, and as the server will never send the same ID again
+     * it is forgotten about. */
+    void onEvictedClient(int id) {
+        if (DEBUG_CPLX) {
+            BCLog.logger.info("[lib.net.cache] The cache " + getNameAndId() + " was told that #" + id + " has been evicted");
+        }
+        clientObjects.remove(id);
+    }
+
     final String getNameAndId() {
         return "(" + BuildCraftObjectCaches.CACHES.indexOf(this) + " = " + getCacheName() + ")";
     }
 
     void onClientWorldTick() {
-        int[] ids = new int[clientUnknowns.size()];
-        for (int i = 0; i < ids.length; i++) {
-            ids[i] = clientUnknowns.remove().id;
+        clientTick++;
+        if (!clientUnknowns.isEmpty()) {
+            IntArrayList unknown = new IntArrayList(clientUnknowns.size());
+            while (!clientUnknowns.isEmpty()) {
+                Link link = clientUnknowns.remove();
+                // Links can be received (because they were sent on ahead) before they were requested
+                if (!link.hasBeenReceived()) {
+                    unknown.add(link.id);
+                }
+            }
+            int[] ids = unknown.toIntArray();
+            if (ids.length > 0) {
+                if (DEBUG_CPLX) {
+                    BCLog.logger.info("[lib.net.cache] The cache " + getNameAndId() + " requests ID's " + Arrays.toString(ids));
+                }
+                MessageUtil.getWrapper().sendToServer(new MessageObjectCacheReq(this, ids));
+            }
         }
-        if (ids.length > 0) {
-            if (DEBUG_CPLX) {
-                BCLog.logger.info("[lib.net.cache] The cache " + getNameAndId() + " requests ID's " + Arrays.toString(ids));
+        if (clientTick % CLIENT_SWEEP_INTERVAL == 0 || clientObjects.size() > MAX_CLIENT_ENTRIES) {
+            clientSweep();
+        }
+    }
+
+    /** Drops every link that hasn't been used recently, and then the least recently used ones if there are still
+     * too many. */
+    private void clientSweep() {
+        int before = clientObjects.size();
+        clientObjects.values().removeIf(link -> clientTick - link.lastUsed > CLIENT_EXPIRY_TICKS);
+        if (clientObjects.size() > MAX_CLIENT_ENTRIES) {
+            List<Link> links = new ArrayList<>(clientObjects.values());
+            links.sort(Comparator.comparingInt(link -> link.lastUsed));
+            for (int i = 0; i < links.size() - MAX_CLIENT_ENTRIES * 3 / 4; i++) {
+                clientObjects.remove(links.get(i).id);
             }
-            MessageUtil.getWrapper().sendToServer(new MessageObjectCacheReq(this, ids));
+        }
+        if (DEBUG_CPLX && clientObjects.size() != before) {
+            BCLog.logger.info("[lib.net.cache] The cache " + getNameAndId() + " dropped " + (before - clientObjects.size()) + " links");
+        }
+    }
+
+    /** A single stored object, SERVER SIDE. */
+    private static final class ServerEntry {
+        final int id;
+        /** The object, as written by {@link NetworkedObjectCache#writeObject(Object, PacketBufferBC)}. */
+        final byte[] payload;
+
+        ServerEntry(int id, byte[] payload) {
+            this.id = id;
+            this.payload = payload;
         }
     }
 }
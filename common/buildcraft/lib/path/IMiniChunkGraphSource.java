@@ -0,0 +1,12 @@
+package buildcraft.lib.path;
+
+import net.minecraft.util.math.BlockPos;
+
+/** Provides the {@link MiniChunkGraph}s that a {@link MiniChunkPathfinder} searches through. */
+@FunctionalInterface
+public interface IMiniChunkGraphSource {
+    /** @param min The minimum corner of the mini chunk. This is always a multiple of 16 on every axis.
+     * @return The graph for the mini chunk, or null if it isn't available (for example if it isn't loaded, or it is
+     *         outside of the world). This will be called from a worker thread, and it is fine to block. */
+    MiniChunkGraph getGraph(BlockPos min);
+}
@@ -1,8 +1,10 @@
 package buildcraft.lib.path;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -11,37 +13,67 @@ import java.util.function.Consumer;
 import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.Futures;
 
+import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
 
 import buildcraft.lib.misc.WorkerThreadUtil;
 import buildcraft.lib.path.task.TaskMiniChunkManager;
+import buildcraft.lib.world.WorldEventListenerAdapter;
 
+/** Caches the {@link MiniChunkGraph} of every mini chunk that has been requested, separately for each world.
+ * <p>
+ * A graph is thrown away as soon as any block inside of it changes, or its chunk is unloaded, and the whole cache for a
+ * world is thrown away when that world unloads. Neighbouring graphs don't need to be told: they only keep the portals
+ * to the exact neighbour graph that they were worked out with, so they notice the new graph by themselves. Only the
+ * most recently used {@link #MAX_GRAPHS} graphs are kept for each world. */
 public class MiniChunkCache {
-    private static Map<Integer, MiniChunkCache> worldCaches = new HashMap<>();
+    public static final int MAX_GRAPHS = 1024;
+
+    private static final Map<Integer, MiniChunkCache> cacheClient = new ConcurrentHashMap<>();
+    private static final Map<Integer, MiniChunkCache> cacheServer = new ConcurrentHashMap<>();
 
     public final int dimId;
-    private final Map<BlockPos, MiniChunkGraph> cache = new ConcurrentHashMap<>();
-    final Map<BlockPos, Future<MiniChunkGraph>> tempData = new ConcurrentHashMap<>();
+    private final World world;
+    private final Listener listener = new Listener();
+    private final Map<BlockPos, MiniChunkGraph> cache = new LinkedHashMap<BlockPos, MiniChunkGraph>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BlockPos, MiniChunkGraph> eldest) {
+            return size() > MAX_GRAPHS;
+        }
+    };
+    /** Every graph that is currently being calculated. Each task is its own version stamp: when a mini chunk is
+     * invalidated its task is removed from here, so when it finishes it can tell that its result is out of date. */
+    private final Map<BlockPos, PendingGraph> tempData = new HashMap<>();
 
-    private MiniChunkCache(int dimId) {
-        this.dimId = dimId;
+    private MiniChunkCache(World world) {
+        this.world = world;
+        this.dimId = world.provider.getDimension();
     }
 
-    public static Future<MiniChunkGraph> requestGraph(World world, BlockPos pos) {
-        int dimId = world.provider.getDimension();
-        if (!worldCaches.containsKey(dimId)) {
-            worldCaches.put(dimId, new MiniChunkCache(dimId));
+    /** Gets (or creates) the cache for the given world. The first call for a world must be on that world's thread, as
+     * this starts listening for block changes. */
+    private static MiniChunkCache getCache(World world) {
+        Map<Integer, MiniChunkCache> caches = world.isRemote ? cacheClient : cacheServer;
+        MiniChunkCache cache = caches.get(world.provider.getDimension());
+        if (cache == null || cache.world != world) {
+            cache = new MiniChunkCache(world);
+            MiniChunkCache old = caches.put(cache.dimId, cache);
+            if (old != null) {
+                old.dispose();
+            }
+            world.addEventListener(cache.listener);
         }
-        return worldCaches.get(dimId).requestGraphImpl(world, pos);
+        return cache;
+    }
+
+    public static Future<MiniChunkGraph> requestGraph(World world, BlockPos pos) {
+        return getCache(world).requestGraphImpl(pos);
     }
 
     public static MiniChunkGraph getGraphIfExists(World world, BlockPos pos) {
-        int dimId = world.provider.getDimension();
-        if (!worldCaches.containsKey(dimId)) {
-            worldCaches.put(dimId, new MiniChunkCache(dimId));
-        }
-        return worldCaches.get(dimId).getGraphIfExistsImpl(pos);
+        return getCache(world).getGraphIfExistsImpl(pos);
     }
 
     public static MiniChunkGraph requestAndWait(World world, BlockPos pos) {
@@ -52,40 +84,128 @@ public class MiniChunkCache {
         }
     }
 
-    private void putGraph(BlockPos min, MiniChunkGraph graph) {
-        cache.put(min, graph);
+    /** @return A source for {@link MiniChunkPathfinder} that calculates (and waits for) the graphs of loaded mini chunks
+     *         in the given world. This must be called on the world's thread. */
+    public static IMiniChunkGraphSource createSource(World world) {
+        MiniChunkCache cache = getCache(world);
+        return (min) -> {
+            if (min.getY() < 0 || min.getY() >= world.getHeight()) {
+                return null;
+            }
+            try {
+                return cache.requestGraphImpl(min).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                // Most likely just not loaded
+                return null;
+            }
+        };
     }
 
-    private Future<MiniChunkGraph> requestGraphImpl(World world, BlockPos pos) {
-        final BlockPos minPos = convertToMin(pos);
-        pos = minPos;
-        MiniChunkGraph existing = cache.get(pos);
-        if (existing != null) {
-            return Futures.immediateCheckedFuture(existing);
+    public static void onChunkUnload(World world, Chunk chunk) {
+        MiniChunkCache cache = getExisting(world);
+        if (cache != null) {
+            int x = chunk.xPosition << 4;
+            int z = chunk.zPosition << 4;
+            for (int y = 0; y < world.getHeight(); y += 16) {
+                cache.invalidate(new BlockPos(x, y, z));
+            }
+        }
+    }
+
+    public static void onWorldUnload(World world) {
+        Map<Integer, MiniChunkCache> caches = world.isRemote ? cacheClient : cacheServer;
+        MiniChunkCache cache = caches.get(world.provider.getDimension());
+        if (cache != null && cache.world == world) {
+            caches.remove(cache.dimId);
+            cache.dispose();
+        }
+    }
+
+    private static MiniChunkCache getExisting(World world) {
+        Map<Integer, MiniChunkCache> caches = world.isRemote ? cacheClient : cacheServer;
+        MiniChunkCache cache = caches.get(world.provider.getDimension());
+        return cache != null && cache.world == world ? cache : null;
+    }
+
+    private void dispose() {
+        world.removeEventListener(listener);
+        synchronized (this) {
+            cache.clear();
+            tempData.clear();
+        }
+    }
+
+    private synchronized void invalidate(BlockPos min) {
+        cache.remove(min);
+        tempData.remove(min);
+    }
+
+    private synchronized void putGraph(BlockPos min, PendingGraph pending, MiniChunkGraph graph) {
+        // Only store the result if nothing has changed since the task was started
+        if (tempData.get(min) == pending) {
+            tempData.remove(min);
+            cache.put(min, graph);
         }
-        if (!world.isBlockLoaded(pos)) return Futures.immediateFailedFuture(new Throwable("The block " + pos + " is not loaded!"));
+    }
+
+    private Future<MiniChunkGraph> requestGraphImpl(BlockPos pos) {
+        final BlockPos minPos = convertToMin(pos);
+        final PendingGraph task;
         synchronized (this) {
-            if (tempData.containsKey(pos)) {
-                return tempData.get(pos);
+            MiniChunkGraph existing = cache.get(minPos);
+            if (existing != null) {
+                return Futures.immediateCheckedFuture(existing);
             }
-            Consumer<MiniChunkGraph> setter = (graph) -> putGraph(minPos, graph);
-            Callable<MiniChunkGraph> task = new TaskMiniChunkManager(world, pos, setter);
-            Future<MiniChunkGraph> future = WorkerThreadUtil.executeDependantTask(task);
-            tempData.put(pos, future);
-            return future;
+            PendingGraph pending = tempData.get(minPos);
+            if (pending != null) {
+                if (!pending.future.isDone()) {
+                    return pending.future;
+                }
+                // It finished without storing a graph, so it either failed or was invalidated: try again
+                tempData.remove(minPos);
+            }
+            if (!world.isBlockLoaded(minPos)) {
+                return Futures.immediateFailedFuture(new Throwable("The block " + minPos + " is not loaded!"));
+            }
+            task = new PendingGraph();
+            tempData.put(minPos, task);
         }
+        // Started outside of the lock, as the task can end up running on this thread if every worker is busy
+        Consumer<MiniChunkGraph> setter = (graph) -> putGraph(minPos, task, graph);
+        Callable<MiniChunkGraph> manager = new TaskMiniChunkManager(world, minPos, setter);
+        WorkerThreadUtil.executeDependantTask(() -> {
+            try {
+                task.future.complete(manager.call());
+            } catch (Throwable t) {
+                task.future.completeExceptionally(t);
+            }
+        });
+        return task.future;
     }
 
-    private MiniChunkGraph getGraphIfExistsImpl(BlockPos pos) {
-        pos = convertToMin(pos);
-        return cache.get(pos);
+    private synchronized MiniChunkGraph getGraphIfExistsImpl(BlockPos pos) {
+        return cache.get(convertToMin(pos));
     }
 
+    /** Get the minimum blockpos of the minichunk. This rounds down (rather than towards 0) so it works for negative
+     * positions as well. */
     private static BlockPos convertToMin(BlockPos pos) {
-        // Get the minimum blockpos of the minichunk
-        int x = (pos.getX() / 16) * 16;
-        int y = (pos.getY() / 16) * 16;
-        int z = (pos.getZ() / 16) * 16;
-        return new BlockPos(x, y, z);
+        return new BlockPos(pos.getX() & ~15, pos.getY() & ~15, pos.getZ() & ~15);
+    }
+
+    private static class PendingGraph {
+        final CompletableFuture<MiniChunkGraph> future = new CompletableFuture<>();
+    }
+
+    private class Listener extends WorldEventListenerAdapter {
+        @Override
+        public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+            if (worldIn == world && oldState != newState) {
+                invalidate(convertToMin(pos));
+            }
+        }
     }
 }
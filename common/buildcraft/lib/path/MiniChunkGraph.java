@@ -1,19 +1,24 @@
 package buildcraft.lib.path;
 
-import java.util.Collections;
-import java.util.EnumMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 
 import net.minecraft.util.EnumFacing;
+import net.minecraft.util.EnumFacing.AxisDirection;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
+import buildcraft.lib.misc.data.IntBinaryHeap;
 import buildcraft.lib.path.task.TaskMiniChunkAnalyser;
 
+/** The pathfinding information for a single 16x16x16 mini chunk. Blocks are referred to by their index
+ * ({@link TaskMiniChunkAnalyser#index(int, int, int)}).
+ * <p>
+ * As well as which node (connected set of blocks) every block is in, this lazily works out the portals to each
+ * neighbouring mini chunk, and the cost of getting from a block to every other block in the mini chunk (which are used
+ * by {@link MiniChunkPathfinder}). All of these are cached, and can be used from any thread. */
 public class MiniChunkGraph {
     public enum ChunkType {
         COMPLETLY_FREE,
@@ -22,13 +27,40 @@ public class MiniChunkGraph {
         COMPLETLY_FILLED
     }
 
+    /** The cost of a block that can't be reached in a {@link #getCostsFrom(int)} array. */
+    public static final short UNREACHABLE = Short.MAX_VALUE;
+    private static final int MAX_CACHED_COSTS = 16;
+    private static final int MAX_CACHED_PORTAL_COSTS = 1024;
+    private static final Portal[] NO_PORTALS = new Portal[0];
+
     public final BlockPos min;
     public final ChunkType type;
     public final Map<EnumFacing, MiniChunkGraph> neighbours = new EnumMap<>(EnumFacing.class);
     public final ImmutableList<MiniChunkNode> nodes;
-    final byte[][][] expenseArray, graphArray;
+    final byte[] expenseArray;
+    final short[] graphArray;
+
+    private final Portal[][] portals = new Portal[6][];
+    /** The neighbour that each of the {@link #portals} was worked out with. */
+    private final MiniChunkGraph[] portalNeighbours = new MiniChunkGraph[6];
+    /** Every one of the {@link #portals}, in face order. */
+    private Portal[] allPortals;
+    /** This is much smaller than {@link #costCache}, so a lot more can be kept around. It only needs to be cleared when
+     * the portals change. */
+    private final Map<Integer, PortalCosts> portalCostCache = new LinkedHashMap<Integer, PortalCosts>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, PortalCosts> eldest) {
+            return size() > MAX_CACHED_PORTAL_COSTS;
+        }
+    };
+    private final Map<Integer, short[]> costCache = new LinkedHashMap<Integer, short[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, short[]> eldest) {
+            return size() > MAX_CACHED_COSTS;
+        }
+    };
 
-    public MiniChunkGraph(BlockPos min, ChunkType type, byte[][][] expenseArray, byte[][][] graphArray, int numNodes) {
+    public MiniChunkGraph(BlockPos min, ChunkType type, byte[] expenseArray, short[] graphArray, int numNodes) {
         this.min = min;
         this.type = type;
         this.expenseArray = expenseArray;
@@ -43,11 +75,247 @@ public class MiniChunkGraph {
     public MiniChunkNode getFor(BlockPos pos) {
         BlockPos normalised = pos.subtract(min);
         if (!TaskMiniChunkAnalyser.isValid(normalised)) throw new IllegalArgumentException("The position " + normalised + " was invalid! (from " + pos + ")");
-        int id = graphArray[normalised.getX()][normalised.getY()][normalised.getZ()];
+        int id = graphArray[indexOf(pos)];
         if (id >= 0) return nodes.get(id);
         throw new IllegalArgumentException("The position " + normalised + " had no graph! (gId = " + id + ")");
     }
 
+    /** @return The index of the given world position, assuming that it is inside of this mini chunk. */
+    public static int indexOf(BlockPos pos) {
+        return TaskMiniChunkAnalyser.index(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+
+    public BlockPos getPos(int index) {
+        return min.add(TaskMiniChunkAnalyser.getX(index), TaskMiniChunkAnalyser.getY(index), TaskMiniChunkAnalyser.getZ(index));
+    }
+
+    /** @return The node id of the given block, or -1 if it is solid. */
+    public int getNodeId(int index) {
+        return graphArray[index];
+    }
+
+    /** @return The cost of moving into the given block, or -1 if it is solid. */
+    public int getExpense(int index) {
+        return expenseArray[index];
+    }
+
+    /** @return The cost of moving from the given block to every other block (or {@link #UNREACHABLE}), without leaving
+     *         this mini chunk. The returned array must not be modified. */
+    public short[] getCostsFrom(int from) {
+        synchronized (costCache) {
+            short[] costs = costCache.get(from);
+            if (costs == null) {
+                costs = computeCosts(from);
+                costCache.put(from, costs);
+            }
+            return costs;
+        }
+    }
+
+    /** Dijkstra's algorithm over every block in this mini chunk. */
+    private short[] computeCosts(int from) {
+        short[] costs = new short[TaskMiniChunkAnalyser.VOLUME];
+        Arrays.fill(costs, UNREACHABLE);
+        if (expenseArray[from] < 0) {
+            return costs;
+        }
+        IntBinaryHeap open = new IntBinaryHeap(TaskMiniChunkAnalyser.VOLUME);
+        costs[from] = 0;
+        open.put(from, 0);
+        while (!open.isEmpty()) {
+            int index = open.poll();
+            int cost = costs[index];
+            int x = TaskMiniChunkAnalyser.getX(index);
+            int y = TaskMiniChunkAnalyser.getY(index);
+            int z = TaskMiniChunkAnalyser.getZ(index);
+            relax(costs, open, cost, x > 0, index - 256);
+            relax(costs, open, cost, x < 15, index + 256);
+            relax(costs, open, cost, y > 0, index - 16);
+            relax(costs, open, cost, y < 15, index + 16);
+            relax(costs, open, cost, z > 0, index - 1);
+            relax(costs, open, cost, z < 15, index + 1);
+        }
+        return costs;
+    }
+
+    private void relax(short[] costs, IntBinaryHeap open, int cost, boolean valid, int to) {
+        if (!valid) return;
+        int expense = expenseArray[to];
+        if (expense < 0) return;
+        int newCost = cost + expense;
+        if (newCost < costs[to]) {
+            costs[to] = (short) newCost;
+            open.put(to, newCost);
+        }
+    }
+
+    /** Walks back through a {@link #getCostsFrom(int)} array from the given block to the block that the costs were
+     * calculated from.
+     *
+     * @return Every block on the way, in order, starting after the origin block and ending with the given block. */
+    public List<BlockPos> tracePath(short[] costs, int to) {
+        LinkedList<BlockPos> path = new LinkedList<>();
+        int index = to;
+        while (costs[index] != 0) {
+            path.addFirst(getPos(index));
+            int expected = costs[index] - expenseArray[index];
+            int x = TaskMiniChunkAnalyser.getX(index);
+            int y = TaskMiniChunkAnalyser.getY(index);
+            int z = TaskMiniChunkAnalyser.getZ(index);
+            if (x > 0 && costs[index - 256] == expected) index -= 256;
+            else if (x < 15 && costs[index + 256] == expected) index += 256;
+            else if (y > 0 && costs[index - 16] == expected) index -= 16;
+            else if (y < 15 && costs[index + 16] == expected) index += 16;
+            else if (z > 0 && costs[index - 1] == expected) index -= 1;
+            else if (z < 15 && costs[index + 1] == expected) index += 1;
+            else throw new IllegalStateException("Broken cost array at " + getPos(index));
+        }
+        return path;
+    }
+
+    /** Gets the cost of moving from the given block to every portal out of this mini chunk.
+     *
+     * @param neighbours The neighbouring graph on each face (indexed by {@link EnumFacing#ordinal()}), or null if that
+     *            neighbour isn't available. The portals on a face are only worked out again if its neighbour has
+     *            changed. */
+    public PortalCosts getPortalCosts(int from, MiniChunkGraph[] neighbours) {
+        synchronized (portals) {
+            boolean changed = allPortals == null;
+            for (int f = 0; f < 6; f++) {
+                if (portals[f] == null || portalNeighbours[f] != neighbours[f]) {
+                    MiniChunkGraph neighbour = neighbours[f];
+                    portals[f] = neighbour == null ? NO_PORTALS : computePortals(EnumFacing.VALUES[f], neighbour);
+                    portalNeighbours[f] = neighbour;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                List<Portal> all = new ArrayList<>();
+                for (Portal[] facePortals : portals) {
+                    Collections.addAll(all, facePortals);
+                }
+                allPortals = all.toArray(NO_PORTALS);
+                portalCostCache.clear();
+            }
+            PortalCosts found = portalCostCache.get(from);
+            if (found == null) {
+                short[] costs = getCostsFrom(from);
+                short[] portalCosts = new short[allPortals.length];
+                for (int i = 0; i < portalCosts.length; i++) {
+                    portalCosts[i] = costs[allPortals[i].inside];
+                }
+                found = new PortalCosts(allPortals, portalCosts);
+                portalCostCache.put(from, found);
+            }
+            return found;
+        }
+    }
+
+    private Portal[] computePortals(EnumFacing face, MiniChunkGraph neighbour) {
+        // Group the touching blocks on the face by which node they connect on both sides
+        int[] group = new int[256];
+        Arrays.fill(group, -1);
+        int[] queue = new int[256];
+        List<Portal> found = new ArrayList<>();
+        for (int start = 0; start < 256; start++) {
+            if (group[start] != -1) {
+                continue;
+            }
+            int inside = faceIndex(face, start >> 4, start & 15, true);
+            int outside = faceIndex(face, start >> 4, start & 15, false);
+            int inNode = graphArray[inside], outNode = neighbour.graphArray[outside];
+            if (inNode < 0 || outNode < 0) {
+                group[start] = -2;
+                continue;
+            }
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            group[start] = start;
+            int sumU = 0, sumV = 0;
+            while (head < tail) {
+                int uv = queue[head++];
+                int u = uv >> 4, v = uv & 15;
+                sumU += u;
+                sumV += v;
+                if (u > 0) tail = offerFace(neighbour, face, group, queue, tail, start, inNode, outNode, uv - 16);
+                if (u < 15) tail = offerFace(neighbour, face, group, queue, tail, start, inNode, outNode, uv + 16);
+                if (v > 0) tail = offerFace(neighbour, face, group, queue, tail, start, inNode, outNode, uv - 1);
+                if (v < 15) tail = offerFace(neighbour, face, group, queue, tail, start, inNode, outNode, uv + 1);
+            }
+            // Use the block closest to the middle of the area
+            int best = start;
+            long bestDist = Long.MAX_VALUE;
+            for (int i = 0; i < tail; i++) {
+                int uv = queue[i];
+                long du = (uv >> 4) * (long) tail - sumU;
+                long dv = (uv & 15) * (long) tail - sumV;
+                long dist = du * du + dv * dv;
+                if (dist < bestDist) {
+                    bestDist = dist;
+                    best = uv;
+                }
+            }
+            int u = best >> 4, v = best & 15;
+            found.add(new Portal(face, faceIndex(face, u, v, true), faceIndex(face, u, v, false)));
+        }
+        return found.toArray(NO_PORTALS);
+    }
+
+    private int offerFace(MiniChunkGraph neighbour, EnumFacing face, int[] group, int[] queue, int tail, int groupId, int inNode, int outNode, int uv) {
+        if (group[uv] != -1) {
+            return tail;
+        }
+        int inside = faceIndex(face, uv >> 4, uv & 15, true);
+        int outside = faceIndex(face, uv >> 4, uv & 15, false);
+        if (graphArray[inside] == inNode && neighbour.graphArray[outside] == outNode) {
+            group[uv] = groupId;
+            queue[tail++] = uv;
+        }
+        return tail;
+    }
+
+    /** @param inside True for the block on this side of the face, false for the block on the neighbour's side.
+     * @return The index of the block at the given (u, v) coordinates on the given face. */
+    private static int faceIndex(EnumFacing face, int u, int v, boolean inside) {
+        boolean positive = face.getAxisDirection() == AxisDirection.POSITIVE;
+        int d = positive == inside ? 15 : 0;
+        switch (face.getAxis()) {
+            case X:
+                return TaskMiniChunkAnalyser.index(d, u, v);
+            case Y:
+                return TaskMiniChunkAnalyser.index(u, d, v);
+            default:
+                return TaskMiniChunkAnalyser.index(u, v, d);
+        }
+    }
+
+    /** A pair of touching blocks, one in this mini chunk and one in the neighbouring mini chunk on {@link #face}. */
+    public static final class Portal {
+        public final EnumFacing face;
+        /** The index of the block in this mini chunk. */
+        public final short inside;
+        /** The index of the block in the neighbouring mini chunk. */
+        public final short outside;
+
+        Portal(EnumFacing face, int inside, int outside) {
+            this.face = face;
+            this.inside = (short) inside;
+            this.outside = (short) outside;
+        }
+    }
+
+    /** The costs from a single block to each of {@link #portals}. */
+    public static final class PortalCosts {
+        public final Portal[] portals;
+        /** The cost of moving to the inside of each portal, or {@link MiniChunkGraph#UNREACHABLE}. */
+        public final short[] costs;
+
+        PortalCosts(Portal[] portals, short[] costs) {
+            this.portals = portals;
+            this.costs = costs;
+        }
+    }
+
     public class MiniChunkNode {
         public final int id;
         final Set<MiniChunkNode> connected = Sets.newIdentityHashSet();
@@ -64,13 +332,13 @@ public class MiniChunkGraph {
         public boolean contains(BlockPos pos) {
             BlockPos normalised = pos.subtract(min);
             if (!TaskMiniChunkAnalyser.isValid(normalised)) return false;
-            return graphArray[normalised.getX()][normalised.getY()][normalised.getZ()] == id;
+            return graphArray[indexOf(pos)] == id;
         }
 
         public int getExpense(BlockPos pos) {
             BlockPos normalised = pos.subtract(min);
             if (!TaskMiniChunkAnalyser.isValid(normalised)) return Integer.MAX_VALUE;
-            int expense = expenseArray[normalised.getX()][normalised.getY()][normalised.getZ()];
+            int expense = expenseArray[indexOf(pos)];
             if (expense < 0) return Integer.MAX_VALUE;
             return expense;
         }
@@ -0,0 +1,223 @@
+package buildcraft.lib.path;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+
+import buildcraft.lib.misc.WorkerThreadUtil;
+import buildcraft.lib.misc.data.IntBinaryHeap;
+import buildcraft.lib.path.MiniChunkGraph.Portal;
+import buildcraft.lib.path.MiniChunkGraph.PortalCosts;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/** Finds a path between two blocks, using A* over the portals between {@link MiniChunkGraph}s rather than over every
+ * single block.
+ * <p>
+ * Each abstract node is a single block: either the start, the goal, or one side of a {@link Portal}. Nodes in the same
+ * mini chunk are joined by the (cached) costs from {@link MiniChunkGraph#getPortalCosts(int, MiniChunkGraph[])}, and
+ * the two sides of a portal are joined by the cost of moving into the block on the other side. Once the goal is reached
+ * the abstract path is refined back into every block on the way.
+ * <p>
+ * The returned path is optimal within the portals, but not necessarily the shortest possible path through every
+ * block, as only one block is used from each connected area of a mini chunk face. */
+public class MiniChunkPathfinder implements Callable<List<BlockPos>> {
+    /** The default number of abstract nodes that are expanded before a search gives up. */
+    public static final int DEFAULT_MAX_NODES = 100_000;
+
+    private final IMiniChunkGraphSource source;
+    private final BlockPos start, goal;
+    private final int maxNodes;
+    private volatile boolean cancelled = false;
+
+    private final Map<BlockPos, MiniChunkGraph> graphs = new HashMap<>();
+    private final TLongIntHashMap nodeIds = new TLongIntHashMap(64, 0.5f, Long.MIN_VALUE, -1);
+    private BlockPos[] nodePositions = new BlockPos[64];
+    private int[] nodeCosts = new int[64];
+    private int[] nodeParents = new int[64];
+    /** True if the node was reached by crossing a portal from its parent, rather than by moving within a mini chunk. */
+    private boolean[] nodeCrossed = new boolean[64];
+    private boolean[] nodeClosed = new boolean[64];
+    private int nodeCount = 0;
+    private int expanded = 0;
+
+    public MiniChunkPathfinder(IMiniChunkGraphSource source, BlockPos start, BlockPos goal) {
+        this(source, start, goal, DEFAULT_MAX_NODES);
+    }
+
+    public MiniChunkPathfinder(IMiniChunkGraphSource source, BlockPos start, BlockPos goal, int maxNodes) {
+        this.source = source;
+        this.start = start.toImmutable();
+        this.goal = goal.toImmutable();
+        this.maxNodes = maxNodes;
+    }
+
+    /** Starts this search on a worker thread. The returned future can either be cancelled directly, or with
+     * {@link #cancel()}. */
+    public Future<List<BlockPos>> submit() {
+        return WorkerThreadUtil.executeDependantTask(this);
+    }
+
+    /** Stops the search as soon as possible. The search will then return null. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** @return The number of abstract nodes that were expanded by the last search. */
+    public int getExpandedCount() {
+        return expanded;
+    }
+
+    /** Searches from the start again. This can be called more than once: every call starts from scratch, and gets the
+     * graphs from the source again.
+     * 
+     * @return Every block from the start to the goal (inclusive), or null if no path could be found within the
+     *         maximum number of nodes, or the search was cancelled. */
+    @Override
+    public List<BlockPos> call() {
+        graphs.clear();
+        nodeIds.clear();
+        nodeCount = 0;
+        expanded = 0;
+
+        MiniChunkGraph startGraph = getGraph(start);
+        MiniChunkGraph goalGraph = getGraph(goal);
+        if (startGraph == null || goalGraph == null) {
+            return null;
+        }
+        int goalIndex = MiniChunkGraph.indexOf(goal);
+        if (startGraph.getNodeId(MiniChunkGraph.indexOf(start)) < 0 || goalGraph.getNodeId(goalIndex) < 0) {
+            return null;
+        }
+
+        // The costs from every block to the goal are the same as the costs from the goal, just shifted
+        short[] goalCosts = goalGraph.getCostsFrom(goalIndex);
+        IntBinaryHeap open = new IntBinaryHeap(64);
+        int startId = getNode(start);
+        nodeCosts[startId] = 0;
+        nodeParents[startId] = -1;
+        open.put(startId, heuristic(start));
+
+        while (!open.isEmpty()) {
+            if (cancelled || Thread.currentThread().isInterrupted() || expanded >= maxNodes) {
+                return null;
+            }
+            int current = open.poll();
+            BlockPos pos = nodePositions[current];
+            if (pos.equals(goal)) {
+                return refine(current);
+            }
+            nodeClosed[current] = true;
+            expanded++;
+
+            MiniChunkGraph graph = getGraph(pos);
+            int index = MiniChunkGraph.indexOf(pos);
+            int cost = nodeCosts[current];
+
+            if (graph == goalGraph && goalCosts[index] != MiniChunkGraph.UNREACHABLE) {
+                // The reversed path from the goal enters this block rather than the goal, but is otherwise the same
+                int toGoal = goalCosts[index] - graph.getExpense(index) + graph.getExpense(goalIndex);
+                offer(open, current, goal, cost + toGoal, false);
+            }
+            MiniChunkGraph[] neighbours = new MiniChunkGraph[6];
+            for (EnumFacing face : EnumFacing.VALUES) {
+                neighbours[face.ordinal()] = getGraphForMin(graph.min.offset(face, 16));
+            }
+            PortalCosts portalCosts = graph.getPortalCosts(index, neighbours);
+            for (int i = 0; i < portalCosts.portals.length; i++) {
+                Portal portal = portalCosts.portals[i];
+                if (portal.inside == index) {
+                    MiniChunkGraph neighbour = neighbours[portal.face.ordinal()];
+                    BlockPos other = neighbour.getPos(portal.outside);
+                    offer(open, current, other, cost + neighbour.getExpense(portal.outside), true);
+                } else if (portalCosts.costs[i] != MiniChunkGraph.UNREACHABLE) {
+                    offer(open, current, graph.getPos(portal.inside), cost + portalCosts.costs[i], false);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void offer(IntBinaryHeap open, int parent, BlockPos pos, int cost, boolean crossed) {
+        int id = getNode(pos);
+        if (nodeClosed[id] || cost >= nodeCosts[id]) {
+            return;
+        }
+        nodeCosts[id] = cost;
+        nodeParents[id] = parent;
+        nodeCrossed[id] = crossed;
+        open.put(id, cost + heuristic(pos));
+    }
+
+    /** Every block costs at least 1 to move into, so the manhattan distance never overestimates. */
+    private int heuristic(BlockPos pos) {
+        return Math.abs(pos.getX() - goal.getX()) + Math.abs(pos.getY() - goal.getY()) + Math.abs(pos.getZ() - goal.getZ());
+    }
+
+    private int getNode(BlockPos pos) {
+        long key = pos.toLong();
+        int id = nodeIds.get(key);
+        if (id >= 0) {
+            return id;
+        }
+        id = nodeCount++;
+        if (id == nodePositions.length) {
+            int size = id * 2;
+            nodePositions = Arrays.copyOf(nodePositions, size);
+            nodeCosts = Arrays.copyOf(nodeCosts, size);
+            nodeParents = Arrays.copyOf(nodeParents, size);
+            nodeCrossed = Arrays.copyOf(nodeCrossed, size);
+            nodeClosed = Arrays.copyOf(nodeClosed, size);
+        }
+        nodeIds.put(key, id);
+        nodePositions[id] = pos;
+        nodeCosts[id] = Integer.MAX_VALUE;
+        nodeParents[id] = -1;
+        nodeCrossed[id] = false;
+        nodeClosed[id] = false;
+        return id;
+    }
+
+    /** Turns the abstract path ending at the given node into every block from the start. */
+    private List<BlockPos> refine(int end) {
+        Deque<Integer> abstractPath = new ArrayDeque<>();
+        for (int node = end; node >= 0; node = nodeParents[node]) {
+            abstractPath.addFirst(node);
+        }
+        List<BlockPos> path = new ArrayList<>();
+        path.add(start);
+        int previous = abstractPath.removeFirst();
+        for (int node : abstractPath) {
+            BlockPos pos = nodePositions[node];
+            if (nodeCrossed[node]) {
+                path.add(pos);
+            } else {
+                MiniChunkGraph graph = getGraph(pos);
+                short[] costs = graph.getCostsFrom(MiniChunkGraph.indexOf(nodePositions[previous]));
+                path.addAll(graph.tracePath(costs, MiniChunkGraph.indexOf(pos)));
+            }
+            previous = node;
+        }
+        return path;
+    }
+
+    private MiniChunkGraph getGraph(BlockPos pos) {
+        return getGraphForMin(new BlockPos(pos.getX() >> 4 << 4, pos.getY() >> 4 << 4, pos.getZ() >> 4 << 4));
+    }
+
+    private MiniChunkGraph getGraphForMin(BlockPos min) {
+        if (graphs.containsKey(min)) {
+            return graphs.get(min);
+        }
+        MiniChunkGraph graph = source.getGraph(min);
+        graphs.put(min, graph);
+        return graph;
+    }
+}
@@ -1,13 +1,20 @@
 package buildcraft.lib.path.task;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class AnalysedChunk {
     public final int[] expenseCounts;
-    public final EnumTraversalExpense[][][] expenses;
-    public final MiniGraph[][][] graphs = new MiniGraph[16][16][16];
+    public final byte[] expenses;
+    /** The graph that each block is part of, or -1 for solid blocks. */
+    public final short[] graphIds = new short[TaskMiniChunkAnalyser.VOLUME];
+    public final List<MiniGraph> graphs = new ArrayList<>();
 
     public AnalysedChunk(FilledChunk filled) {
         expenseCounts = filled.expenseCounts;
         expenses = filled.expenses;
+        Arrays.fill(graphIds, (short) -1);
     }
 
     public static class MiniGraph {
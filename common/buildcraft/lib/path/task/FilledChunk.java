@@ -1,6 +1,13 @@
 package buildcraft.lib.path.task;
 
+/** The traversal expense of every block in a mini chunk, indexed by {@link TaskMiniChunkAnalyser#index(int, int, int)}.
+ * Solid blocks have an expense of -1. */
 public class FilledChunk {
-    public final EnumTraversalExpense[][][] expenses = new EnumTraversalExpense[16][16][16];
+    public final byte[] expenses = new byte[TaskMiniChunkAnalyser.VOLUME];
     public final int[] expenseCounts = new int[3];
+
+    public void set(int index, EnumTraversalExpense expense) {
+        expenses[index] = expense.expense;
+        expenseCounts[expense.ordinal()]++;
+    }
 }
@@ -1,15 +1,19 @@
 package buildcraft.lib.path.task;
 
-import java.util.HashSet;
-import java.util.Set;
 import java.util.concurrent.Callable;
 
-import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
 
 import buildcraft.lib.path.task.AnalysedChunk.MiniGraph;
 
+/** Splits a mini chunk up into the separate graphs of blocks that can reach each other without leaving the mini
+ * chunk.
+ * <p>
+ * Blocks are referred to by their index ({@link #index(int, int, int)}), which fits in a short, so the flood fill
+ * only needs a single short array as its queue. */
 public class TaskMiniChunkAnalyser implements Callable<AnalysedChunk> {
+    public static final int VOLUME = 16 * 16 * 16;
+
     private final FilledChunk filled;
 
     public TaskMiniChunkAnalyser(FilledChunk filled) {
@@ -19,47 +23,61 @@ public class TaskMiniChunkAnalyser implements Callable<AnalysedChunk> {
     @Override
     public AnalysedChunk call() {
         AnalysedChunk chunk = new AnalysedChunk(filled);
-        for (int x = 0; x < 16; x++) {
-            for (int y = 0; y < 16; y++) {
-                for (int z = 0; z < 16; z++) {
-                    MiniGraph g = chunk.graphs[x][y][z];
-                    EnumTraversalExpense exp = chunk.expenses[x][y][z];
-                    if (exp != EnumTraversalExpense.SOLID & g == null) {
-                        spreadGraph(chunk, x, y, z);
-                    }
-                }
+        short[] queue = new short[VOLUME];
+        for (int index = 0; index < VOLUME; index++) {
+            if (chunk.expenses[index] >= 0 && chunk.graphIds[index] < 0) {
+                spreadGraph(chunk, index, queue);
             }
         }
         return chunk;
     }
 
-    private static void spreadGraph(AnalysedChunk chunk, int x, int y, int z) {
-        Set<BlockPos> openSet = new HashSet<>();
-        Set<BlockPos> closedSet = new HashSet<>();
+    private static void spreadGraph(AnalysedChunk chunk, int start, short[] queue) {
+        short graphId = (short) chunk.graphs.size();
         MiniGraph graph = new MiniGraph();
-        openSet.add(new BlockPos(x, y, z));
-        while (!openSet.isEmpty()) {
-            BlockPos toTest = openSet.iterator().next();
-            int x_ = toTest.getX();
-            int y_ = toTest.getY();
-            int z_ = toTest.getZ();
-            EnumTraversalExpense expense = chunk.expenses[x_][y_][z_];
-            if (expense != EnumTraversalExpense.SOLID) {
-                graph.blockCount++;
-                graph.totalExpense += expense.expense;
-                chunk.graphs[x_][y_][z_] = graph;
-                for (EnumFacing face : EnumFacing.VALUES) {
-                    BlockPos offset = toTest.offset(face);
-                    if (!isValid(offset)) continue;
-                    if (closedSet.contains(offset)) continue;
-                    openSet.add(offset);
-                }
-                openSet.remove(toTest);
-                closedSet.add(toTest);
-            }
+        chunk.graphs.add(graph);
+        int head = 0, tail = 0;
+        queue[tail++] = (short) start;
+        chunk.graphIds[start] = graphId;
+        while (head < tail) {
+            int index = queue[head++];
+            graph.blockCount++;
+            graph.totalExpense += chunk.expenses[index];
+            int x = getX(index), y = getY(index), z = getZ(index);
+            tail = offer(chunk, graphId, queue, tail, x > 0, index - 256);
+            tail = offer(chunk, graphId, queue, tail, x < 15, index + 256);
+            tail = offer(chunk, graphId, queue, tail, y > 0, index - 16);
+            tail = offer(chunk, graphId, queue, tail, y < 15, index + 16);
+            tail = offer(chunk, graphId, queue, tail, z > 0, index - 1);
+            tail = offer(chunk, graphId, queue, tail, z < 15, index + 1);
         }
     }
 
+    private static int offer(AnalysedChunk chunk, short graphId, short[] queue, int tail, boolean valid, int index) {
+        if (valid && chunk.expenses[index] >= 0 && chunk.graphIds[index] < 0) {
+            // Mark it now rather than when it is polled so that it can't be added twice
+            chunk.graphIds[index] = graphId;
+            queue[tail++] = (short) index;
+        }
+        return tail;
+    }
+
+    public static int index(int x, int y, int z) {
+        return (x << 8) | (y << 4) | z;
+    }
+
+    public static int getX(int index) {
+        return (index >> 8) & 15;
+    }
+
+    public static int getY(int index) {
+        return (index >> 4) & 15;
+    }
+
+    public static int getZ(int index) {
+        return index & 15;
+    }
+
     public static boolean isValid(BlockPos offset) {
         if (offset.getX() < 0 | offset.getX() >= 16) return false;
         if (offset.getY() < 0 | offset.getY() >= 16) return false;
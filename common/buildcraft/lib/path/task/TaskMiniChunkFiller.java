@@ -17,13 +17,13 @@ public class TaskMiniChunkFiller implements Callable<FilledChunk> {
     @Override
     public FilledChunk call() throws Exception {
         FilledChunk filled = new FilledChunk();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
         for (int x = 0; x < 16; x++) {
             for (int y = 0; y < 16; y++) {
                 for (int z = 0; z < 16; z++) {
-                    BlockPos pos = offset.add(x, y, z);
+                    pos.setPos(offset.getX() + x, offset.getY() + y, offset.getZ() + z);
                     EnumTraversalExpense expense = EnumTraversalExpense.getFor(world, pos, world.getBlockState(pos));
-                    filled.expenses[x][y][z] = expense;
-                    filled.expenseCounts[expense.ordinal()]++;
+                    filled.set(TaskMiniChunkAnalyser.index(x, y, z), expense);
                 }
             }
         }
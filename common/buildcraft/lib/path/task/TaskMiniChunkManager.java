@@ -8,6 +8,7 @@ import net.minecraft.world.World;
 
 import buildcraft.lib.misc.WorkerThreadUtil;
 import buildcraft.lib.path.MiniChunkGraph;
+import buildcraft.lib.path.MiniChunkGraph.ChunkType;
 
 public class TaskMiniChunkManager implements Callable<MiniChunkGraph> {
     private World world;
@@ -24,13 +25,28 @@ public class TaskMiniChunkManager implements Callable<MiniChunkGraph> {
         return WorkerThreadUtil.executeWorkTaskWaiting(callable);
     }
 
+    public static MiniChunkGraph createGraph(BlockPos min, AnalysedChunk analysed) {
+        int numNodes = analysed.graphs.size();
+        final ChunkType type;
+        if (numNodes == 0) {
+            type = ChunkType.COMPLETLY_FILLED;
+        } else if (analysed.expenseCounts[EnumTraversalExpense.AIR.ordinal()] == TaskMiniChunkAnalyser.VOLUME) {
+            type = ChunkType.COMPLETLY_FREE;
+        } else if (numNodes == 1) {
+            type = ChunkType.SINGLE_GRAPH;
+        } else {
+            type = ChunkType.MULTIPLE_GRAPHS;
+        }
+        return new MiniChunkGraph(min, type, analysed.expenses, analysed.graphIds, numNodes);
+    }
+
     @Override
     public MiniChunkGraph call() throws Exception {
         try {
             FilledChunk filled = execute(new TaskMiniChunkFiller(world, offset));
             world = null;// We no longer need this. Let the GC remove this if we are holding the last reference to it.
             AnalysedChunk analysed = execute(new TaskMiniChunkAnalyser(filled));
-            MiniChunkGraph graph = null;
+            MiniChunkGraph graph = createGraph(offset, analysed);
             setter.accept(graph);
             return graph;
         } catch (InterruptedException ex) {
@@ -0,0 +1,115 @@
+package buildcraft.lib.recipe;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.minecraft.inventory.InventoryCrafting;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.crafting.CraftingManager;
+import net.minecraft.item.crafting.IRecipe;
+import net.minecraft.world.World;
+
+import buildcraft.lib.misc.CraftingUtil;
+import buildcraft.lib.misc.ItemStackKey;
+
+/** Remembers which crafting recipe matched each crafting grid layout, so looking up a layout that has been seen before
+ * doesn't have to go through every registered recipe again.
+ * <p>
+ * A layout is the exact stack in every slot of the grid, so this assumes that a recipe only depends on what is in the
+ * grid, and not on the world. The whole index is thrown away whenever the number of registered recipes changes, and
+ * only the most recently used {@link #MAX_LAYOUTS} layouts are kept. */
+public final class CraftingRecipeIndex {
+    public static final int MAX_LAYOUTS = 4096;
+
+    /** The recipe that matched each layout, or null if nothing matched it. */
+    private static final Map<Layout, IRecipe> INDEX = new LinkedHashMap<Layout, IRecipe>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Layout, IRecipe> eldest) {
+            return size() > MAX_LAYOUTS;
+        }
+    };
+    private static int indexedRecipeCount = -1;
+
+    /** Deactivate constructor */
+    private CraftingRecipeIndex() {}
+
+    /** @return The same recipe as {@link CraftingUtil#findMatchingRecipe(InventoryCrafting, World)}, but only searching
+     *         through the recipe list if this exact layout hasn't been looked up since the recipes last changed. */
+    public static IRecipe findMatchingRecipe(InventoryCrafting inv, World world) {
+        Layout layout = new Layout(inv);
+        if (layout.isEmpty()) {
+            return null;
+        }
+        int recipeCount = CraftingManager.getInstance().getRecipeList().size();
+        synchronized (INDEX) {
+            if (recipeCount != indexedRecipeCount) {
+                INDEX.clear();
+                indexedRecipeCount = recipeCount;
+            }
+            if (INDEX.containsKey(layout)) {
+                return INDEX.get(layout);
+            }
+        }
+        IRecipe recipe = CraftingUtil.findMatchingRecipe(inv, world);
+        synchronized (INDEX) {
+            if (recipeCount == indexedRecipeCount) {
+                INDEX.put(layout, recipe);
+            }
+        }
+        return recipe;
+    }
+
+    /** Forgets every layout. This only needs to be called if recipes are replaced without changing how many there
+     * are. */
+    public static void clear() {
+        synchronized (INDEX) {
+            INDEX.clear();
+        }
+    }
+
+    public static int getIndexedCount() {
+        synchronized (INDEX) {
+            return INDEX.size();
+        }
+    }
+
+    private static final class Layout {
+        private final int width, height;
+        private final ItemStackKey[] stacks;
+        private final int hash;
+
+        Layout(InventoryCrafting inv) {
+            width = inv.getWidth();
+            height = inv.getHeight();
+            stacks = new ItemStackKey[inv.getSizeInventory()];
+            for (int i = 0; i < stacks.length; i++) {
+                ItemStack stack = inv.getStackInSlot(i);
+                stacks[i] = stack.isEmpty() ? ItemStackKey.EMPTY : new ItemStackKey(stack);
+            }
+            hash = (width * 31 + height) * 31 + Arrays.hashCode(stacks);
+        }
+
+        boolean isEmpty() {
+            for (ItemStackKey key : stacks) {
+                if (key != ItemStackKey.EMPTY) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (obj == null || obj.getClass() != getClass()) return false;
+            Layout other = (Layout) obj;
+            return hash == other.hash && width == other.width && height == other.height && Arrays.equals(stacks, other.stacks);
+        }
+    }
+}
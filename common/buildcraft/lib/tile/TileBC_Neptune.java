@@ -5,7 +5,12 @@
 package buildcraft.lib.tile;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
 
@@ -56,8 +61,10 @@ import buildcraft.lib.misc.PermissionUtil.PermissionBlock;
 import buildcraft.lib.misc.data.IdAllocator;
 import buildcraft.lib.net.IPayloadReceiver;
 import buildcraft.lib.net.IPayloadWriter;
+import buildcraft.lib.net.MessageBatcher;
 import buildcraft.lib.net.MessageUpdateTile;
 import buildcraft.lib.net.PacketBufferBC;
+import buildcraft.lib.net.cache.BuildCraftObjectCaches;
 import buildcraft.lib.registry.TagManager;
 import buildcraft.lib.registry.TagManager.EnumTagType;
 import buildcraft.lib.registry.TagManager.EnumTagTypeMulti;
@@ -182,6 +189,11 @@ public abstract class TileBC_Neptune extends TileEntity implements IPayloadRecei
         usingPlayers.remove(player);
     }
 
+    /** @return Every player that currently has a GUI of this tile open. */
+    public Set<EntityPlayer> getUsingPlayers() {
+        return Collections.unmodifiableSet(usingPlayers);
+    }
+
     @Override
     public final boolean hasCapability(Capability<?> capability, EnumFacing facing) {
         return getCapability(capability, facing) != null;
@@ -194,7 +206,7 @@ public abstract class TileBC_Neptune extends TileEntity implements IPayloadRecei
 
     // Item caps
     protected void onSlotChange(IItemHandlerModifiable handler, int slot, @Nonnull ItemStack before, @Nonnull ItemStack after) {
-        if (world.isBlockLoaded(getPos())) {
+        if (hasWorld() && world.isBlockLoaded(getPos())) {
             markDirty();
         }
     }
@@ -261,21 +273,17 @@ public abstract class TileBC_Neptune extends TileEntity implements IPayloadRecei
     /** Sends a network update update of the specified ID. */
     public final void sendNetworkUpdate(int id) {
         if (hasWorld()) {
-            MessageUpdateTile message = createNetworkUpdate(id);
-            MessageUtil.sendToAllWatching(this.world, this.getPos(), message);
+            sendToPlayers(getWatchingPlayers(), () -> createNetworkUpdate(id));
         }
     }
 
     /** Sends {@link #NET_GUI_TICK}. */
     public final void sendNetworkGuiTick() {
         if (hasWorld() && !world.isRemote) {
-            MessageUpdateTile message = createNetworkUpdate(NET_GUI_TICK);
-            if (message.getPayloadSize() <= Short.BYTES) {
-                return;
-            }
-            for (EntityPlayer player : usingPlayers) {
-                MessageUtil.getWrapper().sendTo(message, (EntityPlayerMP) player);
-            }
+            sendToPlayers(usingPlayers, () -> {
+                MessageUpdateTile message = createNetworkUpdate(NET_GUI_TICK);
+                return message.getPayloadSize() <= Short.BYTES ? null : message;
+            });
         }
     }
 
@@ -289,8 +297,7 @@ public abstract class TileBC_Neptune extends TileEntity implements IPayloadRecei
 
     public final void sendNetworkUpdate(int id, EntityPlayer target) {
         if (hasWorld() && target instanceof EntityPlayerMP) {
-            MessageUpdateTile message = createNetworkUpdate(id);
-            MessageUtil.getWrapper().sendTo(message, (EntityPlayerMP) target);
+            sendToPlayers(Collections.singleton(target), () -> createNetworkUpdate(id));
         }
     }
 
@@ -306,18 +313,78 @@ public abstract class TileBC_Neptune extends TileEntity implements IPayloadRecei
 
     public final void createAndSendMessage(int id, IPayloadWriter writer) {
         if (hasWorld()) {
-            IMessage message = createMessage(id, writer);
-            MessageUtil.sendToAllWatching(this.world, this.getPos(), message);
+            sendToPlayers(getWatchingPlayers(), () -> createMessage(id, writer));
+        }
+    }
+
+    /** Like {@link #createAndSendMessage(int, IPayloadWriter)}, except that on the server the payload is sent at the
+     * end of the tick together with every other batched payload from the same chunk. The writer is only called when
+     * the batch is sent. */
+    public final void createAndSendBatchedMessage(int id, IPayloadWriter writer) {
+        if (hasWorld()) {
+            if (world.isRemote) {
+                createAndSendMessage(id, writer);
+            } else {
+                MessageBatcher.queue(world, getPos(), createPayload(id, writer));
+            }
         }
     }
 
     public final void createAndSendGuiMessage(int id, IPayloadWriter writer) {
         if (hasWorld()) {
-            IMessage message = createMessage(id, writer);
-            MessageUtil.sendToPlayers(usingPlayers, message);
+            sendToPlayers(usingPlayers, () -> createMessage(id, writer));
+        }
+    }
+
+    /** Creates a message on the server and sends it to the given players straight away. Every cached object that the
+     * message refers to is sent first to each player that hasn't been sent it yet, so they don't have to request it.
+     * Does nothing on the client.
+     * 
+     * @param creator Creates the message, or returns null if nothing should be sent. */
+    private void sendToPlayers(Collection<? extends EntityPlayer> players, Supplier<MessageUpdateTile> creator) {
+        if (world.isRemote || players.isEmpty()) {
+            return;
+        }
+        BuildCraftObjectCaches.startRecording();
+        try {
+            MessageUpdateTile message = creator.get();
+            if (message == null) {
+                return;
+            }
+            flushBatchedMessages();
+            for (EntityPlayer player : players) {
+                if (player instanceof EntityPlayerMP) {
+                    BuildCraftObjectCaches.sendRecorded((EntityPlayerMP) player);
+                    MessageUtil.getWrapper().sendTo(message, (EntityPlayerMP) player);
+                }
+            }
+        } finally {
+            BuildCraftObjectCaches.stopRecording();
         }
     }
 
+    private List<EntityPlayerMP> getWatchingPlayers() {
+        List<EntityPlayerMP> players = new ArrayList<>();
+        MessageUtil.forAllWatching(world, getPos(), players::add);
+        return players;
+    }
+
+    /** Sends any payloads that this tile has batched up this tick, so that they don't arrive after a message that is
+     * about to be sent immediately. */
+    private void flushBatchedMessages() {
+        if (!world.isRemote) {
+            MessageBatcher.flushPos(world, getPos());
+        }
+    }
+
+    /** @return A writer for a payload with the given id, as queued up in {@link MessageBatcher}. */
+    public final IPayloadWriter createPayload(int id, IPayloadWriter writer) {
+        return (buffer) -> {
+            buffer.writeShort(id);
+            writer.write(buffer);
+        };
+    }
+
     public final MessageUpdateTile createMessage(int id, IPayloadWriter writer) {
         PacketBufferBC buffer = new PacketBufferBC(Unpooled.buffer());
         buffer.writeShort(id);
@@ -24,10 +24,16 @@ public class BCTransportConfig {
     public static long mjPerMillibucket = 1_000;
     public static long mjPerItem = MjAPI.MJ;
     public static int baseFlowRate = 10;
+    public static boolean itemRouting = false;
+    public static boolean sleepingPipes = true;
+    public static boolean fluidNetworks = false;
 
     private static Property propMjPerMillibucket;
     private static Property propMjPerItem;
     private static Property propBaseFlowRate;
+    private static Property propItemRouting;
+    private static Property propSleepingPipes;
+    private static Property propFluidNetworks;
 
     public static void preInit() {
         Configuration config = BCCoreConfig.config;
@@ -40,10 +46,26 @@ public class BCTransportConfig {
         propBaseFlowRate = config.get("general", "pipes.baseFluidRate", baseFlowRate).setMinValue(1).setMaxValue(40);
         EnumRestartRequirement.WORLD.setTo(propBaseFlowRate);
 
+        propItemRouting = config.get("general", "pipes.itemRouting", itemRouting);
+        propItemRouting.setComment("Should items in pipes prefer sides that lead to an inventory, rather than picking any connected side at random?");
+        EnumRestartRequirement.NONE.setTo(propItemRouting);
+
+        propSleepingPipes = config.get("general", "pipes.sleepWhenIdle", sleepingPipes);
+        propSleepingPipes.setComment("Should pipes with nothing in them stop ticking until something changes?");
+        EnumRestartRequirement.NONE.setTo(propSleepingPipes);
+
+        propFluidNetworks = config.get("general", "pipes.fluidNetworks", fluidNetworks);
+        propFluidNetworks.setComment("Should connected fluid pipes of the same type move fluid as a single network, rather than each pipe moving fluid by itself? Faster for long pipelines, but fluid is no longer split up between the sections of each pipe.");
+        EnumRestartRequirement.NONE.setTo(propFluidNetworks);
+
         MinecraftForge.EVENT_BUS.register(BCTransportConfig.class);
     }
 
     public static void reloadConfig(EnumRestartRequirement restarted) {
+        itemRouting = propItemRouting.getBoolean();
+        sleepingPipes = propSleepingPipes.getBoolean();
+        fluidNetworks = propFluidNetworks.getBoolean();
+
         if (EnumRestartRequirement.WORLD.hasBeenRestarted(restarted)) {
             mjPerMillibucket = propMjPerMillibucket.getLong();
             if (mjPerMillibucket < MJ_REQ_MILLIBUCKET_MIN) {
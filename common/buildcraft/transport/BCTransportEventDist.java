@@ -1,13 +1,18 @@
 package buildcraft.transport;
 
 import net.minecraftforge.client.event.TextureStitchEvent;
+import net.minecraftforge.event.world.ChunkEvent;
 import net.minecraftforge.event.world.ChunkWatchEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
 import buildcraft.transport.client.render.PipeWireRenderer;
+import buildcraft.transport.pipe.PipeTickScheduler;
+import buildcraft.transport.pipe.flow.ItemRoutingGraph;
 import buildcraft.transport.wire.WorldSavedDataWireSystems;
 
 public enum BCTransportEventDist {
@@ -17,6 +22,9 @@ public enum BCTransportEventDist {
     public void onWorldTick(TickEvent.WorldTickEvent event) {
         if (!event.world.isRemote && event.world.getMinecraftServer() != null) {
             WorldSavedDataWireSystems.get(event.world).tick();
+            if (event.phase == Phase.END) {
+                PipeTickScheduler.tick(event.world);
+            }
         }
     }
 
@@ -25,6 +33,22 @@ public enum BCTransportEventDist {
         WorldSavedDataWireSystems.get(event.getPlayer().world).changedPlayers.add(event.getPlayer());
     }
 
+    @SubscribeEvent
+    public void onChunkLoad(ChunkEvent.Load event) {
+        ItemRoutingGraph.onChunkChange(event.getWorld(), event.getChunk());
+    }
+
+    @SubscribeEvent
+    public void onChunkUnload(ChunkEvent.Unload event) {
+        ItemRoutingGraph.onChunkChange(event.getWorld(), event.getChunk());
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        ItemRoutingGraph.onWorldUnload(event.getWorld());
+        PipeTickScheduler.onWorldUnload(event.getWorld());
+    }
+
     @SubscribeEvent
     @SideOnly(Side.CLIENT)
     public void onTextureStitch(TextureStitchEvent.Post event) {
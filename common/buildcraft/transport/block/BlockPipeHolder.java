@@ -54,12 +54,14 @@ import buildcraft.api.blocks.ICustomPaintHandler;
 import buildcraft.api.core.EnumPipePart;
 import buildcraft.api.transport.neptune.*;
 
+import buildcraft.core.statements.IObservingTrigger;
 import buildcraft.lib.block.BlockBCTile_Neptune;
 import buildcraft.lib.misc.BoundingBoxUtil;
 import buildcraft.lib.misc.InventoryUtil;
 import buildcraft.lib.misc.VecUtil;
 import buildcraft.lib.prop.UnlistedNonNullProperty;
 import buildcraft.transport.BCTransportItems;
+import buildcraft.transport.gate.GateLogic;
 import buildcraft.transport.item.ItemWire;
 import buildcraft.transport.pipe.Pipe;
 import buildcraft.transport.tile.TilePipeHolder;
@@ -341,6 +343,7 @@ public class BlockPipeHolder extends BlockBCTile_Neptune implements ICustomPaint
             if (pipe.getPipe() != null) {
                 pipe.getPipe().markForUpdate();
             }
+            GateLogic.markInputsChanged(pipe, IObservingTrigger.INPUT_REDSTONE);
         }
     }
 
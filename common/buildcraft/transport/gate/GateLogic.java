@@ -2,7 +2,6 @@ package buildcraft.transport.gate;
 
 import java.util.*;
 
-import buildcraft.transport.wire.WorldSavedDataWireSystems;
 import net.minecraft.item.EnumDyeColor;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.PacketBuffer;
@@ -19,8 +18,9 @@ import buildcraft.api.statements.*;
 import buildcraft.api.statements.containers.IRedstoneStatementContainer;
 import buildcraft.api.transport.PipeEventActionActivate;
 import buildcraft.api.transport.neptune.IPipeHolder;
-import buildcraft.api.transport.neptune.IWireManager;
+import buildcraft.api.transport.neptune.PipePluggable;
 
+import buildcraft.core.statements.IObservingTrigger;
 import buildcraft.lib.misc.MessageUtil;
 import buildcraft.lib.net.IPayloadWriter;
 import buildcraft.transport.gate.ActionWrapper.ActionWrapperExternal;
@@ -29,8 +29,12 @@ import buildcraft.transport.gate.ActionWrapper.ActionWrapperInternalSided;
 import buildcraft.transport.gate.TriggerWrapper.TriggerWrapperExternal;
 import buildcraft.transport.gate.TriggerWrapper.TriggerWrapperInternal;
 import buildcraft.transport.gate.TriggerWrapper.TriggerWrapperInternalSided;
+import buildcraft.transport.pipe.PipeTickScheduler;
 import buildcraft.transport.plug.PluggableGate;
+import buildcraft.transport.tile.TilePipeHolder;
 import buildcraft.transport.wire.IWireEmitter;
+import buildcraft.transport.wire.WireSystem.WireElement;
+import buildcraft.transport.wire.WorldSavedDataWireSystems;
 
 public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContainer {
     public static final int NET_ID_RESOLVE = 3;
@@ -58,6 +62,21 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
     /** Used on the client to determine if this gate should glow or not. */
     public boolean isOn;
 
+    // Server side resolving state
+
+    /** A mask of the {@link IObservingTrigger} inputs that the current triggers read. */
+    private int observedInputs = 0;
+    /** True if any of the current triggers isn't an {@link IObservingTrigger}, so the triggers have to be checked every
+     * tick. */
+    private boolean pollEveryTick = false;
+    /** True if the triggers need to be checked again on the next tick. */
+    private boolean dirty = true;
+
+    // Reused by resolveActions()
+    private final boolean[] prevTriggers, prevActions;
+    private final EnumSet<EnumDyeColor> previousBroadcasts;
+    private final StatementSlot[] actionSlots;
+
     public GateLogic(PluggableGate pluggable, GateVariant variant) {
         this.pluggable = pluggable;
         this.variant = variant;
@@ -72,6 +91,11 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
         actionOn = new boolean[variant.numSlots];
 
         wireBroadcasts = EnumSet.noneOf(EnumDyeColor.class);
+
+        prevTriggers = new boolean[variant.numSlots];
+        prevActions = new boolean[variant.numSlots];
+        previousBroadcasts = EnumSet.noneOf(EnumDyeColor.class);
+        actionSlots = new StatementSlot[variant.numSlots];
     }
 
     // Saving + Loading
@@ -292,6 +316,7 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
 
     public void setTrigger(int index, TriggerWrapper trigger) {
         setStatementInternal(index, triggers, triggerParameters, trigger);
+        markDirty();
     }
 
     public StatementWrapper getTrigger(int index) {
@@ -300,6 +325,7 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
 
     public void setTriggerParam(int index, int pIndex, IStatementParameter param) {
         triggerParameters[index][pIndex] = param;
+        markDirty();
     }
 
     public IStatementParameter getTriggerParam(int index, int pIndex) {
@@ -308,6 +334,7 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
 
     public void setAction(int index, ActionWrapper action) {
         setStatementInternal(index, actions, actionParameters, action);
+        markDirty();
     }
 
     public StatementWrapper getAction(int index) {
@@ -316,6 +343,7 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
 
     public void setActionParam(int index, int pIndex, IStatementParameter param) {
         actionParameters[index][pIndex] = param;
+        markDirty();
     }
 
     public IStatementParameter getActionParam(int index, int pIndex) {
@@ -359,25 +387,59 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
         return variant.numSlots > 4;
     }
 
+    /** Makes this gate check all of its triggers on the next tick. */
+    public void markDirty() {
+        dirty = true;
+        PipeTickScheduler.wakeUp(getPipeHolder());
+    }
+
+    /** Called when some of the inputs that {@link IObservingTrigger}s can read have changed.
+     *
+     * @param inputs A mask of the INPUT_* flags in {@link IObservingTrigger}. */
+    public void markInputsChanged(int inputs) {
+        if ((observedInputs & inputs) != 0) {
+            markDirty();
+        }
+    }
+
+    /** Calls {@link #markInputsChanged(int)} on every gate in the given holder. */
+    public static void markInputsChanged(IPipeHolder holder, int inputs) {
+        for (EnumFacing face : EnumFacing.VALUES) {
+            PipePluggable plug = holder.getPluggable(face);
+            if (plug instanceof PluggableGate) {
+                ((PluggableGate) plug).logic.markInputsChanged(inputs);
+            }
+        }
+    }
+
     public void resolveActions() {
         int groupCount = 0;
         int groupActive = 0;
 
-        boolean[] prevTriggers = Arrays.copyOf(triggerOn, triggerOn.length);
-        boolean[] prevActions = Arrays.copyOf(actionOn, actionOn.length);
+        System.arraycopy(triggerOn, 0, prevTriggers, 0, triggerOn.length);
+        System.arraycopy(actionOn, 0, prevActions, 0, actionOn.length);
 
         Arrays.fill(triggerOn, false);
         Arrays.fill(actionOn, false);
 
         activeActions.clear();
 
-        EnumSet<EnumDyeColor> previousBroadcasts = EnumSet.copyOf(wireBroadcasts);
+        previousBroadcasts.clear();
+        previousBroadcasts.addAll(wireBroadcasts);
         wireBroadcasts.clear();
 
+        observedInputs = IObservingTrigger.INPUT_NONE;
+        pollEveryTick = false;
+
         for (int triggerIndex = 0; triggerIndex < triggers.length; triggerIndex++) {
             TriggerWrapper trigger = triggers[triggerIndex];
             groupCount++;
             if (trigger != null) {
+                if (trigger.delegate instanceof IObservingTrigger) {
+                    observedInputs |= ((IObservingTrigger) trigger.delegate).getObservedInputs();
+                } else {
+                    pollEveryTick = true;
+                }
                 if (trigger.isTriggerActive(this, triggerParameters[triggerIndex])) {
                     groupActive++;
                     triggerOn[triggerIndex] = true;
@@ -391,13 +453,16 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
                     actionOn[actionIndex] = allActionsActive;
                     if (action != null) {
                         if (allActionsActive) {
-                            StatementSlot slot = new StatementSlot();
+                            StatementSlot slot = actionSlots[actionIndex];
+                            if (slot == null) {
+                                slot = new StatementSlot();
+                                actionSlots[actionIndex] = slot;
+                            }
                             slot.statement = action.delegate;
                             slot.parameters = actionParameters[actionIndex];
                             slot.part = action.sourcePart;
                             activeActions.add(slot);
-                            action.actionActivate(this, actionParameters[actionIndex]);
-                            getPipeHolder().fireEvent(new PipeEventActionActivate(getPipeHolder(), action.getDelegate(), actionParameters[actionIndex], action.sourcePart));
+                            activateAction(actionIndex);
                         } else {
                             action.actionDeactivated(this, actionParameters[actionIndex]);
                         }
@@ -407,19 +472,15 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
                 groupCount = 0;
             }
         }
+        dirty = false;
 
         if (!previousBroadcasts.equals(wireBroadcasts)) {
-            IWireManager wires = getPipeHolder().getWireManager();
-            EnumSet<EnumDyeColor> turnedOff = EnumSet.copyOf(previousBroadcasts);
-            turnedOff.removeAll(wireBroadcasts);
             // FIXME: add call to "wires.stopEmittingColour(turnedOff)"
-
-            EnumSet<EnumDyeColor> turnedOn = EnumSet.copyOf(wireBroadcasts);
-            turnedOn.removeAll(previousBroadcasts);
-            // FIXME: add call to "wires.emittingColour(turnedOff)"
+            // FIXME: add call to "wires.emittingColour(turnedOn)"
 
             if(!getPipeHolder().getPipeWorld().isRemote) {
-                WorldSavedDataWireSystems.get(getPipeHolder().getPipeWorld()).gatesChanged = true;
+                WorldSavedDataWireSystems wireSystems = WorldSavedDataWireSystems.get(getPipeHolder().getPipeWorld());
+                wireSystems.markEmitterChanged(new WireElement(getPipeHolder().getPipePos(), getSide()));
             }
         }
 
@@ -428,11 +489,46 @@ public class GateLogic implements IGate, IWireEmitter, IRedstoneStatementContain
         }
     }
 
+    private void activateAction(int actionIndex) {
+        ActionWrapper action = actions[actionIndex];
+        IStatementParameter[] params = actionParameters[actionIndex];
+        action.actionActivate(this, params);
+        IPipeHolder holder = getPipeHolder();
+        if (!(holder instanceof TilePipeHolder) || ((TilePipeHolder) holder).eventBus.hasHandlerFor(PipeEventActionActivate.class)) {
+            holder.fireEvent(new PipeEventActionActivate(holder, action.getDelegate(), params, action.sourcePart));
+        }
+    }
+
     public void onTick() {
         if (getPipeHolder().getPipeWorld().isRemote) {
             return;
         }
-        resolveActions();
+        if (dirty || pollEveryTick) {
+            resolveActions();
+        } else {
+            // None of the triggers can have changed, but actions still expect to be activated (or deactivated)
+            // every tick, as resolveActions does
+            for (int actionIndex = 0; actionIndex < actions.length; actionIndex++) {
+                ActionWrapper action = actions[actionIndex];
+                if (action == null) {
+                    continue;
+                }
+                if (actionOn[actionIndex]) {
+                    activateAction(actionIndex);
+                } else {
+                    action.actionDeactivated(this, actionParameters[actionIndex]);
+                }
+            }
+        }
+    }
+
+    /** @return True if none of the triggers need to be checked until one of their inputs changes, and there are no
+     *         active actions, so this doesn't need to be ticked. */
+    public boolean canSleep() {
+        if (dirty || pollEveryTick) {
+            return false;
+        }
+        return activeActions.isEmpty() && redstoneOutput == 0 && wireBroadcasts.isEmpty();
     }
 
     public SortedSet<TriggerWrapper> getAllValidTriggers() {
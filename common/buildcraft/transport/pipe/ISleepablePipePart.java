@@ -0,0 +1,16 @@
+package buildcraft.transport.pipe;
+
+import buildcraft.api.transport.neptune.PipeBehaviour;
+import buildcraft.api.transport.neptune.PipeFlow;
+import buildcraft.api.transport.neptune.PipePluggable;
+
+/** Implemented by {@link PipeBehaviour}'s, {@link PipeFlow}'s and {@link PipePluggable}'s that override onTick, but
+ * don't always need to be ticked. Parts that don't override onTick never stop a pipe from sleeping, and parts that do
+ * override it but don't implement this always keep the pipe awake.
+ * <p>
+ * A part that returns true from {@link #canSleep()} must wake up the pipe (with {@link IWakeablePipeHolder}) when it
+ * needs to be ticked again. */
+public interface ISleepablePipePart {
+    /** @return True if calling onTick would not do anything. */
+    boolean canSleep();
+}
@@ -0,0 +1,17 @@
+package buildcraft.transport.pipe;
+
+import buildcraft.api.transport.neptune.IPipeHolder;
+
+/** An {@link IPipeHolder} that stops ticking while none of its parts need to be ticked (see
+ * {@link ISleepablePipePart}). Use {@link PipeTickScheduler#wakeUp(IPipeHolder)} rather than calling this directly if
+ * the holder might not implement this. */
+public interface IWakeablePipeHolder extends IPipeHolder {
+    /** Makes this start ticking again (from the next tick) if it was asleep, and stops it from going back to sleep for
+     * a short while. Does nothing on the client. */
+    void wakeUp();
+
+    /** Calls {@link #wakeUp()} after the given number of ticks. */
+    void scheduleWakeUp(int ticks);
+
+    boolean isSleeping();
+}
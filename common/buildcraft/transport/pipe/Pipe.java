@@ -29,6 +29,9 @@ import buildcraft.lib.misc.NBTUtilBC;
 import buildcraft.lib.misc.data.LoadingException;
 import buildcraft.lib.net.PacketBufferBC;
 import buildcraft.transport.client.model.key.PipeModelKey;
+import buildcraft.transport.pipe.flow.ItemRoutingGraph;
+import buildcraft.transport.pipe.flow.PipeFlowFluids;
+import buildcraft.transport.pipe.flow.PipeFlowItems;
 
 public final class Pipe implements IPipe, IDebuggable {
     public static final int NET_RENDER = 0;
@@ -262,6 +265,14 @@ public final class Pipe implements IPipe, IDebuggable {
                     }
                 }
             }
+            if (flow instanceof PipeFlowItems) {
+                // Always drop the routing tables through this pipe, as a pluggable might have changed the event handlers
+                ItemRoutingGraph.onConnectionsChanged(holder);
+            }
+            if (flow instanceof PipeFlowFluids) {
+                // Always re-check the network, as a pluggable might have changed the event handlers
+                ((PipeFlowFluids) flow).onConnectionsChanged();
+            }
 
             getHolder().scheduleNetworkUpdate(PipeMessageReceiver.BEHAVIOUR);
         }
@@ -295,6 +306,12 @@ public final class Pipe implements IPipe, IDebuggable {
     @Override
     public void markForUpdate() {
         updateMarked = true;
+        PipeTickScheduler.wakeUp(holder);
+    }
+
+    /** @return True if {@link #onTick()} doesn't need to be called until something wakes up the holder. */
+    public boolean canSleep() {
+        return !updateMarked && PipeTickScheduler.canSleep(behaviour) && PipeTickScheduler.canSleep(flow);
     }
 
     @SideOnly(Side.CLIENT)
@@ -2,6 +2,7 @@ package buildcraft.transport.pipe;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
@@ -13,9 +14,15 @@ import buildcraft.api.transport.PipeEventPriority;
 
 public class PipeEventBus {
     private static final Map<Class<?>, List<Handler>> allHandlers = new HashMap<>();
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, PipeEvent.class);
+    private static final LocalHandler[] NO_HANDLERS = new LocalHandler[0];
 
     private final List<LocalHandler> currentHandlers = new ArrayList<>();
 
+    /** Maps every concrete event class that has been fired at this bus to the (sorted) handlers that accept it. Cleared
+     * whenever the handlers change. */
+    private final Map<Class<?>, LocalHandler[]> dispatchCache = new IdentityHashMap<>();
+
     private static List<LocalHandler> getAndBindHandlers(Object obj) {
         Class<?> cls = obj instanceof Class ? (Class<?>) obj : obj.getClass();
 
@@ -75,6 +82,7 @@ public class PipeEventBus {
         }
         currentHandlers.addAll(getAndBindHandlers(obj));
         Collections.sort(currentHandlers);
+        dispatchCache.clear();
     }
 
     public void unregisterHandler(Object obj) {
@@ -89,16 +97,42 @@ public class PipeEventBus {
                 iter.remove();
             }
         }
+        dispatchCache.clear();
     }
 
     public boolean fireEvent(PipeEvent event) {
+        LocalHandler[] handlers = getHandlersFor(event.getClass());
+        if (handlers.length == 0) {
+            return false;
+        }
         boolean handled = false;
-        for (LocalHandler handler : currentHandlers) {
+        for (LocalHandler handler : handlers) {
             handled |= handler.handleEvent(event);
         }
         return handled;
     }
 
+    /** @return True if at least one registered handler would receive events of the given class. Used to skip creating
+     *         events entirely when nothing will listen to them. */
+    public boolean hasHandlerFor(Class<? extends PipeEvent> eventClass) {
+        return getHandlersFor(eventClass).length > 0;
+    }
+
+    private LocalHandler[] getHandlersFor(Class<?> eventClass) {
+        LocalHandler[] handlers = dispatchCache.get(eventClass);
+        if (handlers == null) {
+            List<LocalHandler> list = new ArrayList<>();
+            for (LocalHandler handler : currentHandlers) {
+                if (handler.classHandled.isAssignableFrom(eventClass)) {
+                    list.add(handler);
+                }
+            }
+            handlers = list.isEmpty() ? NO_HANDLERS : list.toArray(new LocalHandler[list.size()]);
+            dispatchCache.put(eventClass, handlers);
+        }
+        return handlers;
+    }
+
     public static class Handler {
         final PipeEventPriority priority;
         final boolean receiveCanceled, isStatic;
@@ -119,6 +153,8 @@ public class PipeEventBus {
                 return null;
             }
             MethodHandle bound = isStatic ? handle : handle.bindTo(obj);
+            // Adapt the handle to a single exact type so that LocalHandler can always use invokeExact
+            bound = bound.asType(HANDLER_TYPE);
             return new LocalHandler(priority, receiveCanceled, obj, eventClassHandled, bound);
         }
     }
@@ -138,20 +174,18 @@ public class PipeEventBus {
             this.handle = handle;
         }
 
+        /** Assumes that the event is an instance of {@link #classHandled} - {@link PipeEventBus} only calls this with
+         * handlers that it has already matched to the event's class. */
         public boolean handleEvent(PipeEvent event) {
             if (!receiveCanceled && event.isCanceled()) {
                 return false;
             }
-
-            if (classHandled.isAssignableFrom(event.getClass())) {
-                try {
-                    handle.invoke(event);
-                    return true;
-                } catch (Throwable e) {
-                    throw new IllegalStateException(e);
-                }
+            try {
+                handle.invokeExact(event);
+                return true;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
             }
-            return false;
         }
 
         @Override
@@ -0,0 +1,125 @@
+package buildcraft.transport.pipe;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.World;
+
+import buildcraft.api.transport.neptune.IPipeHolder;
+import buildcraft.api.transport.neptune.PipeBehaviour;
+import buildcraft.api.transport.neptune.PipeFlow;
+import buildcraft.api.transport.neptune.PipePluggable;
+
+import buildcraft.lib.misc.data.DelayedList;
+
+/** Removes sleeping pipes from (and adds woken pipes back into) the list of ticking tiles in a world. Tiles can't be
+ * added or removed while the world is ticking them, so both are deferred until the end of the world tick.
+ * <p>
+ * This only exists on the server. */
+public class PipeTickScheduler {
+    private static final Map<World, PipeTickScheduler> SCHEDULERS = new WeakHashMap<>();
+
+    /** Caches whether a class overrides onTick (from {@link PipeBehaviour}, {@link PipeFlow} or
+     * {@link PipePluggable}). */
+    private static final ClassValue<Boolean> OVERRIDES_TICK = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                Method method = type.getMethod("onTick");
+                Class<?> declaring = method.getDeclaringClass();
+                return declaring != PipeBehaviour.class && declaring != PipeFlow.class && declaring != PipePluggable.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private final Set<TileEntity> toSleep = new HashSet<>();
+    private final Set<IWakeablePipeHolder> toWake = new HashSet<>();
+    private final DelayedList<IWakeablePipeHolder> scheduled = new DelayedList<>();
+
+    private PipeTickScheduler() {}
+
+    public static PipeTickScheduler get(World world) {
+        if (world.isRemote) {
+            throw new IllegalArgumentException("Pipes never sleep on the client!");
+        }
+        return SCHEDULERS.computeIfAbsent(world, w -> new PipeTickScheduler());
+    }
+
+    /** Called at the end of every world tick. */
+    public static void tick(World world) {
+        PipeTickScheduler scheduler = SCHEDULERS.get(world);
+        if (scheduler != null) {
+            scheduler.tick0(world);
+        }
+    }
+
+    public static void onWorldUnload(World world) {
+        SCHEDULERS.remove(world);
+    }
+
+    /** Wakes up the given holder if it supports sleeping. */
+    public static void wakeUp(IPipeHolder holder) {
+        if (holder instanceof IWakeablePipeHolder) {
+            ((IWakeablePipeHolder) holder).wakeUp();
+        }
+    }
+
+    /** @return True if the given pipe part (a behaviour, flow or pluggable) doesn't need to be ticked. */
+    public static boolean canSleep(Object part) {
+        if (part == null) {
+            return true;
+        } else if (part instanceof ISleepablePipePart) {
+            return ((ISleepablePipePart) part).canSleep();
+        } else {
+            return !OVERRIDES_TICK.get(part.getClass());
+        }
+    }
+
+    /** Removes the given tile from the list of ticking tiles at the end of this tick. */
+    public <T extends TileEntity & IWakeablePipeHolder> void sleep(T tile) {
+        toSleep.add(tile);
+    }
+
+    /** Adds the given tile back into the list of ticking tiles at the end of this tick, or cancels a previous call to
+     * {@link #sleep(TileEntity)}. */
+    public <T extends TileEntity & IWakeablePipeHolder> void wake(T tile) {
+        if (!toSleep.remove(tile)) {
+            toWake.add(tile);
+        }
+    }
+
+    public void scheduleWakeUp(IWakeablePipeHolder holder, int ticks) {
+        scheduled.add(ticks, holder);
+    }
+
+    private void tick0(World world) {
+        for (IWakeablePipeHolder holder : scheduled.advance()) {
+            holder.wakeUp();
+        }
+        if (!toSleep.isEmpty()) {
+            world.tickableTileEntities.removeAll(toSleep);
+            toSleep.clear();
+        }
+        if (!toWake.isEmpty()) {
+            List<IWakeablePipeHolder> woken = new ArrayList<>(toWake);
+            toWake.clear();
+            for (IWakeablePipeHolder holder : woken) {
+                TileEntity tile = (TileEntity) holder;
+                if (tile.isInvalid() || !world.isBlockLoaded(tile.getPos())) {
+                    continue;
+                }
+                if (world.getTileEntity(tile.getPos()) == tile) {
+                    world.tickableTileEntities.add(tile);
+                }
+            }
+        }
+    }
+}
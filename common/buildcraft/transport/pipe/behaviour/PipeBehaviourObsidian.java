@@ -21,8 +21,10 @@ import buildcraft.lib.inventory.ItemTransactorHelper;
 import buildcraft.lib.inventory.filter.StackFilter;
 import buildcraft.lib.misc.BoundingBoxUtil;
 import buildcraft.lib.misc.VecUtil;
+import buildcraft.transport.pipe.ISleepablePipePart;
+import buildcraft.transport.pipe.PipeTickScheduler;
 
-public class PipeBehaviourObsidian extends PipeBehaviour implements IMjRedstoneReceiver {
+public class PipeBehaviourObsidian extends PipeBehaviour implements IMjRedstoneReceiver, ISleepablePipePart {
     private static final double INSERT_SPEED = 0.04;
 
     private final MjBattery battery = new MjBattery(256 * MjAPI.MJ);
@@ -45,6 +47,11 @@ public class PipeBehaviourObsidian extends PipeBehaviour implements IMjRedstoneR
         return nbt;
     }
 
+    @Override
+    public boolean canSleep() {
+        return battery.getStored() == 0;
+    }
+
     @Override
     public void onTick() {
         if (pipe.getHolder().getPipeWorld().isRemote) {
@@ -169,6 +176,7 @@ public class PipeBehaviourObsidian extends PipeBehaviour implements IMjRedstoneR
                 return 0;
             }
         }
+        PipeTickScheduler.wakeUp(pipe.getHolder());
         return battery.addPowerChecking(microJoules);
     }
 }
@@ -20,8 +20,10 @@ import buildcraft.api.transport.neptune.PipeBehaviour;
 
 import buildcraft.lib.inventory.filter.StackFilter;
 import buildcraft.transport.BCTransportConfig;
+import buildcraft.transport.pipe.ISleepablePipePart;
+import buildcraft.transport.pipe.PipeTickScheduler;
 
-public class PipeBehaviourWood extends PipeBehaviourDirectional implements IMjRedstoneReceiver {
+public class PipeBehaviourWood extends PipeBehaviourDirectional implements IMjRedstoneReceiver, ISleepablePipePart {
 
     private final MjBattery mjBattery = new MjBattery(2 * MjAPI.MJ);
 
@@ -63,6 +65,11 @@ public class PipeBehaviourWood extends PipeBehaviourDirectional implements IMjRe
         }
     }
 
+    @Override
+    public boolean canSleep() {
+        return mjBattery.getStored() == 0;
+    }
+
     @Override
     public void onTick() {
         mjBattery.tick(pipe.getHolder().getPipeWorld(), pipe.getHolder().getPipePos());
@@ -118,6 +125,7 @@ public class PipeBehaviourWood extends PipeBehaviourDirectional implements IMjRe
         if (simulate) {
             return mjBattery.isFull() ? microJoules : 0;
         } else {
+            PipeTickScheduler.wakeUp(pipe.getHolder());
             return mjBattery.addPowerChecking(microJoules);
         }
     }
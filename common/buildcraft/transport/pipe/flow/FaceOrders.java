@@ -0,0 +1,69 @@
+package buildcraft.transport.pipe.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import net.minecraft.util.EnumFacing;
+
+/** A lazily filled table of every ordering of every subset of {@link EnumFacing}. Subsets are given as bit masks (with
+ * bit {@link EnumFacing#getIndex()} set for every face in the subset), and orderings as an index between 0 and
+ * {@link #countOrders(int)}. Picking a uniformly random index is equivalent to shuffling the faces, but without
+ * allocating anything once the table has been filled in. */
+public final class FaceOrders {
+    private static final int[] FACTORIALS = { 1, 1, 2, 6, 24, 120, 720 };
+
+    @SuppressWarnings("unchecked")
+    private static final ImmutableList<EnumFacing>[][] ORDERS = new ImmutableList[64][];
+
+    static {
+        for (int mask = 0; mask < ORDERS.length; mask++) {
+            ORDERS[mask] = new ImmutableList[countOrders(mask)];
+        }
+    }
+
+    private FaceOrders() {}
+
+    public static int countOrders(int mask) {
+        return FACTORIALS[Integer.bitCount(mask)];
+    }
+
+    /** @param index A number from 0 (inclusive) to {@link #countOrders(int)} (exclusive). */
+    public static ImmutableList<EnumFacing> getOrder(int mask, int index) {
+        ImmutableList<EnumFacing>[] orders = ORDERS[mask];
+        ImmutableList<EnumFacing> order = orders[index];
+        if (order == null) {
+            // Lists are immutable, so it doesn't matter if two threads race to create the same one
+            order = createOrder(mask, index);
+            orders[index] = order;
+        }
+        return order;
+    }
+
+    /** @return The order returned by {@link #getOrder(int, int)}, without its first element. */
+    public static ImmutableList<EnumFacing> getTail(int mask, int index) {
+        if (mask == 0) {
+            return ImmutableList.of();
+        }
+        EnumFacing first = getOrder(mask, index).get(0);
+        return getOrder(mask & ~(1 << first.getIndex()), index / Integer.bitCount(mask));
+    }
+
+    /** Decodes the index as a factorial number (one digit per face) to pick the faces in order. */
+    private static ImmutableList<EnumFacing> createOrder(int mask, int index) {
+        List<EnumFacing> pool = new ArrayList<>(6);
+        for (EnumFacing face : EnumFacing.VALUES) {
+            if ((mask & (1 << face.getIndex())) != 0) {
+                pool.add(face);
+            }
+        }
+        ImmutableList.Builder<EnumFacing> builder = ImmutableList.builder();
+        while (!pool.isEmpty()) {
+            int size = pool.size();
+            builder.add(pool.remove(index % size));
+            index /= size;
+        }
+        return builder.build();
+    }
+}
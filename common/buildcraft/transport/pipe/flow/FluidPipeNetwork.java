@@ -0,0 +1,698 @@
+package buildcraft.transport.pipe.flow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import net.minecraftforge.fluids.FluidStack;
+import net.minecraftforge.fluids.capability.IFluidHandler;
+
+import buildcraft.api.transport.PipeEventFluid;
+import buildcraft.api.transport.neptune.IPipe;
+import buildcraft.api.transport.neptune.IPipe.ConnectedType;
+import buildcraft.api.transport.neptune.IPipeHolder;
+
+import buildcraft.lib.misc.CapUtil;
+import buildcraft.transport.BCTransportConfig;
+import buildcraft.transport.pipe.PipeTickScheduler;
+import buildcraft.transport.tile.TilePipeHolder;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/** A group of connected fluid pipes that all have the same flow rate and delay, the same (or no) fluid, and nothing
+ * that listens to {@link PipeEventFluid.SideCheck}. Rather than moving fluid between the 7 sections of every pipe, each
+ * pipe in the network is treated as a single tank. Every tick each pipe offers up to one flow rate of fluid to the faces
+ * that lead out of the network (to a tile or a pipe that isn't in the network), and to the neighbouring pipes in the
+ * network that hold less fluid than it does. Fluid that moves into a pipe can't leave it again until the pipe's delay
+ * has passed, so fluid takes as long to travel along a network as it does along separate pipes. All of the state is
+ * kept in flat arrays indexed by member, so a tick is one pass over the members rather than several passes over every
+ * section of every pipe.
+ * <p>
+ * The per-section amounts of each pipe are only worked out when they are needed (for syncing to the client, saving,
+ * and when a pipe leaves the network). Pipes that can't join a network keep using the normal per-pipe simulation, and
+ * treat any network pipes next to them as normal fluid handlers.
+ * <p>
+ * Networks are changed locally: a pipe joins (or merges) the networks of its direct neighbours, and when a pipe leaves
+ * (or loses a connection) only the neighbours that it was connected to are searched to see if the network has been
+ * split in two. Only used if {@link BCTransportConfig#fluidNetworks} is enabled. */
+public class FluidPipeNetwork {
+    /** Value of {@link #neighbours} for a face that isn't connected to anything. */
+    private static final int NONE = -1;
+    /** Value of {@link #neighbours} for a face that is connected to a tile, or to a pipe that isn't in the network. */
+    private static final int EXIT = -2;
+
+    private final World world;
+    private final int flowRate;
+    /** The capacity of a single section. */
+    private final int capacity;
+    private final int delay;
+
+    private FluidStack fluid;
+    private int totalAmount;
+
+    private final List<PipeFlowFluids> members = new ArrayList<>();
+    /** The total amount of fluid in each member, including its {@link #incoming}. */
+    private int[] amount = new int[0];
+    /** The most fluid each member can hold. */
+    private int[] memberCapacity = new int[0];
+    /** Map of [member * delay + time] -> [amount moved in]. Fluid that moves into a member can't leave it until the
+     * slot has gone all the way round (in the same way as {@link PipeFlowFluids}). */
+    private int[] incoming = new int[0];
+    private int[] incomingTotal = new int[0];
+    /** The amount moved into each member on this tick. */
+    private int[] inputThisTick = new int[0];
+    /** Maps (member * 6 + face) to the index of the member on that side, or {@link #NONE} or {@link #EXIT}. */
+    private int[] neighbours = new int[0];
+    /** Maps (member * 6 + face) to above 0 when the face has been outputting recently, or below 0 when it's been
+     * inputting recently. Faces that have been inputting recently won't be used as an output, to stop fluid bouncing
+     * between two networks. */
+    private int[] directions = new int[0];
+
+    private int currentTime;
+    /** The member (and face) that is tried first on the next tick. Rotates round so that every member gets an equal
+     * share. */
+    private int firstMember, firstFace;
+    private long lastTick = -1;
+    private boolean valid = true;
+
+    private FluidPipeNetwork(World world, int flowRate, int capacity, int delay, FluidStack fluid) {
+        this.world = world;
+        this.flowRate = flowRate;
+        this.capacity = capacity;
+        this.delay = Math.max(1, delay);
+        this.fluid = fluid;
+    }
+
+    /** Joins the given pipe up with the networks (and pipes that aren't in a network) that it is directly connected
+     * to. If the given pipe is already in a network then any other networks next to it are merged into it.
+     *
+     * @return True if the given pipe is now in a network. */
+    public static boolean tryJoin(PipeFlowFluids flow) {
+        if (!canJoin(flow)) {
+            return false;
+        }
+        FluidPipeNetwork own = flow.network;
+        World world = flow.pipe.getHolder().getPipeWorld();
+        FluidStack fluid = own != null ? own.fluid : flow.getCurrentFluid();
+
+        List<FluidPipeNetwork> networks = new ArrayList<>();
+        List<PipeFlowFluids> single = new ArrayList<>();
+        if (own != null) {
+            networks.add(own);
+        }
+        IPipe pipe = flow.pipe;
+        BlockPos pos = pipe.getHolder().getPipePos();
+        for (EnumFacing face : EnumFacing.VALUES) {
+            if (pipe.getConnectedType(face) != ConnectedType.PIPE || !world.isBlockLoaded(pos.offset(face))) {
+                continue;
+            }
+            IPipe next = pipe.getConnectedPipe(face);
+            if (next == null || !(next.getFlow() instanceof PipeFlowFluids)) {
+                continue;
+            }
+            PipeFlowFluids nextFlow = (PipeFlowFluids) next.getFlow();
+            FluidPipeNetwork nextNetwork = nextFlow.network;
+            if (nextNetwork != null && networks.contains(nextNetwork)) {
+                continue;
+            }
+            if (nextFlow.getFlowRate() != flow.getFlowRate() || nextFlow.getDelay() != flow.getDelay()) {
+                continue;
+            }
+            if (nextNetwork == null && !canJoin(nextFlow)) {
+                continue;
+            }
+            FluidStack nextFluid = nextNetwork != null ? nextNetwork.fluid : nextFlow.getCurrentFluid();
+            if (nextFluid != null) {
+                if (fluid == null) {
+                    fluid = nextFluid;
+                } else if (!fluid.isFluidEqual(nextFluid)) {
+                    continue;
+                }
+            }
+            if (nextNetwork != null) {
+                networks.add(nextNetwork);
+            } else {
+                single.add(nextFlow);
+            }
+        }
+        if (own == null) {
+            if (networks.isEmpty() && single.isEmpty()) {
+                return false;
+            }
+            single.add(flow);
+        }
+
+        // Merge everything into the largest network, so that the fewest members have to move
+        FluidPipeNetwork target = null;
+        for (FluidPipeNetwork network : networks) {
+            if (target == null || network.members.size() > target.members.size()) {
+                target = network;
+            }
+        }
+        if (target == null) {
+            target = new FluidPipeNetwork(world, flow.getFlowRate(), flow.capacity, flow.getDelay(), null);
+        }
+        for (FluidPipeNetwork network : networks) {
+            if (network != target) {
+                target.absorb(network);
+            }
+        }
+        for (PipeFlowFluids member : single) {
+            target.addMember(member);
+        }
+        return true;
+    }
+
+    private static boolean canJoin(PipeFlowFluids flow) {
+        IPipeHolder holder = flow.pipe.getHolder();
+        if (!(holder instanceof TilePipeHolder)) {
+            return false;
+        }
+        return !((TilePipeHolder) holder).eventBus.hasHandlerFor(PipeEventFluid.SideCheck.class);
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public int getSize() {
+        return members.size();
+    }
+
+    public FluidStack getFluid() {
+        return fluid;
+    }
+
+    public boolean isEmpty() {
+        return totalAmount <= 0;
+    }
+
+    /** Moves the fluid in this network along by one tick. Every member calls this, but only the first call on each
+     * tick does anything. */
+    public void tick() {
+        long now = world.getTotalWorldTime();
+        if (!valid || now == lastTick) {
+            return;
+        }
+        lastTick = now;
+
+        int size = members.size();
+        currentTime = (currentTime + 1) % delay;
+        for (int m = 0; m < size; m++) {
+            int slot = m * delay + currentTime;
+            incomingTotal[m] -= incoming[slot];
+            incoming[slot] = 0;
+        }
+        Arrays.fill(inputThisTick, 0, size, 0);
+        for (int i = 0; i < size * 6; i++) {
+            if (directions[i] > 0) {
+                directions[i]--;
+            } else if (directions[i] < 0) {
+                directions[i]++;
+            }
+        }
+
+        if (fluid == null || size == 0) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            int m = (firstMember + i) % size;
+            int available = Math.min(flowRate, amount[m] - incomingTotal[m]);
+            for (int j = 0; j < 6 && available > 0; j++) {
+                int face = (firstFace + j) % 6;
+                int index = m * 6 + face;
+                int n = neighbours[index];
+                int moved;
+                if (n == EXIT) {
+                    if (directions[index] < 0) {
+                        continue;
+                    }
+                    moved = pushOut(m, face, available);
+                    if (moved > 0) {
+                        totalAmount -= moved;
+                    }
+                } else if (n >= 0) {
+                    // Only move fluid downhill, and only as far as evening out the two pipes
+                    int diff = amount[m] - amount[n];
+                    moved = Math.min(available, (diff + 1) / 2);
+                    moved = Math.min(moved, flowRate - inputThisTick[n]);
+                    moved = Math.min(moved, memberCapacity[n] - amount[n]);
+                    if (moved > 0) {
+                        amount[n] += moved;
+                        incoming[n * delay + currentTime] += moved;
+                        incomingTotal[n] += moved;
+                        inputThisTick[n] += moved;
+                        directions[n * 6 + (face ^ 1)] = PipeFlowFluids.COOLDOWN_INPUT;
+                    }
+                } else {
+                    continue;
+                }
+                if (moved > 0) {
+                    available -= moved;
+                    amount[m] -= moved;
+                    directions[index] = PipeFlowFluids.COOLDOWN_OUTPUT;
+                    if (!valid || members.size() != size) {
+                        // Filling a neighbour changed our connections
+                        return;
+                    }
+                }
+            }
+        }
+        firstMember = (firstMember + 1) % size;
+        firstFace = (firstFace + 1) % 6;
+        if (totalAmount <= 0) {
+            totalAmount = 0;
+            fluid = null;
+        }
+    }
+
+    private int pushOut(int member, int face, int max) {
+        IPipe pipe = members.get(member).pipe;
+        EnumFacing side = EnumFacing.getFront(face);
+        TileEntity target = pipe.getConnectedTile(side);
+        if (target == null || target.isInvalid()) {
+            return 0;
+        }
+        IFluidHandler handler = target.getCapability(CapUtil.CAP_FLUIDS, side.getOpposite());
+        if (handler == null) {
+            return 0;
+        }
+        return handler.fill(new FluidStack(fluid, max), true);
+    }
+
+    /** Fills the given member from the given face (which might be null if it wasn't inserted from a side). */
+    public int fill(int member, EnumFacing from, FluidStack resource, boolean doFill) {
+        if (!valid || resource == null || resource.amount <= 0) {
+            return 0;
+        }
+        if (fluid != null && !fluid.isFluidEqual(resource)) {
+            return 0;
+        }
+        int space = Math.min(memberCapacity[member] - amount[member], flowRate - inputThisTick[member]);
+        int filled = Math.min(space, resource.amount);
+        if (filled <= 0) {
+            return 0;
+        }
+        if (doFill) {
+            boolean wasEmpty = fluid == null;
+            if (wasEmpty) {
+                fluid = resource.copy();
+            }
+            amount[member] += filled;
+            totalAmount += filled;
+            incoming[member * delay + currentTime] += filled;
+            incomingTotal[member] += filled;
+            inputThisTick[member] += filled;
+            if (from != null && neighbours[member * 6 + from.getIndex()] == EXIT) {
+                directions[member * 6 + from.getIndex()] = PipeFlowFluids.COOLDOWN_INPUT;
+            }
+            if (wasEmpty) {
+                // Members are allowed to sleep while the network is empty, but something needs to tick it now
+                for (PipeFlowFluids m : members) {
+                    PipeTickScheduler.wakeUp(m.pipe.getHolder());
+                }
+            }
+        }
+        return filled;
+    }
+
+    /** @return The amount of fluid that the given member holds. */
+    public int getShare(int member) {
+        return amount[member];
+    }
+
+    /** @return Above 0 if the given face of the member has been outputting recently, below 0 if it has been inputting
+     *         recently, or 0 otherwise. */
+    public int getDirection(int member, EnumFacing face) {
+        return directions[member * 6 + face.getIndex()];
+    }
+
+    /** Called when the connections of the given member change. This re-links the member with its neighbours, merges in
+     * any new neighbouring networks, and splits this network up if the member was the only link between two parts of
+     * it. */
+    public void onConnectionsChanged(int member) {
+        PipeFlowFluids flow = members.get(member);
+        if (!canJoin(flow)) {
+            removeMember(member);
+            return;
+        }
+        List<PipeFlowFluids> before = getNeighbourMembers(member);
+        refreshNeighbours(member);
+        List<PipeFlowFluids> lost = new ArrayList<>();
+        for (PipeFlowFluids other : before) {
+            if (other.network == this && !isLinked(flow.networkIndex, other.networkIndex)) {
+                lost.add(other);
+                refreshNeighbours(other.networkIndex);
+            }
+        }
+        tryJoin(flow);
+        // Joining might have merged this network into a larger one
+        FluidPipeNetwork current = flow.network;
+        if (!lost.isEmpty() && current != null) {
+            lost.add(flow);
+            current.checkSplit(lost);
+        }
+    }
+
+    /** Removes the given member from this network (giving it its fluid back), and splits this network up if the member
+     * was the only link between two parts of it. */
+    public void removeMember(int member) {
+        List<PipeFlowFluids> seeds = getNeighbourMembers(member);
+        PipeFlowFluids flow = members.get(member);
+        flow.leaveNetwork(this, member);
+        totalAmount -= amount[member];
+        removeRaw(member);
+        checkSplit(seeds);
+    }
+
+    /** Splits this network back up into separate pipes, giving each one its own fluid. */
+    public void dissolve() {
+        if (!valid) {
+            return;
+        }
+        valid = false;
+        for (int i = 0; i < members.size(); i++) {
+            members.get(i).leaveNetwork(this, i);
+        }
+        members.clear();
+    }
+
+    // Membership
+
+    private void addMember(PipeFlowFluids flow) {
+        FluidStack memberFluid = flow.getCurrentFluid();
+        int memberAmount = flow.takeAmountsForNetwork();
+        if (memberAmount > 0 && fluid == null && memberFluid != null) {
+            fluid = memberFluid.copy();
+        }
+        int index = addRaw(flow);
+        amount[index] = memberAmount;
+        totalAmount += memberAmount;
+        refreshNeighbours(index);
+    }
+
+    /** Moves every member of the given network into this one. */
+    private void absorb(FluidPipeNetwork other) {
+        if (fluid == null && other.fluid != null) {
+            fluid = other.fluid.copy();
+        }
+        List<PipeFlowFluids> moved = new ArrayList<>(other.members);
+        for (int i = other.members.size() - 1; i >= 0; i--) {
+            other.moveTo(i, this);
+        }
+        other.valid = false;
+        for (PipeFlowFluids flow : moved) {
+            refreshNeighbours(flow.networkIndex);
+        }
+    }
+
+    /** Moves a single member (and all of its state) into another network. The caller is responsible for refreshing
+     * the neighbours of the moved member afterwards. */
+    private void moveTo(int member, FluidPipeNetwork target) {
+        PipeFlowFluids flow = members.get(member);
+        int index = target.addRaw(flow);
+        target.amount[index] = amount[member];
+        target.incomingTotal[index] = incomingTotal[member];
+        target.inputThisTick[index] = inputThisTick[member];
+        // Line the incoming slots up with the target's current time
+        for (int t = 0; t < delay; t++) {
+            target.incoming[index * delay + (target.currentTime + t) % delay] =
+                incoming[member * delay + (currentTime + t) % delay];
+        }
+        System.arraycopy(directions, member * 6, target.directions, index * 6, 6);
+        target.totalAmount += amount[member];
+        totalAmount -= amount[member];
+        removeRaw(member);
+    }
+
+    /** Appends the given pipe to the member arrays, with no fluid and no neighbours. */
+    private int addRaw(PipeFlowFluids flow) {
+        int index = members.size();
+        members.add(flow);
+        if (amount.length <= index) {
+            int length = Math.max(8, index * 2);
+            amount = Arrays.copyOf(amount, length);
+            memberCapacity = Arrays.copyOf(memberCapacity, length);
+            incomingTotal = Arrays.copyOf(incomingTotal, length);
+            inputThisTick = Arrays.copyOf(inputThisTick, length);
+            incoming = Arrays.copyOf(incoming, length * delay);
+            neighbours = Arrays.copyOf(neighbours, length * 6);
+            directions = Arrays.copyOf(directions, length * 6);
+        }
+        amount[index] = 0;
+        memberCapacity[index] = capacity;
+        incomingTotal[index] = 0;
+        inputThisTick[index] = 0;
+        Arrays.fill(incoming, index * delay, (index + 1) * delay, 0);
+        Arrays.fill(neighbours, index * 6, index * 6 + 6, NONE);
+        Arrays.fill(directions, index * 6, index * 6 + 6, 0);
+        flow.network = this;
+        flow.networkIndex = index;
+        return index;
+    }
+
+    /** Removes the given member from the member arrays by moving the last member into its place. Any members that
+     * pointed at the removed member now see it as an exit. */
+    private void removeRaw(int member) {
+        PipeFlowFluids flow = members.get(member);
+        if (flow.network == this) {
+            flow.network = null;
+        }
+        for (int face = 0; face < 6; face++) {
+            int n = neighbours[member * 6 + face];
+            if (n >= 0) {
+                neighbours[n * 6 + (face ^ 1)] = EXIT;
+            }
+        }
+        int last = members.size() - 1;
+        if (member != last) {
+            PipeFlowFluids moved = members.get(last);
+            members.set(member, moved);
+            moved.networkIndex = member;
+            amount[member] = amount[last];
+            memberCapacity[member] = memberCapacity[last];
+            incomingTotal[member] = incomingTotal[last];
+            inputThisTick[member] = inputThisTick[last];
+            System.arraycopy(incoming, last * delay, incoming, member * delay, delay);
+            System.arraycopy(neighbours, last * 6, neighbours, member * 6, 6);
+            System.arraycopy(directions, last * 6, directions, member * 6, 6);
+            for (int face = 0; face < 6; face++) {
+                int n = neighbours[member * 6 + face];
+                if (n >= 0) {
+                    neighbours[n * 6 + (face ^ 1)] = member;
+                }
+            }
+        }
+        members.remove(last);
+        if (members.isEmpty()) {
+            valid = false;
+        } else {
+            firstMember %= members.size();
+        }
+    }
+
+    /** Works out what is on every face of the given member, and links it up with the members next to it. */
+    private void refreshNeighbours(int member) {
+        IPipe pipe = members.get(member).pipe;
+        int connected = 1;
+        for (EnumFacing face : EnumFacing.VALUES) {
+            int index = member * 6 + face.getIndex();
+            int old = neighbours[index];
+            int now;
+            ConnectedType type = pipe.getConnectedType(face);
+            if (type == ConnectedType.PIPE) {
+                IPipe next = pipe.getConnectedPipe(face);
+                if (next != null && next.getFlow() instanceof PipeFlowFluids
+                    && ((PipeFlowFluids) next.getFlow()).network == this) {
+                    now = ((PipeFlowFluids) next.getFlow()).networkIndex;
+                } else {
+                    now = EXIT;
+                }
+            } else if (type == ConnectedType.TILE) {
+                now = EXIT;
+            } else {
+                now = NONE;
+            }
+            if (old >= 0 && old != now && neighbours[old * 6 + (face.getIndex() ^ 1)] == member) {
+                neighbours[old * 6 + (face.getIndex() ^ 1)] = EXIT;
+            }
+            neighbours[index] = now;
+            if (now >= 0) {
+                neighbours[now * 6 + (face.getIndex() ^ 1)] = member;
+            }
+            if (now != NONE) {
+                connected++;
+            }
+        }
+        memberCapacity[member] = capacity * connected;
+    }
+
+    private List<PipeFlowFluids> getNeighbourMembers(int member) {
+        List<PipeFlowFluids> list = new ArrayList<>(6);
+        for (int face = 0; face < 6; face++) {
+            int n = neighbours[member * 6 + face];
+            if (n >= 0 && !list.contains(members.get(n))) {
+                list.add(members.get(n));
+            }
+        }
+        return list;
+    }
+
+    private boolean isLinked(int a, int b) {
+        for (int face = 0; face < 6; face++) {
+            if (neighbours[a * 6 + face] == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Splitting
+
+    /** Checks to see if the given members (which were all connected before) are still connected to each other, and
+     * moves every part that isn't into its own network. A separate breadth first search is run from each of the given
+     * members, one step at a time, and searches are combined as soon as they meet. So if the members are still
+     * connected then this only searches the area around them, and if they aren't then this only searches the parts
+     * that are split off (and the same distance into the rest of the network). */
+    private void checkSplit(List<PipeFlowFluids> seeds) {
+        if (!valid) {
+            return;
+        }
+        if (members.size() < 2) {
+            dissolve();
+            return;
+        }
+        List<PipeFlowFluids> start = new ArrayList<>();
+        for (PipeFlowFluids seed : seeds) {
+            if (seed.network == this && !start.contains(seed)) {
+                start.add(seed);
+            }
+        }
+        if (start.size() < 2) {
+            return;
+        }
+
+        int count = start.size();
+        // Which search (+1) first found each member, or 0 if no search has found it yet
+        int[] found = new int[members.size()];
+        int[] parent = new int[count];
+        TIntArrayList[] queue = new TIntArrayList[count];
+        int[] head = new int[count];
+        TIntArrayList[] visited = new TIntArrayList[count];
+        boolean[] complete = new boolean[count];
+        for (int s = 0; s < count; s++) {
+            parent[s] = s;
+            int index = start.get(s).networkIndex;
+            queue[s] = new TIntArrayList();
+            queue[s].add(index);
+            visited[s] = new TIntArrayList();
+            visited[s].add(index);
+            found[index] = s + 1;
+        }
+        int searching = count;
+        while (searching > 1) {
+            for (int s = 0; s < count && searching > 1; s++) {
+                if (parent[s] != s || complete[s]) {
+                    continue;
+                }
+                if (head[s] >= queue[s].size()) {
+                    complete[s] = true;
+                    searching--;
+                    continue;
+                }
+                int m = queue[s].get(head[s]++);
+                for (int face = 0; face < 6; face++) {
+                    int n = neighbours[m * 6 + face];
+                    if (n < 0) {
+                        continue;
+                    }
+                    if (found[n] == 0) {
+                        found[n] = s + 1;
+                        queue[s].add(n);
+                        visited[s].add(n);
+                        continue;
+                    }
+                    int other = find(parent, found[n] - 1);
+                    if (other != s) {
+                        // The two searches have met, so they're in the same part. The combined search carries on
+                        // from every member that either of them still had to look at.
+                        parent[other] = s;
+                        queue[s].addAll(queue[other].subList(head[other], queue[other].size()));
+                        visited[s].addAll(visited[other]);
+                        searching--;
+                    }
+                }
+            }
+        }
+
+        // Everything that finished searching has been split off. If nothing is still searching then the largest
+        // part stays in this network.
+        List<TIntArrayList> parts = new ArrayList<>();
+        boolean keptOne = false;
+        for (int s = 0; s < count; s++) {
+            if (parent[s] != s) {
+                continue;
+            }
+            if (complete[s]) {
+                parts.add(visited[s]);
+            } else {
+                keptOne = true;
+            }
+        }
+        if (!keptOne) {
+            parts.sort(Comparator.comparingInt(TIntArrayList::size));
+            parts.remove(parts.size() - 1);
+        }
+        List<List<PipeFlowFluids>> splits = new ArrayList<>();
+        for (TIntArrayList part : parts) {
+            List<PipeFlowFluids> split = new ArrayList<>(part.size());
+            for (int i = 0; i < part.size(); i++) {
+                split.add(members.get(part.get(i)));
+            }
+            splits.add(split);
+        }
+        for (List<PipeFlowFluids> split : splits) {
+            splitOff(split);
+        }
+        if (members.size() < 2) {
+            dissolve();
+        }
+    }
+
+    private static int find(int[] parent, int s) {
+        while (parent[s] != s) {
+            s = parent[s];
+        }
+        return s;
+    }
+
+    /** Moves the given members out of this network, either into a new network or back to being separate pipes. */
+    private void splitOff(List<PipeFlowFluids> split) {
+        if (split.size() == 1) {
+            PipeFlowFluids flow = split.get(0);
+            flow.leaveNetwork(this, flow.networkIndex);
+            totalAmount -= amount[flow.networkIndex];
+            removeRaw(flow.networkIndex);
+            return;
+        }
+        FluidPipeNetwork network = new FluidPipeNetwork(world, flowRate, capacity, delay, fluid == null ? null : fluid.copy());
+        // Remove the highest indices first, so that the members that are moved into the gaps are never ones that are
+        // still to be split off
+        split.sort(Comparator.comparingInt((PipeFlowFluids f) -> f.networkIndex).reversed());
+        for (PipeFlowFluids flow : split) {
+            moveTo(flow.networkIndex, network);
+        }
+        for (PipeFlowFluids flow : split) {
+            network.refreshNeighbours(flow.networkIndex);
+        }
+        if (network.totalAmount <= 0) {
+            network.fluid = null;
+        }
+    }
+}
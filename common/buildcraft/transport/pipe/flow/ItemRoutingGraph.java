@@ -0,0 +1,473 @@
+package buildcraft.transport.pipe.flow;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+
+import net.minecraft.item.EnumDyeColor;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+
+import buildcraft.api.inventory.IItemTransactor;
+import buildcraft.api.transport.PipeEventItem;
+import buildcraft.api.transport.neptune.IPipe;
+import buildcraft.api.transport.neptune.IPipe.ConnectedType;
+import buildcraft.api.transport.neptune.IPipeHolder;
+
+import buildcraft.lib.inventory.ItemTransactorHelper;
+import buildcraft.transport.BCTransportConfig;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/** An optional, world-wide view of connected item pipes. For every side of every pipe that has asked for it, this
+ * stores a destination table: every tile that an item sent down that side could be inserted into, and every "filtering"
+ * pipe (a pipe with handlers for the routing events, such as a diamond pipe) that it could reach first. Items then
+ * prefer sides that have a destination that would accept them, so they don't wander down dead ends.
+ * <p>
+ * Tables are only built through pipes that send items down every connected side equally. At a filtering pipe the
+ * search stops, and the pipe's own routing events are fired with the actual item whenever the table is used, so the
+ * filters are always respected. Destinations are checked with a simulated insert, and whether a side accepts each type
+ * of item is remembered for {@link #ACCEPT_CACHE_TICKS} ticks (or until the table is thrown away), so items of the same
+ * type that follow each other don't simulate everything again at every pipe.
+ * <p>
+ * Every table remembers which pipes and chunks it was built from. When the connections of a pipe change only the tables
+ * that went through that pipe are thrown away, and when a chunk loads or unloads only the tables that went through it
+ * (or stopped at its edge) are thrown away, so unloaded edges are searched again when they load. Only used if
+ * {@link BCTransportConfig#itemRouting} is enabled. */
+public class ItemRoutingGraph {
+    /** The maximum number of pipes to search through when building a table. If a side leads to more pipes than this
+     * then it is assumed to have a destination. */
+    private static final int MAX_SEARCH = 4096;
+    /** The maximum number of filtering pipes that are followed in a row before a side is assumed to have a
+     * destination. */
+    private static final int MAX_FILTER_DEPTH = 8;
+    /** How long each table remembers which item types its side accepts. Inventories filling up and filters changing
+     * don't throw the tables away, so this is kept short. */
+    private static final int ACCEPT_CACHE_TICKS = 20;
+    /** The most item types that a single table remembers at once. */
+    private static final int MAX_ACCEPT_CACHE = 64;
+    private static final Map<World, ItemRoutingGraph> GRAPHS = new WeakHashMap<>();
+
+    // BlockPos.toLong() layout
+    private static final int NUM_XZ_BITS = 26, NUM_Y_BITS = 12;
+    private static final int Y_SHIFT = NUM_XZ_BITS, X_SHIFT = Y_SHIFT + NUM_Y_BITS;
+    private static final long XZ_MASK = (1L << NUM_XZ_BITS) - 1, Y_MASK = (1L << NUM_Y_BITS) - 1;
+
+    private final World world;
+    /** Maps {@link BlockPos#toLong()} of a pipe to its six tables (by {@link EnumFacing#getIndex()}). */
+    private final TLongObjectHashMap<SideTable[]> tables = new TLongObjectHashMap<>();
+    /** Maps {@link BlockPos#toLong()} of a pipe to every table that was built through it. */
+    private final TLongObjectHashMap<Set<SideTable>> tablesByPipe = new TLongObjectHashMap<>();
+    /** Maps {@link ChunkPos#asLong(int, int)} to every table that was built through (or stopped at) that chunk. */
+    private final TLongObjectHashMap<Set<SideTable>> tablesByChunk = new TLongObjectHashMap<>();
+
+    // Reused between searches
+    private final BlockPos.MutableBlockPos mutablePos = new BlockPos.MutableBlockPos();
+    private final TLongHashSet visited = new TLongHashSet();
+    private final TLongArrayList open = new TLongArrayList();
+
+    private ItemRoutingGraph(World world) {
+        this.world = world;
+    }
+
+    private static ItemRoutingGraph get(World world) {
+        synchronized (GRAPHS) {
+            return GRAPHS.computeIfAbsent(world, ItemRoutingGraph::new);
+        }
+    }
+
+    private static ItemRoutingGraph getExisting(World world) {
+        if (!BCTransportConfig.itemRouting || world.isRemote) {
+            return null;
+        }
+        synchronized (GRAPHS) {
+            return GRAPHS.get(world);
+        }
+    }
+
+    /** Filters the given mask of sides of the pipe to only contain sides that have a destination that would accept
+     * the given stack.
+     *
+     * @return The filtered mask, or the given mask if none of the sides have a destination (or routing is
+     *         disabled). */
+    public static int filterToSinks(IPipe pipe, int mask, @Nonnull ItemStack stack, EnumDyeColor colour) {
+        if (!BCTransportConfig.itemRouting || Integer.bitCount(mask) <= 1 || stack.isEmpty()) {
+            // There is no choice to make
+            return mask;
+        }
+        ItemRoutingGraph graph = get(pipe.getHolder().getPipeWorld());
+        StackType type = new StackType(stack, colour);
+        long now = graph.world.getTotalWorldTime();
+        int sinks = 0;
+        for (EnumFacing face : EnumFacing.VALUES) {
+            int bit = 1 << face.getIndex();
+            if ((mask & bit) != 0 && graph.sideAcceptsCached(pipe, face, stack, colour, type, now)) {
+                sinks |= bit;
+            }
+        }
+        return sinks == 0 ? mask : sinks;
+    }
+
+    /** Called whenever the connections (or event handlers) of an item pipe change, or an item pipe is removed. */
+    public static void onConnectionsChanged(IPipeHolder holder) {
+        ItemRoutingGraph graph = getExisting(holder.getPipeWorld());
+        if (graph != null) {
+            graph.invalidateAll(graph.tablesByPipe.get(holder.getPipePos().toLong()));
+        }
+    }
+
+    /** Called whenever a chunk is loaded or unloaded. */
+    public static void onChunkChange(World world, Chunk chunk) {
+        ItemRoutingGraph graph = getExisting(world);
+        if (graph != null) {
+            graph.invalidateAll(graph.tablesByChunk.get(ChunkPos.asLong(chunk.xPosition, chunk.zPosition)));
+        }
+    }
+
+    public static void onWorldUnload(World world) {
+        synchronized (GRAPHS) {
+            GRAPHS.remove(world);
+        }
+    }
+
+    private boolean sideAcceptsCached(IPipe pipe, EnumFacing side, ItemStack stack, EnumDyeColor colour, StackType type, long now) {
+        SideTable table = getTable(pipe, side);
+        if (table.unbounded) {
+            return true;
+        }
+        if (now - table.acceptCacheTime >= ACCEPT_CACHE_TICKS || table.acceptCache.size() >= MAX_ACCEPT_CACHE) {
+            table.acceptCache.clear();
+            table.acceptCacheTime = now;
+        }
+        Boolean accepts = table.acceptCache.get(type);
+        if (accepts == null) {
+            accepts = sideAccepts(pipe, side, stack, colour, 0, null);
+            table.acceptCache.put(type.copy(), accepts);
+        }
+        return accepts;
+    }
+
+    private boolean sideAccepts(IPipe pipe, EnumFacing side, ItemStack stack, EnumDyeColor colour, int depth, TLongHashSet seenFilters) {
+        SideTable table = getTable(pipe, side);
+        if (table.unbounded) {
+            return true;
+        }
+        for (int i = 0; i < table.tilePipes.size(); i++) {
+            EnumFacing face = EnumFacing.getFront(table.tileFaces.get(i));
+            TileEntity tile = getTileEntity(offset(table.tilePipes.get(i), face));
+            if (tile == null) {
+                continue;
+            }
+            IItemTransactor trans = ItemTransactorHelper.getTransactor(tile, face.getOpposite());
+            if (trans.insert(stack, false, true).getCount() < stack.getCount()) {
+                return true;
+            }
+        }
+        if (table.filterPipes.isEmpty()) {
+            return false;
+        }
+        if (depth >= MAX_FILTER_DEPTH) {
+            return true;
+        }
+        if (seenFilters == null) {
+            seenFilters = new TLongHashSet();
+        }
+        for (int i = 0; i < table.filterPipes.size(); i++) {
+            long filterPos = table.filterPipes.get(i);
+            if (!seenFilters.add(filterPos)) {
+                continue;
+            }
+            IPipe filter = getItemPipe(filterPos);
+            if (filter != null && filterAccepts(filter, EnumFacing.getFront(table.filterFaces.get(i)), stack, colour, depth, seenFilters)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Fires the routing events of a filtering pipe, as if the given stack had just been inserted into it. */
+    private boolean filterAccepts(IPipe filter, EnumFacing from, ItemStack stack, EnumDyeColor colour, int depth, TLongHashSet seenFilters) {
+        PipeFlowItems flow = (PipeFlowItems) filter.getFlow();
+        if (flow.mightChangeItems()) {
+            // The item might be changed into something else, so there is no way of knowing where it will go
+            return true;
+        }
+        IPipeHolder holder = filter.getHolder();
+        PipeEventItem.TryInsert tryInsert = new PipeEventItem.TryInsert(holder, flow, colour, from, stack);
+        holder.fireEvent(tryInsert);
+        if (tryInsert.isCanceled() || tryInsert.accepted <= 0) {
+            return false;
+        }
+        PipeEventItem.SideCheck sideCheck = new PipeEventItem.SideCheck(holder, flow, colour, from, stack);
+        sideCheck.disallow(from);
+        for (EnumFacing face : EnumFacing.VALUES) {
+            if (face != from && !filter.isConnected(face)) {
+                sideCheck.disallow(face);
+            }
+        }
+        holder.fireEvent(sideCheck);
+        for (Set<EnumFacing> sides : sideCheck.getOrder()) {
+            for (EnumFacing side : sides) {
+                if (sideAccepts(filter, side, stack, colour, depth + 1, seenFilters)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private SideTable getTable(IPipe pipe, EnumFacing side) {
+        long key = pipe.getHolder().getPipePos().toLong();
+        SideTable[] pipeTables = tables.get(key);
+        if (pipeTables == null) {
+            pipeTables = new SideTable[6];
+            tables.put(key, pipeTables);
+        }
+        SideTable table = pipeTables[side.getIndex()];
+        if (table == null) {
+            table = buildTable(pipe, key, side);
+            pipeTables[side.getIndex()] = table;
+        }
+        return table;
+    }
+
+    private SideTable buildTable(IPipe pipe, long start, EnumFacing side) {
+        SideTable table = new SideTable(start, side);
+        visited.clear();
+        open.resetQuick();
+        // Items can't go straight back the way they came, so never search through the starting pipe
+        visited.add(start);
+        watch(table, start);
+        addConnection(table, pipe, start, side);
+        while (!open.isEmpty()) {
+            if (visited.size() > MAX_SEARCH) {
+                table.unbounded = true;
+                break;
+            }
+            long current = open.removeAt(open.size() - 1);
+            IPipe currentPipe = getItemPipe(current);
+            if (currentPipe == null) {
+                continue;
+            }
+            for (EnumFacing face : EnumFacing.VALUES) {
+                addConnection(table, currentPipe, current, face);
+            }
+        }
+        return table;
+    }
+
+    /** Adds whatever the given pipe is connected to on the given side to the table. */
+    private void addConnection(SideTable table, IPipe pipe, long pipePos, EnumFacing face) {
+        ConnectedType type = pipe.getConnectedType(face);
+        if (type == ConnectedType.TILE) {
+            table.tilePipes.add(pipePos);
+            table.tileFaces.add((byte) face.getIndex());
+            // The tile might be in a different chunk
+            watch(table, offset(pipePos, face));
+        } else if (type == ConnectedType.PIPE) {
+            long next = offset(pipePos, face);
+            if (!visited.add(next)) {
+                return;
+            }
+            watch(table, next);
+            setMutable(next);
+            if (!world.isBlockLoaded(mutablePos)) {
+                // Already watching the chunk, so this will be searched again when it loads
+                return;
+            }
+            IPipe nextPipe = getItemPipe(next);
+            if (nextPipe == null) {
+                return;
+            }
+            if (((PipeFlowItems) nextPipe.getFlow()).hasRoutingHandlers()) {
+                table.filterPipes.add(next);
+                table.filterFaces.add((byte) face.getOpposite().getIndex());
+            } else {
+                open.add(next);
+            }
+        }
+    }
+
+    private void watch(SideTable table, long pos) {
+        Set<SideTable> byPipe = tablesByPipe.get(pos);
+        if (byPipe == null) {
+            byPipe = Collections.newSetFromMap(new IdentityHashMap<>());
+            tablesByPipe.put(pos, byPipe);
+        }
+        byPipe.add(table);
+        table.pipes.add(pos);
+
+        long chunk = ChunkPos.asLong(unpackX(pos) >> 4, unpackZ(pos) >> 4);
+        if (table.chunks.add(chunk)) {
+            Set<SideTable> byChunk = tablesByChunk.get(chunk);
+            if (byChunk == null) {
+                byChunk = Collections.newSetFromMap(new IdentityHashMap<>());
+                tablesByChunk.put(chunk, byChunk);
+            }
+            byChunk.add(table);
+        }
+    }
+
+    private void invalidateAll(Set<SideTable> toRemove) {
+        if (toRemove == null || toRemove.isEmpty()) {
+            return;
+        }
+        for (SideTable table : toRemove.toArray(new SideTable[0])) {
+            invalidate(table);
+        }
+    }
+
+    private void invalidate(SideTable table) {
+        SideTable[] pipeTables = tables.get(table.pipe);
+        if (pipeTables != null && pipeTables[table.side.getIndex()] == table) {
+            pipeTables[table.side.getIndex()] = null;
+            boolean empty = true;
+            for (SideTable other : pipeTables) {
+                empty &= other == null;
+            }
+            if (empty) {
+                tables.remove(table.pipe);
+            }
+        }
+        table.pipes.forEach(pos -> {
+            removeFrom(tablesByPipe, pos, table);
+            return true;
+        });
+        table.chunks.forEach(chunk -> {
+            removeFrom(tablesByChunk, chunk, table);
+            return true;
+        });
+    }
+
+    private static void removeFrom(TLongObjectHashMap<Set<SideTable>> map, long key, SideTable table) {
+        Set<SideTable> set = map.get(key);
+        if (set != null && set.remove(table) && set.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private IPipe getItemPipe(long pos) {
+        TileEntity tile = getTileEntity(pos);
+        if (tile instanceof IPipeHolder) {
+            IPipe pipe = ((IPipeHolder) tile).getPipe();
+            if (pipe != null && pipe.getFlow() instanceof PipeFlowItems) {
+                return pipe;
+            }
+        }
+        return null;
+    }
+
+    private TileEntity getTileEntity(long pos) {
+        setMutable(pos);
+        if (!world.isBlockLoaded(mutablePos)) {
+            return null;
+        }
+        return world.getTileEntity(mutablePos);
+    }
+
+    private void setMutable(long pos) {
+        mutablePos.setPos(unpackX(pos), unpackY(pos), unpackZ(pos));
+    }
+
+    /** The same as {@link BlockPos#offset(EnumFacing)}, but on positions packed with {@link BlockPos#toLong()}. */
+    private static long offset(long pos, EnumFacing face) {
+        int x = unpackX(pos) + face.getFrontOffsetX();
+        int y = unpackY(pos) + face.getFrontOffsetY();
+        int z = unpackZ(pos) + face.getFrontOffsetZ();
+        return (x & XZ_MASK) << X_SHIFT | (y & Y_MASK) << Y_SHIFT | (z & XZ_MASK);
+    }
+
+    private static int unpackX(long pos) {
+        return (int) (pos >> X_SHIFT);
+    }
+
+    private static int unpackY(long pos) {
+        return (int) (pos << (64 - X_SHIFT) >> (64 - NUM_Y_BITS));
+    }
+
+    private static int unpackZ(long pos) {
+        return (int) (pos << (64 - NUM_XZ_BITS) >> (64 - NUM_XZ_BITS));
+    }
+
+    /** The destinations of a single side of a single pipe. */
+    private static final class SideTable {
+        final long pipe;
+        final EnumFacing side;
+        /** The pipes that are next to a tile that could be inserted into, and the side of each pipe that the tile is
+         * on. */
+        final TLongArrayList tilePipes = new TLongArrayList();
+        final TByteArrayList tileFaces = new TByteArrayList();
+        /** The filtering pipes that the search stopped at, and the side of each one that items would enter from. */
+        final TLongArrayList filterPipes = new TLongArrayList();
+        final TByteArrayList filterFaces = new TByteArrayList();
+        /** True if the search went through more than {@link #MAX_SEARCH} pipes. */
+        boolean unbounded;
+        /** Every position and chunk that this table was built from. */
+        final TLongHashSet pipes = new TLongHashSet();
+        final TLongHashSet chunks = new TLongHashSet();
+        /** Whether this side accepted each type of item, since {@link #acceptCacheTime}. */
+        final Map<StackType, Boolean> acceptCache = new HashMap<>();
+        long acceptCacheTime;
+
+        SideTable(long pipe, EnumFacing side) {
+            this.pipe = pipe;
+            this.side = side;
+        }
+    }
+
+    /** The type of an item (ignoring the stack size) and its colour. This is only used for lookups, so the tag is only
+     * copied when it is stored. */
+    private static final class StackType {
+        final Item item;
+        final int meta;
+        final NBTTagCompound tag;
+        final EnumDyeColor colour;
+        final int hash;
+
+        StackType(ItemStack stack, EnumDyeColor colour) {
+            this(stack.getItem(), stack.getMetadata(), stack.getTagCompound(), colour);
+        }
+
+        private StackType(Item item, int meta, NBTTagCompound tag, EnumDyeColor colour) {
+            this.item = item;
+            this.meta = meta;
+            this.tag = tag;
+            this.colour = colour;
+            this.hash = Objects.hash(item, meta, tag, colour);
+        }
+
+        StackType copy() {
+            return tag == null ? this : new StackType(item, meta, tag.copy(), colour);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (obj == null || obj.getClass() != getClass()) return false;
+            StackType other = (StackType) obj;
+            return hash == other.hash && item == other.item && meta == other.meta && colour == other.colour//
+                && Objects.equals(tag, other.tag);
+        }
+    }
+}
@@ -23,11 +23,13 @@ import buildcraft.api.tiles.IDebuggable;
 import buildcraft.api.transport.PipeEventFluid;
 import buildcraft.api.transport.neptune.IFlowFluid;
 import buildcraft.api.transport.neptune.IPipe;
+import buildcraft.api.transport.neptune.IPipeHolder;
 import buildcraft.api.transport.neptune.PipeAPI;
 import buildcraft.api.transport.neptune.PipeAPI.FluidTransferInfo;
 import buildcraft.api.transport.neptune.PipeFlow;
 
 import buildcraft.core.BCCoreConfig;
+import buildcraft.lib.fluids.FluidAmountSync;
 import buildcraft.lib.misc.CapUtil;
 import buildcraft.lib.misc.LocaleUtil;
 import buildcraft.lib.misc.MathUtil;
@@ -35,12 +37,18 @@ import buildcraft.lib.misc.VecUtil;
 import buildcraft.lib.net.PacketBufferBC;
 import buildcraft.lib.net.cache.BuildCraftObjectCaches;
 import buildcraft.lib.net.cache.NetworkedObjectCache;
+import buildcraft.transport.BCTransportConfig;
+import buildcraft.transport.pipe.ISleepablePipePart;
+import buildcraft.transport.pipe.PipeTickScheduler;
+import buildcraft.transport.tile.TilePipeHolder;
 
-public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable {
+public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable, ISleepablePipePart {
 
     private static final int DIRECTION_COOLDOWN = 60;
-    private static final int COOLDOWN_INPUT = -DIRECTION_COOLDOWN;
-    private static final int COOLDOWN_OUTPUT = DIRECTION_COOLDOWN;
+    static final int COOLDOWN_INPUT = -DIRECTION_COOLDOWN;
+    static final int COOLDOWN_OUTPUT = DIRECTION_COOLDOWN;
+    /** How long to wait before checking the neighbours of this pipe for a network to join again after failing to. */
+    private static final int NETWORK_RETRY_DELAY = 100;
 
     public static final int NET_FLUID_AMOUNTS = 2;
 
@@ -57,10 +65,21 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
     private FluidStack currentFluid;
     private int currentDelay;
     private final SafeTimeTracker tracker = new SafeTimeTracker(BCCoreConfig.networkUpdateRate, 4);
+    /** Sends the amount and direction of every section to the players watching this pipe. The direction is sent as
+     * the 2 bit ordinal of {@link Dir}. */
+    private final FluidAmountSync amountSync = new FluidAmountSync(7, capacity, 2);
+    private final int[] syncAmounts = new int[7];
+    private final int[] syncDirections = new int[7];
+
+    /** The network this is in, or null if this is moving fluid by itself. Only used on the server. */
+    FluidPipeNetwork network;
+    int networkIndex;
+    private int networkRetryTicks = 0;
 
     // Client fields for interpolating amounts
     private long lastMessage, lastMessageMinus1;
     private NetworkedObjectCache<FluidStack>.Link clientFluid = null;
+    private int clientFluidId = -1;
 
     public PipeFlowFluids(IPipe pipe) {
         super(pipe);
@@ -103,6 +122,9 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
     public NBTTagCompound writeToNbt() {
         NBTTagCompound nbt = super.writeToNbt();
 
+        if (network != null) {
+            copyFromNetwork(network, networkIndex);
+        }
         if (currentFluid != null) {
             NBTTagCompound fluidTag = new NBTTagCompound();
             currentFluid.writeToNBT(fluidTag);
@@ -345,6 +367,22 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
         }
     }
 
+    @Override
+    public boolean canSleep() {
+        if (network != null && !network.isEmpty()) {
+            return false;
+        }
+        if (currentFluid != null) {
+            return false;
+        }
+        for (Section section : sections.values()) {
+            if (section.ticksInDirection != 0) {
+                return false;
+            }
+        }
+        return !amountSync.hasPending();
+    }
+
     @Override
     public void onTick() {
         World world = pipe.getHolder().getPipeWorld();
@@ -355,6 +393,24 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
             return;
         }
 
+        if (network != null && !BCTransportConfig.fluidNetworks) {
+            network.dissolve();
+        }
+        if (network != null) {
+            network.tick();
+            if (network != null && tracker.markTimeIfDelay(world)) {
+                copyFromNetwork(network, networkIndex);
+            }
+            syncAmounts(world);
+            return;
+        }
+        if (BCTransportConfig.fluidNetworks && --networkRetryTicks <= 0) {
+            networkRetryTicks = NETWORK_RETRY_DELAY;
+            if (FluidPipeNetwork.tryJoin(this)) {
+                return;
+            }
+        }
+
         if (currentFluid != null) {
             // int timeSlot = (int) (world.getTotalWorldTime() % currentDelay);
             int totalFluid = 0;
@@ -395,25 +451,105 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
             }
         }
 
-        boolean send = false;
+        syncAmounts(world);
+    }
 
+    /** Sends {@link #NET_FLUID_AMOUNTS} to every player that needs it. The payload is written by the
+     * {@link FluidAmountSync}, as it can be different for every player. */
+    private void syncAmounts(World world) {
+        IPipeHolder holder = pipe.getHolder();
+        if (!(holder instanceof TilePipeHolder)) {
+            return;
+        }
+        TilePipeHolder tile = (TilePipeHolder) holder;
         for (EnumPipePart part : EnumPipePart.VALUES) {
             Section section = sections.get(part);
-            if (section.amount != section.lastSentAmount) {
-                send = true;
-                break;
-            } else {
-                Dir should = Dir.get(section.ticksInDirection);
-                if (section.lastSentDirection != should) {
-                    send = true;
-                    break;
-                }
-            }
+            syncAmounts[part.getIndex()] = section.amount;
+            syncDirections[part.getIndex()] = Dir.get(section.ticksInDirection).ordinal();
+        }
+        int fluidId = currentFluid == null ? -1 : BuildCraftObjectCaches.CACHE_FLUIDS.server().store(currentFluid);
+        amountSync.tick(world, holder.getPipePos(), fluidId, syncAmounts, syncDirections, tile.getUsingPlayers(),
+            (writer) -> tile.createFlowPayload(NET_FLUID_AMOUNTS, writer));
+    }
+
+    // Networks
+
+    int getFlowRate() {
+        return fluidTransferInfo.transferPerTick;
+    }
+
+    int getDelay() {
+        return (int) fluidTransferInfo.transferDelayMultiplier;
+    }
+
+    FluidStack getCurrentFluid() {
+        return currentFluid;
+    }
+
+    /** Called whenever the connections of this pipe change. */
+    public void onConnectionsChanged() {
+        if (network != null) {
+            network.onConnectionsChanged(networkIndex);
+        }
+        networkRetryTicks = 0;
+    }
+
+    /** Called when this pipe is removed or unloaded. */
+    public void onUnload() {
+        if (network != null) {
+            network.removeMember(networkIndex);
+        }
+    }
+
+    /** Removes all of the fluid in this pipe so that it can be put into a new network.
+     * 
+     * @return The amount of fluid removed. */
+    int takeAmountsForNetwork() {
+        int total = 0;
+        for (Section section : sections.values()) {
+            total += section.amount;
+            section.amount = 0;
+            Arrays.fill(section.incoming, 0);
         }
+        return total;
+    }
 
-        if (send && tracker.markTimeIfDelay(world)) {
-            // send a net update
-            sendPayload(NET_FLUID_AMOUNTS);
+    /** Called by the network when this pipe leaves it, to take back its fluid. */
+    void leaveNetwork(FluidPipeNetwork from, int index) {
+        copyFromNetwork(from, index);
+        network = null;
+        networkRetryTicks = NETWORK_RETRY_DELAY;
+    }
+
+    /** Sets the fluid and amounts of every section from the amount this pipe holds in the network. */
+    private void copyFromNetwork(FluidPipeNetwork from, int index) {
+        int share = from.getShare(index);
+        FluidStack fluid = share > 0 ? from.getFluid() : null;
+        if (fluid == null ? currentFluid != null : !fluid.isFluidEqual(currentFluid)) {
+            setFluid(fluid == null ? null : fluid.copy());
+        }
+        int count = 1;
+        for (EnumFacing face : EnumFacing.VALUES) {
+            if (pipe.isConnected(face)) {
+                count++;
+            }
+        }
+        int each = share / count;
+        int extra = share % count;
+        for (EnumPipePart part : EnumPipePart.VALUES) {
+            Section section = sections.get(part);
+            Arrays.fill(section.incoming, 0);
+            if (part.face != null && !pipe.isConnected(part.face)) {
+                section.amount = 0;
+                section.ticksInDirection = 0;
+                continue;
+            }
+            section.amount = each;
+            if (extra > 0) {
+                section.amount++;
+                extra--;
+            }
+            section.ticksInDirection = part.face == null ? 0 : from.getDirection(index, part.face);
         }
     }
 
@@ -539,22 +675,36 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
         }
     }
 
+    @Override
+    public void writePayload(int id, PacketBuffer buf, Side side) {
+        super.writePayload(id, buf, side);
+        if (side == Side.SERVER && id == NET_ID_FULL_STATE) {
+            // The client creates a new flow from this, which doesn't have any of the amounts that were sent before
+            amountSync.resetViews();
+        }
+    }
+
     @Override
     public void readPayload(int id, PacketBuffer buf, Side side) throws IOException {
         PacketBufferBC buffer = PacketBufferBC.asPacketBufferBc(buf);
         if (side == Side.CLIENT) {
             if (id == NET_FLUID_AMOUNTS) {
-                if (buffer.readBoolean()) {
-                    int fluidId = buffer.readInt();
-                    clientFluid = BuildCraftObjectCaches.CACHE_FLUIDS.client().retrieve(fluidId);
+                int changed = amountSync.read(buffer);
+                int fluidId = amountSync.getClientFluidId();
+                if (fluidId != clientFluidId) {
+                    clientFluidId = fluidId;
+                    // Keep showing the old fluid while the amounts drain away
+                    if (fluidId >= 0) {
+                        clientFluid = BuildCraftObjectCaches.CACHE_FLUIDS.client().retrieve(fluidId);
+                    }
                 }
                 for (EnumPipePart part : EnumPipePart.VALUES) {
-                    Section section = sections.get(part);
-                    if (buffer.readBoolean()) {
-                        section.target = buffer.readShort();
+                    if ((changed & (1 << part.getIndex())) == 0) {
+                        continue;
                     }
-
-                    Dir dir = buffer.readEnumValue(Dir.class);
+                    Section section = sections.get(part);
+                    section.target = amountSync.getClientAmount(part.getIndex());
+                    Dir dir = Dir.VALUES[amountSync.getClientExtra(part.getIndex())];
                     section.ticksInDirection = dir == Dir.NONE ? 0 : dir == Dir.IN ? COOLDOWN_INPUT : COOLDOWN_OUTPUT;
                 }
                 lastMessageMinus1 = lastMessage;
@@ -563,45 +713,12 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
         }
     }
 
-    @Override
-    public void writePayload(int id, PacketBuffer buf, Side side) {
-        PacketBufferBC buffer = PacketBufferBC.asPacketBufferBc(buf);
-        if (side == Side.SERVER) {
-            if (id == NET_FLUID_AMOUNTS) {
-                if (currentFluid == null) {
-                    buffer.writeBoolean(false);
-                } else {
-                    buffer.writeBoolean(true);
-                    buffer.writeInt(BuildCraftObjectCaches.CACHE_FLUIDS.server().store(currentFluid));
-                }
-                for (EnumPipePart part : EnumPipePart.VALUES) {
-                    Section section = sections.get(part);
-                    if (section.amount == section.lastSentAmount) {
-                        buffer.writeBoolean(false);
-                    } else {
-                        buffer.writeBoolean(true);
-                        buffer.writeShort(section.amount);
-                        section.lastSentAmount = section.amount;
-                    }
-                    Dir should = Dir.get(section.ticksInDirection);
-                    buffer.writeEnumValue(should); // This writes out 2 bits so don't bother with a boolean flag
-                    // TODO: Add fixed-bits writing to PacketBufferBC!
-                    section.lastSentDirection = should;
-                }
-            }
-        }
-    }
-
     /** Holds data about a single section of this pipe. */
     class Section implements IFluidHandler {
         final EnumPipePart part;
 
         int amount;
 
-        int lastSentAmount;
-
-        Dir lastSentDirection;
-
         int currentTime;
 
         /** Map of [time] -> [amount inserted].
@@ -671,6 +788,7 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
             if (doFill) {
                 incoming[currentTime] += amountToFill;
                 amount += amountToFill;
+                PipeTickScheduler.wakeUp(pipe.getHolder());
             }
             return amountToFill;
         }
@@ -778,6 +896,12 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
 
         @Override
         public int fill(FluidStack resource, boolean doFill) {
+            if (network != null) {
+                if (part.face != null && !pipe.isConnected(part.face)) {
+                    return 0;
+                }
+                return network.fill(networkIndex, part.face, resource, doFill);
+            }
             if (!getCurrentDirection().canInput() || !pipe.isConnected(part.face)) {
                 return 0;
             }
@@ -803,6 +927,8 @@ public class PipeFlowFluids extends PipeFlow implements IFlowFluid, IDebuggable
         NONE,
         OUT;
 
+        static final Dir[] VALUES = values();
+
         public boolean isInput() {
             return this == IN;
         }
@@ -30,6 +30,7 @@ import net.minecraftforge.fml.relauncher.SideOnly;
 import buildcraft.api.core.IStackFilter;
 import buildcraft.api.inventory.IItemTransactor;
 import buildcraft.api.transport.IInjectable;
+import buildcraft.api.transport.PipeEvent;
 import buildcraft.api.transport.PipeEventItem;
 import buildcraft.api.transport.PipeEventItem.ItemEntry;
 import buildcraft.api.transport.neptune.IFlowItems;
@@ -41,18 +42,28 @@ import buildcraft.api.transport.neptune.PipeFlow;
 import buildcraft.lib.inventory.ItemTransactorHelper;
 import buildcraft.lib.inventory.NoSpaceTransactor;
 import buildcraft.lib.misc.CapUtil;
-import buildcraft.lib.misc.MessageUtil;
 import buildcraft.lib.misc.StackUtil;
 import buildcraft.lib.misc.data.DelayedList;
 import buildcraft.lib.net.PacketBufferBC;
 import buildcraft.lib.net.cache.BuildCraftObjectCaches;
+import buildcraft.transport.BCTransportConfig;
+import buildcraft.transport.pipe.ISleepablePipePart;
+import buildcraft.transport.pipe.PipeTickScheduler;
 import buildcraft.transport.pipe.flow.TravellingItem.EnumTravelState;
+import buildcraft.transport.tile.TilePipeHolder;
 
-public class PipeFlowItems extends PipeFlow implements IFlowItems {
+public class PipeFlowItems extends PipeFlow implements IFlowItems, ISleepablePipePart {
     private static final double EXTRACT_SPEED = 0.08;
+    private static final double DEFAULT_SPEED_TARGET = 0.04;
+    private static final double DEFAULT_SPEED_DELTA = 0.01;
     public static final int NET_CREATE_ITEM = 2;
 
+    /** The number of bits used to write the sides and colour of each item in {@link #NET_CREATE_ITEM}. */
+    private static final int CREATED_ITEM_BITS = 11;
+
     private final DelayedList<TravellingItem> items = new DelayedList<>();
+    /** Items that have been inserted this tick, but not yet sent to the client. */
+    private final List<CreatedItem> createdItems = new ArrayList<>();
 
     public PipeFlowItems(IPipe pipe) {
         super(pipe);
@@ -93,24 +104,30 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
         PacketBufferBC buffer = PacketBufferBC.asPacketBufferBc(bufIn);
         if (side == Side.CLIENT) {
             if (id == NET_CREATE_ITEM) {
-                EnumFacing from = buffer.readEnumValue(EnumFacing.class);
-                EnumFacing to = MessageUtil.readEnumOrNull(buffer, EnumFacing.class);
-                EnumDyeColor colour = MessageUtil.readEnumOrNull(buffer, EnumDyeColor.class);
-                int delay = buffer.readInt();
-
-                int stackId = buffer.readInt();
-                int stackSize = buffer.readShort();
-
-                Supplier<ItemStack> link = BuildCraftObjectCaches.retrieveItemStack(stackId);
-                TravellingItem item = new TravellingItem(link, stackSize);
-                item.from = from;
-                item.to = to;
-                item.colour = colour;
+                int count = buffer.readVarInt();
                 long now = pipe.getHolder().getPipeWorld().getTotalWorldTime();
-                item.tickStarted = now;
-                item.tickFinished = now + delay;
-                item.state = EnumTravelState.CLIENT_RUNNING;
-                items.add(delay, item);
+                for (int i = 0; i < count; i++) {
+                    int sides = buffer.readFixedBits(CREATED_ITEM_BITS);
+                    EnumFacing from = EnumFacing.VALUES[sides & 0b111];
+                    int toIndex = (sides >> 3) & 0b111;
+                    EnumFacing to = toIndex == 6 ? null : EnumFacing.VALUES[toIndex];
+                    int colourIndex = sides >> 6;
+                    EnumDyeColor colour = colourIndex == 16 ? null : EnumDyeColor.byMetadata(colourIndex);
+                    int delay = buffer.readVarInt();
+
+                    int stackId = buffer.readVarInt();
+                    int stackSize = buffer.readVarInt();
+
+                    Supplier<ItemStack> link = BuildCraftObjectCaches.retrieveItemStack(stackId);
+                    TravellingItem item = new TravellingItem(link, stackSize);
+                    item.from = from;
+                    item.to = to;
+                    item.colour = colour;
+                    item.tickStarted = now;
+                    item.tickFinished = now + delay;
+                    item.state = EnumTravelState.CLIENT_RUNNING;
+                    items.add(delay, item);
+                }
             }
         }
     }
@@ -173,6 +190,11 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
         return ItemTransactorHelper.getTransactor(oTile, face.getOpposite()) != NoSpaceTransactor.INSTANCE;
     }
 
+    @Override
+    public boolean canSleep() {
+        return items.getMaxDelay() == 0 && createdItems.isEmpty();
+    }
+
     @Override
     public void onTick() {
         World world = pipe.getHolder().getPipeWorld();
@@ -214,6 +236,12 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
     }
 
     private void onItemReachCenter(TravellingItem item) {
+        if (!mightHandle(PipeEventItem.ReachCenter.class)) {
+            // Nothing will change the item, so skip creating the event (and copying the stack)
+            item.state = EnumTravelState.SERVER_TO_EXIT;
+            items.add(item.timeToExit, item);
+            return;
+        }
         // fire centre event and then check to see if we need to redo the destinations
         ItemStack oldStack = item.stack;
         PipeEventItem.ReachCenter reachCenter = new PipeEventItem.ReachCenter(pipe.getHolder(), this, oldStack.copy(), item.from, item.colour);
@@ -249,7 +277,7 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
                 PipeEventItem.FindDest findDest = new PipeEventItem.FindDest(pipe.getHolder(), this, sideCheck.getOrder(), ImmutableList.of(entry));
                 pipe.getHolder().fireEvent(findDest);
                 if (entry.to == null) {
-                    entry.to = findDest.generateRandomOrder();
+                    entry.to = preferSinks(findDest.generateRandomOrder(), newStack, reachCenter.colour);
                 }
 
                 List<EnumFacing> to = entry.to;
@@ -397,8 +425,40 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
         return toSplit;
     }
 
+    /** @return False if nothing is listening to events of the given class, true if something might be. */
+    private boolean mightHandle(Class<? extends PipeEvent> eventClass) {
+        IPipeHolder holder = pipe.getHolder();
+        if (holder instanceof TilePipeHolder) {
+            return ((TilePipeHolder) holder).eventBus.hasHandlerFor(eventClass);
+        }
+        return true;
+    }
+
+    /** @return True if none of the routing events would be handled, so {@link #insertItemEvents} can use the results
+     *         that the events would have with no handlers directly. */
+    private boolean canRouteWithoutEvents() {
+        return !mightHandle(PipeEventItem.SideCheck.class)//
+            && !mightHandle(PipeEventItem.TryBounce.class)//
+            && !mightHandle(PipeEventItem.Split.class)//
+            && !mightHandle(PipeEventItem.FindDest.class);
+    }
+
+    /** @return True if this pipe might not send items down every connected side equally. */
+    boolean hasRoutingHandlers() {
+        return !canRouteWithoutEvents() || mightHandle(PipeEventItem.TryInsert.class) || mightChangeItems();
+    }
+
+    /** @return True if this pipe might change the stack or colour of items as they pass through it. */
+    boolean mightChangeItems() {
+        return mightHandle(PipeEventItem.ReachCenter.class);
+    }
+
     /** Used internally to split up manual insertions from controlled extractions. */
     private void insertItemEvents(@Nonnull ItemStack toInsert, EnumDyeColor colour, double speed, EnumFacing from) {
+        if (canRouteWithoutEvents()) {
+            insertItemDirect(toInsert, colour, speed, from);
+            return;
+        }
         IPipeHolder holder = pipe.getHolder();
 
         // Side Check
@@ -449,32 +509,109 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
 
         for (PipeEventItem.ItemEntry item : findDest.items) {
             PipeEventItem.ModifySpeed modifySpeed = new PipeEventItem.ModifySpeed(holder, this, item, speed);
-            modifySpeed.modifyTo(0.04, 0.01);
+            modifySpeed.modifyTo(DEFAULT_SPEED_TARGET, DEFAULT_SPEED_DELTA);
             holder.fireEvent(modifySpeed);
 
-            double target = modifySpeed.targetSpeed;
-            double maxDelta = modifySpeed.maxSpeedChange;
-            double nSpeed = speed;
-            if (nSpeed < target) {
-                nSpeed += maxDelta;
-                if (nSpeed > target) {
-                    nSpeed = target;
-                }
-            } else if (nSpeed > target) {
-                nSpeed -= maxDelta;
-                if (nSpeed < target) {
-                    nSpeed = target;
-                }
-            }
+            double nSpeed = approachSpeed(speed, modifySpeed.targetSpeed, modifySpeed.maxSpeedChange);
 
             if (item.to == null) {
-                item.to = findDest.generateRandomOrder();
+                item.to = preferSinks(findDest.generateRandomOrder(), item.stack, item.colour);
             }
             insertItemImpl(item.stack, item.colour, nSpeed, from, item.to, null);
         }
     }
 
+    /** The same as {@link #insertItemEvents(ItemStack, EnumDyeColor, double, EnumFacing)} when nothing handles the
+     * routing events: every connected side (apart from the one the item came from) is equally likely, and the item is
+     * dropped if there are none. Only {@link PipeEventItem.ModifySpeed} is fired, as most pipes change the speed. */
+    private void insertItemDirect(@Nonnull ItemStack toInsert, EnumDyeColor colour, double speed, EnumFacing from) {
+        IPipeHolder holder = pipe.getHolder();
+
+        int mask = 0;
+        for (EnumFacing face : EnumFacing.VALUES) {
+            if (face != from && pipe.isConnected(face)) {
+                mask |= 1 << face.getIndex();
+            }
+        }
+
+        if (Integer.bitCount(mask) > 1) {
+            mask = ItemRoutingGraph.filterToSinks(pipe, mask, toInsert, colour);
+        }
+
+        if (mask == 0) {
+            // Nothing can make the item bounce, so it will be dropped in the centre of the pipe
+            insertItemImpl(toInsert, colour, speed, from, null, null, null);
+            return;
+        }
+
+        double target = DEFAULT_SPEED_TARGET;
+        double maxDelta = DEFAULT_SPEED_DELTA;
+        if (mightHandle(PipeEventItem.ModifySpeed.class)) {
+            ItemEntry item = new ItemEntry(colour, toInsert, from);
+            PipeEventItem.ModifySpeed modifySpeed = new PipeEventItem.ModifySpeed(holder, this, item, speed);
+            modifySpeed.modifyTo(target, maxDelta);
+            holder.fireEvent(modifySpeed);
+            target = modifySpeed.targetSpeed;
+            maxDelta = modifySpeed.maxSpeedChange;
+            toInsert = item.stack;
+            colour = item.colour;
+        }
+        double nSpeed = approachSpeed(speed, target, maxDelta);
+
+        int index = holder.getPipeWorld().rand.nextInt(FaceOrders.countOrders(mask));
+        EnumFacing to = FaceOrders.getOrder(mask, index).get(0);
+        List<EnumFacing> toTryOrder = Integer.bitCount(mask) > 1 ? FaceOrders.getTail(mask, index) : null;
+        insertItemImpl(toInsert, colour, nSpeed, from, to, toTryOrder, null);
+    }
+
+    /** Removes every side from a randomly generated order that doesn't lead to a destination that would accept the
+     * stack, as long as at least one of them does. */
+    private List<EnumFacing> preferSinks(List<EnumFacing> order, @Nonnull ItemStack stack, EnumDyeColor colour) {
+        if (!BCTransportConfig.itemRouting || order.size() <= 1) {
+            return order;
+        }
+        int mask = 0;
+        for (EnumFacing face : order) {
+            mask |= 1 << face.getIndex();
+        }
+        int sinks = ItemRoutingGraph.filterToSinks(pipe, mask, stack, colour);
+        if (sinks == mask) {
+            return order;
+        }
+        List<EnumFacing> filtered = new ArrayList<>(order.size());
+        for (EnumFacing face : order) {
+            if ((sinks & (1 << face.getIndex())) != 0) {
+                filtered.add(face);
+            }
+        }
+        return filtered;
+    }
+
+    private static double approachSpeed(double speed, double target, double maxDelta) {
+        if (speed < target) {
+            speed += maxDelta;
+            if (speed > target) {
+                speed = target;
+            }
+        } else if (speed > target) {
+            speed -= maxDelta;
+            if (speed < target) {
+                speed = target;
+            }
+        }
+        return speed;
+    }
+
     private void insertItemImpl(@Nonnull ItemStack stack, EnumDyeColor colour, double speed, EnumFacing from, List<EnumFacing> to, List<EnumFacing> tried) {
+        EnumFacing first = (to == null || to.size() <= 0) ? null : to.get(0);
+        List<EnumFacing> toTryOrder = null;
+        if (to != null && to.size() > 1) {
+            toTryOrder = to.subList(1, to.size());
+        }
+        insertItemImpl(stack, colour, speed, from, first, toTryOrder, tried);
+    }
+
+    private void insertItemImpl(@Nonnull ItemStack stack, EnumDyeColor colour, double speed, EnumFacing from, EnumFacing to, List<EnumFacing> toTryOrder, List<EnumFacing> tried) {
         TravellingItem item = new TravellingItem(stack);
 
         World world = pipe.getHolder().getPipeWorld();
@@ -483,10 +620,8 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
         item.from = from;
         item.speed = speed;
         item.colour = colour;
-        item.to = (to == null || to.size() <= 0) ? null : to.get(0);
-        if (to != null && to.size() > 1) {
-            item.toTryOrder = to.subList(1, to.size());
-        }
+        item.to = to;
+        item.toTryOrder = toTryOrder;
         item.tried = tried;
 
         double dist = getPipeLength(item.from) + getPipeLength(item.to);
@@ -495,17 +630,34 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
         int delay = (int) (item.tickFinished - now);
         item.state = EnumTravelState.SERVER_TO_CENTER;
         items.add(item.timeToCenter, item);
+        PipeTickScheduler.wakeUp(pipe.getHolder());
+
+        int stackId = BuildCraftObjectCaches.storeItemStack(stack);
+        boolean first = createdItems.isEmpty();
+        createdItems.add(new CreatedItem(item, delay, stackId));
+        if (first) {
+            // The holder batches messages until the end of the tick, so every other item inserted this tick will
+            // be written out by this same payload.
+            sendCustomPayload(NET_CREATE_ITEM, this::writeCreatedItems);
+        }
+    }
 
-        final int stackId = BuildCraftObjectCaches.storeItemStack(stack);
-        sendCustomPayload(NET_CREATE_ITEM, (buffer) -> {
-            PacketBufferBC buf = PacketBufferBC.asPacketBufferBc(buffer);
-            buf.writeEnumValue(from);
-            MessageUtil.writeEnumOrNull(buf, item.to);
-            MessageUtil.writeEnumOrNull(buf, colour);
-            buf.writeInt(delay);
-            buf.writeInt(stackId);
-            buf.writeShort(stack.getCount());
-        });
+    private void writeCreatedItems(PacketBuffer buffer) {
+        PacketBufferBC buf = PacketBufferBC.asPacketBufferBc(buffer);
+        buf.writeVarInt(createdItems.size());
+        for (CreatedItem created : createdItems) {
+            // from (3 bits), to (3 bits, 6 for null) and colour (5 bits, 16 for null) all fit in 11 bits, which are
+            // packed in with the bits of the next item rather than each taking up whole bytes.
+            int sides = created.from.ordinal();
+            sides |= (created.to == null ? 6 : created.to.ordinal()) << 3;
+            sides |= (created.colour == null ? 16 : created.colour.getMetadata()) << 6;
+            buf.writeFixedBits(sides, CREATED_ITEM_BITS);
+            buf.writeVarInt(created.delay);
+            BuildCraftObjectCaches.CACHE_ITEMS.server().reference(created.stackId);
+            buf.writeVarInt(created.stackId);
+            buf.writeVarInt(created.count);
+        }
+        createdItems.clear();
     }
 
     @Nullable
@@ -533,9 +685,22 @@ public class PipeFlowItems extends PipeFlow implements IFlowItems {
     @SideOnly(Side.CLIENT)
     public List<TravellingItem> getAllItemsForRender() {
         List<TravellingItem> all = new ArrayList<>();
-        for (List<TravellingItem> innerList : items.getAllElements()) {
-            all.addAll(innerList);
-        }
+        items.forEach(all::add);
         return all;
     }
+
+    private static class CreatedItem {
+        final EnumFacing from, to;
+        final EnumDyeColor colour;
+        final int delay, stackId, count;
+
+        CreatedItem(TravellingItem item, int delay, int stackId) {
+            this.from = item.from;
+            this.to = item.to;
+            this.colour = item.colour;
+            this.delay = Math.max(0, delay);
+            this.stackId = stackId;
+            this.count = item.stack.getCount();
+        }
+    }
 }
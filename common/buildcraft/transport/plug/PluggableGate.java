@@ -32,8 +32,9 @@ import buildcraft.transport.client.model.key.KeyPlugGate;
 import buildcraft.transport.client.render.PlugGateRenderer;
 import buildcraft.transport.gate.GateLogic;
 import buildcraft.transport.gate.GateVariant;
+import buildcraft.transport.pipe.ISleepablePipePart;
 
-public class PluggableGate extends PipePluggable {
+public class PluggableGate extends PipePluggable implements ISleepablePipePart {
     public static final int SET_TRIGGER = 0;
     public static final int SET_ACTION = 1;
     public static final int SET_TRIGGER_ARG = 2;
@@ -172,6 +173,11 @@ public class PluggableGate extends PipePluggable {
 
     // Gate methods
 
+    @Override
+    public boolean canSleep() {
+        return logic.canSleep();
+    }
+
     @Override
     public void onTick() {
         logic.onTick();
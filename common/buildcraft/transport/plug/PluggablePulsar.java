@@ -28,8 +28,10 @@ import buildcraft.lib.net.PacketBufferBC;
 import buildcraft.transport.BCTransportItems;
 import buildcraft.transport.client.model.key.KeyPlugPulsar;
 import buildcraft.transport.client.render.PlugPulsarRenderer;
+import buildcraft.transport.pipe.ISleepablePipePart;
+import buildcraft.transport.pipe.PipeTickScheduler;
 
-public class PluggablePulsar extends PipePluggable {
+public class PluggablePulsar extends PipePluggable implements ISleepablePipePart {
 
     private static final int PULSE_STAGE = 20;
 
@@ -141,6 +143,11 @@ public class PluggablePulsar extends PipePluggable {
         return new ItemStack(BCTransportItems.plugPulsar);
     }
 
+    @Override
+    public boolean canSleep() {
+        return !isPulsing() && !lastPulsing && pulseStage == 0;
+    }
+
     @Override
     public void onTick() {
         if (holder.getPipeWorld().isRemote) {
@@ -222,10 +229,12 @@ public class PluggablePulsar extends PipePluggable {
 
     public void enablePulsar() {
         gateEnabledTicks = 10;
+        PipeTickScheduler.wakeUp(holder);
     }
 
     public void addSinglePulse() {
         gateSinglePulses++;
+        PipeTickScheduler.wakeUp(holder);
     }
 
     private boolean isPulsing() {
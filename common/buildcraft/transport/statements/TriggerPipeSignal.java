@@ -19,13 +19,14 @@ import buildcraft.api.statements.ITriggerInternal;
 import buildcraft.api.transport.neptune.IWireManager;
 
 import buildcraft.core.statements.BCStatement;
+import buildcraft.core.statements.IObservingTrigger;
 import buildcraft.lib.client.sprite.SpriteHolderRegistry.SpriteHolder;
 import buildcraft.lib.misc.ColourUtil;
 import buildcraft.lib.misc.LocaleUtil;
 import buildcraft.transport.BCTransportSprites;
 import buildcraft.transport.BCTransportStatements;
 
-public class TriggerPipeSignal extends BCStatement implements ITriggerInternal {
+public class TriggerPipeSignal extends BCStatement implements ITriggerInternal, IObservingTrigger {
 
     private final boolean active;
     private final EnumDyeColor colour;
@@ -53,6 +54,11 @@ public class TriggerPipeSignal extends BCStatement implements ITriggerInternal {
         return String.format(LocaleUtil.localize("gate.trigger.pipe.wire." + (active ? "active" : "inactive")), ColourUtil.getTextFullTooltip(colour));
     }
 
+    @Override
+    public int getObservedInputs() {
+        return INPUT_WIRES;
+    }
+
     @Override
     public boolean isTriggerActive(IStatementContainer container, IStatementParameter[] parameters) {
         if(!(container instanceof IGate)) {
@@ -26,14 +26,22 @@ import buildcraft.api.transport.neptune.*;
 
 import buildcraft.lib.misc.data.IdAllocator;
 import buildcraft.lib.misc.data.LoadingException;
+import buildcraft.lib.net.IPayloadWriter;
 import buildcraft.lib.net.PacketBufferBC;
 import buildcraft.lib.tile.TileBC_Neptune;
+import buildcraft.transport.BCTransportConfig;
+import buildcraft.transport.pipe.IWakeablePipeHolder;
 import buildcraft.transport.pipe.Pipe;
 import buildcraft.transport.pipe.PipeEventBus;
+import buildcraft.transport.pipe.PipeTickScheduler;
 import buildcraft.transport.pipe.PluggableHolder;
+import buildcraft.transport.pipe.flow.ItemRoutingGraph;
+import buildcraft.transport.pipe.flow.PipeFlowFluids;
+import buildcraft.transport.pipe.flow.PipeFlowItems;
 import buildcraft.transport.wire.WireManager;
+import buildcraft.transport.wire.WorldSavedDataWireSystems;
 
-public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITickable, IDebuggable {
+public class TilePipeHolder extends TileBC_Neptune implements IWakeablePipeHolder, ITickable, IDebuggable {
 
     protected static final IdAllocator IDS = TileBC_Neptune.IDS.makeChild("pipe");
 
@@ -61,6 +69,9 @@ public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITick
         NET_UPDATE_PLUG_WEST, NET_UPDATE_PLUG_EAST,//
     };
 
+    /** The number of ticks that a pipe must be idle for before it goes to sleep. */
+    private static final int TICKS_BEFORE_SLEEP = 20;
+
     private static int getReceiverId(PipeMessageReceiver type) {
         return NET_UPDATE_SINGLE_START + type.ordinal();
     }
@@ -73,6 +84,8 @@ public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITick
     private final Set<PipeMessageReceiver> networkUpdates = EnumSet.noneOf(PipeMessageReceiver.class);
     private final Set<PipeMessageReceiver> networkGuiUpdates = EnumSet.noneOf(PipeMessageReceiver.class);
     private final Map<EnumFacing, WeakReference<TileEntity>> neighbourTiles = new EnumMap<>(EnumFacing.class);
+    private int idleTicks = 0;
+    private boolean sleeping = false;
 
     public TilePipeHolder() {
         for (EnumFacing side : EnumFacing.VALUES) {
@@ -142,6 +155,7 @@ public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITick
     }
 
     public void refreshNeighbours() {
+        wakeUp();
         for (EnumFacing face : EnumFacing.VALUES) {
             WeakReference<TileEntity> current = neighbourTiles.get(face);
             if (current != null) {
@@ -163,6 +177,27 @@ public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITick
     public void invalidate() {
         super.invalidate();
         wireManager.removeParts(new ArrayList<>(wireManager.parts.keySet()));
+        if (!world.isRemote && pipe != null && pipe.flow instanceof PipeFlowItems) {
+            ItemRoutingGraph.onConnectionsChanged(this);
+        }
+        if (pipe != null && pipe.flow instanceof PipeFlowFluids) {
+            ((PipeFlowFluids) pipe.flow).onUnload();
+        }
+        if (!world.isRemote) {
+            WorldSavedDataWireSystems.get(world).markEmittersUnloaded(this);
+        }
+    }
+
+    @Override
+    public void onChunkUnload() {
+        super.onChunkUnload();
+        if (pipe != null && pipe.flow instanceof PipeFlowFluids) {
+            ((PipeFlowFluids) pipe.flow).onUnload();
+        }
+        if (!world.isRemote) {
+            // Any wires that our gates were powering need to turn off
+            WorldSavedDataWireSystems.get(world).markEmittersUnloaded(this);
+        }
     }
 
     // ITickable
@@ -179,22 +214,16 @@ public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITick
 
         // Send network updates
         if (networkUpdates.size() > 0) {
-            // TODO: Multi-update messages! (multiple updates sent in a single message)
             Set<PipeMessageReceiver> parts = EnumSet.copyOf(networkUpdates);
-            for (PipeMessageReceiver part : parts) {
-                sendNetworkUpdate(getReceiverId(part));
-            }
+            createAndSendBatchedMessage(NET_UPDATE_MULTI, (buffer) -> writeMultiUpdate(parts, buffer));
         }
         // No need to send gui updates to specific players if we just sent off messages to all players.
         networkGuiUpdates.removeAll(networkUpdates);
         networkUpdates.clear();
 
         if (networkGuiUpdates.size() > 0) {
-            // TODO: Multi-update messages! (multiple updates sent in a single message)
             Set<PipeMessageReceiver> parts = EnumSet.copyOf(networkGuiUpdates);
-            for (PipeMessageReceiver part : parts) {
-                sendNetworkGuiUpdate(getReceiverId(part));
-            }
+            createAndSendGuiMessage(NET_UPDATE_MULTI, (buffer) -> writeMultiUpdate(parts, buffer));
         }
         networkGuiUpdates.clear();
 
@@ -207,6 +236,69 @@ public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITick
             wireManager.updateBetweens(false);
             wireManager.inited = true;
         }
+
+        if (!world.isRemote && BCTransportConfig.sleepingPipes) {
+            if (canSleep()) {
+                idleTicks++;
+                if (idleTicks >= TICKS_BEFORE_SLEEP) {
+                    sleeping = true;
+                    PipeTickScheduler.get(world).sleep(this);
+                }
+            } else {
+                idleTicks = 0;
+            }
+        }
+    }
+
+    /** Writes a {@link #NET_UPDATE_MULTI} payload: a mask of the parts that follow, and then each part's payload in
+     * ordinal order. */
+    private void writeMultiUpdate(Set<PipeMessageReceiver> parts, PacketBufferBC buffer) {
+        int total = 0;
+        for (PipeMessageReceiver part : parts) {
+            total |= 1 << part.ordinal();
+        }
+        buffer.writeShort(total);
+        for (PipeMessageReceiver part : parts) {
+            writePayload(getReceiverId(part), buffer, Side.SERVER);
+        }
+    }
+
+    private boolean canSleep() {
+        if (!networkUpdates.isEmpty() || !networkGuiUpdates.isEmpty() || scheduleRenderUpdate) {
+            return false;
+        }
+        if (pipe != null && !pipe.canSleep()) {
+            return false;
+        }
+        for (EnumFacing face : EnumFacing.VALUES) {
+            if (!PipeTickScheduler.canSleep(pluggables.get(face).pluggable)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // IWakeablePipeHolder
+
+    @Override
+    public void wakeUp() {
+        idleTicks = 0;
+        if (sleeping && hasWorld() && !world.isRemote) {
+            sleeping = false;
+            PipeTickScheduler.get(world).wake(this);
+        }
+    }
+
+    @Override
+    public void scheduleWakeUp(int ticks) {
+        if (hasWorld() && !world.isRemote) {
+            PipeTickScheduler.get(world).scheduleWakeUp(this, ticks);
+        }
+    }
+
+    @Override
+    public boolean isSleeping() {
+        return sleeping;
     }
 
     // Network
@@ -269,7 +361,7 @@ public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITick
                 }
                 wireManager.readPayload(buffer, side, ctx);
             } else if (id == NET_UPDATE_MULTI) {
-                int total = buffer.readUnsignedByte();
+                int total = buffer.readUnsignedShort();
                 for (PipeMessageReceiver type : PipeMessageReceiver.VALUES) {
                     if (((total >> type.ordinal()) & 1) == 1) {
                         readPayload(getReceiverId(type), buffer, side, ctx);
@@ -381,21 +473,34 @@ public class TilePipeHolder extends TileBC_Neptune implements IPipeHolder, ITick
     @Override
     public void scheduleRenderUpdate() {
         scheduleRenderUpdate = true;
+        wakeUp();
     }
 
     @Override
     public void scheduleNetworkUpdate(PipeMessageReceiver... parts) {
         Collections.addAll(networkUpdates, parts);
+        wakeUp();
     }
 
     @Override
     public void scheduleNetworkGuiUpdate(PipeMessageReceiver... parts) {
         Collections.addAll(networkGuiUpdates, parts);
+        wakeUp();
     }
 
     @Override
     public void sendMessage(PipeMessageReceiver to, IWriter writer) {
-        createAndSendMessage(getReceiverId(to), writer::write);
+        createAndSendBatchedMessage(getReceiverId(to), writer::write);
+    }
+
+    /** Creates (but doesn't send) a payload that will call {@link PipeFlow#readPayload} with the given id on the
+     * client. Used by flows that need to send different payloads to different players. */
+    public IPayloadWriter createFlowPayload(int flowId, IPayloadWriter writer) {
+        return createPayload(NET_UPDATE_PIPE_FLOW, (buffer) -> {
+            buffer.writeBoolean(true);
+            buffer.writeShort(flowId);
+            writer.write(buffer);
+        });
     }
 
     @Override
@@ -42,7 +42,7 @@ public class MessageWireSystems implements IMessage {
             int wiresHashCode = buf.readInt();
             int localCount = buf.readInt();
             for(int j = 0; j < localCount; j++) {
-                wireSystem.elements.add(new WireSystem.WireElement(buf));
+                wireSystem.addElement(new WireSystem.WireElement(buf));
             }
             wireSystems.put(wiresHashCode, wireSystem);
         }
@@ -46,7 +46,7 @@ public class WireManager implements IWireManager {
         if (getColorOfPart(part) == null) {
             parts.put(part, colour);
             if (!holder.getPipeWorld().isRemote) {
-                getWireSystems().buildAndAddWireSystem(new WireSystem.WireElement(holder.getPipePos(), part));
+                getWireSystems().addWire(holder, part);
                 holder.getPipeTile().markDirty();
             }
             updateBetweens(false);
@@ -64,9 +64,7 @@ public class WireManager implements IWireManager {
         } else {
             parts.remove(part);
             if (!holder.getPipeWorld().isRemote) {
-                WireSystem.WireElement element = new WireSystem.WireElement(holder.getPipePos(), part);
-                WireSystem.getConnectedElementsOfElement(holder, element).forEach(getWireSystems()::buildAndAddWireSystem);
-                getWireSystems().getWireSystemsWithElement(element).forEach(getWireSystems()::removeWireSystem);
+                getWireSystems().removeWire(holder, part);
                 holder.getPipeTile().markDirty();
             }
             updateBetweens(false);
@@ -77,8 +75,8 @@ public class WireManager implements IWireManager {
     public void removeParts(Collection<EnumWirePart> parts) {
         parts.forEach(this.parts::remove);
         if (!holder.getPipeWorld().isRemote) {
-            parts.stream().map(part -> new WireSystem.WireElement(holder.getPipePos(), part)).flatMap(element -> WireSystem.getConnectedElementsOfElement(holder, element).stream()).distinct().forEach(getWireSystems()::buildAndAddWireSystem);
-            parts.stream().map(part -> new WireSystem.WireElement(holder.getPipePos(), part)).flatMap(element -> getWireSystems().getWireSystemsWithElement(element).stream()).forEach(getWireSystems()::removeWireSystem);
+            WorldSavedDataWireSystems wireSystems = getWireSystems();
+            parts.forEach(part -> wireSystems.removeWire(holder, part));
             holder.getPipeTile().markDirty();
         }
         updateBetweens(false);
@@ -133,8 +131,7 @@ public class WireManager implements IWireManager {
         if (holder.getPipeWorld().isRemote) {
             return poweredClient.contains(part);
         } else {
-            return getWireSystems().getWireSystemsWithElement(new WireSystem.WireElement(holder.getPipePos(), part)).stream().map(wireSystem -> getWireSystems().wireSystems.get(wireSystem)).filter(Objects::nonNull).reduce(Boolean::logicalOr).orElse(
-                    false);
+            return getWireSystems().isPowered(new WireSystem.WireElement(holder.getPipePos(), part));
         }
     }
 
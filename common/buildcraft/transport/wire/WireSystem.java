@@ -1,7 +1,6 @@
 package buildcraft.transport.wire;
 
 import java.util.*;
-import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -21,20 +20,56 @@ import net.minecraft.world.WorldServer;
 
 import net.minecraftforge.common.util.Constants;
 
-import buildcraft.api.core.BCLog;
 import buildcraft.api.transport.neptune.*;
 
 import buildcraft.lib.misc.NBTUtilBC;
 import buildcraft.transport.plug.PluggableGate;
 
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
 import io.netty.buffer.ByteBuf;
 
+/** A set of connected wires of the same colour, and the gates that they are connected to. Systems are changed in place
+ * (when systems are joined, or elements are removed) while they are stored in maps and sets, so two systems are only
+ * ever equal if they are the same object. */
 public class WireSystem {
     public final List<WireElement> elements = new ArrayList<>();
     public EnumDyeColor color = null;
+    /** Maps the {@link WireElement#toKey()} of every element to its index in {@link #elements}. */
+    private final TLongIntHashMap elementIndices = new TLongIntHashMap();
+    /** The key of the wire part that this system is stored under in {@link WorldSavedDataWireSystems}. */
+    long root;
 
     public boolean hasElement(WireElement element) {
-        return elements.contains(element);
+        return elementIndices.containsKey(element.toKey());
+    }
+
+    /** @return True if the element was added, false if this already contained it. */
+    public boolean addElement(WireElement element) {
+        long key = element.toKey();
+        if (elementIndices.containsKey(key)) {
+            return false;
+        }
+        elementIndices.put(key, elements.size());
+        elements.add(element);
+        return true;
+    }
+
+    /** Removes the given element by moving the last element into its place, so this changes the order of
+     * {@link #elements}. */
+    void removeElement(WireElement element) {
+        long key = element.toKey();
+        if (!elementIndices.containsKey(key)) {
+            return;
+        }
+        int index = elementIndices.remove(key);
+        WireElement last = elements.remove(elements.size() - 1);
+        if (index < elements.size()) {
+            elements.set(index, last);
+            elementIndices.put(last.toKey(), index);
+        }
     }
 
     /** Checks to see if the given holder could connect a wire across the specified side even if a matching wire wasn't
@@ -89,49 +124,52 @@ public class WireSystem {
     }
 
     public WireSystem build(WorldSavedDataWireSystems wireSystems, WireElement startElement) {
-        long time = System.currentTimeMillis();
-        Map<BlockPos, IPipeHolder> holdersCache = new HashMap<>();
-        Set<WireElement> walked = new HashSet<>();
+        TLongObjectHashMap<IPipeHolder> holdersCache = new TLongObjectHashMap<>();
+        TLongHashSet walked = new TLongHashSet();
         Queue<WireElement> queue = new ArrayDeque<>();
-        Consumer<WireElement> build = element -> {
-            if (!walked.contains(element)) {
-                if (!holdersCache.containsKey(element.blockPos)) {
-                    TileEntity tile = wireSystems.world.getTileEntity(element.blockPos);
-                    IPipeHolder holder = null;
-                    if (tile instanceof IPipeHolder) {
-                        holder = (IPipeHolder) tile;
+        queue.add(startElement);
+        while (!queue.isEmpty()) {
+            WireElement element = queue.remove();
+            if (!walked.add(element.toKey())) {
+                continue;
+            }
+            long posKey = element.blockPos.toLong();
+            IPipeHolder holder;
+            if (holdersCache.containsKey(posKey)) {
+                holder = holdersCache.get(posKey);
+            } else {
+                TileEntity tile = wireSystems.world.getTileEntity(element.blockPos);
+                holder = tile instanceof IPipeHolder ? (IPipeHolder) tile : null;
+                holdersCache.put(posKey, holder);
+            }
+            if (holder == null) {
+                continue;
+            }
+            if (element.type == WireElement.Type.WIRE_PART) {
+                EnumDyeColor colorOfPart = holder.getWireManager().getColorOfPart(element.wirePart);
+                if (color == null) {
+                    if (colorOfPart != null) {
+                        color = colorOfPart;
                     }
-                    holdersCache.put(element.blockPos, holder);
                 }
-                IPipeHolder holder = holdersCache.get(element.blockPos);
-                if (holder != null) {
-                    if (element.type == WireElement.Type.WIRE_PART) {
-                        EnumDyeColor colorOfPart = holder.getWireManager().getColorOfPart(element.wirePart);
-                        if (color == null) {
-                            if (colorOfPart != null) {
-                                color = colorOfPart;
-                            }
-                        }
-                        if (color != null && colorOfPart == color) {
-                            wireSystems.getWireSystemsWithElement(element).stream().filter(wireSystem -> wireSystem != this && wireSystem.color == this.color).forEach(wireSystems::removeWireSystem);
-                            elements.add(element);
-                            queue.addAll(getConnectedElementsOfElement(wireSystems.world, element));
-                            Arrays.stream(EnumFacing.values()).forEach(side -> queue.add(new WireElement(element.blockPos, side)));
-                        }
-                    } else if (element.type == WireElement.Type.EMITTER_SIDE) {
-                        if (holder.getPluggable(element.emitterSide) instanceof PluggableGate) {
-                            elements.add(new WireElement(element.blockPos, element.emitterSide));
-                        }
+                if (color != null && colorOfPart == color) {
+                    WireSystem existing = wireSystems.getWireSystem(element);
+                    if (existing != null && existing != this) {
+                        // Everything in the existing system is connected to this element, so it will all be walked
+                        wireSystems.removeWireSystem(existing);
                     }
+                    addElement(element);
+                    queue.addAll(getConnectedElementsOfElement(holder, element));
+                    for (EnumFacing side : EnumFacing.VALUES) {
+                        queue.add(new WireElement(element.blockPos, side));
+                    }
+                }
+            } else if (element.type == WireElement.Type.EMITTER_SIDE) {
+                if (holder.getPluggable(element.emitterSide) instanceof PluggableGate) {
+                    addElement(element);
                 }
-                walked.add(element);
             }
-        };
-        queue.add(startElement);
-        while (!queue.isEmpty()) {
-            build.accept(queue.remove());
         }
-        BCLog.logger.info("[transport.wire] Wire rebuild took " + (System.currentTimeMillis() - time) + "ms");
         return this;
     }
 
@@ -172,36 +210,21 @@ public class WireSystem {
     public WireSystem readFromNBT(NBTTagCompound nbt) {
         elements.clear();
         NBTTagList elementsList = nbt.getTagList("elements", Constants.NBT.TAG_COMPOUND);
-        IntStream.range(0, elementsList.tagCount()).mapToObj(elementsList::getCompoundTagAt).map(WireElement::new).forEach(elements::add);
+        elementIndices.clear();
+        IntStream.range(0, elementsList.tagCount()).mapToObj(elementsList::getCompoundTagAt).map(WireElement::new).forEach(this::addElement);
         color = EnumDyeColor.byMetadata(nbt.getInteger("color"));
         return this;
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
-        }
-        if (o == null || getClass() != o.getClass()) {
-            return false;
-        }
-
-        WireSystem that = (WireSystem) o;
-
-        if (!elements.equals(that.elements)) {
-            return false;
-        }
-        return color == that.color;
-    }
-
-    @Override
-    public int hashCode() {
-        int result = elements.hashCode();
-        result = 31 * result + (color != null ? color.hashCode() : 0);
-        return result;
-    }
-
     public static class WireElement {
+        // Layout of toKey(): x (26 bits), z (26 bits), y (8 bits), type (1 bit), wire part or emitter side (3 bits)
+        private static final int INDEX_BITS = 3;
+        private static final int TYPE_SHIFT = INDEX_BITS;
+        private static final int Y_SHIFT = TYPE_SHIFT + 1;
+        private static final int Z_SHIFT = Y_SHIFT + 8;
+        private static final int X_SHIFT = Z_SHIFT + 26;
+        private static final long XZ_MASK = (1L << 26) - 1;
+
         public final Type type;
         public final BlockPos blockPos;
         public final EnumWirePart wirePart;
@@ -251,6 +274,17 @@ public class WireSystem {
             }
         }
 
+        /** @return A unique number for this element, for use in primitive collections. Only elements between y=0 and
+         *         y=255 have unique keys, which is fine as pipes can't exist outside of that. */
+        public long toKey() {
+            int index = type == Type.WIRE_PART ? wirePart.ordinal() : emitterSide.getIndex();
+            return ((blockPos.getX() & XZ_MASK) << X_SHIFT)//
+                | ((blockPos.getZ() & XZ_MASK) << Z_SHIFT)//
+                | ((blockPos.getY() & 0xFFL) << Y_SHIFT)//
+                | ((long) type.ordinal() << TYPE_SHIFT)//
+                | index;
+        }
+
         public void toBytes(ByteBuf buf) {
             buf.writeInt(type.ordinal());
             new PacketBuffer(buf).writeBlockPos(blockPos);
@@ -13,6 +13,8 @@ import net.minecraft.item.EnumDyeColor;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldSavedData;
 import net.minecraft.world.storage.MapStorage;
@@ -22,19 +24,47 @@ import net.minecraftforge.common.util.Constants;
 import buildcraft.api.core.BCLog;
 import buildcraft.api.transport.neptune.EnumWirePart;
 import buildcraft.api.transport.neptune.IPipeHolder;
+import buildcraft.api.transport.neptune.WireNode;
 
 import buildcraft.lib.BCMessageHandler;
+import buildcraft.core.statements.IObservingTrigger;
+import buildcraft.transport.gate.GateLogic;
 import buildcraft.transport.plug.PluggableGate;
+import buildcraft.transport.wire.WireSystem.WireElement;
 
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/** Stores every {@link WireSystem} in a world.
+ * <p>
+ * Every wire part that is in a system is also stored in a disjoint-set forest (keyed by {@link WireElement#toKey()}),
+ * with the root of each tree mapping to its system. Looking up the system of a wire, or joining two systems when a wire
+ * is placed between them, is close to constant time rather than a scan over every system in the world. Removing a wire
+ * only rebuilds the system that it was in, but that still walks every element of that system: the forest can't be
+ * split, so removing a wire costs time proportional to the size of its system.
+ * <p>
+ * Only systems that contain a gate that has changed what it emits are updated each tick. Gates are told when the
+ * systems in their pipe change, so that they don't need to check wire triggers every tick. */
 public class WorldSavedDataWireSystems extends WorldSavedData {
     public static final String DATA_NAME = "buildcraft_wire_systems";
     public World world;
-    public final Map<WireSystem, Boolean> wireSystems = new HashMap<>();
+    /** Wire systems are modified in place when they are joined, so this is an identity map (which is also what
+     * {@link WireSystem} uses for equality). */
+    public final Map<WireSystem, Boolean> wireSystems = new IdentityHashMap<>();
+    /** Maps each wire part to its parent in the forest. Roots map to themselves. */
+    private final TLongLongHashMap parents = new TLongLongHashMap();
+    private final TLongObjectHashMap<WireSystem> systemsByRoot = new TLongObjectHashMap<>();
+    /** Maps the key of every emitter to the systems that contain it. */
+    private final TLongObjectHashMap<List<WireSystem>> emitterSystems = new TLongObjectHashMap<>();
+    /** The systems that need to check their emitters on the next tick. */
+    private final Set<WireSystem> dirtySystems = Collections.newSetFromMap(new IdentityHashMap<>());
+    /** If true then every system will check its emitters on the next tick. */
     public boolean gatesChanged = true;
     public boolean structureChanged = true;
     public final List<WireSystem> changedSystems = new ArrayList<>();
     public final List<EntityPlayerMP> changedPlayers = new ArrayList<>();
-    public final Map<WireSystem.WireElement, IWireEmitter> emittersCache = new HashMap<>();
+    public final Map<WireElement, IWireEmitter> emittersCache = new HashMap<>();
 
     public WorldSavedDataWireSystems() {
         super(DATA_NAME);
@@ -50,33 +80,273 @@ public class WorldSavedDataWireSystems extends WorldSavedData {
         emittersCache.clear();
     }
 
-    public List<WireSystem> getWireSystemsWithElement(WireSystem.WireElement element) {
-        return wireSystems.keySet().stream().filter(wireSystem -> wireSystem.hasElement(element)).collect(Collectors.toList());
+    /** Called when a gate changes what it emits. */
+    public void markEmitterChanged(WireElement emitter) {
+        List<WireSystem> systems = emitterSystems.get(emitter.toKey());
+        if (systems != null) {
+            dirtySystems.addAll(systems);
+        }
+    }
+
+    /** Called when the gates of the given holder stop being loaded (or are removed), so that any systems that they were
+     * powering are checked again without them. */
+    public void markEmittersUnloaded(IPipeHolder holder) {
+        for (EnumFacing side : EnumFacing.VALUES) {
+            WireElement emitter = new WireElement(holder.getPipePos(), side);
+            emittersCache.remove(emitter);
+            markEmitterChanged(emitter);
+        }
+    }
+
+    public List<WireSystem> getWireSystemsWithElement(WireElement element) {
+        if (element.type == WireElement.Type.WIRE_PART) {
+            WireSystem wireSystem = getWireSystem(element);
+            return wireSystem == null ? Collections.emptyList() : Collections.singletonList(wireSystem);
+        }
+        List<WireSystem> systems = emitterSystems.get(element.toKey());
+        return systems == null ? Collections.emptyList() : Collections.unmodifiableList(systems);
+    }
+
+    /** @return The system that contains the given wire part, or null if it isn't in one (or isn't a wire part). */
+    public WireSystem getWireSystem(WireElement element) {
+        if (element.type != WireElement.Type.WIRE_PART) {
+            return null;
+        }
+        long key = element.toKey();
+        if (!parents.containsKey(key)) {
+            return null;
+        }
+        return systemsByRoot.get(find(key));
+    }
+
+    public boolean isPowered(WireElement element) {
+        WireSystem wireSystem = getWireSystem(element);
+        return wireSystem != null && Boolean.TRUE.equals(wireSystems.get(wireSystem));
     }
 
     public void removeWireSystem(WireSystem wireSystem) {
-        wireSystems.remove(wireSystem);
+        unindex(wireSystem);
+        if (wireSystems.remove(wireSystem) != null) {
+            notifyGates(wireSystem);
+        }
         markStructureChanged();
     }
 
-    public void buildAndAddWireSystem(WireSystem.WireElement element) {
+    /** Builds a new system starting from the given element, unless it is already in one. */
+    public void buildAndAddWireSystem(WireElement element) {
+        if (getWireSystem(element) != null) {
+            return;
+        }
         WireSystem wireSystem = new WireSystem().build(this, element);
         if(!wireSystem.isEmpty()) {
-            wireSystems.put(wireSystem, false);
+            index(wireSystem);
             wireSystems.put(wireSystem, wireSystem.update(this));
+            notifyGates(wireSystem);
         }
         markStructureChanged();
     }
 
+    /** Adds a newly placed wire part, joining it to the systems of any matching wires that it connects to. */
+    public void addWire(IPipeHolder holder, EnumWirePart part) {
+        WireElement element = new WireElement(holder.getPipePos(), part);
+        EnumDyeColor color = holder.getWireManager().getColorOfPart(part);
+        if (color == null || getWireSystem(element) != null) {
+            return;
+        }
+        WireSystem wireSystem = new WireSystem();
+        wireSystem.color = color;
+        wireSystem.addElement(element);
+        for (EnumFacing side : EnumFacing.VALUES) {
+            if (holder.getPluggable(side) instanceof PluggableGate) {
+                wireSystem.addElement(new WireElement(holder.getPipePos(), side));
+            }
+        }
+        index(wireSystem);
+        for (WireElement connected : WireSystem.getConnectedElementsOfElement(holder, element)) {
+            WireSystem other = getWireSystem(connected);
+            if (other != null && other.color == color) {
+                wireSystem = union(wireSystem, other);
+            }
+        }
+        wireSystems.put(wireSystem, wireSystem.update(this));
+        notifyGates(wireSystem);
+        markStructureChanged();
+    }
+
+    /** Removes a wire part that has already been taken out of its {@link WireManager}, splitting its system up into
+     * whatever is still connected. Only the system that contained the wire is rebuilt, but this is still proportional
+     * to the size of that system, as every piece that is left has to be walked again to find out which pieces are
+     * still connected. */
+    public void removeWire(IPipeHolder holder, EnumWirePart part) {
+        WireSystem wireSystem = getWireSystem(new WireElement(holder.getPipePos(), part));
+        if (wireSystem == null) {
+            return;
+        }
+        removeWireSystem(wireSystem);
+        rebuild(wireSystem.elements);
+    }
+
     public void rebuildWireSystemsAround(IPipeHolder holder) {
-        Arrays.stream(EnumWirePart.values())
-                .flatMap(part -> WireSystem.getConnectedElementsOfElement(world, new WireSystem.WireElement(holder.getPipePos(), part)).stream())
-                .distinct()
-                .forEach(this::buildAndAddWireSystem);
+        BlockPos pos = holder.getPipePos();
+        List<WireElement> toRebuild = new ArrayList<>();
+        for (EnumWirePart part : EnumWirePart.VALUES) {
+            WireNode node = new WireNode(pos, part);
+            removeWireSystemOf(new WireElement(pos, part), toRebuild);
+            for (EnumFacing face : EnumFacing.VALUES) {
+                WireNode offset = node.offset(face);
+                removeWireSystemOf(new WireElement(offset.pos, offset.part), toRebuild);
+            }
+        }
+        rebuild(toRebuild);
+    }
+
+    /** Tells every gate in the pipes of the given system that its wires might have changed. */
+    private void notifyGates(WireSystem wireSystem) {
+        TLongHashSet notified = new TLongHashSet();
+        for (WireElement element : wireSystem.elements) {
+            if (element.type != WireElement.Type.WIRE_PART || !notified.add(element.blockPos.toLong())) {
+                continue;
+            }
+            if (!world.isBlockLoaded(element.blockPos)) {
+                continue;
+            }
+            TileEntity tile = world.getTileEntity(element.blockPos);
+            if (tile instanceof IPipeHolder) {
+                GateLogic.markInputsChanged((IPipeHolder) tile, IObservingTrigger.INPUT_WIRES);
+            }
+        }
+    }
+
+    private void removeWireSystemOf(WireElement element, List<WireElement> removedElements) {
+        WireSystem wireSystem = getWireSystem(element);
+        if (wireSystem != null) {
+            removeWireSystem(wireSystem);
+            removedElements.addAll(wireSystem.elements);
+        }
+    }
+
+    /** Builds systems for every wire part in the given list that isn't already in one. */
+    private void rebuild(List<WireElement> elements) {
+        for (WireElement element : elements) {
+            if (element.type == WireElement.Type.WIRE_PART) {
+                buildAndAddWireSystem(element);
+            }
+        }
+    }
+
+    // Disjoint-set forest
+
+    private long find(long key) {
+        long parent;
+        while ((parent = parents.get(key)) != key) {
+            // Path halving
+            long grandparent = parents.get(parent);
+            parents.put(key, grandparent);
+            key = grandparent;
+        }
+        return key;
+    }
+
+    /** Adds every wire part in the given system to the forest, as a single tree. */
+    private void index(WireSystem wireSystem) {
+        List<WireElement> duplicates = null;
+        boolean hasRoot = false;
+        for (WireElement element : wireSystem.elements) {
+            if (element.type != WireElement.Type.WIRE_PART) {
+                continue;
+            }
+            long key = element.toKey();
+            if (parents.containsKey(key)) {
+                // Only possible with systems saved before elements were unique
+                if (duplicates == null) {
+                    duplicates = new ArrayList<>();
+                }
+                duplicates.add(element);
+                continue;
+            }
+            if (!hasRoot) {
+                wireSystem.root = key;
+                hasRoot = true;
+            }
+            parents.put(key, wireSystem.root);
+        }
+        if (duplicates != null) {
+            BCLog.logger.warn("[transport.wire] Found " + duplicates.size() + " wires in more than one wire system, removing them from " + wireSystem.color + " @ " + duplicates.get(0));
+            duplicates.forEach(wireSystem::removeElement);
+        }
+        if (hasRoot) {
+            systemsByRoot.put(wireSystem.root, wireSystem);
+            for (WireElement element : wireSystem.elements) {
+                if (element.type == WireElement.Type.EMITTER_SIDE) {
+                    addEmitterSystem(element.toKey(), wireSystem);
+                }
+            }
+        }
+    }
+
+    private void unindex(WireSystem wireSystem) {
+        if (systemsByRoot.get(wireSystem.root) != wireSystem) {
+            return;
+        }
+        systemsByRoot.remove(wireSystem.root);
+        for (WireElement element : wireSystem.elements) {
+            if (element.type == WireElement.Type.WIRE_PART) {
+                parents.remove(element.toKey());
+            } else {
+                removeEmitterSystem(element.toKey(), wireSystem);
+            }
+        }
     }
 
-    public IWireEmitter getEmitter(WireSystem.WireElement element) {
-        if(element.type == WireSystem.WireElement.Type.EMITTER_SIDE) {
+    private void addEmitterSystem(long key, WireSystem wireSystem) {
+        List<WireSystem> systems = emitterSystems.get(key);
+        if (systems == null) {
+            systems = new ArrayList<>(1);
+            emitterSystems.put(key, systems);
+        }
+        systems.add(wireSystem);
+    }
+
+    private void removeEmitterSystem(long key, WireSystem wireSystem) {
+        List<WireSystem> systems = emitterSystems.get(key);
+        if (systems != null) {
+            systems.removeIf(s -> s == wireSystem);
+            if (systems.isEmpty()) {
+                emitterSystems.remove(key);
+            }
+        }
+    }
+
+    /** Joins two systems together, moving the elements of the smaller into the larger.
+     *
+     * @return The joined system. */
+    private WireSystem union(WireSystem a, WireSystem b) {
+        if (a == b) {
+            return a;
+        }
+        if (a.elements.size() < b.elements.size()) {
+            WireSystem temp = a;
+            a = b;
+            b = temp;
+        }
+        parents.put(b.root, a.root);
+        systemsByRoot.remove(b.root);
+        wireSystems.remove(b);
+        for (WireElement element : b.elements) {
+            boolean added = a.addElement(element);
+            if (element.type == WireElement.Type.EMITTER_SIDE) {
+                long key = element.toKey();
+                removeEmitterSystem(key, b);
+                if (added) {
+                    addEmitterSystem(key, a);
+                }
+            }
+        }
+        return a;
+    }
+
+    public IWireEmitter getEmitter(WireElement element) {
+        if(element.type == WireElement.Type.EMITTER_SIDE) {
             if(!emittersCache.containsKey(element)) {
                 TileEntity tile = world.getTileEntity(element.blockPos);
                 if(tile instanceof IPipeHolder) {
@@ -95,7 +365,11 @@ public class WorldSavedDataWireSystems extends WorldSavedData {
         return null;
     }
 
-    public boolean isEmitterEmitting(WireSystem.WireElement element, EnumDyeColor color) {
+    public boolean isEmitterEmitting(WireElement element, EnumDyeColor color) {
+        if (!world.isBlockLoaded(element.blockPos)) {
+            // Unloaded gates can't emit anything (and looking them up would load their chunk)
+            return false;
+        }
         TileEntity tile = world.getTileEntity(element.blockPos);
         if(tile instanceof IPipeHolder) {
             IPipeHolder holder = (IPipeHolder) tile;
@@ -108,24 +382,37 @@ public class WorldSavedDataWireSystems extends WorldSavedData {
 
     public void tick() {
         if(gatesChanged) {
-            wireSystems.keySet().stream()
-                    .filter(wireSystem -> {
-                        boolean newPowered = wireSystem.update(this);
-                        return wireSystems.put(wireSystem, newPowered) != newPowered;
-                    })
-                    .forEach(changedSystems::add);
+            dirtySystems.addAll(wireSystems.keySet());
+            gatesChanged = false;
+        }
+        for (WireSystem wireSystem : dirtySystems) {
+            Boolean oldPowered = wireSystems.get(wireSystem);
+            if (oldPowered == null) {
+                // Removed since it was marked
+                continue;
+            }
+            boolean newPowered = wireSystem.update(this);
+            if (oldPowered != newPowered) {
+                wireSystems.put(wireSystem, newPowered);
+                changedSystems.add(wireSystem);
+                notifyGates(wireSystem);
+            }
+        }
+        dirtySystems.clear();
+        if (!structureChanged && changedSystems.isEmpty() && changedPlayers.isEmpty()) {
+            return;
         }
         world.getPlayers(EntityPlayerMP.class, Predicates.alwaysTrue()).forEach(player -> {
             Map<Integer, WireSystem> wireSystems = this.wireSystems.keySet().stream()
-                    .filter(wireSystem -> wireSystem.isPlayerWatching(player) && (structureChanged || changedPlayers.contains(player)))
+                    .filter(wireSystem -> (structureChanged || changedPlayers.contains(player)) && wireSystem.isPlayerWatching(player))
                     .collect(Collectors.toMap(WireSystem::getWiresHashCode, Function.identity()));
             if(!wireSystems.isEmpty()) {
                 BCMessageHandler.netWrapper.sendTo(new MessageWireSystems(wireSystems), player);
             }
             Map<Integer, Boolean> hashesPowered = this.wireSystems.entrySet().stream()
                     .filter(systemPower ->
-                            systemPower.getKey().isPlayerWatching(player) &&
-                                    (structureChanged || changedSystems.contains(systemPower.getKey()) || changedPlayers.contains(player))
+                            (structureChanged || changedSystems.contains(systemPower.getKey()) || changedPlayers.contains(player)) &&
+                                    systemPower.getKey().isPlayerWatching(player)
                     )
                     .map(systemPowered -> Pair.of(systemPowered.getKey().getWiresHashCode(), systemPowered.getValue()))
                     .collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
@@ -157,10 +444,18 @@ public class WorldSavedDataWireSystems extends WorldSavedData {
     @Override
     public void readFromNBT(NBTTagCompound nbt) {
         wireSystems.clear();
+        parents.clear();
+        systemsByRoot.clear();
+        emitterSystems.clear();
+        dirtySystems.clear();
         NBTTagList entriesList = nbt.getTagList("entries", Constants.NBT.TAG_COMPOUND);
         for(int i = 0; i < entriesList.tagCount(); i++) {
             NBTTagCompound entry = entriesList.getCompoundTagAt(i);
-            wireSystems.put(new WireSystem().readFromNBT(entry.getCompoundTag("wireSystem")), entry.getBoolean("powered"));
+            WireSystem wireSystem = new WireSystem().readFromNBT(entry.getCompoundTag("wireSystem"));
+            index(wireSystem);
+            if (!wireSystem.isEmpty()) {
+                wireSystems.put(wireSystem, entry.getBoolean("powered"));
+            }
         }
     }
 
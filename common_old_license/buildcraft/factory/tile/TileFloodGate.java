@@ -2,7 +2,6 @@ package buildcraft.factory.tile;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.Map.Entry;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockLiquid;
@@ -11,6 +10,7 @@ import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.ITickable;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
 
 import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.fluids.Fluid;
@@ -31,18 +31,39 @@ import buildcraft.lib.misc.BlockUtil;
 import buildcraft.lib.misc.CapUtil;
 import buildcraft.lib.misc.FluidUtilBC;
 import buildcraft.lib.misc.MessageUtil;
+import buildcraft.lib.misc.data.PositionLayerQueue;
 import buildcraft.lib.net.PacketBufferBC;
 import buildcraft.lib.tile.TileBC_Neptune;
+import buildcraft.lib.world.WorldEventListenerAdapter;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
 
 public class TileFloodGate extends TileBC_Neptune implements ITickable, IDebuggable {
     public static final EnumFacing[] SIDE_INDEXES = new EnumFacing[] { EnumFacing.DOWN, EnumFacing.NORTH, EnumFacing.SOUTH, EnumFacing.WEST, EnumFacing.EAST };
-    public static final int[] REBUILD_DELAYS = new int[] { 128, 256, 512, 1024, 2048, 4096, 8192, 16384 };
+    private static final int RADIUS = 64;
+    /** How many ticks to wait after part of the area is blocked off before rebuilding it, so that lots of blocks being
+     * placed close together only cause a single rebuild. */
+    private static final int REBUILD_DELAY = 20;
 
     private boolean[] sidesBlocked = new boolean[5];
     private final Tank tank = new Tank("tank", 2000, this);
-    private int delayIndex = 0;
     private int tick = 120;
-    private final TreeMap<Integer, Deque<BlockPos>> layerQueues = new TreeMap<>();
+    /** Every position that needs filling: air, or the current fluid that isn't a source. */
+    private final PositionLayerQueue queue = new PositionLayerQueue();
+    /** Every position that fluid from this flood gate can flow through: air, the current fluid, and flood gates. */
+    private final TLongHashSet reachable = new TLongHashSet();
+    /** The fluid that {@link #reachable} was worked out for. */
+    private Fluid frontierFluid = null;
+    private boolean rebuildNeeded = true;
+    /** The number of ticks until the area is rebuilt because something blocked off part of it, or 0 if it doesn't need
+     * rebuilding. Nothing is filled until then, as some of the queue might not be reachable any more. */
+    private int ticksUntilRebuild = 0;
+    /** Every position that changed since the last tick, which are handled in {@link #update()} rather than while the
+     * world is in the middle of setting a block. */
+    private final TLongHashSet changedPositions = new TLongHashSet();
+    private final Listener listener = new Listener();
+    private boolean listening = false;
 
     /** Used for debugging on the client with {@link IAdvDebugTarget} */
     public final TreeMap<Integer, Deque<BlockPos>> clientLayerQueues = new TreeMap<>();
@@ -57,88 +78,157 @@ public class TileFloodGate extends TileBC_Neptune implements ITickable, IDebugga
 
     public void setSideBlocked(EnumFacing side, boolean blocked) {
         sidesBlocked[getIndexFromSide(side)] = blocked;
+        rebuildNeeded = true;
         sendNetworkUpdate(NET_RENDER_DATA);
     }
 
-    public int getCurrentDelay() {
-        return REBUILD_DELAYS[delayIndex];
+    /** Finds everything that the flood gate can reach from scratch. After this the frontier is kept up to date by
+     * {@link #handleChange(BlockPos)}, so this is only needed when the flood gate is loaded, or when something blocks
+     * off part of the area (as it's much simpler to start again than to work out what can still be reached). */
+    private void rebuildQueue() {
+        rebuildNeeded = false;
+        ticksUntilRebuild = 0;
+        changedPositions.clear();
+        queue.clear();
+        reachable.clear();
+        frontierFluid = tank.getFluidType();
+        if (!listening) {
+            world.addEventListener(listener);
+            listening = true;
+        }
+        expandFrom(pos);
     }
 
-    private Deque<BlockPos> getLayerQueue(int layer) {
-        Deque<BlockPos> pumpQueue = layerQueues.get(layer);
-
-        if (pumpQueue == null) {
-            pumpQueue = new LinkedList<>();
-            layerQueues.put(layer, pumpQueue);
+    /** Flood fills outwards from the given (already reachable) position, adding every newly reachable position. */
+    private void expandFrom(BlockPos from) {
+        TLongArrayList blocksFound = new TLongArrayList();
+        blocksFound.add(from.toLong());
+        while (!blocksFound.isEmpty()) {
+            TLongArrayList blocksToExpand = blocksFound;
+            blocksFound = new TLongArrayList();
+            for (int i = 0; i < blocksToExpand.size(); i++) {
+                BlockPos blockPos = BlockPos.fromLong(blocksToExpand.get(i));
+                for (EnumFacing side : EnumFacing.VALUES) {
+                    if (side == EnumFacing.UP || isSideBlocked(side)) {
+                        continue;
+                    }
+                    BlockPos next = blockPos.offset(side);
+                    if (!isInRange(next) || reachable.contains(next.toLong())) {
+                        continue;
+                    }
+                    IBlockState state = world.getBlockState(next);
+                    if (isPassable(next, state)) {
+                        reachable.add(next.toLong());
+                        blocksFound.add(next.toLong());
+                        if (needsFilling(next, state)) {
+                            queue.add(next);
+                        }
+                    }
+                }
+            }
         }
+    }
 
-        return pumpQueue;
+    private boolean isInRange(BlockPos blockPos) {
+        if (blockPos.getY() < 0 || blockPos.getY() > 255) {
+            return false;
+        }
+        int dx = blockPos.getX() - pos.getX();
+        int dz = blockPos.getZ() - pos.getZ();
+        return dx * dx + dz * dz <= RADIUS * RADIUS;
     }
 
-    private void rebuildQueue() {
-        layerQueues.clear();
+    private boolean isPassable(BlockPos blockPos, IBlockState state) {
+        Block block = state.getBlock();
+        return block.isAir(state, world, blockPos) || block instanceof BlockFloodGate || isCurrentFluid(block);
+    }
 
-        Set<BlockPos> visitedBlocks = new HashSet<>();
-        Deque<BlockPos> blocksFound = new LinkedList<>();
+    private boolean needsFilling(BlockPos blockPos, IBlockState state) {
+        Block block = state.getBlock();
+        if (block.isAir(state, world, blockPos)) {
+            return true;
+        }
+        return isCurrentFluid(block) && block instanceof BlockLiquid && state.getValue(BlockLiquid.LEVEL) != 0;
+    }
 
-        tryAddToQueue(pos, visitedBlocks, blocksFound);
+    private boolean isCurrentFluid(Block block) {
+        return frontierFluid != null && frontierFluid == BlockUtil.getFluidWithFlowing(block);
+    }
 
-        while (!blocksFound.isEmpty()) {
-            Deque<BlockPos> blocksToExpand = blocksFound;
-            blocksFound = new LinkedList<>();
+    /** Called whenever a block changes anywhere in the world. This only remembers the position, as the listener is
+     * called while the world is setting the block. */
+    private void onBlockChange(BlockPos changed) {
+        if (!rebuildNeeded && isInRange(changed)) {
+            changedPositions.add(changed.toLong());
+        }
+    }
 
-            for (BlockPos index : blocksToExpand) {
-                tryAddToQueue(index, visitedBlocks, blocksFound);
+    /** Updates the frontier for a single position that changed since the last tick. */
+    private void handleChange(BlockPos changed) {
+        long key = changed.toLong();
+        IBlockState newState = world.getBlockState(changed);
+        boolean passable = isPassable(changed, newState);
+        if (reachable.contains(key)) {
+            if (!passable) {
+                reachable.remove(key);
+                queue.remove(changed);
+                // Part of the area might have been cut off, but other blocks are often placed straight after
+                if (ticksUntilRebuild == 0) {
+                    ticksUntilRebuild = REBUILD_DELAY;
+                }
+            } else if (needsFilling(changed, newState)) {
+                queue.add(changed);
+            } else {
+                queue.remove(changed);
             }
+        } else if (passable && isNextToReachable(changed)) {
+            reachable.add(key);
+            if (needsFilling(changed, newState)) {
+                queue.add(changed);
+            }
+            expandFrom(changed);
         }
     }
 
-    private void tryAddToQueue(BlockPos blockPos, Set<BlockPos> visitedBlocks, Deque<BlockPos> blocksFound) {
+    private boolean isNextToReachable(BlockPos blockPos) {
         for (EnumFacing side : EnumFacing.VALUES) {
-            if (side != EnumFacing.UP && !isSideBlocked(side)) {
-                BlockPos currentPos = blockPos.offset(side);
-
-                if (currentPos.getY() < 0 || currentPos.getY() > 255) {
-                    return;
-                }
-                if (visitedBlocks.add(currentPos)) {
-                    if ((currentPos.getX() - pos.getX()) * (currentPos.getX() - pos.getX()) + (currentPos.getZ() - pos.getZ()) * (currentPos.getZ() - pos.getZ()) > 64 * 64) {
-                        return;
-                    }
-
-                    IBlockState blockState = world.getBlockState(currentPos);
-
-                    Block block = blockState.getBlock();
-                    Fluid fluid = BlockUtil.getFluidWithFlowing(block);
-
-                    boolean isCurrentFluid = this.tank.getFluidType() != null && this.tank.getFluidType() == fluid;
-
-                    if (world.isAirBlock(currentPos) || block instanceof BlockFloodGate || isCurrentFluid) {
-                        blocksFound.add(currentPos);
-                        if (world.isAirBlock(currentPos) || (isCurrentFluid && blockState.getValue(BlockLiquid.LEVEL) != 0)) {
-                            getLayerQueue(currentPos.getY()).addLast(currentPos);
-                        }
-                    }
-                }
+            if (side == EnumFacing.UP || isSideBlocked(side)) {
+                continue;
+            }
+            // Fluid can only get here by moving in the direction of side
+            BlockPos from = blockPos.offset(side.getOpposite());
+            if (from.equals(pos) || reachable.contains(from.toLong())) {
+                return true;
             }
         }
+        return false;
+    }
+
+    private void stopListening() {
+        if (listening) {
+            world.removeEventListener(listener);
+            listening = false;
+        }
+        rebuildNeeded = true;
     }
 
     private BlockPos getNext() {
-        if (layerQueues.isEmpty()) {
+        if (queue.isEmpty()) {
             return null;
         }
+        return queue.pollFirst(queue.getBottomLayer());
+    }
 
-        Deque<BlockPos> bottomLayer = layerQueues.firstEntry().getValue();
-
-        if (bottomLayer != null) {
-            if (bottomLayer.isEmpty()) {
-                bottomLayer = layerQueues.pollFirstEntry().getValue();
-            }
-            return bottomLayer.pollFirst();
-        }
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        stopListening();
+    }
 
-        return null;
+    @Override
+    public void onChunkUnload() {
+        super.onChunkUnload();
+        stopListening();
     }
 
     // ITickable
@@ -151,23 +241,35 @@ public class TileFloodGate extends TileBC_Neptune implements ITickable, IDebugga
 
         FluidUtilBC.pullFluidAround(world, pos, tank);
 
+        Fluid fluid = tank.getFluidType();
+        if (fluid != null && fluid != frontierFluid) {
+            // A different fluid can flow through different blocks
+            rebuildNeeded = true;
+        }
+        if (rebuildNeeded) {
+            rebuildQueue();
+        } else if (!changedPositions.isEmpty()) {
+            long[] changed = changedPositions.toArray();
+            changedPositions.clear();
+            for (long key : changed) {
+                handleChange(BlockPos.fromLong(key));
+            }
+        }
+        if (ticksUntilRebuild > 0 && --ticksUntilRebuild == 0) {
+            rebuildQueue();
+        }
+
         tick++;
-        if (tick % 16 == 0) {
-            FluidStack fluid = tank.drain(1000, false);
-            if (fluid != null && fluid.amount == 1000) {
+        if (tick % 16 == 0 && ticksUntilRebuild == 0) {
+            FluidStack drained = tank.drain(1000, false);
+            if (drained != null && drained.amount == 1000) {
                 BlockPos current = getNext();
                 if (current != null && world.isAirBlock(current)) {
-                    world.setBlockState(current, fluid.getFluid().getBlock().getDefaultState());
+                    world.setBlockState(current, drained.getFluid().getBlock().getDefaultState());
                     tank.drain(1000, true);
-                    delayIndex = 0;
                 }
             }
         }
-
-        if (tick % getCurrentDelay() == 0) {
-            delayIndex = Math.min(delayIndex + 1, REBUILD_DELAYS.length - 1);
-            rebuildQueue();
-        }
     }
 
     // IDebuggable
@@ -182,7 +284,8 @@ public class TileFloodGate extends TileBC_Neptune implements ITickable, IDebugga
             sides[i] = SIDE_INDEXES[i].toString().toLowerCase() + "(" + sidesBlocked[i] + ")";
         }
         left.add("sides = " + String.join(" ", sides));
-        left.add("delay = " + getCurrentDelay());
+        left.add("queue = " + queue.size() + ", reachable = " + reachable.size());
+        left.add("rebuild in = " + ticksUntilRebuild);
     }
 
     @Override
@@ -198,7 +301,7 @@ public class TileFloodGate extends TileBC_Neptune implements ITickable, IDebugga
         super.readFromNBT(nbt);
         tank.readFromNBT(nbt);
         for (int i = 0; i < sidesBlocked.length; i++) {
-            nbt.setBoolean("sides_blocked_" + i, sidesBlocked[i]);
+            sidesBlocked[i] = nbt.getBoolean("sides_blocked_" + i);
         }
     }
 
@@ -207,7 +310,7 @@ public class TileFloodGate extends TileBC_Neptune implements ITickable, IDebugga
         super.writeToNBT(nbt);
         tank.writeToNBT(nbt);
         for (int i = 0; i < sidesBlocked.length; i++) {
-            sidesBlocked[i] = nbt.getBoolean("sides_blocked_" + i);
+            nbt.setBoolean("sides_blocked_" + i, sidesBlocked[i]);
         }
         return nbt;
     }
@@ -222,17 +325,17 @@ public class TileFloodGate extends TileBC_Neptune implements ITickable, IDebugga
                 // tank.writeToBuffer(buffer);
                 MessageUtil.writeBooleanArray(buffer, sidesBlocked);
             } else if (id == NET_ADV_DEBUG) {
-                buffer.writeInt(layerQueues.size());
-                for (Entry<Integer, Deque<BlockPos>> entry : layerQueues.entrySet()) {
-                    Integer key = entry.getKey();
-                    Deque<BlockPos> positions = entry.getValue();
-                    buffer.writeInt(key);
-                    buffer.writeInt(positions.size());
-                    for (BlockPos p : positions) {
-                        BlockPos diff = p.subtract(getPos());
+                List<Integer> layers = new ArrayList<>();
+                queue.getLayers().forEach(layers::add);
+                buffer.writeInt(layers.size());
+                for (int layer : layers) {
+                    buffer.writeInt(layer);
+                    buffer.writeInt(queue.getLayerSize(layer));
+                    queue.forEachInLayer(layer, key -> {
+                        BlockPos diff = BlockPos.fromLong(key).subtract(getPos());
                         buffer.writeByte(diff.getX());
                         buffer.writeByte(diff.getZ());
-                    }
+                    });
                 }
             }
         }
@@ -277,4 +380,13 @@ public class TileFloodGate extends TileBC_Neptune implements ITickable, IDebugga
         }
         return super.getCapability(capability, facing);
     }
+
+    private class Listener extends WorldEventListenerAdapter {
+        @Override
+        public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+            if (worldIn == world && oldState != newState) {
+                onBlockChange(pos);
+            }
+        }
+    }
 }
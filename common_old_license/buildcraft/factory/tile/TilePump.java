@@ -1,12 +1,19 @@
 package buildcraft.factory.tile;
 
 import java.io.IOException;
-import java.util.*;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 
 import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.fluids.Fluid;
@@ -15,6 +22,7 @@ import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
+import buildcraft.api.core.BCLog;
 import buildcraft.api.mj.IMjReceiver;
 import buildcraft.api.mj.MjAPI;
 
@@ -22,81 +30,105 @@ import buildcraft.lib.fluids.SingleUseTank;
 import buildcraft.lib.misc.BlockUtil;
 import buildcraft.lib.misc.CapUtil;
 import buildcraft.lib.misc.FluidUtilBC;
+import buildcraft.lib.misc.WorkerThreadUtil;
+import buildcraft.lib.misc.data.PositionLayerQueue;
 import buildcraft.lib.mj.MjRedstoneBatteryReceiver;
 import buildcraft.lib.net.PacketBufferBC;
 
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
 public class TilePump extends TileMiner {
+    private static final int RADIUS = 64;
+    /** The maximum number of chunk sections that are copied for the scan each tick. */
+    private static final int SNAPSHOT_SECTIONS_PER_TICK = 8;
+    /** The number of ticks to wait before scanning again after a scan failed. */
+    private static final int RESCAN_DELAY = 100;
+
     private SingleUseTank tank = new SingleUseTank("tank", 160000, this); // TODO: remove 1 zero
-    private TreeMap<Integer, Deque<BlockPos>> pumpLayerQueues = new TreeMap<>();
+    private final PositionLayerQueue queue = new PositionLayerQueue();
     private int timeWithoutFluid = 0;
+    /** The scan that is currently running on a worker thread, or null if there isn't one. */
+    private Future<PumpScan> scanFuture;
+    /** The number of ticks until the scan is started again after a failure, or 0 if no scan failed. */
+    private int rescanDelay = 0;
 
     @Override
     protected IMjReceiver createMjReceiver() {
         return new MjRedstoneBatteryReceiver(battery);
     }
 
-    private void rebuildQueue() {
-        pumpLayerQueues.clear();
+    /** Starts finding every fluid block that is connected to the one below the pump. This happens over several ticks,
+     * on a worker thread: {@link #tickScan()} copies the chunk sections that the scan asks for and puts the results in
+     * the {@link #queue} once it has finished. */
+    private void startScan() {
+        if (scanFuture != null) {
+            return;
+        }
         BlockPos pumpPos = new BlockPos(pos.getX(), currentPos.getY(), pos.getZ());
         Fluid pumpingFluid = BlockUtil.getFluid(world.getBlockState(pumpPos).getBlock());
 
         if (pumpingFluid == null) {
             return;
         }
-
-        Set<BlockPos> visitedBlocks = new HashSet<>();
-        Deque<BlockPos> fluidsFound = new LinkedList<>();
-
-        tryAddToQueue(pumpPos, visitedBlocks, fluidsFound, pumpingFluid);
-
-        while (!fluidsFound.isEmpty()) {
-            Deque<BlockPos> fluidsToExpand = fluidsFound;
-            fluidsFound = new LinkedList<>();
-            for (BlockPos index : fluidsToExpand) {
-                tryAddToQueue(index.up(), visitedBlocks, fluidsFound, pumpingFluid);
-                tryAddToQueue(index.east(), visitedBlocks, fluidsFound, pumpingFluid);
-                tryAddToQueue(index.west(), visitedBlocks, fluidsFound, pumpingFluid);
-                tryAddToQueue(index.north(), visitedBlocks, fluidsFound, pumpingFluid);
-                tryAddToQueue(index.south(), visitedBlocks, fluidsFound, pumpingFluid);
-            }
-        }
+        PumpScan scan = new PumpScan(pos, pumpPos, pumpingFluid);
+        scan.snapshotSections(this, SNAPSHOT_SECTIONS_PER_TICK);
+        scanFuture = WorkerThreadUtil.executeWorkTask(scan);
     }
 
-    private void tryAddToQueue(BlockPos pumpPos, Set<BlockPos> visitedBlocks, Deque<BlockPos> fluidsFound, Fluid pumpingFluid) {
-        BlockPos index = new BlockPos(pumpPos);
-        if (visitedBlocks.add(index)) {
-            if ((pumpPos.getX() - pos.getX()) * (pumpPos.getX() - pos.getX()) + (pumpPos.getZ() - pos.getZ()) * (pumpPos.getZ() - pos.getZ()) > 64 * 64) {
-                return;
-            }
-            IBlockState state = world.getBlockState(pumpPos);
-            if (BlockUtil.getFluid(state.getBlock()) == pumpingFluid && canDrainBlock(state, pumpPos, pumpingFluid)) {
-                fluidsFound.add(index);
-                getLayerQueue(pumpPos.getY()).add(index);
+    /** @return True if a scan is still running (or is waiting to be started again after it failed). */
+    private boolean tickScan() {
+        if (scanFuture == null) {
+            if (rescanDelay > 0 && --rescanDelay == 0) {
+                startScan();
             }
+            return scanFuture != null || rescanDelay > 0;
+        }
+        if (!scanFuture.isDone()) {
+            return true;
+        }
+        PumpScan scan;
+        try {
+            scan = scanFuture.get();
+        } catch (InterruptedException | ExecutionException e) {
+            BCLog.logger.warn("[factory.pump] Failed to scan for fluid below " + getPos() + ", scanning again in " + RESCAN_DELAY + " ticks", e);
+            rescanDelay = RESCAN_DELAY;
+            return true;
+        } finally {
+            scanFuture = null;
+        }
+        if (!scan.isComplete()) {
+            scan.snapshotSections(this, SNAPSHOT_SECTIONS_PER_TICK);
+            scanFuture = WorkerThreadUtil.executeWorkTask(scan);
+            return true;
         }
+        queue.clear();
+        for (int i = 0; i < scan.found.size(); i++) {
+            queue.add(BlockPos.fromLong(scan.found.get(i)));
+        }
+        if (!queue.isEmpty()) {
+            updatePos();
+        }
+        return false;
     }
 
     private void updatePos() {
-        if (pumpLayerQueues.isEmpty()) {
-            rebuildQueue();
-        }
-        Deque<BlockPos> topLayer = null;
-        if (!pumpLayerQueues.isEmpty()) {
-            topLayer = pumpLayerQueues.lastEntry().getValue();
-        }
-        if (topLayer != null && !topLayer.isEmpty()) {
-            BlockPos index = null;
-            while (index == null || (index.getX() == pos.getX() && index.getY() == currentPos.getY() && index.getZ() == pos.getZ() && topLayer.size() > 1)) {
-                if (index != null) {
-                    topLayer.addFirst(index);
-                }
-                index = topLayer.pollLast();
-            }
-            currentPos = index;
-            goToYLevel(currentPos.getY());
-        } else {
-            rebuildQueue();
+        if (queue.isEmpty()) {
+            startScan();
+            return;
+        }
+        int top = queue.getTopLayer();
+        BlockPos index = queue.pollLast(top);
+        if (index.getX() == pos.getX() && index.getY() == currentPos.getY() && index.getZ() == pos.getZ() && queue.getLayerSize(top) > 0) {
+            // Leave the block under the pump until last
+            BlockPos next = queue.pollLast(top);
+            queue.addFirst(index);
+            index = next;
         }
+        currentPos = index;
+        goToYLevel(currentPos.getY());
     }
 
     private boolean canDrainBlock(IBlockState state, BlockPos pos, Fluid fluid) {
@@ -108,17 +140,6 @@ public class TilePump extends TileMiner {
         }
     }
 
-    private Deque<BlockPos> getLayerQueue(int layer) {
-        Deque<BlockPos> pumpQueue = pumpLayerQueues.get(layer);
-
-        if (pumpQueue == null) {
-            pumpQueue = new LinkedList<>();
-            pumpLayerQueues.put(layer, pumpQueue);
-        }
-
-        return pumpQueue;
-    }
-
     @Override
     protected void initCurrentPos() {
         if (currentPos == null) {
@@ -141,6 +162,9 @@ public class TilePump extends TileMiner {
             setComplete(true);
             return;
         }
+        if (tickScan()) {
+            return;
+        }
         int target = 1000; // TODO: add 2 zeroes
         BlockPos pumpPos = new BlockPos(pos.getX(), currentPos.getY(), pos.getZ());
         Fluid pumpingFluid = BlockUtil.getFluidWithFlowing(world.getBlockState(pumpPos).getBlock());
@@ -168,24 +192,14 @@ public class TilePump extends TileMiner {
         progress += battery.extractPower(0, target - progress);
         if (progress >= target) {
             progress = 0;
-            if (!pumpLayerQueues.isEmpty()) {
-                FluidStack drain = BlockUtil.drainBlock(world, currentPos, false);
-                if (drain != null && canDrainBlock(world.getBlockState(currentPos), currentPos, drain.getFluid())) {
-                    world.setBlockToAir(currentPos);
-                    tank.fill(drain, true);
-                    for (Deque<BlockPos> layer : pumpLayerQueues.values()) {
-                        for (Iterator<BlockPos> iterator = layer.iterator(); iterator.hasNext();) {
-                            BlockPos pos = iterator.next();
-                            if (pos == currentPos) {
-                                iterator.remove();
-                            }
-                        }
-                    }
-                    updatePos();
-                }
-            } else {
-                updatePos();
+            FluidStack drain = BlockUtil.drainBlock(world, currentPos, false);
+            if (drain != null && canDrainBlock(world.getBlockState(currentPos), currentPos, drain.getFluid())) {
+                world.setBlockToAir(currentPos);
+                tank.fill(drain, true);
+                queue.remove(currentPos);
             }
+            // If it couldn't be drained then something else must have changed it since the scan: just skip it
+            updatePos();
             if (currentPos.getY() < 0) {
                 setComplete(true);
             }
@@ -196,12 +210,14 @@ public class TilePump extends TileMiner {
     public void readFromNBT(NBTTagCompound nbt) {
         super.readFromNBT(nbt);
         tank.deserializeNBT(nbt.getCompoundTag("tank"));
+        queue.readFromNbt(nbt.getCompoundTag("queue"), pos);
     }
 
     @Override
     public NBTTagCompound writeToNBT(NBTTagCompound nbt) {
         super.writeToNBT(nbt);
         nbt.setTag("tank", tank.serializeNBT());
+        nbt.setTag("queue", queue.writeToNbt(pos));
         return nbt;
     }
 
@@ -235,6 +251,7 @@ public class TilePump extends TileMiner {
     public void getDebugInfo(List<String> left, List<String> right, EnumFacing side) {
         super.getDebugInfo(left, right, side);
         left.add("fluid = " + tank.getDebugString());
+        left.add("queue = " + queue.size() + (scanFuture != null ? " (scanning)" : ""));
     }
 
     @SideOnly(Side.CLIENT)
@@ -252,4 +269,144 @@ public class TilePump extends TileMiner {
         }
         return super.getCapability(capability, facing);
     }
+
+    /** Finds every fluid block connected to the pump, using copies of chunk sections rather than the world. Sections
+     * are only copied (on the main thread, in {@link #snapshotSections(TilePump, int)}) once the scan reaches them, so
+     * the scan is run again after each batch of copies until it doesn't need any more. */
+    private static class PumpScan implements Callable<PumpScan> {
+        private static final long[] NOT_PUMPABLE = new long[64];
+
+        final BlockPos origin;
+        final Fluid fluid;
+        /** Every position that can be pumped, in the order that they were found. */
+        final TLongArrayList found = new TLongArrayList();
+        /** One bit for every block in each section, set if the block can be pumped. */
+        private final TLongObjectHashMap<long[]> sections = new TLongObjectHashMap<>();
+        private final TLongHashSet neededSections = new TLongHashSet();
+        private final TLongHashSet visited = new TLongHashSet();
+        /** Positions that have been reached, but are in a section that hasn't been copied yet. */
+        private TLongArrayList waiting = new TLongArrayList();
+        /** Whether each block state can be drained. This is worked out with the first block found with that state, and
+         * then assumed to be the same for every other one. Only used on the main thread. */
+        private final Map<IBlockState, Boolean> drainable = new IdentityHashMap<>();
+
+        PumpScan(BlockPos origin, BlockPos start, Fluid fluid) {
+            this.origin = origin;
+            this.fluid = fluid;
+            visited.add(start.toLong());
+            waiting.add(start.toLong());
+            neededSections.add(getSectionKey(start));
+        }
+
+        boolean isComplete() {
+            return waiting.isEmpty();
+        }
+
+        void snapshotSections(TilePump tile, int max) {
+            TLongIterator iter = neededSections.iterator();
+            for (int i = 0; i < max && iter.hasNext(); i++) {
+                long key = iter.next();
+                iter.remove();
+                sections.put(key, snapshotSection(tile, BlockPos.fromLong(key)));
+            }
+        }
+
+        private long[] snapshotSection(TilePump tile, BlockPos section) {
+            if (section.getY() < 0 || section.getY() > 15) {
+                return NOT_PUMPABLE;
+            }
+            // Never load chunks just to look for fluid
+            Chunk chunk = tile.world.getChunkProvider().getLoadedChunk(section.getX(), section.getZ());
+            if (chunk == null) {
+                return NOT_PUMPABLE;
+            }
+            ExtendedBlockStorage storage = chunk.getBlockStorageArray()[section.getY()];
+            if (storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty()) {
+                return NOT_PUMPABLE;
+            }
+            long[] bits = new long[64];
+            IBlockState lastState = null;
+            boolean lastPumpable = false;
+            for (int idx = 0; idx < 4096; idx++) {
+                int x = idx & 15, z = (idx >> 4) & 15, y = idx >> 8;
+                IBlockState state = storage.get(x, y, z);
+                if (state != lastState) {
+                    lastState = state;
+                    lastPumpable = isPumpable(tile, state, section, x, y, z);
+                }
+                if (lastPumpable) {
+                    bits[idx >> 6] |= 1L << (idx & 63);
+                }
+            }
+            return bits;
+        }
+
+        private boolean isPumpable(TilePump tile, IBlockState state, BlockPos section, int x, int y, int z) {
+            Boolean cached = drainable.get(state);
+            if (cached == null) {
+                if (BlockUtil.getFluid(state.getBlock()) != fluid) {
+                    cached = false;
+                } else {
+                    BlockPos at = new BlockPos((section.getX() << 4) + x, (section.getY() << 4) + y, (section.getZ() << 4) + z);
+                    cached = tile.canDrainBlock(state, at, fluid);
+                }
+                drainable.put(state, cached);
+            }
+            return cached;
+        }
+
+        @Override
+        public PumpScan call() {
+            TLongArrayList fluidsFound = new TLongArrayList();
+            TLongArrayList toCheck = waiting;
+            waiting = new TLongArrayList();
+            for (int i = 0; i < toCheck.size(); i++) {
+                check(BlockPos.fromLong(toCheck.get(i)), fluidsFound);
+            }
+            while (!fluidsFound.isEmpty()) {
+                TLongArrayList fluidsToExpand = fluidsFound;
+                fluidsFound = new TLongArrayList();
+                for (int i = 0; i < fluidsToExpand.size(); i++) {
+                    BlockPos index = BlockPos.fromLong(fluidsToExpand.get(i));
+                    visit(index.up(), fluidsFound);
+                    visit(index.east(), fluidsFound);
+                    visit(index.west(), fluidsFound);
+                    visit(index.north(), fluidsFound);
+                    visit(index.south(), fluidsFound);
+                }
+            }
+            return this;
+        }
+
+        private void visit(BlockPos pumpPos, TLongArrayList fluidsFound) {
+            if (pumpPos.getY() > 255 || !visited.add(pumpPos.toLong())) {
+                return;
+            }
+            int dx = pumpPos.getX() - origin.getX();
+            int dz = pumpPos.getZ() - origin.getZ();
+            if (dx * dx + dz * dz > RADIUS * RADIUS) {
+                return;
+            }
+            check(pumpPos, fluidsFound);
+        }
+
+        private void check(BlockPos pumpPos, TLongArrayList fluidsFound) {
+            long sectionKey = getSectionKey(pumpPos);
+            long[] bits = sections.get(sectionKey);
+            if (bits == null) {
+                waiting.add(pumpPos.toLong());
+                neededSections.add(sectionKey);
+                return;
+            }
+            int idx = ((pumpPos.getY() & 15) << 8) | ((pumpPos.getZ() & 15) << 4) | (pumpPos.getX() & 15);
+            if ((bits[idx >> 6] & (1L << (idx & 63))) != 0) {
+                found.add(pumpPos.toLong());
+                fluidsFound.add(pumpPos.toLong());
+            }
+        }
+
+        private static long getSectionKey(BlockPos pos) {
+            return new BlockPos(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4).toLong();
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package buildcraft.test.factory.tile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.minecraft.init.Blocks;
+import net.minecraft.init.Items;
+import net.minecraft.item.ItemStack;
+
+import buildcraft.factory.tile.TileAutoWorkbenchItems;
+import buildcraft.test.VanillaSetupBaseTester;
+
+public class AutoWorkbenchTester extends VanillaSetupBaseTester {
+    /** Creates a workbench with a blueprint for sticks (two planks on top of each other), which leaves 7 of the 9
+     * crafting slots empty. */
+    private static TileAutoWorkbenchItems createStickWorkbench() {
+        TileAutoWorkbenchItems tile = new TileAutoWorkbenchItems();
+        tile.invBlueprint.setStackInSlot(0, new ItemStack(Blocks.PLANKS));
+        tile.invBlueprint.setStackInSlot(3, new ItemStack(Blocks.PLANKS));
+        tile.updateRecipe();
+        return tile;
+    }
+
+    @Test
+    public void testPartialGrid() {
+        TileAutoWorkbenchItems tile = createStickWorkbench();
+        Assert.assertNotNull(tile.currentRecipe);
+        Assert.assertEquals(Items.STICK, tile.currentRecipe.getRecipeOutput().getItem());
+        Assert.assertFalse(tile.hasMaterialsForRecipe());
+
+        tile.invMaterials.setStackInSlot(4, new ItemStack(Blocks.PLANKS, 2));
+        Assert.assertTrue(tile.hasMaterialsForRecipe());
+    }
+
+    @Test
+    public void testPartialGridNeedsEveryItem() {
+        TileAutoWorkbenchItems tile = createStickWorkbench();
+        // Both planks slots claim from the same stack, so one plank isn't enough
+        tile.invMaterials.setStackInSlot(0, new ItemStack(Blocks.PLANKS));
+        Assert.assertFalse(tile.hasMaterialsForRecipe());
+
+        tile.invMaterials.setStackInSlot(8, new ItemStack(Blocks.PLANKS));
+        Assert.assertTrue(tile.hasMaterialsForRecipe());
+    }
+}
@@ -0,0 +1,212 @@
+package buildcraft.test.lib.bpt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.minecraft.init.Blocks;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.EnumFacing.Axis;
+import net.minecraft.util.Rotation;
+import net.minecraft.util.math.BlockPos;
+
+import buildcraft.api.bpt.BlueprintAPI;
+import buildcraft.api.bpt.SchematicBlock;
+import buildcraft.api.bpt.SchematicException;
+
+import buildcraft.lib.bpt.Blueprint;
+import buildcraft.lib.bpt.helper.SchematicBlockSimpleSet;
+import buildcraft.lib.misc.NBTUtilBC;
+import buildcraft.test.VanillaSetupBaseTester;
+
+public class BlueprintTester extends VanillaSetupBaseTester {
+    private static final String[] BLOCKS = { "minecraft:stone", "minecraft:cobblestone", "minecraft:dirt" };
+
+    @BeforeClass
+    public static void registerSchematics() {
+        BlueprintAPI.registerNbtBlockSchematic(Blocks.STONE, SchematicBlockSimpleSet::new);
+        BlueprintAPI.registerNbtBlockSchematic(Blocks.COBBLESTONE, SchematicBlockSimpleSet::new);
+        BlueprintAPI.registerNbtBlockSchematic(Blocks.DIRT, SchematicBlockSimpleSet::new);
+    }
+
+    @Test
+    public void testRoundTrip() throws SchematicException {
+        SchematicBlock[][][] blocks = genBlocks(new BlockPos(7, 4, 5), new Random(0x5eed));
+        Blueprint bpt = new Blueprint(blocks, null);
+        Assert.assertEquals(BLOCKS.length + 1, bpt.getPaletteSize());
+
+        Blueprint read = new Blueprint(bpt.serializeNBT());
+        assertSame(bpt, read);
+        assertMatches(blocks, read);
+    }
+
+    @Test
+    public void testLegacyMigration() throws SchematicException {
+        BlockPos size = new BlockPos(4, 3, 6);
+        SchematicBlock[][][] blocks = genBlocks(size, new Random(0x1e9ac7));
+        // The layout used before the palette: one compound per position, in x, y, z order
+        NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setTag("size", NBTUtilBC.writeBlockPos(size));
+        NBTTagList list = new NBTTagList();
+        for (int x = 0; x < size.getX(); x++) {
+            for (int y = 0; y < size.getY(); y++) {
+                for (int z = 0; z < size.getZ(); z++) {
+                    SchematicBlock schematic = blocks[x][y][z];
+                    list.appendTag(schematic == null ? new NBTTagCompound() : schematic.serializeNBT());
+                }
+            }
+        }
+        nbt.setTag("blocks", list);
+
+        Blueprint read = new Blueprint(nbt);
+        assertMatches(blocks, read);
+        Assert.assertEquals(BLOCKS.length + 1, read.getPaletteSize());
+    }
+
+    @Test
+    public void testRotateAndMirror() throws SchematicException {
+        SchematicBlock[][][] blocks = genBlocks(new BlockPos(5, 3, 2), new Random(0x907a7e));
+        Blueprint bpt = new Blueprint(blocks, null);
+        Blueprint original = new Blueprint(bpt.serializeNBT());
+
+        for (int i = 0; i < 4; i++) {
+            bpt.rotate(Axis.Y, Rotation.CLOCKWISE_90);
+        }
+        assertSame(original, bpt);
+
+        bpt.mirror(Axis.X);
+        BlockPos size = bpt.size;
+        for (int x = 0; x < size.getX(); x++) {
+            for (int y = 0; y < size.getY(); y++) {
+                for (int z = 0; z < size.getZ(); z++) {
+                    SchematicBlock expected = original.getSchematicAt(new BlockPos(size.getX() - 1 - x, y, z));
+                    assertSchematicEquals(expected, bpt.getSchematicAt(new BlockPos(x, y, z)));
+                }
+            }
+        }
+        bpt.mirror(Axis.X);
+        assertSame(original, bpt);
+    }
+
+    private static SchematicBlock[][][] genBlocks(BlockPos size, Random rand) throws SchematicException {
+        SchematicBlock[] types = new SchematicBlock[BLOCKS.length];
+        for (int i = 0; i < BLOCKS.length; i++) {
+            NBTTagCompound nbt = new NBTTagCompound();
+            nbt.setString("block", BLOCKS[i]);
+            types[i] = new SchematicBlockSimpleSet(nbt);
+        }
+        SchematicBlock[][][] blocks = new SchematicBlock[size.getX()][size.getY()][size.getZ()];
+        for (int x = 0; x < size.getX(); x++) {
+            for (int y = 0; y < size.getY(); y++) {
+                for (int z = 0; z < size.getZ(); z++) {
+                    // Fill every type in at least once so that the palette size is predictable
+                    int i = x * size.getY() * size.getZ() + y * size.getZ() + z;
+                    if (i <= types.length) {
+                        blocks[x][y][z] = i == 0 ? null : types[i - 1];
+                    } else if (rand.nextInt(3) != 0) {
+                        blocks[x][y][z] = types[rand.nextInt(types.length)];
+                    }
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private static void assertMatches(SchematicBlock[][][] expected, Blueprint bpt) {
+        for (int x = 0; x < expected.length; x++) {
+            for (int y = 0; y < expected[x].length; y++) {
+                for (int z = 0; z < expected[x][y].length; z++) {
+                    assertSchematicEquals(expected[x][y][z], bpt.getSchematicAt(new BlockPos(x, y, z)));
+                }
+            }
+        }
+    }
+
+    private static void assertSame(Blueprint expected, Blueprint bpt) {
+        Assert.assertEquals(expected.size, bpt.size);
+        for (int x = 0; x < bpt.size.getX(); x++) {
+            for (int y = 0; y < bpt.size.getY(); y++) {
+                for (int z = 0; z < bpt.size.getZ(); z++) {
+                    BlockPos pos = new BlockPos(x, y, z);
+                    assertSchematicEquals(expected.getSchematicAt(pos), bpt.getSchematicAt(pos));
+                }
+            }
+        }
+    }
+
+    private static void assertSchematicEquals(SchematicBlock expected, SchematicBlock actual) {
+        if (expected == null || actual == null) {
+            Assert.assertSame(expected, actual);
+        } else {
+            Assert.assertEquals(expected.serializeNBT(), actual.serializeNBT());
+        }
+    }
+
+    /** Compares memory use, save time and load time of a 256x64x256 blueprint against the layout used before the
+     * palette. Needs a large heap (-Xmx4G) for the old layout. */
+    public static void main(String[] args) throws SchematicException {
+        init();
+        registerSchematics();
+        BlockPos size = new BlockPos(256, 64, 256);
+        long base = usedMemory();
+        SchematicBlock[][][] blocks = genBlocks(size, new Random(0xb19));
+        long withArray = usedMemory();
+        Blueprint bpt = new Blueprint(blocks, null);
+        long withBoth = usedMemory();
+        // This is an underestimate for the array, as every position shares one of only a few schematic instances
+        System.out.println("Array of schematics uses ~" + (withArray - base) / 1024 + " KiB");
+        System.out.println("Palette blueprint uses ~" + (withBoth - withArray) / 1024 + " KiB (" + bpt.getPaletteSize()
+            + " palette entries)");
+        blocks = null;
+
+        NBTTagCompound nbt = null;
+        Stopwatch watch = Stopwatch.createStarted();
+        for (int i = 0; i < 5; i++) {
+            nbt = bpt.serializeNBT();
+        }
+        watch.stop();
+        System.out.println("Save took " + watch.elapsed(TimeUnit.MILLISECONDS) / 5 + "ms");
+
+        watch.reset().start();
+        for (int i = 0; i < 5; i++) {
+            bpt = new Blueprint(nbt);
+        }
+        watch.stop();
+        System.out.println("Load took " + watch.elapsed(TimeUnit.MILLISECONDS) / 5 + "ms");
+
+        NBTTagCompound legacy = new NBTTagCompound();
+        legacy.setTag("size", NBTUtilBC.writeBlockPos(size));
+        NBTTagList list = new NBTTagList();
+        watch.reset().start();
+        for (int x = 0; x < size.getX(); x++) {
+            for (int y = 0; y < size.getY(); y++) {
+                for (int z = 0; z < size.getZ(); z++) {
+                    SchematicBlock schematic = bpt.getSchematicAt(new BlockPos(x, y, z));
+                    list.appendTag(schematic == null ? new NBTTagCompound() : schematic.serializeNBT());
+                }
+            }
+        }
+        legacy.setTag("blocks", list);
+        watch.stop();
+        System.out.println("Old layout save took " + watch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+
+        watch.reset().start();
+        bpt = new Blueprint(legacy);
+        watch.stop();
+        System.out.println("Migrating the old layout took " + watch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
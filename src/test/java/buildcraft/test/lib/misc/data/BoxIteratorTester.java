@@ -0,0 +1,52 @@
+package buildcraft.test.lib.misc.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.minecraft.util.math.BlockPos;
+
+import buildcraft.lib.misc.VecUtil;
+import buildcraft.lib.misc.data.AxisOrder;
+import buildcraft.lib.misc.data.AxisOrder.Inversion;
+import buildcraft.lib.misc.data.BoxIterator;
+import buildcraft.lib.misc.data.EnumAxisOrder;
+
+public class BoxIteratorTester {
+    private static final BlockPos MIN = new BlockPos(-2, 3, 5);
+    private static final BlockPos MAX = new BlockPos(1, 5, 9);
+    private static final int VOLUME = 4 * 3 * 5;
+
+    @Test
+    public void testSkipPlaneMatchesAdvance() {
+        for (EnumAxisOrder axisOrder : EnumAxisOrder.VALUES) {
+            for (Inversion inversion : Inversion.VALUES) {
+                AxisOrder order = AxisOrder.getFor(axisOrder, inversion);
+                for (boolean invert : new boolean[] { false, true }) {
+                    for (int start = 0; start < VOLUME; start++) {
+                        testSkipFrom(order, invert, start);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void testSkipFrom(AxisOrder order, boolean invert, int start) {
+        BoxIterator skipping = new BoxIterator(MIN, MAX, order, invert);
+        BoxIterator stepping = new BoxIterator(MIN, MAX, order, invert);
+        for (int i = 0; i < start; i++) {
+            skipping.advance();
+            stepping.advance();
+        }
+        while (stepping.hasNext()) {
+            int plane = VecUtil.getValue(stepping.getCurrent(), order.third.getAxis());
+            while (stepping.hasNext() && VecUtil.getValue(stepping.getCurrent(), order.third.getAxis()) == plane) {
+                stepping.advance();
+            }
+            skipping.skipPlane();
+            String msg = order + ", invert = " + invert + ", start = " + start;
+            Assert.assertEquals(msg, stepping.getCurrent(), skipping.getCurrent());
+            Assert.assertSame(msg, stepping.getOrder(), skipping.getOrder());
+        }
+        Assert.assertFalse(skipping.hasNext());
+    }
+}
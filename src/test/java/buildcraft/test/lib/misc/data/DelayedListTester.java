@@ -0,0 +1,205 @@
+package buildcraft.test.lib.misc.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import buildcraft.lib.misc.data.DelayedList;
+
+public class DelayedListTester {
+    public static long dontInlineThis = 0;
+
+    @Test
+    public void testSimpleDelays() {
+        DelayedList<String> list = new DelayedList<>();
+        list.add(0, "a");
+        list.add(2, "c");
+        list.add(1, "b");
+        list.add(-4, "a2");
+        Assert.assertEquals(3, list.getMaxDelay());
+
+        Assert.assertEquals(ImmutableList.of("a", "a2"), list.advance());
+        Assert.assertEquals(ImmutableList.of("b"), list.advance());
+        Assert.assertEquals(ImmutableList.of("c"), list.advance());
+        Assert.assertEquals(0, list.getMaxDelay());
+        Assert.assertTrue(list.advance().isEmpty());
+    }
+
+    @Test
+    public void testAddWhileIterating() {
+        DelayedList<Integer> list = new DelayedList<>();
+        list.add(0, 1);
+        for (Integer i : list.advance()) {
+            // Adding a delay of 0 must go into the next advance, not the one being iterated
+            list.add(0, i + 1);
+        }
+        Assert.assertEquals(ImmutableList.of(2), list.advance());
+    }
+
+    @Test
+    public void testAdvanceReturnsNewList() {
+        DelayedList<Integer> list = new DelayedList<>();
+        list.add(0, 1);
+        list.add(1, 2);
+        List<Integer> first = list.advance();
+        List<Integer> second = list.advance();
+        // The first list must not be cleared or reused by the second advance
+        Assert.assertEquals(ImmutableList.of(1), first);
+        Assert.assertEquals(ImmutableList.of(2), second);
+
+        List<Integer> forEach = new ArrayList<>();
+        list.add(3, 4);
+        list.add(1, 3);
+        list.forEach(forEach::add);
+        Assert.assertEquals(ImmutableList.of(3, 4), forEach);
+    }
+
+    @Test
+    public void testGrowAcrossWrap() {
+        DelayedList<Integer> list = new DelayedList<>();
+        // Move the head part way round the ring before growing it
+        for (int i = 0; i < 10; i++) {
+            list.add(2, i);
+            list.advance();
+        }
+        list.add(100, 100);
+
+        List<List<Integer>> all = list.getAllElements();
+        Assert.assertEquals(101, all.size());
+        Assert.assertEquals(ImmutableList.of(8), all.get(0));
+        Assert.assertEquals(ImmutableList.of(9), all.get(1));
+        Assert.assertEquals(ImmutableList.of(100), all.get(100));
+
+        Assert.assertEquals(ImmutableList.of(8), list.advance());
+        Assert.assertEquals(ImmutableList.of(9), list.advance());
+        for (int i = 2; i < 100; i++) {
+            Assert.assertTrue(list.advance().isEmpty());
+        }
+        Assert.assertEquals(ImmutableList.of(100), list.advance());
+    }
+
+    @Test
+    public void testMatchesLegacy() {
+        Random rand = new Random(0x7e57);
+        DelayedList<Integer> list = new DelayedList<>();
+        LegacyDelayedList<Integer> legacy = new LegacyDelayedList<>();
+        for (int tick = 0; tick < 2000; tick++) {
+            int count = rand.nextInt(6);
+            for (int j = 0; j < count; j++) {
+                int delay = rand.nextInt(rand.nextInt(10) == 0 ? 200 : 20);
+                list.add(delay, tick * 16 + j);
+                legacy.add(delay, tick * 16 + j);
+            }
+            Assert.assertEquals(legacy.getMaxDelay(), list.getMaxDelay());
+            Assert.assertEquals(legacy.advance(), list.advance());
+        }
+    }
+
+    public static void main(String[] args) {
+        // Roughly the range of item delays between a fast (gold-boosted) and slow (cobblestone) pipe
+        int[] spreads = { 4, 12, 25, 50 };
+        for (int spread : spreads) {
+            System.out.println("Delay spread of " + spread + " ticks:");
+            for (int run = 0; run < 5; run++) {
+                long legacy = benchmark(spread, () -> {
+                    LegacyDelayedList<Object> list = new LegacyDelayedList<>();
+                    return new Impl(list::add, list::advance);
+                });
+                long wheel = benchmark(spread, () -> {
+                    DelayedList<Object> list = new DelayedList<>();
+                    return new Impl(list::add, list::advance);
+                });
+                System.out.println("  legacy took " + pad(legacy) + "ms, timing wheel took " + pad(wheel) + "ms");
+            }
+        }
+    }
+
+    /** Simulates lots of pipes, each with a few items passing through them. Every item is added back into the pipe
+     * when it comes out, as if it had moved into the next pipe along. */
+    private static long benchmark(int spread, Supplier<Impl> factory) {
+        Random rand = new Random(0x7e57 + spread);
+        Impl[] pipes = new Impl[20_000];
+        for (int i = 0; i < pipes.length; i++) {
+            pipes[i] = factory.get();
+        }
+        Object element = new Object();
+        Stopwatch watch = Stopwatch.createStarted();
+        for (int tick = 0; tick < 400; tick++) {
+            for (Impl pipe : pipes) {
+                if (rand.nextInt(16) == 0) {
+                    pipe.adder.add(1 + rand.nextInt(spread), element);
+                }
+                for (Object obj : pipe.advancer.advance()) {
+                    if (rand.nextBoolean()) {
+                        pipe.adder.add(1 + rand.nextInt(spread), obj);
+                    }
+                    dontInlineThis++;
+                }
+            }
+        }
+        watch.stop();
+        return watch.elapsed(TimeUnit.MILLISECONDS);
+    }
+
+    private static String pad(long millis) {
+        String str = Long.toString(millis);
+        while (str.length() < 6) {
+            str = " " + str;
+        }
+        return str;
+    }
+
+    static class Impl {
+        final Adder adder;
+        final Advancer advancer;
+
+        Impl(Adder adder, Advancer advancer) {
+            this.adder = adder;
+            this.advancer = advancer;
+        }
+    }
+
+    @FunctionalInterface
+    interface Adder {
+        void add(int delay, Object element);
+    }
+
+    @FunctionalInterface
+    interface Advancer {
+        List<?> advance();
+    }
+
+    /** A copy of the original {@link DelayedList} implementation, which shifts the whole list every advance. */
+    static class LegacyDelayedList<E> {
+        private final List<List<E>> elements = new ArrayList<>();
+
+        public int getMaxDelay() {
+            return elements.size();
+        }
+
+        public List<E> advance() {
+            if (elements.isEmpty()) {
+                return ImmutableList.of();
+            }
+            return elements.remove(0);
+        }
+
+        public void add(int delay, E element) {
+            if (delay < 0) {
+                delay = 0;
+            }
+            while (elements.size() < delay + 1) {
+                elements.add(new ArrayList<>());
+            }
+            elements.get(delay).add(element);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package buildcraft.test.lib.misc.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.minecraft.util.math.BlockPos;
+
+import buildcraft.lib.misc.data.PositionLayerQueue;
+
+public class PositionLayerQueueTester {
+    private static final int LAYERS = 4;
+
+    @Test
+    public void testMatchesDeques() {
+        Random rand = new Random(1);
+        PositionLayerQueue queue = new PositionLayerQueue();
+        List<Deque<BlockPos>> expected = new ArrayList<>();
+        for (int y = 0; y < LAYERS; y++) {
+            expected.add(new ArrayDeque<>());
+        }
+        for (int i = 0; i < 100_000; i++) {
+            int y = rand.nextInt(LAYERS);
+            BlockPos pos = new BlockPos(rand.nextInt(20) - 10, y, rand.nextInt(20) - 10);
+            Deque<BlockPos> layer = expected.get(y);
+            switch (rand.nextInt(5)) {
+                case 0: {
+                    boolean added = !layer.contains(pos);
+                    Assert.assertEquals(added, queue.add(pos));
+                    if (added) layer.addLast(pos);
+                    break;
+                }
+                case 1: {
+                    boolean added = !layer.contains(pos);
+                    Assert.assertEquals(added, queue.addFirst(pos));
+                    if (added) layer.addFirst(pos);
+                    break;
+                }
+                case 2: {
+                    Assert.assertEquals(layer.remove(pos), queue.remove(pos));
+                    break;
+                }
+                case 3: {
+                    Assert.assertEquals(layer.pollFirst(), queue.pollFirst(y));
+                    break;
+                }
+                default: {
+                    Assert.assertEquals(layer.pollLast(), queue.pollLast(y));
+                    break;
+                }
+            }
+            Assert.assertEquals(layer.size(), queue.getLayerSize(y));
+        }
+        int size = 0;
+        for (Deque<BlockPos> layer : expected) {
+            size += layer.size();
+        }
+        Assert.assertEquals(size, queue.size());
+
+        BlockPos origin = new BlockPos(3, 0, -5);
+        PositionLayerQueue read = new PositionLayerQueue();
+        read.readFromNbt(queue.writeToNbt(origin), origin);
+        for (int y = 0; y < LAYERS; y++) {
+            List<Long> expectedLayer = new ArrayList<>();
+            for (BlockPos pos : expected.get(y)) {
+                expectedLayer.add(pos.toLong());
+            }
+            List<Long> readLayer = new ArrayList<>();
+            read.forEachInLayer(y, readLayer::add);
+            Assert.assertEquals(expectedLayer, readLayer);
+        }
+    }
+}
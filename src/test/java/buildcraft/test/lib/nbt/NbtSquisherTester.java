@@ -1,6 +1,11 @@
 package buildcraft.test.lib.nbt;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.Channels;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Locale;
@@ -10,6 +15,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Stopwatch;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import net.minecraft.nbt.NBTBase;
@@ -19,8 +25,12 @@ import net.minecraft.nbt.NBTTagList;
 import net.minecraft.util.EnumFacing;
 
 import buildcraft.lib.nbt.NBTSquishDebugging;
+import buildcraft.lib.nbt.NbtSquishCodec;
 import buildcraft.lib.nbt.NbtSquisher;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
 public class NbtSquisherTester {
     private final NBTTagCompound nbt = genNbt();
 
@@ -32,6 +42,49 @@ public class NbtSquisherTester {
         test(nbt);
     }
 
+    @Test
+    public void testStreamingCodecs() throws IOException {
+        for (NbtSquishCodec codec : NbtSquishCodec.values()) {
+            ByteBuf buf = PooledByteBufAllocator.DEFAULT.buffer();
+            try {
+                // Write something before and after, to make sure that neither side assumes it owns the whole buffer
+                buf.writeInt(0xC0DEC);
+                int start = buf.writerIndex();
+                NbtSquisher.squishBuildCraftV1(nbt, codec, buf);
+                byte[] array = NbtSquisher.squishBuildCraftV1(nbt, codec);
+                Assert.assertEquals(codec.name(), array.length, buf.writerIndex() - start);
+                if (!codec.isCompressed()) {
+                    buf.writeInt(0xC0DEC);
+                }
+
+                Assert.assertEquals(0xC0DEC, buf.readInt());
+                NBTTagCompound read = NbtSquisher.expand(buf);
+                assertReadCorrectly(codec.name(), read);
+                if (!codec.isCompressed()) {
+                    Assert.assertEquals(0xC0DEC, buf.readInt());
+                }
+                Assert.assertFalse(buf.isReadable());
+
+                assertReadCorrectly(codec.name(), NbtSquisher.expand(new ByteArrayInputStream(array)));
+                assertReadCorrectly(codec.name(), NbtSquisher.expand(array));
+
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                NbtSquisher.squishBuildCraftV1(nbt, codec, Channels.newChannel(baos));
+                Assert.assertEquals(codec.name(), array.length, baos.size());
+                assertReadCorrectly(codec.name(), NbtSquisher.expand(baos.toByteArray()));
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    private void assertReadCorrectly(String codec, NBTTagCompound read) {
+        Assert.assertEquals(codec, nbt.getKeySet(), read.getKeySet());
+        Assert.assertEquals(codec, nbt.getTagList("bpt", 10).tagCount(), read.getTagList("bpt", 10).tagCount());
+        Assert.assertEquals(codec, nbt.getString("string"), read.getString("string"));
+        checkEquality(nbt, read);
+    }
+
     private static NBTTagCompound genNbt() {
         Random rand = new Random(0x517123);
 
@@ -291,7 +344,60 @@ public class NbtSquisherTester {
         System.out.print(" " + hex);
     }
 
+    /** Measures the round trip throughput, and the bytes allocated per round trip, of every codec (both with the
+     * old byte array methods and with a pooled buffer). */
     public static void main(String[] args) throws IOException {
-        new NbtSquisherTester().testSimpleNBT();
+        NbtSquisherTester tester = new NbtSquisherTester();
+        tester.testSimpleNBT();
+
+        NBTTagCompound nbt = tester.nbt;
+        int rawSize = NbtSquisher.squishVanillaUncompressed(nbt).length;
+        for (NbtSquishCodec codec : NbtSquishCodec.values()) {
+            // Warm up
+            benchmark(nbt, codec, 200, false);
+            benchmark(nbt, codec, 200, true);
+            System.out.println();
+            System.out.println(codec + " (" + NbtSquisher.squishBuildCraftV1(nbt, codec).length + " bytes):");
+            printBenchmark("  byte[] ", benchmark(nbt, codec, 2000, false), rawSize);
+            printBenchmark("  ByteBuf", benchmark(nbt, codec, 2000, true), rawSize);
+        }
+    }
+
+    /** @return {nanoseconds, bytes allocated} per round trip. */
+    private static long[] benchmark(NBTTagCompound nbt, NbtSquishCodec codec, int count, boolean pooled) throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = getAllocatedBytes(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (pooled) {
+                ByteBuf buf = PooledByteBufAllocator.DEFAULT.buffer();
+                try {
+                    NbtSquisher.squishBuildCraftV1(nbt, codec, buf);
+                    NbtSquisher.expand(buf);
+                } finally {
+                    buf.release();
+                }
+            } else {
+                NbtSquisher.expand(NbtSquisher.squishBuildCraftV1(nbt, codec));
+            }
+        }
+        long time = System.nanoTime() - start;
+        long allocated = getAllocatedBytes(threads) - allocatedBefore;
+        return new long[] { time / count, allocated / count };
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threads) {
+        // Only HotSpot (and its derivatives) can tell us this
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static void printBenchmark(String name, long[] result, int rawSize) {
+        double mbPerSecond = rawSize / (double) result[0] * 1_000_000_000 / (1024 * 1024);
+        System.out.println(name + " took " + pad(NumberFormat.getInstance().format(result[0] / 1000), 8) + "us, "//
+            + pad(new DecimalFormat("0.0").format(mbPerSecond), 7) + " MiB/s (of vanilla NBT), "//
+            + pad(NumberFormat.getInstance().format(result[1]), 12) + " bytes allocated per round trip");
     }
 }
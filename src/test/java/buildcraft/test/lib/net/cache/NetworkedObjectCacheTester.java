@@ -0,0 +1,60 @@
+package buildcraft.test.lib.net.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import buildcraft.lib.net.PacketBufferBC;
+import buildcraft.lib.net.cache.NetworkedObjectCache;
+
+public class NetworkedObjectCacheTester {
+    private static class StringCache extends NetworkedObjectCache<String> {
+        StringCache() {
+            super("");
+        }
+
+        @Override
+        protected String getCanonical(String obj) {
+            return obj;
+        }
+
+        @Override
+        protected void writeObject(String obj, PacketBufferBC buffer) {
+            buffer.writeString(obj);
+        }
+
+        @Override
+        protected String readObject(PacketBufferBC buffer) {
+            return buffer.readString(Short.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void testIdsAreStable() {
+        StringCache cache = new StringCache();
+        int a = cache.server().store("a");
+        int b = cache.server().store("b");
+        Assert.assertNotEquals(a, b);
+        Assert.assertEquals(a, cache.server().store("a"));
+        Assert.assertEquals(b, cache.server().getId("b"));
+        Assert.assertEquals(-1, cache.server().getId("c"));
+    }
+
+    @Test
+    public void testEviction() {
+        StringCache cache = new StringCache();
+        int first = cache.server().store("first");
+        int hot = cache.server().store("hot");
+        // Store more objects than the cache can hold, while keeping one of the early objects in use
+        for (int i = 0; i < 1 << 17; i++) {
+            cache.server().store("filler " + i);
+            if (i % 1000 == 0) {
+                Assert.assertEquals(hot, cache.server().store("hot"));
+            }
+        }
+        Assert.assertEquals(-1, cache.server().getId("first"));
+        Assert.assertEquals(hot, cache.server().getId("hot"));
+        // Evicted objects come back with a new ID, so clients can never see the old object for it
+        int again = cache.server().store("first");
+        Assert.assertNotEquals(first, again);
+    }
+}
@@ -0,0 +1,193 @@
+package buildcraft.test.lib.path;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import com.google.common.base.Stopwatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.minecraft.util.math.BlockPos;
+
+import buildcraft.lib.misc.data.SimplexNoise;
+import buildcraft.lib.path.IMiniChunkGraphSource;
+import buildcraft.lib.path.MiniChunkGraph;
+import buildcraft.lib.path.MiniChunkPathfinder;
+import buildcraft.lib.path.task.AnalysedChunk;
+import buildcraft.lib.path.task.EnumTraversalExpense;
+import buildcraft.lib.path.task.FilledChunk;
+import buildcraft.lib.path.task.TaskMiniChunkAnalyser;
+import buildcraft.lib.path.task.TaskMiniChunkManager;
+
+public class MiniChunkPathfinderTester {
+    /** A world made up of the given number of mini chunks on each axis, starting at 0,0,0. */
+    private static class SyntheticSource implements IMiniChunkGraphSource {
+        private final int sizeX, sizeY, sizeZ;
+        private final Predicate<BlockPos> isSolid;
+        private final Map<BlockPos, MiniChunkGraph> graphs = new HashMap<>();
+
+        SyntheticSource(int sizeX, int sizeY, int sizeZ, Predicate<BlockPos> isSolid) {
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.sizeZ = sizeZ;
+            this.isSolid = isSolid;
+        }
+
+        @Override
+        public synchronized MiniChunkGraph getGraph(BlockPos min) {
+            if (min.getX() < 0 || min.getY() < 0 || min.getZ() < 0) return null;
+            if (min.getX() >= sizeX * 16 || min.getY() >= sizeY * 16 || min.getZ() >= sizeZ * 16) return null;
+            return graphs.computeIfAbsent(min, this::createGraph);
+        }
+
+        private MiniChunkGraph createGraph(BlockPos min) {
+            FilledChunk filled = new FilledChunk();
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        boolean solid = isSolid.test(min.add(x, y, z));
+                        filled.set(TaskMiniChunkAnalyser.index(x, y, z), solid ? EnumTraversalExpense.SOLID : EnumTraversalExpense.AIR);
+                    }
+                }
+            }
+            AnalysedChunk analysed = new TaskMiniChunkAnalyser(filled).call();
+            return TaskMiniChunkManager.createGraph(min, analysed);
+        }
+    }
+
+    private static void assertValidPath(Predicate<BlockPos> isSolid, BlockPos from, BlockPos to, List<BlockPos> path) {
+        Assert.assertNotNull("No path was found from " + from + " to " + to, path);
+        Assert.assertEquals(from, path.get(0));
+        Assert.assertEquals(to, path.get(path.size() - 1));
+        BlockPos last = null;
+        for (BlockPos pos : path) {
+            Assert.assertFalse(pos + " was solid", isSolid.test(pos));
+            if (last != null) {
+                int dist = Math.abs(pos.getX() - last.getX()) + Math.abs(pos.getY() - last.getY()) + Math.abs(pos.getZ() - last.getZ());
+                Assert.assertEquals("Moved from " + last + " to " + pos, 1, dist);
+            }
+            last = pos;
+        }
+    }
+
+    @Test
+    public void testOpen() {
+        Predicate<BlockPos> isSolid = (pos) -> false;
+        SyntheticSource source = new SyntheticSource(3, 1, 3, isSolid);
+        BlockPos from = new BlockPos(1, 1, 1);
+        BlockPos to = new BlockPos(46, 14, 40);
+        List<BlockPos> path = new MiniChunkPathfinder(source, from, to).call();
+        assertValidPath(isSolid, from, to, path);
+
+        path = new MiniChunkPathfinder(source, from, from).call();
+        assertValidPath(isSolid, from, from, path);
+        Assert.assertEquals(1, path.size());
+    }
+
+    @Test
+    public void testWallWithHole() {
+        BlockPos hole = new BlockPos(20, 3, 27);
+        Predicate<BlockPos> isSolid = (pos) -> pos.getX() == 20 && !pos.equals(hole);
+        SyntheticSource source = new SyntheticSource(3, 1, 3, isSolid);
+        BlockPos from = new BlockPos(2, 12, 2);
+        BlockPos to = new BlockPos(40, 12, 2);
+        List<BlockPos> path = new MiniChunkPathfinder(source, from, to).call();
+        assertValidPath(isSolid, from, to, path);
+        Assert.assertTrue(path.contains(hole));
+    }
+
+    @Test
+    public void testUnreachable() {
+        // A hollow box around the goal
+        Predicate<BlockPos> isSolid = (pos) -> {
+            int x = Math.abs(pos.getX() - 24), y = Math.abs(pos.getY() - 8), z = Math.abs(pos.getZ() - 24);
+            return Math.max(x, Math.max(y, z)) == 3;
+        };
+        SyntheticSource source = new SyntheticSource(3, 1, 3, isSolid);
+        BlockPos from = new BlockPos(1, 1, 1);
+        BlockPos to = new BlockPos(24, 8, 24);
+        Assert.assertNull(new MiniChunkPathfinder(source, from, to).call());
+        // Solid blocks can never be the start or end
+        Assert.assertNull(new MiniChunkPathfinder(source, from, new BlockPos(21, 8, 24)).call());
+        // Outside of the source
+        Assert.assertNull(new MiniChunkPathfinder(source, from, new BlockPos(1, 20, 1)).call());
+    }
+
+    @Test
+    public void testReuse() {
+        BlockPos hole = new BlockPos(20, 3, 27);
+        Predicate<BlockPos> isSolid = (pos) -> pos.getX() == 20 && !pos.equals(hole);
+        SyntheticSource source = new SyntheticSource(3, 1, 3, isSolid);
+        BlockPos from = new BlockPos(2, 12, 2);
+        BlockPos to = new BlockPos(40, 12, 2);
+        MiniChunkPathfinder finder = new MiniChunkPathfinder(source, from, to);
+        List<BlockPos> first = finder.call();
+        int firstExpanded = finder.getExpandedCount();
+        List<BlockPos> second = finder.call();
+        assertValidPath(isSolid, from, to, second);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(firstExpanded, finder.getExpandedCount());
+    }
+
+    @Test
+    public void testCancel() {
+        SyntheticSource source = new SyntheticSource(3, 1, 3, (pos) -> false);
+        MiniChunkPathfinder finder = new MiniChunkPathfinder(source, new BlockPos(1, 1, 1), new BlockPos(40, 1, 40));
+        finder.cancel();
+        Assert.assertNull(finder.call());
+    }
+
+    private static boolean isCaveSolid(BlockPos pos) {
+        double x = pos.getX(), y = pos.getY(), z = pos.getZ();
+        // Horizontal tunnels that wander up and down, joined by a few vertical shafts
+        double tunnel = SimplexNoise.noise(x / 40, z / 40) * 24 + 32 - y;
+        double width = SimplexNoise.noise(x / 13 + 100, z / 13) * 2 + 4;
+        if (Math.abs(tunnel) < width) return false;
+        if (SimplexNoise.noise(x / 7 - y / 30, z / 7 + y / 30) > 0.75) return false;
+        return SimplexNoise.noise(x / 9, z / 9 + y / 9) < 0.2;
+    }
+
+    public static void main(String[] args) {
+        int size = 8;
+        Predicate<BlockPos> isSolid = MiniChunkPathfinderTester::isCaveSolid;
+        SyntheticSource source = new SyntheticSource(size, 4, size, isSolid);
+
+        Stopwatch watch = Stopwatch.createStarted();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < 4; y++) {
+                for (int z = 0; z < size; z++) {
+                    source.getGraph(new BlockPos(x * 16, y * 16, z * 16));
+                }
+            }
+        }
+        System.out.println("Analysed " + size * size * 4 + " mini chunks in " + watch.elapsed(TimeUnit.MILLISECONDS) + "ms");
+
+        Random rand = new Random(42);
+        int found = 0, queries = 0, totalLength = 0, totalExpanded = 0;
+        watch.reset().start();
+        while (queries < 500) {
+            BlockPos from = new BlockPos(rand.nextInt(size * 16), rand.nextInt(64), rand.nextInt(size * 16));
+            BlockPos to = new BlockPos(rand.nextInt(size * 16), rand.nextInt(64), rand.nextInt(size * 16));
+            if (isSolid.test(from) || isSolid.test(to)) {
+                continue;
+            }
+            queries++;
+            MiniChunkPathfinder finder = new MiniChunkPathfinder(source, from, to);
+            List<BlockPos> path = finder.call();
+            totalExpanded += finder.getExpandedCount();
+            if (path != null) {
+                found++;
+                totalLength += path.size();
+            }
+        }
+        long time = watch.elapsed(TimeUnit.MICROSECONDS);
+        System.out.println(queries + " queries took " + time / 1000 + "ms (" + time / queries + "us each)");
+        System.out.println("  found " + found + " paths, averaging " + (found == 0 ? 0 : totalLength / found) + " blocks");
+        System.out.println("  expanded " + totalExpanded / queries + " abstract nodes per query");
+    }
+}
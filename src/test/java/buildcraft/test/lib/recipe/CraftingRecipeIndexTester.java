@@ -0,0 +1,136 @@
+package buildcraft.test.lib.recipe;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.minecraft.init.Items;
+import net.minecraft.inventory.InventoryCrafting;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.crafting.CraftingManager;
+import net.minecraft.item.crafting.IRecipe;
+import net.minecraft.item.crafting.ShapedRecipes;
+import net.minecraft.util.NonNullList;
+
+import buildcraft.lib.misc.CraftingUtil;
+import buildcraft.lib.recipe.CraftingRecipeIndex;
+import buildcraft.test.VanillaSetupBaseTester;
+
+public class CraftingRecipeIndexTester extends VanillaSetupBaseTester {
+    /** Every recipe added by {@link #addRecipes(int, Random)}, so they can be removed from the vanilla list again. */
+    private static final Set<IRecipe> ADDED_RECIPES = new HashSet<>();
+
+    /** A crafting grid that isn't attached to a container. */
+    private static class Grid extends InventoryCrafting {
+        private final NonNullList<ItemStack> stacks;
+
+        Grid(ItemStack[] stacks) {
+            super(null, 3, 3);
+            this.stacks = NonNullList.withSize(9, ItemStack.EMPTY);
+            for (int i = 0; i < stacks.length; i++) {
+                this.stacks.set(i, stacks[i]);
+            }
+        }
+
+        @Override
+        public ItemStack getStackInSlot(int index) {
+            return stacks.get(index);
+        }
+    }
+
+    /** Adds the given number of 3x3 recipes, made up of dyes, to the vanilla recipe list.
+     *
+     * @return The inputs of every recipe that was added. */
+    private static List<ItemStack[]> addRecipes(int count, Random rand) {
+        List<ItemStack[]> added = new ArrayList<>();
+        List<IRecipe> recipes = CraftingManager.getInstance().getRecipeList();
+        for (int i = 0; i < count; i++) {
+            ItemStack[] inputs = createLayout(rand);
+            IRecipe recipe = new ShapedRecipes(3, 3, inputs, new ItemStack(Items.DIAMOND, 1 + i % 64));
+            recipes.add(recipe);
+            ADDED_RECIPES.add(recipe);
+            added.add(inputs);
+        }
+        return added;
+    }
+
+    private static ItemStack[] createLayout(Random rand) {
+        ItemStack[] inputs = new ItemStack[9];
+        for (int s = 0; s < 9; s++) {
+            inputs[s] = s != 4 && rand.nextInt(4) == 0 ? ItemStack.EMPTY : new ItemStack(Items.DYE, 1, rand.nextInt(16));
+        }
+        return inputs;
+    }
+
+    @After
+    public void removeRecipes() {
+        CraftingManager.getInstance().getRecipeList().removeAll(ADDED_RECIPES);
+        ADDED_RECIPES.clear();
+        CraftingRecipeIndex.clear();
+    }
+
+    @Test
+    public void testMatchesSearch() {
+        Random rand = new Random(7);
+        List<ItemStack[]> layouts = addRecipes(200, rand);
+        for (int i = 0; i < 200; i++) {
+            layouts.add(createLayout(rand));
+        }
+        // Twice, so the second pass comes from the index
+        for (int pass = 0; pass < 2; pass++) {
+            for (ItemStack[] layout : layouts) {
+                Grid grid = new Grid(layout);
+                Assert.assertSame(CraftingUtil.findMatchingRecipe(grid, null), CraftingRecipeIndex.findMatchingRecipe(grid, null));
+            }
+        }
+        Assert.assertNull(CraftingRecipeIndex.findMatchingRecipe(new Grid(new ItemStack[0]), null));
+
+        // Adding a recipe throws everything away
+        Assert.assertTrue(CraftingRecipeIndex.getIndexedCount() > 0);
+        addRecipes(1, rand);
+        CraftingRecipeIndex.findMatchingRecipe(new Grid(layouts.get(0)), null);
+        Assert.assertEquals(1, CraftingRecipeIndex.getIndexedCount());
+    }
+
+    public static void main(String[] args) {
+        init();
+        Random rand = new Random(42);
+        List<ItemStack[]> layouts = new ArrayList<>();
+        for (int size : new int[] { 500, 5000 }) {
+            layouts.addAll(addRecipes(size - layouts.size(), rand));
+            int recipeCount = CraftingManager.getInstance().getRecipeList().size();
+            // The last recipes added are the slowest to find
+            List<Grid> grids = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                grids.add(new Grid(layouts.get(layouts.size() - 1 - i)));
+            }
+
+            Stopwatch watch = Stopwatch.createStarted();
+            for (Grid grid : grids) {
+                CraftingUtil.findMatchingRecipe(grid, null);
+            }
+            long search = watch.elapsed(TimeUnit.MICROSECONDS);
+            for (Grid grid : grids) {
+                CraftingRecipeIndex.findMatchingRecipe(grid, null);
+            }
+            int lookups = 100_000;
+            watch.reset().start();
+            for (int i = 0; i < lookups; i++) {
+                CraftingRecipeIndex.findMatchingRecipe(grids.get(i % grids.size()), null);
+            }
+            long indexed = watch.elapsed(TimeUnit.NANOSECONDS);
+            System.out.println(recipeCount + " recipes:");
+            System.out.println("  full search took " + search / grids.size() + "us per lookup");
+            System.out.println("  index took " + indexed / lookups + "ns per lookup");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package buildcraft.test.transport.pipe;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import net.minecraft.util.EnumFacing;
+
+import buildcraft.transport.pipe.flow.FaceOrders;
+
+public class FaceOrdersTester {
+    @Test
+    public void testAllOrders() {
+        for (int mask = 0; mask < 64; mask++) {
+            EnumSet<EnumFacing> expected = EnumSet.noneOf(EnumFacing.class);
+            for (EnumFacing face : EnumFacing.VALUES) {
+                if ((mask & (1 << face.getIndex())) != 0) {
+                    expected.add(face);
+                }
+            }
+            int count = FaceOrders.countOrders(mask);
+            Set<List<EnumFacing>> seen = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                List<EnumFacing> order = FaceOrders.getOrder(mask, i);
+                Assert.assertEquals(expected.size(), order.size());
+                if (!order.isEmpty()) {
+                    Assert.assertEquals(expected, EnumSet.copyOf(order));
+                }
+                // Every index must give a different order, otherwise picking one wouldn't be a fair shuffle
+                Assert.assertTrue("Duplicate order " + order, seen.add(order));
+                if (!order.isEmpty()) {
+                    Assert.assertEquals(order.subList(1, order.size()), FaceOrders.getTail(mask, i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNoAllocation() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(sunBean.isThreadAllocatedMemorySupported());
+
+        Random rand = new Random(0xface);
+        int mask = 0b111101;
+        long dontInline = 0;
+        // Warm up, filling in the table and letting the JIT compile everything
+        for (int i = 0; i < 100_000; i++) {
+            dontInline += pickRandom(mask, rand);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = sunBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            dontInline += pickRandom(mask, rand);
+        }
+        long after = sunBean.getThreadAllocatedBytes(threadId);
+        Assert.assertNotEquals(0, dontInline);
+        // Allow a little bit for the allocation counter itself
+        Assert.assertTrue("Allocated " + (after - before) + " bytes", after - before < 1024);
+    }
+
+    private static int pickRandom(int mask, Random rand) {
+        int index = rand.nextInt(FaceOrders.countOrders(mask));
+        EnumFacing first = FaceOrders.getOrder(mask, index).get(0);
+        return first.getIndex() + FaceOrders.getTail(mask, index).size();
+    }
+}
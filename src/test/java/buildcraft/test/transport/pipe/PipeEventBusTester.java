@@ -1,8 +1,13 @@
 package buildcraft.test.transport.pipe;
 
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import buildcraft.api.transport.PipeEvent;
 import buildcraft.api.transport.PipeEventHandler;
 import buildcraft.api.transport.PipeEventItem;
 
@@ -32,8 +37,97 @@ public class PipeEventBusTester {
         Assert.assertEquals(0, event.targetSpeed, 0.00001);
     }
 
+    @Test
+    public void testSuperclassHandler() {
+        PipeEventBus bus = new PipeEventBus();
+        GenericHandler handler = new GenericHandler();
+        bus.registerHandler(handler);
+
+        Assert.assertTrue(bus.fireEvent(new PipeEventItem.ModifySpeed(null, null, null, 1)));
+        Assert.assertEquals(1, handler.count);
+
+        // The second time round will use the cached handlers
+        Assert.assertTrue(bus.fireEvent(new PipeEventItem.ModifySpeed(null, null, null, 1)));
+        Assert.assertEquals(2, handler.count);
+    }
+
+    @Test
+    public void testNoHandlers() {
+        PipeEventBus bus = new PipeEventBus();
+        bus.registerHandler(new UnrelatedHandler());
+        Assert.assertFalse(bus.fireEvent(new PipeEventItem.ModifySpeed(null, null, null, 1)));
+
+        bus.registerHandler(this);
+        Assert.assertTrue(bus.fireEvent(new PipeEventItem.ModifySpeed(null, null, null, 1)));
+    }
+
     @PipeEventHandler
     public void modifySpeed(PipeEventItem.ModifySpeed event) {
         event.targetSpeed = 1;
     }
+
+    public static class GenericHandler {
+        int count = 0;
+
+        @PipeEventHandler
+        public void onAnyEvent(PipeEvent event) {
+            count++;
+        }
+    }
+
+    public static class UnrelatedHandler {
+        @PipeEventHandler
+        public void tryBounce(PipeEventItem.TryBounce event) {
+            dontInlineThis++;
+        }
+
+        @PipeEventHandler
+        public void sideCheck(PipeEventItem.SideCheck event) {
+            dontInlineThis++;
+        }
+    }
+
+    public static class CountingHandler {
+        @PipeEventHandler
+        public void modifySpeed(PipeEventItem.ModifySpeed event) {
+            dontInlineThis++;
+        }
+    }
+
+    public static void main(String[] args) {
+        for (int run = 0; run < 5; run++) {
+            // An empty bus, like on most cobblestone/stone pipes
+            benchmark("no handlers     ", new PipeEventBus());
+
+            // A bus with handlers, but none that care about the event
+            PipeEventBus bus = new PipeEventBus();
+            for (int i = 0; i < 8; i++) {
+                bus.registerHandler(new UnrelatedHandler());
+            }
+            benchmark("only unrelated  ", bus);
+
+            // A bus with one handler that cares, and lots that don't
+            bus.registerHandler(new CountingHandler());
+            benchmark("one of many     ", bus);
+
+            bus = new PipeEventBus();
+            bus.registerHandler(new CountingHandler());
+            bus.registerHandler(new GenericHandler());
+            benchmark("exact + generic ", bus);
+        }
+    }
+
+    private static void benchmark(String name, PipeEventBus bus) {
+        PipeEventItem.ModifySpeed event = new PipeEventItem.ModifySpeed(null, null, null, 1);
+        int count = 10_000_000;
+        Stopwatch watch = Stopwatch.createStarted();
+        for (int i = 0; i < count; i++) {
+            if (bus.fireEvent(event)) {
+                dontInlineThis++;
+            }
+        }
+        watch.stop();
+        long nanos = watch.elapsed(TimeUnit.NANOSECONDS);
+        System.out.println(name + " took " + (nanos / (double) count) + "ns per event");
+    }
 }